@@ -0,0 +1,133 @@
+/*
+ *
+ *  The contents of this file are subject to the Terracotta Public License Version
+ *  2.0 (the "License"); You may not use this file except in compliance with the
+ *  License. You may obtain a copy of the License at
+ *
+ *  http://terracotta.org/legal/terracotta-public-license.
+ *
+ *  Software distributed under the License is distributed on an "AS IS" basis,
+ *  WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing rights and limitations under the License.
+ *
+ *  The Covered Software is Terracotta Core.
+ *
+ *  The Initial Developer of the Covered Software is
+ *  Terracotta, Inc., a Software AG company
+ *
+ */
+package com.tc.async.impl;
+
+import com.tc.async.api.MultiThreadedEventContext;
+import com.tc.async.api.Source;
+import com.tc.logging.DefaultLoggerProvider;
+import com.tc.util.concurrent.QueueFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link MultiStageQueueImpl#addToSink} from several producer threads at once, as the comms threads feed a
+ * multi-threaded stage.  Each source queue is drained by its own background thread, standing in for the stage
+ * workers, so producers only block when the workers fall behind.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MultiStageQueueBenchmark {
+
+  private static final Event NOOP = () -> {};
+
+  @Param({"4", "8"})
+  public int queueCount;
+
+  @Param({"1024"})
+  public int queueSize;
+
+  /**
+   * keyed events are hashed to a fixed queue, unkeyed events search for the shortest one
+   */
+  @Param({"true", "false"})
+  public boolean keyed;
+
+  @Param({"false", "true"})
+  public boolean workStealing;
+
+  private MultiStageQueueImpl<Context> queue;
+  private Thread[] workers;
+  private volatile boolean running;
+
+  @Setup(Level.Iteration)
+  public void setup() {
+    queue = new MultiStageQueueImpl<>(queueCount, new QueueFactory(), Context.class, (context) -> NOOP,
+        new DefaultLoggerProvider(), "benchmark", queueSize, workStealing);
+    running = true;
+    workers = new Thread[queueCount];
+    for (int x = 0; x < queueCount; x++) {
+      Source source = queue.getSource(x);
+      workers[x] = new Thread(() -> {
+        try {
+          while (running || !source.isEmpty()) {
+            Event event = source.poll(10);
+            if (event != null) {
+              event.call();
+            }
+          }
+        } catch (Exception e) {
+          throw new RuntimeException(e);
+        }
+      }, "benchmark-worker-" + x);
+      workers[x].setDaemon(true);
+      workers[x].start();
+    }
+  }
+
+  @TearDown(Level.Iteration)
+  public void teardown() throws InterruptedException {
+    running = false;
+    for (Thread worker : workers) {
+      worker.join();
+    }
+  }
+
+  @Benchmark
+  @Threads(4)
+  public void addToSink() {
+    queue.addToSink(keyed ? new Context(ThreadLocalRandom.current().nextInt(1024)) : new Context(null));
+  }
+
+  private static class Context implements MultiThreadedEventContext {
+    private final Object key;
+
+    Context(Object key) {
+      this.key = key;
+    }
+
+    @Override
+    public Object getSchedulingKey() {
+      return key;
+    }
+
+    @Override
+    public boolean flush() {
+      return false;
+    }
+  }
+}
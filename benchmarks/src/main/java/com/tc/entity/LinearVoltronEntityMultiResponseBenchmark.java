@@ -0,0 +1,106 @@
+/*
+ *
+ *  The contents of this file are subject to the Terracotta Public License Version
+ *  2.0 (the "License"); You may not use this file except in compliance with the
+ *  License. You may obtain a copy of the License at
+ *
+ *  http://terracotta.org/legal/terracotta-public-license.
+ *
+ *  Software distributed under the License is distributed on an "AS IS" basis,
+ *  WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing rights and limitations under the License.
+ *
+ *  The Covered Software is Terracotta Core.
+ *
+ *  The Initial Developer of the Covered Software is
+ *  Terracotta, Inc., a Software AG company
+ *
+ */
+package com.tc.entity;
+
+import com.tc.io.TCByteBufferOutputStream;
+import com.tc.net.protocol.tcm.MessageMonitor;
+import com.tc.net.protocol.tcm.NullMessageMonitor;
+import com.tc.net.protocol.tcm.TCMessageType;
+import com.tc.net.protocol.tcm.TestMessageChannel;
+import com.tc.object.session.SessionID;
+import com.tc.object.tx.TransactionID;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Building the batched response the server sends back to a client: received, result-and-retire and statistics for
+ * each transaction, followed by the dehydrate that encodes the whole timeline.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class LinearVoltronEntityMultiResponseBenchmark {
+
+  /**
+   * transactions acknowledged in one response
+   */
+  @Param({"1", "16", "128"})
+  public int transactions;
+
+  @Param({"32"})
+  public int resultSize;
+
+  /**
+   * whether the client accepts the compact timeline or is sent one op per value
+   */
+  @Param({"true", "false"})
+  public boolean compact;
+
+  private final MessageMonitor monitor = new NullMessageMonitor();
+  private final TestMessageChannel channel = new TestMessageChannel();
+  private byte[] result;
+  private long[] stats;
+  private long nextTransaction;
+
+  @Setup(Level.Trial)
+  public void setup() {
+    result = new byte[resultSize];
+    stats = new long[16];
+    if (compact) {
+      channel.addAttachment(LinearVoltronEntityMultiResponse.COMPACT_TIMELINE, true, true);
+    }
+  }
+
+  @Benchmark
+  public LinearVoltronEntityMultiResponse build() {
+    LinearVoltronEntityMultiResponse response = new LinearVoltronEntityMultiResponse(SessionID.NULL_ID, monitor,
+        new TCByteBufferOutputStream(), channel, TCMessageType.VOLTRON_ENTITY_MULTI_RESPONSE);
+    response.startAdding();
+    for (int x = 0; x < transactions; x++) {
+      TransactionID tid = new TransactionID(++nextTransaction);
+      response.addReceived(tid);
+      response.addResultAndRetire(tid, result);
+      response.addStats(tid, stats);
+    }
+    response.stopAdding();
+    return response;
+  }
+
+  @Benchmark
+  public LinearVoltronEntityMultiResponse buildAndDehydrate() {
+    LinearVoltronEntityMultiResponse response = build();
+    response.dehydrate();
+    return response;
+  }
+}
@@ -0,0 +1,133 @@
+/*
+ *
+ *  The contents of this file are subject to the Terracotta Public License Version
+ *  2.0 (the "License"); You may not use this file except in compliance with the
+ *  License. You may obtain a copy of the License at
+ *
+ *  http://terracotta.org/legal/terracotta-public-license.
+ *
+ *  Software distributed under the License is distributed on an "AS IS" basis,
+ *  WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing rights and limitations under the License.
+ *
+ *  The Covered Software is Terracotta Core.
+ *
+ *  The Initial Developer of the Covered Software is
+ *  Terracotta, Inc., a Software AG company
+ *
+ */
+package com.tc.entity;
+
+import com.tc.bytes.TCByteBuffer;
+import com.tc.io.TCByteBufferOutputStream;
+import com.tc.net.ClientID;
+import com.tc.net.protocol.tcm.MessageMonitor;
+import com.tc.net.protocol.tcm.NullMessageMonitor;
+import com.tc.net.protocol.tcm.TCMessageHeader;
+import com.tc.net.protocol.tcm.TCMessageType;
+import com.tc.object.ClientInstanceID;
+import com.tc.object.EntityDescriptor;
+import com.tc.object.EntityID;
+import com.tc.object.FetchID;
+import com.tc.object.session.SessionID;
+import com.tc.object.tx.TransactionID;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.terracotta.entity.EntityMessage;
+import org.terracotta.entity.EntityResponse;
+import org.terracotta.entity.MessageCodec;
+
+import java.util.EnumSet;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link com.tc.net.protocol.tcm.TCMessageImpl} dehydrate and hydrate of an invoke, the message every client request
+ * travels in.
+ * <p>
+ * hydrate decodes the same buffers on every invocation, which is only safe with byte buffer pooling off (the default).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class NetworkVoltronEntityMessageBenchmark {
+
+  @Param({"64", "4096", "65536"})
+  public int payloadSize;
+
+  // invokes are decoded as part of hydrate, keep the entity side of that as cheap as possible
+  private static final MessageCodecSupplier CODEC_SUPPLIER = (descriptor) -> new PassThroughCodec();
+
+  private final MessageMonitor monitor = new NullMessageMonitor();
+  private final ClientID client = new ClientID(1);
+  private final EntityID entity = new EntityID("com.tc.entity.BenchmarkEntity", "benchmark");
+  private final EntityDescriptor descriptor = EntityDescriptor.createDescriptorForInvoke(new FetchID(1L), new ClientInstanceID(1));
+  private byte[] payload;
+  private long transaction;
+
+  private TCMessageHeader header;
+  private TCByteBuffer[] encoded;
+
+  @Setup(Level.Trial)
+  public void setup() throws Exception {
+    payload = new byte[payloadSize];
+    ThreadLocalRandom.current().nextBytes(payload);
+    NetworkVoltronEntityMessageImpl message = dehydrate();
+    header = (TCMessageHeader)message.getHeader();
+    encoded = message.getPayload();
+  }
+
+  @Benchmark
+  public NetworkVoltronEntityMessageImpl dehydrate() {
+    NetworkVoltronEntityMessageImpl message = new NetworkVoltronEntityMessageImpl(SessionID.NULL_ID, monitor,
+        new TCByteBufferOutputStream(), null, TCMessageType.VOLTRON_ENTITY_MESSAGE);
+    transaction++;
+    message.setContents(client, new TransactionID(transaction), entity, descriptor, VoltronEntityMessage.Type.INVOKE_ACTION,
+        true, payload, new TransactionID(Math.max(1L, transaction - 16)), EnumSet.of(VoltronEntityMessage.Acks.RECEIVED));
+    message.dehydrate();
+    return message;
+  }
+
+  @Benchmark
+  public NetworkVoltronEntityMessageImpl hydrate() throws Exception {
+    NetworkVoltronEntityMessageImpl message = new NetworkVoltronEntityMessageImpl(SessionID.NULL_ID, monitor, null, header, encoded);
+    message.setMessageCodecSupplier(CODEC_SUPPLIER);
+    message.hydrate();
+    return message;
+  }
+
+  private static class PassThroughCodec implements MessageCodec<EntityMessage, EntityResponse> {
+    @Override
+    public byte[] encodeMessage(EntityMessage message) {
+      return new byte[0];
+    }
+
+    @Override
+    public EntityMessage decodeMessage(byte[] payload) {
+      return new EntityMessage() {};
+    }
+
+    @Override
+    public byte[] encodeResponse(EntityResponse response) {
+      return new byte[0];
+    }
+
+    @Override
+    public EntityResponse decodeResponse(byte[] payload) {
+      return new EntityResponse() {};
+    }
+  }
+}
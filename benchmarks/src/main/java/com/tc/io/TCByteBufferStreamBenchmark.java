@@ -0,0 +1,122 @@
+/*
+ *
+ *  The contents of this file are subject to the Terracotta Public License Version
+ *  2.0 (the "License"); You may not use this file except in compliance with the
+ *  License. You may obtain a copy of the License at
+ *
+ *  http://terracotta.org/legal/terracotta-public-license.
+ *
+ *  Software distributed under the License is distributed on an "AS IS" basis,
+ *  WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing rights and limitations under the License.
+ *
+ *  The Covered Software is Terracotta Core.
+ *
+ *  The Initial Developer of the Covered Software is
+ *  Terracotta, Inc., a Software AG company
+ *
+ */
+package com.tc.io;
+
+import com.tc.bytes.TCByteBuffer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Primitive and string encoding through {@link TCByteBufferOutputStream} and decoding back through
+ * {@link TCByteBufferInputStream}, the path every message field takes on the way to and from the wire.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class TCByteBufferStreamBenchmark {
+
+  /**
+   * Fields written per invocation, roughly a busy message header.
+   */
+  @Param({"64"})
+  public int fields;
+
+  @Param({"16", "1024"})
+  public int stringLength;
+
+  /**
+   * ascii strings take the compact path, anything else is written as chars
+   */
+  @Param({"true", "false"})
+  public boolean ascii;
+
+  private String string;
+  private TCByteBuffer[] primitives;
+  private TCByteBuffer[] strings;
+
+  @Setup(Level.Trial)
+  public void setup() {
+    ThreadLocalRandom random = ThreadLocalRandom.current();
+    char[] chars = new char[stringLength];
+    for (int x = 0; x < chars.length; x++) {
+      chars[x] = ascii ? (char)('a' + random.nextInt(26)) : (char)(0x0400 + random.nextInt(0x100));
+    }
+    string = new String(chars);
+    primitives = writePrimitives();
+    strings = writeStrings();
+  }
+
+  @Benchmark
+  public TCByteBuffer[] writePrimitives() {
+    TCByteBufferOutputStream out = new TCByteBufferOutputStream();
+    for (int x = 0; x < fields; x++) {
+      out.writeBoolean((x & 1) == 0);
+      out.writeByte(x);
+      out.writeInt(x);
+      out.writeLong(x * 31L);
+    }
+    return out.toArray();
+  }
+
+  @Benchmark
+  public void readPrimitives(Blackhole bh) throws IOException {
+    TCByteBufferInputStream in = new TCByteBufferInputStream(primitives);
+    for (int x = 0; x < fields; x++) {
+      bh.consume(in.readBoolean());
+      bh.consume(in.readByte());
+      bh.consume(in.readInt());
+      bh.consume(in.readLong());
+    }
+  }
+
+  @Benchmark
+  public TCByteBuffer[] writeStrings() {
+    TCByteBufferOutputStream out = new TCByteBufferOutputStream();
+    for (int x = 0; x < fields; x++) {
+      out.writeString(string);
+    }
+    return out.toArray();
+  }
+
+  @Benchmark
+  public void readStrings(Blackhole bh) throws IOException {
+    TCByteBufferInputStream in = new TCByteBufferInputStream(strings);
+    for (int x = 0; x < fields; x++) {
+      bh.consume(in.readString());
+    }
+  }
+}
@@ -0,0 +1,73 @@
+/*
+ *
+ *  The contents of this file are subject to the Terracotta Public License Version
+ *  2.0 (the "License"); You may not use this file except in compliance with the
+ *  License. You may obtain a copy of the License at
+ *
+ *  http://terracotta.org/legal/terracotta-public-license.
+ *
+ *  Software distributed under the License is distributed on an "AS IS" basis,
+ *  WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing rights and limitations under the License.
+ *
+ *  The Covered Software is Terracotta Core.
+ *
+ *  The Initial Developer of the Covered Software is
+ *  Terracotta, Inc., a Software AG company
+ *
+ */
+package com.tc.net.protocol.transport;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Adler32 checksum of the wire protocol header, computed for every outgoing packet and verified on every incoming one.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class WireProtocolHeaderBenchmark {
+
+  private WireProtocolHeader header;
+  private int length;
+
+  @Setup(Level.Trial)
+  public void setup() {
+    header = new WireProtocolHeader();
+    header.setProtocol(WireProtocolHeader.PROTOCOL_TCM);
+    header.setSourceAddress(new byte[] {10, 0, 0, 1});
+    header.setDestinationAddress(new byte[] {10, 0, 0, 2});
+    header.setSourcePort(9410);
+    header.setDestinationPort(51234);
+    header.setMessageCount(1);
+    header.computeChecksum();
+  }
+
+  @Benchmark
+  public long compute() {
+    // a new packet length each time, as on the send path
+    header.setTotalPacketLength(++length & 0xFFFFF);
+    header.computeChecksum();
+    return header.getChecksum();
+  }
+
+  @Benchmark
+  public boolean verify() {
+    return header.isChecksumValid();
+  }
+}
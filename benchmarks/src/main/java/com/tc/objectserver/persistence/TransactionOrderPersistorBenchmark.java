@@ -0,0 +1,123 @@
+/*
+ *
+ *  The contents of this file are subject to the Terracotta Public License Version
+ *  2.0 (the "License"); You may not use this file except in compliance with the
+ *  License. You may obtain a copy of the License at
+ *
+ *  http://terracotta.org/legal/terracotta-public-license.
+ *
+ *  Software distributed under the License is distributed on an "AS IS" basis,
+ *  WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing rights and limitations under the License.
+ *
+ *  The Covered Software is Terracotta Core.
+ *
+ *  The Initial Developer of the Covered Software is
+ *  Terracotta, Inc., a Software AG company
+ *
+ */
+package com.tc.objectserver.persistence;
+
+import com.tc.net.ClientID;
+import com.tc.object.tx.TransactionID;
+import com.tc.util.ProductID;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.BenchmarkParams;
+
+import java.util.Collections;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Invoke path cost of {@link TransactionOrderPersistor#updateWithNewMessage} with thousands of reconnectable clients
+ * spread over the server's processing threads, plus the reconnect side lookup of a transaction's global position.
+ * <p>
+ * Each benchmark thread owns a disjoint slice of the clients so every client still sees its transaction IDs in order.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TransactionOrderPersistorBenchmark {
+
+  @Param({"1000", "5000"})
+  public int clients;
+
+  /**
+   * How many transactions each client keeps outstanding, i.e. how far behind the oldest transaction trails.
+   */
+  @Param({"16"})
+  public int window;
+
+  private TransactionOrderPersistor persistor;
+  private final AtomicInteger slices = new AtomicInteger();
+
+  @Setup(Level.Trial)
+  public void setup() {
+    persistor = new TransactionOrderPersistor(new NullPlatformPersistentStorage(), Collections.emptySet());
+    for (int c = 0; c < clients; c++) {
+      ClientID client = new ClientID(c);
+      persistor.addTrackingForClient(client, ProductID.STRIPE);
+      // start every client with a full window of live transactions
+      for (long tid = 1; tid <= window; tid++) {
+        persistor.updateWithNewMessage(client, new TransactionID(tid), new TransactionID(1L));
+      }
+    }
+  }
+
+  @State(Scope.Thread)
+  public static class Slice {
+    ClientID[] owned;
+    long[] next;
+    int cursor;
+
+    @Setup(Level.Trial)
+    public void setup(TransactionOrderPersistorBenchmark bench, BenchmarkParams params) {
+      int threads = params.getThreads();
+      int slice = bench.slices.getAndIncrement() % threads;
+      int count = 0;
+      for (int c = slice; c < bench.clients; c += threads) {
+        count++;
+      }
+      owned = new ClientID[count];
+      next = new long[count];
+      for (int c = slice, x = 0; c < bench.clients; c += threads, x++) {
+        owned[x] = new ClientID(c);
+        next[x] = bench.window;
+      }
+    }
+  }
+
+  @Benchmark
+  @Threads(8)
+  public Future<Void> update(Slice slice) {
+    int x = slice.cursor;
+    slice.cursor = (x + 1 == slice.owned.length) ? 0 : x + 1;
+    long tid = ++slice.next[x];
+    long oldest = Math.max(1L, tid - window + 1);
+    return persistor.updateWithNewMessage(slice.owned[x], new TransactionID(tid), new TransactionID(oldest));
+  }
+
+  @Benchmark
+  @Threads(1)
+  public int replayIndex() {
+    ThreadLocalRandom random = ThreadLocalRandom.current();
+    return persistor.getIndexToReplay(new ClientID(random.nextInt(clients)), new TransactionID(1L + random.nextInt(window)));
+  }
+}
@@ -0,0 +1,115 @@
+/*
+ *
+ *  The contents of this file are subject to the Terracotta Public License Version
+ *  2.0 (the "License"); You may not use this file except in compliance with the
+ *  License. You may obtain a copy of the License at
+ *
+ *  http://terracotta.org/legal/terracotta-public-license.
+ *
+ *  Software distributed under the License is distributed on an "AS IS" basis,
+ *  WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing rights and limitations under the License.
+ *
+ *  The Covered Software is Terracotta Core.
+ *
+ *  The Initial Developer of the Covered Software is
+ *  Terracotta, Inc., a Software AG company
+ *
+ */
+package com.tc.util.concurrent;
+
+import com.tc.async.impl.Event;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the queues {@link QueueFactory} can hand to a SEDA stage: several producers calling addToSink against the
+ * single worker thread that drains the source queue.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Group)
+public class StageQueueBenchmark {
+
+  private static final Event EVENT = () -> {};
+
+  @Param({"array", "linked", "ringbuffer-spin", "ringbuffer-yield", "ringbuffer-park"})
+  public String queueType;
+
+  @Param({"1024"})
+  public int capacity;
+
+  private BlockingQueue<Event> queue;
+
+  @Setup(Level.Iteration)
+  public void setup() {
+    switch (queueType) {
+      case "array":
+        queue = new ArrayBlockingQueue<>(capacity);
+        break;
+      case "linked":
+        queue = new LinkedBlockingQueue<>(capacity);
+        break;
+      case "ringbuffer-spin":
+        queue = new RingBufferBlockingQueue<>(capacity, WaitStrategy.SPIN);
+        break;
+      case "ringbuffer-yield":
+        queue = new RingBufferBlockingQueue<>(capacity, WaitStrategy.YIELD);
+        break;
+      case "ringbuffer-park":
+        queue = new RingBufferBlockingQueue<>(capacity, WaitStrategy.PARK);
+        break;
+      default:
+        throw new IllegalArgumentException(queueType);
+    }
+  }
+
+  @Benchmark
+  @Group("mpsc")
+  @GroupThreads(3)
+  public boolean produce() {
+    return queue.offer(EVENT);
+  }
+
+  @Benchmark
+  @Group("mpsc")
+  @GroupThreads(1)
+  public void consume(Blackhole bh) {
+    bh.consume(queue.poll());
+  }
+
+  @Benchmark
+  @Group("spsc")
+  @GroupThreads(1)
+  public boolean produceSingle() {
+    return queue.offer(EVENT);
+  }
+
+  @Benchmark
+  @Group("spsc")
+  @GroupThreads(1)
+  public void consumeSingle(Blackhole bh) {
+    bh.consume(queue.poll());
+  }
+}
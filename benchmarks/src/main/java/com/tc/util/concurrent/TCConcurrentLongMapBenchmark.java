@@ -0,0 +1,140 @@
+/*
+ *
+ *  The contents of this file are subject to the Terracotta Public License Version
+ *  2.0 (the "License"); You may not use this file except in compliance with the
+ *  License. You may obtain a copy of the License at
+ *
+ *  http://terracotta.org/legal/terracotta-public-license.
+ *
+ *  Software distributed under the License is distributed on an "AS IS" basis,
+ *  WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing rights and limitations under the License.
+ *
+ *  The Covered Software is Terracotta Core.
+ *
+ *  The Initial Developer of the Covered Software is
+ *  Terracotta, Inc., a Software AG company
+ *
+ */
+package com.tc.util.concurrent;
+
+import com.tc.l2.msg.SyncReplicationActivity.ActivityID;
+import com.tc.object.tx.TransactionID;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Comparator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per invoke cost of the transaction and activity indexed maps, boxed key maps against {@link TCConcurrentLongMap}.
+ * Run with <code>-prof gc</code>, <code>gc.alloc.rate.norm</code> is the allocation per invoke.
+ * <p>
+ * The key objects an invoke carries anyway (the message's TransactionID, the ack's ActivityID) are created in both
+ * variants so the difference is what the map itself allocates.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class TCConcurrentLongMapBenchmark {
+
+  private static final Object VALUE = new Object();
+
+  /**
+   * How many transactions or activities are in flight.
+   */
+  @Param({"16", "1024"})
+  public int window;
+
+  private ConcurrentHashMap<TransactionID, Object> transactions;
+  private ConcurrentSkipListMap<ActivityID, Object> activities;
+  private TCConcurrentLongMap<Object> longMap;
+  private long next;
+
+  @Setup(Level.Iteration)
+  public void setup() {
+    transactions = new ConcurrentHashMap<>();
+    activities = new ConcurrentSkipListMap<>(Comparator.comparingLong(a -> a.id));
+    longMap = new TCConcurrentLongMap<>();
+    for (next = 1; next <= window; next++) {
+      transactions.put(new TransactionID(next), VALUE);
+      activities.put(new ActivityID(next), VALUE);
+      longMap.put(next, VALUE);
+    }
+  }
+
+  /**
+   * An invoke as the client entity manager sees it: register the message, find the oldest pending transaction for
+   * the outgoing message, look it up on received and on complete, then retire the oldest.
+   */
+  @Benchmark
+  public void invokeWithHashMap(Blackhole bh) {
+    TransactionID tid = new TransactionID(next++);
+    transactions.put(tid, VALUE);
+    TransactionID oldest = tid;
+    for (TransactionID pending : transactions.keySet()) {
+      if (oldest.compareTo(pending) > 0) {
+        oldest = pending;
+      }
+    }
+    bh.consume(oldest);
+    bh.consume(transactions.get(tid));
+    bh.consume(transactions.get(tid));
+    TransactionID retired = new TransactionID(tid.toLong() - window);
+    bh.consume(transactions.remove(retired));
+  }
+
+  @Benchmark
+  public void invokeWithLongMap(Blackhole bh) {
+    TransactionID tid = new TransactionID(next++);
+    longMap.put(tid.toLong(), VALUE);
+    long oldest = longMap.reduceKeys(tid.toLong(), Math::min);
+    bh.consume(oldest == tid.toLong() ? tid : new TransactionID(oldest));
+    bh.consume(longMap.get(tid.toLong()));
+    bh.consume(longMap.get(tid.toLong()));
+    TransactionID retired = new TransactionID(tid.toLong() - window);
+    bh.consume(longMap.remove(retired.toLong()));
+  }
+
+  /**
+   * A replicated activity as the active sees it: register the waiter, then the passive's completed ack for the oldest
+   * activity walks its range and discards the waiter.
+   */
+  @Benchmark
+  public void replicateWithSkipList(Blackhole bh) {
+    ActivityID id = new ActivityID(next++);
+    activities.put(id, VALUE);
+    ActivityID acked = new ActivityID(id.id - window);
+    for (Map.Entry<ActivityID, Object> entry : activities.subMap(acked, true, acked, true).entrySet()) {
+      bh.consume(activities.remove(entry.getKey(), entry.getValue()));
+    }
+  }
+
+  @Benchmark
+  public void replicateWithLongMap(Blackhole bh) {
+    ActivityID id = new ActivityID(next++);
+    longMap.put(id.id, VALUE);
+    ActivityID acked = new ActivityID(id.id - window);
+    Object waiter = longMap.get(acked.id);
+    if (waiter != null) {
+      bh.consume(longMap.remove(acked.id, waiter));
+    }
+  }
+}
@@ -44,4 +44,15 @@ public interface Stage<EC> {
   public int size();
   
   public Map<String, ?> getState();
+  /**
+   * @return queue and run latency histograms for this stage, empty if statistics are not being collected
+   */
+  public Map<String, ?> getLatencies();
+  /**
+   * Ends the current latency interval of this stage and starts the next one.
+   *
+   * @return queue and run latency histograms of what was recorded since the previous call, empty if statistics are not
+   *         being collected
+   */
+  public Map<String, ?> takeLatencyInterval();
 }
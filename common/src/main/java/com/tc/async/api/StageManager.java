@@ -23,6 +23,7 @@ import com.tc.stats.Stats;
 import com.tc.text.PrettyPrintable;
 
 import java.util.List;
+import java.util.Map;
 
 
 public interface StageManager extends PrettyPrintable {
@@ -43,6 +44,16 @@ public interface StageManager extends PrettyPrintable {
   public void setLoggerProvider(TCLoggerProvider loggerProvider);
 
   public Stats[] getStats();
+  /**
+   * @return latency histograms keyed by stage name, for the stages collecting statistics
+   */
+  public Map<String, ?> getLatencies();
+  /**
+   * Ends the current latency interval of every stage collecting statistics, see {@link Stage#takeLatencyInterval()}.
+   *
+   * @return the interval histograms keyed by stage name
+   */
+  public Map<String, ?> takeLatencyInterval();
 
   public void cleanup();
 }
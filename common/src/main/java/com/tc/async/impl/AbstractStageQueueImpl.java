@@ -7,6 +7,7 @@ import com.tc.async.api.Sink;
 import com.tc.async.api.Source;
 import com.tc.logging.TCLoggerProvider;
 import com.tc.util.Assert;
+import java.util.Collections;
 import java.util.LinkedHashMap;
 import java.util.Map;
 
@@ -81,6 +82,16 @@ public abstract class AbstractStageQueueImpl<EC> implements StageQueue<EC> {
     return queueState;
   }
   
+  @Override
+  public Map<String, ?> getLatencies() {
+    return (extraStats) ? this.monitoring.getLatencies() : Collections.emptyMap();
+  }
+
+  @Override
+  public Map<String, ?> takeLatencyInterval() {
+    return (extraStats) ? this.monitoring.takeLatencyInterval() : Collections.emptyMap();
+  }
+
   interface SourceQueue extends Source {
     int clear();
 
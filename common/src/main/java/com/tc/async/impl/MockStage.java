@@ -94,6 +94,16 @@ public class MockStage implements Stage {
   public Map getState() {
     return Collections.emptyMap();
   }
+
+  @Override
+  public Map getLatencies() {
+    return Collections.emptyMap();
+  }
+
+  @Override
+  public Map takeLatencyInterval() {
+    return Collections.emptyMap();
+  }
   
   
 
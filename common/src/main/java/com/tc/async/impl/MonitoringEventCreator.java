@@ -18,6 +18,7 @@
  */
 package com.tc.async.impl;
 
+import com.tc.stats.LatencyHistogram;
 import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.concurrent.TimeUnit;
@@ -32,6 +33,10 @@ public class MonitoringEventCreator<EC> implements EventCreator<EC> {
   private final LongAdder queueTime = new LongAdder();
   private final LongAdder runTime = new LongAdder();
   private final LongAdder queued = new LongAdder();
+  private final LatencyHistogram queueLatency = new LatencyHistogram();
+  private final LatencyHistogram runLatency = new LatencyHistogram();
+  private final LatencyHistogram.Interval queueInterval = queueLatency.newInterval();
+  private final LatencyHistogram.Interval runInterval = runLatency.newInterval();
   private static PipelineMonitoringConsumer pipelineConsumer;
 
   public MonitoringEventCreator(String name, EventCreator<EC> next) {
@@ -92,9 +97,30 @@ public class MonitoringEventCreator<EC> implements EventCreator<EC> {
   }
 
   private void addStats(MonitorStats stats) {
-    runTime.add(stats.runTime());
-    queueTime.add(stats.queueTime());
+    long run = stats.runTime();
+    long queue = stats.queueTime();
+    runTime.add(run);
+    queueTime.add(queue);
     queued.increment();
+    runLatency.record(run);
+    queueLatency.record(queue);
+  }
+
+  public Map<String, ?> getLatencies() {
+    Map<String, Object> latencies = new LinkedHashMap<>();
+    latencies.put("queue", queueLatency.getStateMap());
+    latencies.put("run", runLatency.getStateMap());
+    return latencies;
+  }
+
+  /**
+   * Ends the latency interval of the stage, the only one it keeps, and starts the next one.
+   */
+  public Map<String, ?> takeLatencyInterval() {
+    Map<String, Object> latencies = new LinkedHashMap<>();
+    latencies.put("queue", queueInterval.next().getStateMap());
+    latencies.put("run", runInterval.next().getStateMap());
+    return latencies;
   }
 
   public Map<String, ?> getState() {
@@ -106,6 +132,7 @@ public class MonitoringEventCreator<EC> implements EventCreator<EC> {
     if (count > 0) {
       stats.put("average queue time", TimeUnit.NANOSECONDS.toNanos(queueTime.sum()/count));
       stats.put("average run time", TimeUnit.NANOSECONDS.toNanos(runTime.sum()/count));
+      stats.put("latencies", getLatencies());
     }
     return stats;
   }
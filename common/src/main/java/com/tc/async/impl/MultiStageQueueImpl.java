@@ -23,12 +23,23 @@ import com.tc.async.api.MultiThreadedEventContext;
 import com.tc.async.api.Source;
 import com.tc.exception.TCRuntimeException;
 import com.tc.logging.TCLoggerProvider;
+import com.tc.properties.TCPropertiesImpl;
 import com.tc.util.Assert;
 import com.tc.util.concurrent.QueueFactory;
 
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Queue;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+import java.util.concurrent.locks.LockSupport;
 import java.util.function.Consumer;
 
 /**
@@ -39,6 +50,11 @@ import java.util.function.Consumer;
 public class MultiStageQueueImpl<EC extends MultiThreadedEventContext> extends AbstractStageQueueImpl<EC> {
 
   static final String FINDSTRATEGY_PROPNAME = "tc.stagequeueimpl.findstrategy";
+  /**
+   * tc.properties switch, {@code seda.<stage>.worksteal}.  When set, events without a scheduling key go to a shared
+   * deque that every worker of the stage steals from instead of being parked in a guessed "shortest" queue.
+   */
+  static final String WORKSTEAL_PROPNAME_FORMAT = "seda.%s.worksteal";
 
 
   static final ShortestFindStrategy SHORTEST_FIND_STRATEGY;
@@ -63,7 +79,9 @@ public class MultiStageQueueImpl<EC extends MultiThreadedEventContext> extends A
   private final int PARTITION_SHIFT;
   final int PARTITION_MAX_MASK;
   private final MultiSourceQueueImpl[] sourceQueues;
+  private final SharedWork sharedWork;
   private volatile int fcheck = 0;  // used to start the shortest queue search
+  private final AtomicLong flushes = new AtomicLong();
   AtomicInteger partitionHand =new AtomicInteger(0);
 
   /**
@@ -75,7 +93,6 @@ public class MultiStageQueueImpl<EC extends MultiThreadedEventContext> extends A
    * @param stageName : The stage name
    * @param queueSize : Max queue Size allowed
    */
-  @SuppressWarnings("unchecked")
   MultiStageQueueImpl(int queueCount,
                       QueueFactory queueFactory,
                       Class<EC> type, 
@@ -83,6 +100,22 @@ public class MultiStageQueueImpl<EC extends MultiThreadedEventContext> extends A
                       TCLoggerProvider loggerProvider,
                       String stageName,
                       int queueSize) {
+    this(queueCount, queueFactory, type, creator, loggerProvider, stageName, queueSize,
+        TCPropertiesImpl.getProperties().getBoolean(String.format(WORKSTEAL_PROPNAME_FORMAT, stageName), false));
+  }
+
+  /**
+   * @param workStealing : unkeyed events are shared between all the queues rather than assigned to one
+   */
+  @SuppressWarnings("unchecked")
+  MultiStageQueueImpl(int queueCount,
+                      QueueFactory queueFactory,
+                      Class<EC> type, 
+                      EventCreator<EC> creator,
+                      TCLoggerProvider loggerProvider,
+                      String stageName,
+                      int queueSize,
+                      boolean workStealing) {
     super(loggerProvider, stageName, creator);
     Assert.eval(queueCount > 0);
 
@@ -93,6 +126,7 @@ public class MultiStageQueueImpl<EC extends MultiThreadedEventContext> extends A
     }
     PARTITION_MAX_MASK = (1 << (31 - PARTITION_SHIFT)) - 1;
     this.sourceQueues = new MultiSourceQueueImpl[queueCount];
+    this.sharedWork = workStealing ? new SharedWork(queueCount, queueSize) : null;
     createWorkerQueues(queueCount, queueFactory, type, queueSize, stageName);
 
     if (Integer.bitCount(queueCount) == 1) {
@@ -135,7 +169,7 @@ public class MultiStageQueueImpl<EC extends MultiThreadedEventContext> extends A
     Assert.eval(queueSize >= 0);
 
     for (int i = 0; i < queueCount; i++) {
-      this.sourceQueues[i] = new MultiSourceQueueImpl(queueFactory.createInstance(type, queueSize), v->this.fcheck = v, i);
+      this.sourceQueues[i] = new MultiSourceQueueImpl(queueFactory.createInstance(stage, type, queueSize), v->this.fcheck = v, i, sharedWork);
     }
   }
 
@@ -157,8 +191,34 @@ public class MultiStageQueueImpl<EC extends MultiThreadedEventContext> extends A
     if (event != null) {
       // NOTE:  We don't currently consult the predicate for multi-threaded events (the only implementation always returns true, in any case).
       boolean interrupted = Thread.interrupted();
+      if (sharedWork != null && !context.flush() && context.getSchedulingKey() == null) {
+        int idle;
+        try {
+          while (true) {
+            try {
+              idle = sharedWork.share(event);
+              break;
+            } catch (InterruptedException e) {
+              this.logger.debug("StageQueue share: " + e);
+              interrupted = true;
+            }
+          }
+        } finally {
+          if (interrupted) {
+            Thread.currentThread().interrupt();
+          }
+        }
+        if (idle >= 0) {
+          wakeIdleWorker(idle);
+        }
+        return;
+      }
       int index = getSourceQueueFor(context);
-      Event wrapper = (context.flush()) ? new FlushingHandledContext(event, index) : event;
+      Event wrapper = event;
+      if (context.flush()) {
+        flushes.incrementAndGet();
+        wrapper = new FlushingHandledContext(event, index);
+      }
       try {
         while (true) {
           try {
@@ -177,6 +237,25 @@ public class MultiStageQueueImpl<EC extends MultiThreadedEventContext> extends A
     }
   }
 
+  private void wakeIdleWorker(int index) {
+    boolean interrupted = Thread.interrupted();
+    try {
+      while (true) {
+        try {
+          this.sourceQueues[index].put(SharedWork.WAKE);
+          break;
+        } catch (InterruptedException e) {
+          this.logger.debug("StageQueue wake: " + e);
+          interrupted = true;
+        }
+      }
+    } finally {
+      if (interrupted) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
   // TODO:  Way too busy. REALLY need a better way
   private int findShortestQueueIndex() {
     switch (SHORTEST_FIND_STRATEGY) {
@@ -242,6 +321,17 @@ public class MultiStageQueueImpl<EC extends MultiThreadedEventContext> extends A
     return Math.abs(hashcode % arrayLength);
   }
   
+  @Override
+  public Map<String, ?> getState() {
+    Map<String, Object> state = new LinkedHashMap<>(super.getState());
+    state.put("queues", this.sourceQueues.length);
+    state.put("flushes", flushes.get());
+    if (sharedWork != null) {
+      state.put("shared", sharedWork.size());
+    }
+    return state;
+  }
+
   @Override
   public String toString() {
     return "StageQueue(" + this.stageName + ")";
@@ -253,6 +343,9 @@ public class MultiStageQueueImpl<EC extends MultiThreadedEventContext> extends A
     for (MultiSourceQueueImpl sourceQueue : this.sourceQueues) {
       clearCount += sourceQueue.clear();
     }
+    if (sharedWork != null) {
+      clearCount += sharedWork.clear();
+    }
     this.logger.info("Cleared " + clearCount);
     return clearCount;
   }
@@ -262,11 +355,13 @@ public class MultiStageQueueImpl<EC extends MultiThreadedEventContext> extends A
     private final Consumer<Integer> hint;
     private final BlockingQueue<Event> queue;
     private final int                      sourceIndex;
+    private final SharedWork               sharedWork;
 
-    public MultiSourceQueueImpl(BlockingQueue<Event> queue, Consumer<Integer> hint, int sourceIndex) {
+    public MultiSourceQueueImpl(BlockingQueue<Event> queue, Consumer<Integer> hint, int sourceIndex, SharedWork sharedWork) {
       this.queue = queue;
       this.hint = hint;
       this.sourceIndex = sourceIndex;
+      this.sharedWork = sharedWork;
     }
 
     @Override
@@ -277,24 +372,39 @@ public class MultiStageQueueImpl<EC extends MultiThreadedEventContext> extends A
     // XXX: poor man's clear.
     @Override
     public int clear() {
-      int cleared = 0;
-      try {
-        while (poll(0) != null) {
-          cleared++;
+      if (sharedWork == null) {
+        int cleared = 0;
+        try {
+          while (poll(0) != null) {
+            cleared++;
+          }
+          return cleared;
+        } catch (InterruptedException e) {
+          throw new TCRuntimeException(e);
+        }
+      } else {
+        // don't steal on behalf of the worker and don't count wake ups as events
+        int cleared = 0;
+        Event e;
+        while ((e = this.queue.poll()) != null) {
+          if (e != SharedWork.WAKE) {
+            cleared++;
+          }
         }
         return cleared;
-      } catch (InterruptedException e) {
-        throw new TCRuntimeException(e);
       }
     }
 
     @Override
     public boolean isEmpty() {
-      return this.queue.isEmpty();
+      return this.queue.isEmpty() && (sharedWork == null || sharedWork.isEmpty());
     }
 
     @Override
     public Event poll(long timeout) throws InterruptedException {
+      if (sharedWork != null) {
+        return pollOrSteal(timeout);
+      }
       Event rv = this.queue.poll(timeout, TimeUnit.MILLISECONDS);
       if (rv != null) {
         if (queue.isEmpty()) {
@@ -307,6 +417,33 @@ public class MultiStageQueueImpl<EC extends MultiThreadedEventContext> extends A
       return rv;
     }
 
+    /**
+     * Keyed events in this worker's own queue go first, then shared work.  Only when both are empty does the worker
+     * advertise itself as idle and block on its own queue, where a producer of shared work can reach it with a wake up.
+     */
+    private Event pollOrSteal(long timeout) throws InterruptedException {
+      Event rv = this.queue.poll();
+      if (rv == null) {
+        rv = sharedWork.steal(sourceIndex);
+      }
+      if (rv == null && timeout > 0) {
+        sharedWork.setIdle(sourceIndex);
+        try {
+          // re-check after going idle, a producer that missed the idle flag must have published before this steal
+          rv = sharedWork.steal(sourceIndex);
+          if (rv == null) {
+            rv = this.queue.poll(timeout, TimeUnit.MILLISECONDS);
+          }
+        } finally {
+          sharedWork.clearIdle(sourceIndex);
+        }
+      }
+      if (rv == SharedWork.WAKE) {
+        rv = sharedWork.steal(sourceIndex);
+      }
+      return rv;
+    }
+
     @Override
     public int put(Event context) throws InterruptedException {
       this.queue.put(context);
@@ -327,16 +464,22 @@ public class MultiStageQueueImpl<EC extends MultiThreadedEventContext> extends A
 
   private class FlushingHandledContext<T extends EC> extends HandledEvent<EC> {
     private final int offset;
+    private final long flushSequence;
     private int executionCount = 0;
     public FlushingHandledContext(Event context, int offset) {
       super(context);
       this.offset = offset;
+      this.flushSequence = (sharedWork != null) ? sharedWork.currentSequence() : 0L;
     }
     
     @Override
     public void call() throws EventHandlerException {
       if (++executionCount == sourceQueues.length) {
 //  been through all the queues.  execute now.
+        if (sharedWork != null) {
+//  shared work scheduled before the flush must be finished too
+          sharedWork.flush(flushSequence, moduloQueueCount(offset + executionCount - 1));
+        }
         super.call();
       } else {
 //  move to next queue
@@ -359,4 +502,261 @@ public class MultiStageQueueImpl<EC extends MultiThreadedEventContext> extends A
       }
     }
   }
+
+  /**
+   * The shared queue of unkeyed events for the work stealing mode.  Each worker publishes the sequence of the shared
+   * event it is running so a flush can wait for everything scheduled ahead of it, wherever it ended up running.
+   * <p>
+   * The queue is a linked list in which an event takes its sequence from its predecessor in the same compare and set
+   * that links it, so queue order and sequence order are one and the same and a flush only has to look at the head.
+   * <p>
+   * The queue holds at most the stage's configured queue size, producers block while it is full just as they do on
+   * the bounded queues of the workers.  Producers waiting for space and flushes waiting for other workers park and
+   * are unparked by the worker that made progress, nobody takes a lock.
+   */
+  static final class SharedWork {
+    static final Event WAKE = () -> {};
+    private static final long STEALING = -1L;
+    private static final AtomicReferenceFieldUpdater<SharedEvent, SharedEvent> NEXT =
+        AtomicReferenceFieldUpdater.newUpdater(SharedEvent.class, SharedEvent.class, "next");
+
+    // head is a consumed (or initial) node, the first event to run is its successor
+    private final AtomicReference<SharedEvent> head;
+    private final AtomicReference<SharedEvent> tail;
+    private final AtomicIntegerArray idle;
+    private final AtomicLongArray running;
+    private final AtomicInteger wakeHand = new AtomicInteger();
+    private final int capacity;
+    // events in the queue, counted against the capacity
+    private final AtomicInteger queued = new AtomicInteger();
+    private final Queue<Thread> spaceWaiters = new ConcurrentLinkedQueue<>();
+    private final Queue<Thread> flushWaiters = new ConcurrentLinkedQueue<>();
+
+    SharedWork(int workers, int capacity) {
+      this.idle = new AtomicIntegerArray(workers);
+      this.running = new AtomicLongArray(workers);
+      // a zero sized stage hands events over one at a time
+      this.capacity = Math.max(capacity, 1);
+      SharedEvent initial = new SharedEvent(null);
+      this.head = new AtomicReference<>(initial);
+      this.tail = new AtomicReference<>(initial);
+    }
+
+    /**
+     * @return the sequence of the last event shared so far
+     */
+    long currentSequence() {
+      SharedEvent last = tail.get();
+      for (SharedEvent next = last.next; next != null; next = last.next) {
+        last = next;
+      }
+      return last.sequence;
+    }
+
+    /**
+     * @return the index of an idle worker that was claimed and must be woken, or -1 if all the workers are busy and
+     * will find this event on their own
+     */
+    int share(Event event) throws InterruptedException {
+      reserve();
+      enqueue(new SharedEvent(event));
+      int workers = idle.length();
+      int start = (wakeHand.getAndIncrement() & Integer.MAX_VALUE) % workers;
+      for (int x = 0; x < workers; x++) {
+        int index = (start + x) % workers;
+        if (idle.get(index) == 1 && idle.compareAndSet(index, 1, 0)) {
+          return index;
+        }
+      }
+      return -1;
+    }
+
+    private void enqueue(SharedEvent node) {
+      while (true) {
+        SharedEvent last = tail.get();
+        SharedEvent next = last.next;
+        if (next == null) {
+          node.sequence = last.sequence + 1;
+          if (NEXT.compareAndSet(last, null, node)) {
+            tail.compareAndSet(last, node);
+            return;
+          }
+        } else {
+          // help a producer that linked its event but did not move the tail yet
+          tail.compareAndSet(last, next);
+        }
+      }
+    }
+
+    /**
+     * @return the first event if its sequence is no later than {@code through}, null otherwise
+     */
+    private SharedEvent dequeue(long through) {
+      while (true) {
+        SharedEvent first = head.get();
+        SharedEvent next = first.next;
+        if (next == null || next.sequence > through) {
+          return null;
+        }
+        if (head.compareAndSet(first, next)) {
+          return next;
+        }
+      }
+    }
+
+    private void reserve() throws InterruptedException {
+      if (capacity == Integer.MAX_VALUE) {
+        return;
+      }
+      while (true) {
+        int current = queued.get();
+        if (current < capacity) {
+          if (queued.compareAndSet(current, current + 1)) {
+            if (current + 1 < capacity) {
+              // more than one slot may have freed up while we were parked
+              unparkFirst(spaceWaiters);
+            }
+            return;
+          }
+        } else {
+          Thread waiter = Thread.currentThread();
+          spaceWaiters.add(waiter);
+          try {
+            // registered before the re-check so a release in between is not missed
+            while (queued.get() >= capacity) {
+              LockSupport.park(this);
+              if (Thread.interrupted()) {
+                throw new InterruptedException();
+              }
+            }
+          } finally {
+            spaceWaiters.remove(waiter);
+          }
+        }
+      }
+    }
+
+    private void release() {
+      if (capacity != Integer.MAX_VALUE) {
+        queued.decrementAndGet();
+        unparkFirst(spaceWaiters);
+      }
+    }
+
+    private static void unparkFirst(Queue<Thread> waiters) {
+      Thread waiter = waiters.peek();
+      if (waiter != null) {
+        LockSupport.unpark(waiter);
+      }
+    }
+
+    private void setRunning(int worker, long sequence) {
+      running.set(worker, sequence);
+      if (!flushWaiters.isEmpty()) {
+        for (Thread waiter : flushWaiters) {
+          LockSupport.unpark(waiter);
+        }
+      }
+    }
+
+    int size() {
+      int size = 0;
+      for (SharedEvent next = head.get().next; next != null; next = next.next) {
+        size++;
+      }
+      return size;
+    }
+
+    void setIdle(int worker) {
+      idle.set(worker, 1);
+    }
+
+    void clearIdle(int worker) {
+      idle.lazySet(worker, 0);
+    }
+
+    boolean isEmpty() {
+      return head.get().next == null;
+    }
+
+    Event steal(int worker) {
+      return take(worker, Long.MAX_VALUE);
+    }
+
+    private SharedEvent take(int worker, long through) {
+      running.set(worker, STEALING);
+      SharedEvent e = dequeue(through);
+      if (e == null) {
+        setRunning(worker, 0L);
+        return null;
+      }
+      release();
+      e.worker = worker;
+      setRunning(worker, e.sequence);
+      return e;
+    }
+
+    int clear() {
+      int cleared = 0;
+      while (dequeue(Long.MAX_VALUE) != null) {
+        release();
+        cleared++;
+      }
+      return cleared;
+    }
+
+    /**
+     * Runs the shared events scheduled up to {@code through} that nobody picked up yet on the calling worker and waits
+     * for the ones other workers are running.
+     */
+    void flush(long through, int worker) throws EventHandlerException {
+      SharedEvent e;
+      while ((e = take(worker, through)) != null) {
+        e.call();
+      }
+      Thread current = Thread.currentThread();
+      boolean interrupted = false;
+      flushWaiters.add(current);
+      try {
+        for (int x = 0; x < running.length(); x++) {
+          if (x != worker) {
+            // registered before looking so a worker finishing in between unparks us
+            long seq = running.get(x);
+            while (seq == STEALING || (seq > 0 && seq <= through)) {
+              LockSupport.park(this);
+              interrupted |= Thread.interrupted();
+              seq = running.get(x);
+            }
+          }
+        }
+      } finally {
+        flushWaiters.remove(current);
+        if (interrupted) {
+          current.interrupt();
+        }
+      }
+    }
+
+    private final class SharedEvent implements Event {
+      private final Event event;
+      // assigned before the event is linked, published by the link
+      private long sequence;
+      volatile SharedEvent next;
+      // only touched by the worker that stole this event
+      private int worker;
+
+      SharedEvent(Event event) {
+        this.event = event;
+      }
+
+      @Override
+      public void call() throws EventHandlerException {
+        try {
+          event.call();
+        } finally {
+          setRunning(worker, 0L);
+        }
+      }
+    }
+  }
 }
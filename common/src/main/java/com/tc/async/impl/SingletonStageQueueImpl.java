@@ -53,14 +53,14 @@ public class SingletonStageQueueImpl<EC> extends AbstractStageQueueImpl<EC> {
                           String stageName,
                           int queueSize) {
     super(loggerProvider, stageName, creator);
-    this.sourceQueue = createWorkerQueue(queueFactory, type, queueSize);
+    this.sourceQueue = createWorkerQueue(queueFactory, type, queueSize, stageName);
   }
 
   private SourceQueueImpl createWorkerQueue(QueueFactory queueFactory, Class<EC> type, 
-                                                                int queueSize) {
+                                                                int queueSize, String stage) {
     Assert.eval(queueSize >= 0);
 
-    return new SourceQueueImpl(queueFactory.createInstance(type, queueSize));
+    return new SourceQueueImpl(queueFactory.createInstance(stage, type, queueSize));
   }
 
   @Override
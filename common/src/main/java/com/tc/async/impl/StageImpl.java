@@ -238,6 +238,16 @@ public class StageImpl<EC> implements Stage<EC> {
     Arrays.stream(threads).forEach(t->t.waitForIdleUninterruptibly());
   }
   
+  @Override
+  public Map<String, ?> getLatencies() {
+    return this.stageQueue.getLatencies();
+  }
+
+  @Override
+  public Map<String, ?> takeLatencyInterval() {
+    return this.stageQueue.takeLatencyInterval();
+  }
+
   @Override
   public Map<String, ?> getState() {
     Map<String, Object> data = new LinkedHashMap<>();
@@ -372,6 +382,8 @@ public class StageImpl<EC> implements Stage<EC> {
       state.put("idle", idleTime);
       state.put("run", runTime);
       state.put("processed", count);
+      long elapsed = idleTime + runTime;
+      state.put("throughput", elapsed > 0 ? (long)(count * 1_000_000_000d / elapsed) : 0L);
       state.put("backlog", source.size());
       return state;
     }
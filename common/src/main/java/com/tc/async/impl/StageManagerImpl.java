@@ -40,7 +40,9 @@ import java.util.Arrays;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
 
 /**
  * @author steve
@@ -192,6 +194,27 @@ public class StageManagerImpl implements StageManager {
     return stats;
   }
 
+  @Override
+  public Map<String, ?> getLatencies() {
+    return collectLatencies(Stage::getLatencies);
+  }
+
+  @Override
+  public Map<String, ?> takeLatencyInterval() {
+    return collectLatencies(Stage::takeLatencyInterval);
+  }
+
+  private Map<String, ?> collectLatencies(Function<Stage<?>, Map<String, ?>> reader) {
+    Map<String, Object> map = new TreeMap<>();
+    for (Stage<?> stage : stages.values()) {
+      Map<String, ?> latencies = reader.apply(stage);
+      if (!latencies.isEmpty()) {
+        map.put(stage.getName(), latencies);
+      }
+    }
+    return map;
+  }
+
   @Override
   public Map<String, ?> getStateMap() {
     Map<String,Object> map = new LinkedHashMap<>();
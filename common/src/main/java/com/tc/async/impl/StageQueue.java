@@ -24,6 +24,10 @@ public interface StageQueue<EC> extends Sink<EC> {
   int clear();
   
   Map<String, ?> getState();
+
+  Map<String, ?> getLatencies();
+
+  Map<String, ?> takeLatencyInterval();
   
   void enableAdditionalStatistics(boolean track);
 
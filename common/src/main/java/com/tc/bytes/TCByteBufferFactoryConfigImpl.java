@@ -0,0 +1,59 @@
+/*
+ *
+ *  The contents of this file are subject to the Terracotta Public License Version
+ *  2.0 (the "License"); You may not use this file except in compliance with the
+ *  License. You may obtain a copy of the License at
+ *
+ *  http://terracotta.org/legal/terracotta-public-license.
+ *
+ *  Software distributed under the License is distributed on an "AS IS" basis,
+ *  WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing rights and limitations under the License.
+ *
+ *  The Covered Software is Terracotta Core.
+ *
+ *  The Initial Developer of the Covered Software is
+ *  Terracotta, Inc., a Software AG company
+ *
+ */
+package com.tc.bytes;
+
+import com.tc.properties.TCProperties;
+import com.tc.properties.TCPropertiesConsts;
+import com.tc.properties.TCPropertiesImpl;
+
+public class TCByteBufferFactoryConfigImpl implements TCByteBufferFactoryConfig {
+
+  private final boolean poolingEnabled;
+  private final int     commonPoolMaxBufCount;
+  private final int     threadLocalPoolMaxBufCount;
+  private final boolean leakDetectionEnabled;
+
+  public TCByteBufferFactoryConfigImpl() {
+    TCProperties props = TCPropertiesImpl.getProperties();
+    this.poolingEnabled = props.getBoolean(TCPropertiesConsts.TC_BYTEBUFFER_POOLING_ENABLED, false);
+    this.commonPoolMaxBufCount = props.getInt(TCPropertiesConsts.TC_BYTEBUFFER_COMMON_POOL_MAXCOUNT, 4096);
+    this.threadLocalPoolMaxBufCount = props.getInt(TCPropertiesConsts.TC_BYTEBUFFER_THREADLOCAL_POOL_MAXCOUNT, 256);
+    this.leakDetectionEnabled = props.getBoolean(TCPropertiesConsts.TC_BYTEBUFFER_POOL_LEAK_DETECTION_ENABLED, false);
+  }
+
+  @Override
+  public boolean isPoolingEnabled() {
+    return poolingEnabled;
+  }
+
+  @Override
+  public int getCommonPoolMaxBufCount() {
+    return commonPoolMaxBufCount;
+  }
+
+  @Override
+  public int getThreadLocalPoolMaxBufCount() {
+    return threadLocalPoolMaxBufCount;
+  }
+
+  @Override
+  public boolean isLeakDetectionEnabled() {
+    return leakDetectionEnabled;
+  }
+}
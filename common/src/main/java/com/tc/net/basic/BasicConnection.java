@@ -27,6 +27,7 @@ import com.tc.net.core.event.TCConnectionErrorEvent;
 import com.tc.net.core.event.TCConnectionEvent;
 import com.tc.net.core.event.TCConnectionEventListener;
 import com.tc.net.protocol.TCNetworkMessage;
+import com.tc.net.protocol.transport.WireProtocolCompression;
 import com.tc.net.protocol.transport.WireProtocolHeader;
 import com.tc.net.protocol.transport.WireProtocolMessage;
 import com.tc.net.protocol.transport.WireProtocolMessageImpl;
@@ -41,6 +42,8 @@ import java.util.function.Consumer;
 import java.util.function.Function;
 import com.tc.net.protocol.TCProtocolAdaptor;
 import com.tc.net.protocol.TCProtocolException;
+import com.tc.properties.TCPropertiesConsts;
+import com.tc.properties.TCPropertiesImpl;
 import com.tc.text.PrettyPrintable;
 import java.io.EOFException;
 import java.net.InetSocketAddress;
@@ -73,6 +76,11 @@ public class BasicConnection implements TCConnection {
   private boolean connected = true;
   private final List<TCConnectionEventListener> listeners = new CopyOnWriteArrayList<>();
   private ExecutorService readerExec;
+  private final WireProtocolCompression compression = new WireProtocolCompression(
+      TCPropertiesImpl.getProperties().getBoolean(TCPropertiesConsts.TC_MESSAGE_COMPRESSION_ENABLED, false),
+      TCPropertiesImpl.getProperties().getInt(TCPropertiesConsts.TC_MESSAGE_COMPRESSION_THRESHOLD, 1024),
+      TCPropertiesImpl.getProperties().getInt(TCPropertiesConsts.TC_MESSAGE_COMPRESSION_MAX_UNCOMPRESSED_BYTES,
+                                              WireProtocolCompression.DEFAULT_MAX_UNCOMPRESSED_LENGTH));
   
 
   public BasicConnection(Socket src, Consumer<WireProtocolMessage> write, Function<TCConnection, Socket> close) {
@@ -91,10 +99,13 @@ public class BasicConnection implements TCConnection {
         try {
           if (this.src != null) {
             boolean interrupted = Thread.interrupted();
-            int totalLen = message.getTotalLength();
+            TCByteBuffer[] data = compression.compress(message);
+            int totalLen = 0;
+            for (TCByteBuffer b : data) {
+              totalLen += b.remaining();
+            }
             int moved = 0;
             int sent = 0;
-            TCByteBuffer[] data = message.getEntireMessageData();
             while (moved < totalLen) {
               for (TCByteBuffer b : data) {
                 moved += buffer.forwardToWriteBuffer(b.getNioBuffer());
@@ -372,10 +383,16 @@ public class BasicConnection implements TCConnection {
     hdr.setDestinationAddress(getRemoteAddress().getAddressBytes());
     hdr.setDestinationPort(getRemoteAddress().getPort());
     hdr.setMessageCount(messageCount);
+    compression.prepare(hdr);
     hdr.computeChecksum();
     return message;
   } 
 
+  @Override
+  public WireProtocolCompression getCompression() {
+    return compression;
+  }
+
   @Override
   public Map<String, ?> getState() {
     Map<String, Object> state = new LinkedHashMap<>();
@@ -388,6 +405,7 @@ public class BasicConnection implements TCConnection {
     state.put("connected", isConnected());
     state.put("closePending", isClosePending());
     state.put("transportConnected", isTransportEstablished());
+    state.put("compression", compression.getStateMap());
     if (buffer instanceof PrettyPrintable) {
       state.put("buffer", ((PrettyPrintable)this.buffer).getStateMap());
     } else {
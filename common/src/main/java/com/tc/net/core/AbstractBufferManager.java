@@ -63,7 +63,7 @@ public abstract class AbstractBufferManager implements BufferManager {
 
   protected abstract ByteBuffer getSendBuffer();
 
-  private static int forwardBuffer(ByteBuffer source, ByteBuffer dest) {
+  static int forwardBuffer(ByteBuffer source, ByteBuffer dest) {
     int size = Math.min(dest.remaining(), source.remaining());
     if (size > 0) {
       ByteBuffer tmpBuf = source.duplicate();
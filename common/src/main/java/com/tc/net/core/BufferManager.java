@@ -69,4 +69,33 @@ public interface BufferManager {
   int forwardFromReadBuffer(GatheringByteChannel gbc) throws IOException;
 
   int forwardToWriteBuffer(ScatteringByteChannel sbc) throws IOException;
+
+  /**
+   * @return true if this manager implements sendFromBuffers() and recvToBuffers()
+   */
+  default boolean supportsGatheringIO() {
+    return false;
+  }
+
+  /**
+   * Gathering counterpart of forwardToWriteBuffer() followed by sendFromBuffer(): writes the supplied buffers to the
+   * channel in a single write. Anything still held in the manager's own send buffer goes out first.
+   * It is called from the connection's write thread.
+   * @return the number of bytes consumed from the supplied buffers
+   * @throws IOException
+   */
+  default long sendFromBuffers(ByteBuffer[] srcs, int offset, int length) throws IOException {
+    throw new UnsupportedOperationException();
+  }
+
+  /**
+   * Scattering counterpart of recvToBuffer() followed by forwardFromReadBuffer(): reads from the channel straight into
+   * the supplied buffers in a single read. Anything still held in the manager's own receive buffer is handed out first.
+   * It is called from the connection's read thread.
+   * @return the number of bytes placed into the supplied buffers
+   * @throws IOException
+   */
+  default long recvToBuffers(ByteBuffer[] dsts, int offset, int length) throws IOException {
+    throw new UnsupportedOperationException();
+  }
 }
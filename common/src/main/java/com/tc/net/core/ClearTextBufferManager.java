@@ -61,6 +61,45 @@ public class ClearTextBufferManager extends AbstractBufferManager {
     return read;
   }
 
+  @Override
+  public boolean supportsGatheringIO() {
+    return true;
+  }
+
+  @Override
+  public long sendFromBuffers(ByteBuffer[] srcs, int offset, int length) throws IOException {
+    if (sendBuffer.position() == 0) {
+      return this.channel.write(srcs, offset, length);
+    }
+    // drain whatever is left over from the buffered path ahead of the new data
+    ByteBuffer[] all = new ByteBuffer[length + 1];
+    sendBuffer.flip();
+    int staged = sendBuffer.remaining();
+    all[0] = sendBuffer;
+    System.arraycopy(srcs, offset, all, 1, length);
+    long written = this.channel.write(all);
+    sendBuffer.compact();
+    return Math.max(0, written - staged);
+  }
+
+  @Override
+  public long recvToBuffers(ByteBuffer[] dsts, int offset, int length) throws IOException {
+    long forwarded = 0;
+    if (recvBuffer.position() > 0) {
+      recvBuffer.flip();
+      for (int i = offset; i < offset + length && recvBuffer.hasRemaining(); i++) {
+        forwarded += forwardBuffer(recvBuffer, dsts[i]);
+      }
+      recvBuffer.compact();
+      if (forwarded > 0) {
+        return forwarded;
+      }
+    }
+    long read = this.channel.read(dsts, offset, length);
+    if (read == -1) { throw new EOFException(); }
+    return read;
+  }
+
   @Override
   public void close() {
     //
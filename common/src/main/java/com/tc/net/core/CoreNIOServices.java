@@ -27,6 +27,8 @@ import com.tc.net.core.event.TCConnectionEvent;
 import com.tc.net.core.event.TCConnectionEventListener;
 import com.tc.net.core.event.TCListenerEvent;
 import com.tc.net.core.event.TCListenerEventListener;
+import com.tc.properties.TCPropertiesConsts;
+import com.tc.properties.TCPropertiesImpl;
 import com.tc.util.Assert;
 import com.tc.util.Util;
 import com.tc.util.concurrent.SetOnceFlag;
@@ -46,16 +48,20 @@ import java.nio.channels.Selector;
 import java.nio.channels.ServerSocketChannel;
 import java.nio.channels.SocketChannel;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
 
 /**
  * The communication thread. Creates {@link Selector selector}, registers {@link SocketChannel} to the selector and does
@@ -66,6 +72,10 @@ import java.util.concurrent.atomic.AtomicInteger;
 
 class CoreNIOServices implements TCListenerEventListener, TCConnectionEventListener {
   private static final Logger logger = LoggerFactory.getLogger(CoreNIOServices.class);
+  private static final long                    READ_BUDGET_BYTES = TCPropertiesImpl.getProperties()
+                                                                     .getLong(TCPropertiesConsts.NET_CORE_READ_BUDGET_BYTES, 1024 * 1024);
+  private static final int                     READ_BUDGET_READS = TCPropertiesImpl.getProperties()
+                                                                     .getInt(TCPropertiesConsts.NET_CORE_READ_BUDGET_READS, 16);
   private final TCWorkerCommManager            workerCommMgr;
   private final String                         commThreadName;
   private final SocketParams                   socketParams;
@@ -76,6 +86,12 @@ class CoreNIOServices implements TCListenerEventListener, TCConnectionEventListe
   // maintains weight of all L1 Connections which is handled by this WorkerComm
   private final AtomicInteger                                  clientWeights = new AtomicInteger();
   private final AtomicBoolean                              isSelectedForWeighting = new AtomicBoolean();
+  // connections handled by this WorkerComm and their traffic as of the last rebalancer sample
+  private final Set<TCConnectionImpl>          connections   = ConcurrentHashMap.newKeySet();
+  private Map<TCConnectionImpl, Long>          connectionRates = Collections.emptyMap();
+  private volatile long                        bytesPerSecond = 0;
+  private final AtomicInteger                  migratedIn    = new AtomicInteger();
+  private final AtomicInteger                  migratedOut   = new AtomicInteger();
   private final List<TCListener>               listeners     = new ArrayList<>();
   private String                               listenerString;
 
@@ -264,13 +280,105 @@ class CoreNIOServices implements TCListenerEventListener, TCConnectionEventListe
   private void addConnection(TCConnectionImpl connection) {
     this.clientWeights.incrementAndGet();
     deselectForWeighting();
+    this.connections.add(connection);
     connection.addListener(this);
   }
 
+  private void removeConnection(TCConnectionImpl connection) {
+    if (this.connections.remove(connection)) {
+      this.clientWeights.decrementAndGet();
+    }
+    connection.removeListener(this);
+  }
+
   @Override
   public void closeEvent(TCConnectionEvent event) {
-      this.clientWeights.decrementAndGet();
-      event.getSource().removeListener(this);
+    removeConnection((TCConnectionImpl) event.getSource());
+  }
+
+  /**
+   * Samples the traffic of every connection handled by this WorkerComm.  Only called by the rebalancer.
+   *
+   * @param elapsedNanos : time since the previous sample
+   * @return bytes per second read and written by all the connections
+   */
+  long sampleLoad(long elapsedNanos) {
+    Map<TCConnectionImpl, Long> rates = new HashMap<>();
+    long total = 0;
+    for (TCConnectionImpl connection : this.connections) {
+      long rate = (long) (connection.sampleTraffic() * 1_000_000_000d / Math.max(1L, elapsedNanos));
+      rates.put(connection, rate);
+      total += rate;
+    }
+    this.connectionRates = rates;
+    this.bytesPerSecond = total;
+    return total;
+  }
+
+  /**
+   * Picks the busiest connection whose rate, as of the last sample, does not exceed the limit.  The last connection of
+   * a WorkerComm is never picked since moving it only moves the hot spot.
+   *
+   * @return the connection to migrate or null
+   */
+  TCConnectionImpl pickMigrationCandidate(long maxRate) {
+    return pickMigrationCandidate(this.connectionRates, maxRate, TCConnectionImpl::canMigrate);
+  }
+
+  static <C> C pickMigrationCandidate(Map<C, Long> rates, long maxRate, Predicate<C> canMigrate) {
+    if (rates.size() < 2) {
+      return null;
+    }
+    C candidate = null;
+    long candidateRate = 0;
+    for (Map.Entry<C, Long> e : rates.entrySet()) {
+      long rate = e.getValue();
+      if (rate > candidateRate && rate <= maxRate && canMigrate.test(e.getKey())) {
+        candidate = e.getKey();
+        candidateRate = rate;
+      }
+    }
+    return candidate;
+  }
+
+  /**
+   * @param maxReads : reads allowed per pass, 0 or less for no limit
+   * @param maxBytes : bytes allowed per pass, 0 or less for no limit
+   * @return whether a connection that was read {@code reads} times for {@code bytes} may be read again
+   */
+  static boolean withinReadBudget(int reads, long bytes, int maxReads, long maxBytes) {
+    return (maxReads <= 0 || reads < maxReads) && (maxBytes <= 0 || bytes < maxBytes);
+  }
+
+  /**
+   * Moves a connection to another WorkerComm.  The read side is handed over from this WorkerComm's reader thread so
+   * no read is in progress, interest requests still queued here for the connection are dropped once it is owned by
+   * the target.
+   */
+  void migrateConnection(TCConnectionImpl connection, CoreNIOServices target) {
+    readerComm.addSelectorTask(() -> {
+      SocketChannel channel = connection.getChannel();
+      if (connection.getCommWorker() != this || !this.connections.contains(connection) || !connection.canMigrate()) {
+        return;
+      }
+      SelectionKey key = channel.keyFor(readerComm.selector);
+      if (key == null || !key.isValid() || (key.interestOps() & SelectionKey.OP_READ) == 0) {
+        return;
+      }
+      readerComm.unregister(channel);
+      connection.setCommWorker(target);
+      removeConnection(connection);
+      target.addConnection(connection);
+      if (connection.isClosed()) {
+//  closed while moving, the close event went to this WorkerComm
+        target.removeConnection(connection);
+      }
+      writerComm.addSelectorTask(() -> writerComm.unregister(channel));
+      target.requestReadWriteInterest(connection, channel);
+      this.migratedOut.incrementAndGet();
+      target.migratedIn.incrementAndGet();
+      logger.debug("migrated {} from {} to {}", connection, this, target);
+    });
   }
 
   @Override
@@ -301,6 +409,10 @@ class CoreNIOServices implements TCListenerEventListener, TCConnectionEventListe
     Map<String, Object> state = new LinkedHashMap<>();
     state.put("name", this.commThreadName);
     state.put("weights", this.clientWeights);
+    state.put("connections", this.connections.size());
+    state.put("bytesPerSecond", this.bytesPerSecond);
+    state.put("migratedIn", this.migratedIn.get());
+    state.put("migratedOut", this.migratedOut.get());
     state.put("writer", this.writerComm.getCommState());
     state.put("reader", this.readerComm.getCommState());
     return state;
@@ -340,6 +452,7 @@ class CoreNIOServices implements TCListenerEventListener, TCConnectionEventListe
     private final Queue<Runnable> selectorTasks;
     private final String                        name;
     private long                    bytesMoved    = 0;
+    private long                    readYields    = 0;
     private final COMM_THREAD_MODE              mode;
 
     public CommThread(COMM_THREAD_MODE mode) {
@@ -357,6 +470,9 @@ class CoreNIOServices implements TCListenerEventListener, TCConnectionEventListe
       state.put("name", name);
       state.put("mode", mode);
       state.put("bytesMoved", bytesMoved);
+      if (isReader()) {
+        state.put("readYields", readYields);
+      }
       state.put("selectorBacklog", selectorTasks.size());
       return state;
     }
@@ -661,12 +777,7 @@ class CoreNIOServices implements TCListenerEventListener, TCConnectionEventListe
             }
 
             if (isReader() && key.isValid() && key.isReadable()) {
-              int read;
-              TCChannelReader reader = (TCChannelReader) key.attachment();
-              do {
-                read = reader.doRead();
-                bytesMoved += read;
-              } while ((read != 0) && key.isReadable());
+              readWithinBudget(key);
             }
 
             if (key.isValid() && !isReader() && key.isWritable()) {
@@ -701,6 +812,27 @@ class CoreNIOServices implements TCListenerEventListener, TCConnectionEventListe
       } // while (true)
     }
 
+    /**
+     * Reads from a ready connection until it has nothing left or its share of this select pass is spent.
+     */
+    void readWithinBudget(SelectionKey key) throws IOException {
+      int read;
+      int reads = 0;
+      long budget = 0;
+      TCChannelReader reader = (TCChannelReader) key.attachment();
+      do {
+        read = reader.doRead();
+        bytesMoved += read;
+        budget += read;
+        reads += 1;
+      } while ((read != 0) && key.isReadable() && withinReadBudget(reads, budget, READ_BUDGET_READS, READ_BUDGET_BYTES));
+      if (read != 0) {
+//  budget spent with data still coming, the key stays ready so the next select comes back to it
+//  after every other ready connection had its turn
+        readYields += 1;
+      }
+    }
+
     @SuppressWarnings("resource")
     private void doAccept(SelectionKey key) {
       SocketChannel sc = null;
@@ -794,6 +926,13 @@ class CoreNIOServices implements TCListenerEventListener, TCConnectionEventListe
       try {
         final int existingOps;
 
+        if (request.attachment instanceof TCConnectionImpl
+            && ((TCConnectionImpl) request.attachment).getCommWorker() != CoreNIOServices.this) {
+//  the connection moved to another WorkerComm after this request was queued
+          logger.debug("Skipping modifyInterest for migrated connection {}", request.attachment);
+          return;
+        }
+
         SelectionKey key = request.channel.keyFor(localSelector);
         if (key != null) {
           if (!key.isValid()) {
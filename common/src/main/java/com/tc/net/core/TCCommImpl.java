@@ -117,6 +117,7 @@ class TCCommImpl implements TCComm {
     map.put("threads", commThread.getState());
     if (workerCommMgr != null) {
       map.put("workers", workerCommMgr.getState());
+      map.put("migrations", workerCommMgr.getMigrationCount());
     }
     return map;
   }
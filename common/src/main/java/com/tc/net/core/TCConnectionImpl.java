@@ -27,6 +27,7 @@ import com.tc.net.TCSocketAddress;
 import com.tc.net.core.event.TCConnectionEventCaller;
 import com.tc.net.core.event.TCConnectionEventListener;
 import com.tc.net.protocol.TCNetworkMessage;
+import com.tc.net.protocol.transport.WireProtocolCompression;
 import com.tc.net.protocol.transport.WireProtocolGroupMessageImpl;
 import com.tc.net.protocol.transport.WireProtocolHeader;
 import com.tc.net.protocol.transport.WireProtocolMessage;
@@ -51,6 +52,7 @@ import java.nio.ByteBuffer;
 import java.nio.channels.SocketChannel;
 import java.util.ArrayList;
 import java.util.Date;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
@@ -90,6 +92,8 @@ final class TCConnectionImpl implements TCConnection, TCChannelReader, TCChannel
   private final LongAdder                      messagesWritten           = new LongAdder();
   private final AtomicLong                      lastDataReceiveTime         = new AtomicLong(System.currentTimeMillis());
   private final LongAdder                      messagesRead           = new LongAdder();
+  private final LongAdder                       readSyscalls                = new LongAdder();
+  private final LongAdder                       writeSyscalls               = new LongAdder();
   private final AtomicLong                      connectTime                 = new AtomicLong(NO_CONNECT_TIME);
   private final List<TCConnectionEventListener> eventListeners              = new CopyOnWriteArrayList<TCConnectionEventListener>();
   private final TCProtocolAdaptor               protocolAdaptor;
@@ -101,10 +105,14 @@ final class TCConnectionImpl implements TCConnection, TCChannelReader, TCChannel
   private final SocketParams                    socketParams;
   private final AtomicLong                      totalRead                   = new AtomicLong(0);
   private final AtomicLong                      totalWrite                  = new AtomicLong(0);
+  private long                                  lastSampledTraffic          = 0;
   private final ArrayList<WriteContext>         writeContexts               = new ArrayList<WriteContext>();
   private final Object                          pipeSocketWriteInterestLock = new Object();
   private boolean                               hasPipeSocketWriteInterest  = false;
   private int                                   writeBufferSize             = 0;
+  private final WireProtocolCompression         compression                 = new WireProtocolCompression(COMPRESSION_ENABLED,
+                                                                                                          COMPRESSION_THRESHOLD,
+                                                                                                          COMPRESSION_MAX_UNCOMPRESSED);
 
   private static final boolean                  MSG_GROUPING_ENABLED        = TCPropertiesImpl
                                                                                 .getProperties()
@@ -117,6 +125,26 @@ final class TCConnectionImpl implements TCConnection, TCChannelReader, TCChannel
                                                                                 .getProperties()
                                                                                 .getBoolean(TCPropertiesConsts.TC_MESSAGE_PACKUP_ENABLED,
                                                                                             true);
+  private static final boolean                  GATHERING_IO                = TCPropertiesImpl
+                                                                                .getProperties()
+                                                                                .getBoolean(TCPropertiesConsts.TC_MESSAGE_GATHERING_IO_ENABLED,
+                                                                                            false);
+  private static final boolean                  COMPRESSION_ENABLED         = TCPropertiesImpl
+                                                                                .getProperties()
+                                                                                .getBoolean(TCPropertiesConsts.TC_MESSAGE_COMPRESSION_ENABLED,
+                                                                                            false);
+  private static final int                      COMPRESSION_THRESHOLD       = TCPropertiesImpl
+                                                                                .getProperties()
+                                                                                .getInt(TCPropertiesConsts.TC_MESSAGE_COMPRESSION_THRESHOLD,
+                                                                                        1024);
+  private static final int                      COMPRESSION_MAX_UNCOMPRESSED = TCPropertiesImpl
+                                                                                .getProperties()
+                                                                                .getInt(TCPropertiesConsts.TC_MESSAGE_COMPRESSION_MAX_UNCOMPRESSED_BYTES,
+                                                                                        WireProtocolCompression.DEFAULT_MAX_UNCOMPRESSED_LENGTH);
+  // stay well below IOV_MAX, the JDK splits larger arrays into several writes anyway
+  private static final int                      GATHER_MAX_BUFFERS          = 512;
+  // smaller reads are better served by the buffer manager's receive buffer, it picks up several messages at once
+  private static final int                      SCATTER_READ_MIN_BYTES      = 16 * 1024;
   private final Object                          readerLock                  = new Object();
   private final Object                          writerLock                  = new Object();
 
@@ -170,11 +198,17 @@ final class TCConnectionImpl implements TCConnection, TCChannelReader, TCChannel
     state.put("idleTime", this.getIdleTime());
     state.put("messageWritten", this.messagesWritten.longValue());
     state.put("messageRead", this.messagesRead.longValue());
+    state.put("gatheringIO", GATHERING_IO);
+    state.put("readSyscalls", this.readSyscalls.longValue());
+    state.put("writeSyscalls", this.writeSyscalls.longValue());
+    long written = this.messagesWritten.longValue();
+    state.put("writeSyscallsPerMessage", written == 0 ? 0d : this.writeSyscalls.doubleValue() / written);
     state.put("worker", commWorker.getName());
     state.put("closed", isClosed());
     state.put("connected", isConnected());
     state.put("closePending", isClosePending());
     state.put("transportConnected", isTransportEstablished());
+    state.put("compression", compression.getStateMap());
     if (bufferManager instanceof PrettyPrintable) {
       state.put("buffer", ((PrettyPrintable)this.bufferManager).getStateMap());
     } else {
@@ -187,6 +221,32 @@ final class TCConnectionImpl implements TCConnection, TCChannelReader, TCChannel
     this.commWorker = worker;
   }
 
+  CoreNIOServices getCommWorker() {
+    return this.commWorker;
+  }
+
+  SocketChannel getChannel() {
+    return this.channel;
+  }
+
+  /**
+   * Connections relaying through a pipe socket manage their own interest so only plain, established connections are
+   * moved between worker comms.
+   */
+  boolean canMigrate() {
+    return this.channel != null && this.pipeSocket == null && isTransportEstablished() && !isClosed();
+  }
+
+  /**
+   * @return bytes read and written since the previous sample, only called by the worker comm rebalancer
+   */
+  long sampleTraffic() {
+    long total = this.totalRead.get() + this.totalWrite.get();
+    long delta = total - this.lastSampledTraffic;
+    this.lastSampledTraffic = total;
+    return delta;
+  }
+
   private void closeImpl(Runnable callback) {
     Assert.assertTrue(this.closed.isSet());
     this.transportEstablished.set(false);
@@ -311,7 +371,14 @@ final class TCConnectionImpl implements TCConnection, TCChannelReader, TCChannel
   }
 
   private int doReadInternal() throws IOException {
+    if (useGatheringIO()) {
+      final TCByteBuffer[] readBuffers = getReadBuffers();
+      if (remaining(readBuffers) >= SCATTER_READ_MIN_BYTES) {
+        return doScatteringRead(readBuffers);
+      }
+    }
     try {
+      this.readSyscalls.increment();
       bufferManager.recvToBuffer();
     } catch (IOException ioe) {
       closeReadOnException(ioe);
@@ -335,6 +402,44 @@ final class TCConnectionImpl implements TCConnection, TCChannelReader, TCChannel
     return totalBytesReadFromBuffer;
   }
 
+  private int doScatteringRead(TCByteBuffer[] readBuffers) throws IOException {
+    final ByteBuffer[] dsts = new ByteBuffer[readBuffers.length];
+    for (int i = 0; i < readBuffers.length; i++) {
+      dsts[i] = extractNioBuffer(readBuffers[i]);
+    }
+    final int read;
+    try {
+      this.readSyscalls.increment();
+      read = (int) bufferManager.recvToBuffers(dsts, 0, dsts.length);
+    } catch (IOException ioe) {
+      closeReadOnException(ioe);
+      return 0;
+    }
+
+    if (logger.isDebugEnabled()) {
+      logger.debug("Scattering read of " + read + " bytes on connection " + this.channel.toString());
+    }
+
+    if (read > 0) {
+      addNetworkData(readBuffers, read);
+    }
+    this.totalRead.addAndGet(read);
+    this.messagesRead.increment();
+    return read;
+  }
+
+  private static long remaining(TCByteBuffer[] buffers) {
+    long remaining = 0;
+    for (TCByteBuffer buffer : buffers) {
+      remaining += buffer.remaining();
+    }
+    return remaining;
+  }
+
+  private boolean useGatheringIO() {
+    return GATHERING_IO && pipeSocket == null && bufferManager.supportsGatheringIO();
+  }
+
   public int doReadFromBuffer() throws IOException {
     if (pipeSocket != null) {
       return bufferManager.forwardFromReadBuffer(pipeSocket.getInputPipeSinkChannel());
@@ -351,6 +456,9 @@ final class TCConnectionImpl implements TCConnection, TCChannelReader, TCChannel
   }
 
   private int doWriteInternal() throws IOException {
+    if (useGatheringIO()) {
+      return doGatheringWrite();
+    }
     int written;
     try {
       written = doWriteToBuffer();
@@ -363,6 +471,7 @@ final class TCConnectionImpl implements TCConnection, TCChannelReader, TCChannel
     while (channelWritten != written) {
       int sent;
       try {
+        this.writeSyscalls.increment();
         sent = bufferManager.sendFromBuffer();
       } catch (IOException ioe) {
         closeWriteOnException(ioe);
@@ -378,6 +487,67 @@ final class TCConnectionImpl implements TCConnection, TCChannelReader, TCChannel
     return channelWritten;
   }
 
+  /**
+   * Writes the pending data of as many queued write contexts as possible with a single gathering write, instead of
+   * copying it through the buffer manager's send buffer 4KiB at a time.
+   */
+  private int doGatheringWrite() throws IOException {
+    if (this.writeContexts.isEmpty()) {
+      buildWriteContextsFromMessages();
+    }
+
+    long written = 0;
+    if (!this.writeContexts.isEmpty()) {
+      final ByteBuffer[] srcs = collectPendingBuffers();
+      try {
+        this.writeSyscalls.increment();
+        written = bufferManager.sendFromBuffers(srcs, 0, srcs.length);
+      } catch (IOException ioe) {
+        closeWriteOnException(ioe);
+        return 0;
+      }
+
+      if (logger.isDebugEnabled()) {
+        logger.debug("Gathering write of " + written + " bytes from " + srcs.length + " buffers on connection "
+                     + this.channel.toString());
+      }
+
+      for (Iterator<WriteContext> i = this.writeContexts.iterator(); i.hasNext();) {
+        WriteContext context = i.next();
+        context.skipWritten();
+        if (!context.done()) {
+          break;
+        }
+        context.writeComplete();
+        i.remove();
+      }
+    }
+
+    synchronized (this.writeMessages) {
+      if (!this.closed.isSet() && this.writeMessages.isEmpty() && this.writeContexts.isEmpty()) {
+        this.commWorker.removeWriteInterest(this, this.channel);
+      }
+    }
+    this.totalWrite.addAndGet(written);
+    return (int) written;
+  }
+
+  private ByteBuffer[] collectPendingBuffers() {
+    final List<ByteBuffer> pending = new ArrayList<ByteBuffer>();
+    for (WriteContext context : this.writeContexts) {
+      final TCByteBuffer[] buffers = context.entireMessageData;
+      for (int i = context.index, n = buffers.length; i < n; i++) {
+        if (buffers[i].hasRemaining()) {
+          pending.add(buffers[i].getNioBuffer());
+          if (pending.size() == GATHER_MAX_BUFFERS) {
+            return pending.toArray(new ByteBuffer[pending.size()]);
+          }
+        }
+      }
+    }
+    return pending.toArray(new ByteBuffer[pending.size()]);
+  }
+
   private int doWriteToBuffer() throws IOException {
     if (pipeSocket != null) {
       synchronized (pipeSocketWriteInterestLock) {
@@ -413,7 +583,7 @@ final class TCConnectionImpl implements TCConnection, TCChannelReader, TCChannel
       if (element instanceof WireProtocolMessage) {
         // we don't want to group already constructed Transport Handshake WireProtocolMessages
         final WireProtocolMessage ms = finalizeWireProtocolMessage((WireProtocolMessage) element, 1);
-        this.writeContexts.add(new WriteContext(ms));
+        this.writeContexts.add(newWriteContext(ms));
       } else if (WireProtocolHeader.PROTOCOL_UNKNOWN == WireProtocolHeader.getProtocolForMessageClass(element)) {
         // GenericNetwork messages are used for testing
         this.writeContexts.add(new WriteContext(element));
@@ -421,7 +591,7 @@ final class TCConnectionImpl implements TCConnection, TCChannelReader, TCChannel
         int realMessageSize = getRealMessgeSize(element.getTotalLength());
         if (!canBatch(realMessageSize, batchSize, batchMsgCount)) {
           // We can't add this to the current batch so seal the current batch as a write context and create a new one.
-          this.writeContexts.add(new WriteContext(buildWireProtocolMessageGroup(currentBatch)));
+          this.writeContexts.add(newWriteContext(buildWireProtocolMessageGroup(currentBatch)));
           batchSize = 0;
           batchMsgCount = 0;
           currentBatch = new ArrayList<TCNetworkMessage>();
@@ -430,16 +600,21 @@ final class TCConnectionImpl implements TCConnection, TCChannelReader, TCChannel
         batchMsgCount++;
         currentBatch.add(element);
       } else {
-        this.writeContexts.add(new WriteContext(buildWireProtocolMessage(element)));
+        this.writeContexts.add(newWriteContext(buildWireProtocolMessage(element)));
       }
     }
 
     if (MSG_GROUPING_ENABLED && batchMsgCount > 0) {
       final WireProtocolMessage ms = buildWireProtocolMessageGroup(currentBatch);
-      this.writeContexts.add(new WriteContext(ms));
+      this.writeContexts.add(newWriteContext(ms));
     }
   }
 
+  private WriteContext newWriteContext(WireProtocolMessage message) {
+    // compressing after grouping lets a batch of small messages share one block
+    return new WriteContext(message, compression.compress(message));
+  }
+
   private boolean canBatch(int realMessageSize, int currentBatchSize, int currentBatchMsgCount) {
     // We can add this message to the batch if it fits, we don't already have too many messages in the batch
     //  OR if the message batch is currently empty (a degenerate case where a single message is too big to batch but
@@ -911,10 +1086,16 @@ final class TCConnectionImpl implements TCConnection, TCChannelReader, TCChannel
     hdr.setDestinationAddress(getRemoteAddress().getAddressBytes());
     hdr.setDestinationPort(getRemoteAddress().getPort());
     hdr.setMessageCount(messageCount);
+    compression.prepare(hdr);
     hdr.computeChecksum();
     return message;
   }
 
+  @Override
+  public WireProtocolCompression getCompression() {
+    return compression;
+  }
+
   public void closeReadOnException(IOException ioe) throws IOException {
     if (pipeSocket != null) {
       TCConnectionImpl.this.commWorker.removeReadInterest(TCConnectionImpl.this, TCConnectionImpl.this.channel);
@@ -968,13 +1149,17 @@ final class TCConnectionImpl implements TCConnection, TCChannelReader, TCChannel
     private final TCByteBuffer[]   entireMessageData;
 
     WriteContext(TCNetworkMessage message) {
-      // either WireProtocolMessage or WireProtocolMessageGroup
+      this(message, message.getEntireMessageData());
+    }
+
+    WriteContext(TCNetworkMessage message, TCByteBuffer[] wireData) {
+      // either WireProtocolMessage or WireProtocolMessageGroup, wireData is what goes on the wire for it
       this.message = message;
 
       if (MESSSAGE_PACKUP && TCByteBufferFactory.isPoolingEnabled()) {
-        this.entireMessageData = getPackedUpMessage(message.getEntireMessageData());
+        this.entireMessageData = getPackedUpMessage(wireData);
       } else {
-        this.entireMessageData = getClonedMessage(message.getEntireMessageData());
+        this.entireMessageData = getClonedMessage(wireData);
       }
 
     }
@@ -988,7 +1173,7 @@ final class TCConnectionImpl implements TCConnection, TCChannelReader, TCChannel
     }
 
     void incrementIndexAndCleanOld() {
-      if (MESSSAGE_PACKUP) {
+      if (MESSSAGE_PACKUP && TCByteBufferFactory.isPoolingEnabled()) {
         // we created these new messages. lets recycle it.
         entireMessageData[index].recycle();
       }
@@ -996,6 +1181,15 @@ final class TCConnectionImpl implements TCConnection, TCChannelReader, TCChannel
       this.index++;
     }
 
+    /**
+     * Moves past (and cleans up) the buffers that have been completely written.
+     */
+    void skipWritten() {
+      while (index < entireMessageData.length && !entireMessageData[index].hasRemaining()) {
+        incrementIndexAndCleanOld();
+      }
+    }
+
     void writeComplete() {
       this.message.wasSent();
     }
@@ -1021,7 +1215,7 @@ final class TCConnectionImpl implements TCConnection, TCChannelReader, TCChannel
       }
 
       // packedup message is direct byte buffers based. so that system socket write can avoid copy over of data
-      TCByteBuffer[] packedUpMessageByteBuffers = TCByteBufferFactory.getFixedSizedInstancesForLength(false, len);
+      TCByteBuffer[] packedUpMessageByteBuffers = TCByteBufferFactory.getFixedSizedInstancesForLength(true, len);
       srcOffset = sourceMessageByteBuffers[srcIndex].arrayOffset();
       while (srcIndex < sourceMessageByteBuffers.length) {
         dstRem = packedUpMessageByteBuffers[dstIndex].remaining();
@@ -23,11 +23,17 @@ import org.slf4j.LoggerFactory;
 
 import com.tc.logging.LossyTCLogger;
 import com.tc.logging.LossyTCLogger.LossyTCLoggerType;
+import com.tc.properties.TCPropertiesConsts;
+import com.tc.properties.TCPropertiesImpl;
 import com.tc.util.Assert;
+import com.tc.util.concurrent.HashedWheelTimer;
 import com.tc.util.concurrent.SetOnceFlag;
 
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.Collectors;
 
 
@@ -41,11 +47,20 @@ public class TCWorkerCommManager {
   private static final LossyTCLogger lossyLogger = new LossyTCLogger(logger, 10, LossyTCLoggerType.COUNT_BASED, false);
 
   private static final String     WORKER_NAME_PREFIX = "TCWorkerComm # ";
+  // a WorkerComm is only relieved when it moves this much more traffic than the quietest one
+  static final double             REBALANCE_RATIO    = 1.5d;
+  // and at least this many bytes per second, below that the selectors are nowhere near busy
+  static final long               REBALANCE_MIN_RATE = 1024 * 1024;
 
   private final int               totalWorkerComm;
   private final CoreNIOServices[] workerCommThreads;
   private final SetOnceFlag       started            = new SetOnceFlag();
   private final SetOnceFlag       stopped            = new SetOnceFlag();
+  private final long              rebalanceInterval  = TCPropertiesImpl.getProperties()
+                                                         .getLong(TCPropertiesConsts.NET_CORE_REBALANCE_INTERVAL, 0);
+  private final AtomicLong        migrations         = new AtomicLong();
+  private ScheduledFuture<?>      rebalancer;
+  private long                    lastSample;
 
   TCWorkerCommManager(String name, int workerCommCount, SocketParams socketParams) {
     if (workerCommCount <= 0) { throw new IllegalArgumentException("invalid worker count: " + workerCommCount); }
@@ -96,6 +111,11 @@ public class TCWorkerCommManager {
       for (CoreNIOServices workerCommThread : this.workerCommThreads) {
         workerCommThread.start();
       }
+      if (this.rebalanceInterval > 0 && this.workerCommThreads.length > 1) {
+        this.lastSample = System.nanoTime();
+        this.rebalancer = HashedWheelTimer.getSharedTimer().scheduleWithFixedDelay(this::rebalance, this.rebalanceInterval,
+                                                                                 this.rebalanceInterval, TimeUnit.MILLISECONDS);
+      }
     } else {
       throw new IllegalStateException("already started");
     }
@@ -105,12 +125,67 @@ public class TCWorkerCommManager {
     if (!this.started.isSet()) { return; }
 
     if (this.stopped.attemptSet()) {
+      if (this.rebalancer != null) {
+        this.rebalancer.cancel(false);
+      }
       for (int i = 0; i < this.totalWorkerComm; i++) {
         this.workerCommThreads[i].requestStop();
       }
     }
   }
 
+  /**
+   * Samples the traffic of every WorkerComm and moves one connection from the busiest to the quietest when they are
+   * too far apart.  The connection moved carries at most half the difference so the two never trade places.
+   */
+  void rebalance() {
+    long now = System.nanoTime();
+    long elapsed = now - this.lastSample;
+    this.lastSample = now;
+
+    CoreNIOServices hottest = null;
+    CoreNIOServices coolest = null;
+    long hottestLoad = Long.MIN_VALUE;
+    long coolestLoad = Long.MAX_VALUE;
+    for (CoreNIOServices workerComm : this.workerCommThreads) {
+      long load = workerComm.sampleLoad(elapsed);
+      if (load > hottestLoad) {
+        hottest = workerComm;
+        hottestLoad = load;
+      }
+      if (load < coolestLoad) {
+        coolest = workerComm;
+        coolestLoad = load;
+      }
+    }
+
+    long limit = migrationLimit(hottestLoad, coolestLoad);
+    if (hottest == coolest || limit < 0) {
+      return;
+    }
+    TCConnectionImpl candidate = hottest.pickMigrationCandidate(limit);
+    if (candidate != null) {
+      lossyLogger.info("Moving {} from {} ({} B/s) to {} ({} B/s)", candidate, hottest, hottestLoad, coolest, coolestLoad);
+      hottest.migrateConnection(candidate, coolest);
+      this.migrations.incrementAndGet();
+    }
+  }
+
+  /**
+   * @return the most traffic a connection moved from the hottest to the coolest WorkerComm may carry, or -1 if they
+   *         are to be left alone
+   */
+  static long migrationLimit(long hottestLoad, long coolestLoad) {
+    if (hottestLoad < REBALANCE_MIN_RATE || hottestLoad <= coolestLoad * REBALANCE_RATIO) {
+      return -1;
+    }
+    return (hottestLoad - coolestLoad) / 2;
+  }
+
+  long getMigrationCount() {
+    return this.migrations.get();
+  }
+
   protected CoreNIOServices getWorkerComm(int workerCommId) {
     return this.workerCommThreads[workerCommId];
   }
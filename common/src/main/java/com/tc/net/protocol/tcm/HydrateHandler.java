@@ -22,14 +22,25 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.tc.async.api.AbstractEventHandler;
+import com.tc.stats.LatencyHistogram;
+import com.tc.text.PrettyPrintable;
 
-public class HydrateHandler extends AbstractEventHandler<HydrateContext> {
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+public class HydrateHandler extends AbstractEventHandler<HydrateContext> implements PrettyPrintable {
   private static Logger logger = LoggerFactory.getLogger(HydrateHandler.class);
 
+  // hydrate (and for entity invokes, codec decode) times, by message type
+  private final ConcurrentMap<TCMessageType, LatencyHistogram> hydrateTimes = new ConcurrentHashMap<>();
+
   @Override
   public void handleEvent(HydrateContext hc) {
     TCMessage message = hc.getMessage();
 
+    long start = System.nanoTime();
     try {
       message.hydrate();
     } catch (Throwable t) {
@@ -41,8 +52,28 @@ public class HydrateHandler extends AbstractEventHandler<HydrateContext> {
       message.getChannel().close();
       return;
     }
+    recordHydrateTime(message.getMessageType(), System.nanoTime() - start);
       
     hc.getDestSink().addToSink(message);
   }
 
+  private void recordHydrateTime(TCMessageType type, long nanos) {
+    if (type != null) {
+      LatencyHistogram histogram = hydrateTimes.get(type);
+      if (histogram == null) {
+        histogram = hydrateTimes.computeIfAbsent(type, t->new LatencyHistogram());
+      }
+      histogram.record(nanos);
+    }
+  }
+
+  @Override
+  public Map<String, ?> getStateMap() {
+    Map<String, Object> map = new LinkedHashMap<>();
+    map.put("className", this.getClass().getName());
+    Map<String, Object> times = new LinkedHashMap<>();
+    hydrateTimes.forEach((type, histogram)->times.put(type.getTypeName(), histogram.getStateMap()));
+    map.put("hydrateTimes", times);
+    return map;
+  }
 }
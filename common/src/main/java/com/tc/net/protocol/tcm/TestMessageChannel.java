@@ -40,6 +40,8 @@ import java.net.UnknownHostException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class TestMessageChannel implements MessageChannel {
 
@@ -49,6 +51,7 @@ public class TestMessageChannel implements MessageChannel {
   public ChannelID                                channelID             = new ChannelID(1);
   private NodeID                                  source                = ClientID.NULL_ID;
   private NodeID                                  destination           = ServerID.NULL_ID;
+  private final Map<String, Object>               attachments           = new ConcurrentHashMap<String, Object>();
 
   @Override
   public void addListener(ChannelEventListener listener) {
@@ -153,17 +156,21 @@ public class TestMessageChannel implements MessageChannel {
 
   @Override
   public Object getAttachment(String key) {
-    throw new UnsupportedOperationException();
+    return attachments.get(key);
   }
 
   @Override
   public void addAttachment(String key, Object value, boolean replace) {
-    throw new UnsupportedOperationException();
+    if (replace) {
+      attachments.put(key, value);
+    } else {
+      attachments.putIfAbsent(key, value);
+    }
   }
 
   @Override
   public Object removeAttachment(String key) {
-    throw new UnsupportedOperationException();
+    return attachments.remove(key);
   }
 
   public String getRemoteSocketInfo() {
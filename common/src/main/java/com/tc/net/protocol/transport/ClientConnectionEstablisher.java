@@ -28,6 +28,7 @@ import com.tc.net.MaxConnectionsExceededException;
 import com.tc.net.ReconnectionRejectedException;
 import com.tc.net.TCSocketAddress;
 import com.tc.net.core.ConnectionInfo;
+import com.tc.net.core.TCConnection;
 import com.tc.net.protocol.NetworkStackID;
 import com.tc.properties.TCPropertiesConsts;
 import com.tc.properties.TCPropertiesImpl;
@@ -42,6 +43,9 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Iterator;
 import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.Supplier;
 
@@ -53,7 +57,9 @@ public class ClientConnectionEstablisher {
   private static final Logger LOGGER = LoggerFactory.getLogger(ClientConnectionEstablisher.class);
 
   private static final long                 CONNECT_RETRY_INTERVAL;
+  private static final long                 MAX_RETRY_INTERVAL;
   private static final long                 MIN_RETRY_INTERVAL    = 10;
+  private static final boolean              RACE_CONNECTS;
   public static final String                RECONNECT_THREAD_NAME = "ConnectionEstablisher";
 
   private final LinkedHashSet<ConnectionInfo>   connAddressProvider;
@@ -72,6 +78,8 @@ public class ClientConnectionEstablisher {
     }
 
     CONNECT_RETRY_INTERVAL = value;
+    MAX_RETRY_INTERVAL = TCPropertiesImpl.getProperties().getLong(TCPropertiesConsts.L1_SOCKET_RECONNECT_MAX_WAIT_INTERVAL, value);
+    RACE_CONNECTS = TCPropertiesImpl.getProperties().getBoolean(TCPropertiesConsts.L1_SOCKET_RECONNECT_PARALLEL, true);
   }
 
   public ClientConnectionEstablisher(ReconnectionRejectedHandler reconnectionRejectedHandler) {
@@ -190,95 +198,189 @@ public class ClientConnectionEstablisher {
       }
 
       this.asyncReconnecting.set(true);
-      boolean reconnectionRejected = false;
-      ConnectionInfo target = null;
+      ReconnectAttempt attempt = new ReconnectAttempt(cmt, connectionErrorLossyLogger);
+      long wait = CONNECT_RETRY_INTERVAL;
 
       for (int i = 0; tryToConnect(connected) && !stopCheck.get(); i++) {
-        Iterator<ConnectionInfo> addresses = new ArrayList<ConnectionInfo>(this.connAddressProvider).iterator();
-        while ((target != null || addresses.hasNext()) && tryToConnect(connected)) {
-
-          if (reconnectionRejected) {
-            if (reconnectionRejectedHandler.isRetryOnReconnectionRejected()) {
-              LOGGER.info("Reconnection rejected by L2, trying again to reconnect - " + cmt);
-            } else {
-              LOGGER.info("Reconnection rejected by L2, no more trying to reconnect - " + cmt);
-              return;
-            }
-          }
-
-          if (target == null) {
-            target = addresses.next();
-          }
-
-          // DEV-1945
-          if (i == 0) {
-            String previousConnectHost = "";
-            int previousConnectHostPort = -1;
-            if (cmt.getRemoteAddress() != null) {
-              previousConnectHost = cmt.getRemoteAddress().getAddress().getHostAddress();
-              previousConnectHostPort = cmt.getRemoteAddress().getPort();
-            }
-            String connectingToHost = "";
-            try {
-              connectingToHost = getHostByName(target);
-            } catch (UnknownHostException e) {
-              handleConnectException(e, true, connectionErrorLossyLogger);
-              // keep trying reconnects, for maxReconnectTries
-              target = null;
-              continue;
-            }
-            int connectingToHostPort = target.getPort();
-            if ((addresses.hasNext()) && (previousConnectHost.equals(connectingToHost))
-                && (previousConnectHostPort == connectingToHostPort)) {
-              target = null;
-              continue;
-            }
-          }
-          try {
-            if (i % 20 == 0 && i > 0) {
-              cmt.getLogger().info("Reconnect attempt " + i + " to " + target);
-            }
-            cmt.reopen(target);
-            connected = cmt.getConnectionID().isValid();        
-          } catch (TransportRedirect redirect) {
-            ConnectionInfo add = new ConnectionInfo(redirect.getHostname(), redirect.getPort());
-            target = null;
-            if (this.connAddressProvider.add(add)) {
-              target = add;
-            }
-          } catch (NoActiveException noactive) {
-            target = null;
-            handleConnectException(new IOException(noactive), false, connectionErrorLossyLogger);
-          } catch (MaxConnectionsExceededException e) {
-            target = null;
-            reset();
-            throw e;
-          } catch (ReconnectionRejectedException e) {
-            target = null;
-            reset();
-            reconnectionRejected = true;
-            handleConnectException(e, false, connectionErrorLossyLogger);
-          } catch (CommStackMismatchException e) {
-            target = null;
-            reset();
-            handleConnectException(e, false, connectionErrorLossyLogger);
-          } catch (TCTimeoutException e) {
-            target = null;
-            handleConnectException(e, true, connectionErrorLossyLogger);
-          } catch (IOException e) {
-            target = null;
-            handleConnectException(e, false, connectionErrorLossyLogger);
-          } catch (Exception e) {
-            target = null;
-            handleConnectException(e, true, connectionErrorLossyLogger);
-          }
+        if (i % 20 == 0 && i > 0) {
+          cmt.getLogger().info("Reconnect round " + i + " to " + this.connAddressProvider);
+        }
+        attempt.rounds += 1;
+        List<ConnectionInfo> candidates = reconnectCandidates(cmt, i == 0, connectionErrorLossyLogger);
+        if (RACE_CONNECTS && candidates.size() > 1) {
+          connected = connectFirstActive(attempt, candidates);
+        } else {
+          connected = connectInTurn(attempt, candidates);
+        }
+        if (attempt.gaveUp) {
+          return;
         }
+        if (!connected && tryToConnect(connected) && !stopCheck.get()) {
+          wait = nextRetryInterval(wait);
+          Thread.sleep(wait);
+        }
+      }
+
+      if (connected && attempt.connectedTo != null) {
+        long elapsed = System.nanoTime() - attempt.start;
+        cmt.getReconnectStats().record(attempt.connectedTo, attempt.attempts, attempt.rounds, elapsed);
+        cmt.getLogger().info("Reconnected to " + attempt.connectedTo + " after " + attempt.attempts + " attempts over "
+                             + attempt.rounds + " rounds in " + TimeUnit.NANOSECONDS.toMillis(elapsed) + "ms");
       }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
     } finally {
       asyncReconnecting.set(false);
     }
   }
 
+  /**
+   * Decorrelated jitter: each wait is drawn between the base interval and three times the previous wait, capped.  This
+   * keeps the waits growing while a stripe stays down without every client of a restarted stripe retrying in lockstep.
+   */
+  static long nextRetryInterval(long previous) {
+    if (MAX_RETRY_INTERVAL <= CONNECT_RETRY_INTERVAL) {
+      return CONNECT_RETRY_INTERVAL;
+    }
+    long bound = Math.min(MAX_RETRY_INTERVAL, Math.max(previous, CONNECT_RETRY_INTERVAL) * 3);
+    return ThreadLocalRandom.current().nextLong(CONNECT_RETRY_INTERVAL, bound + 1);
+  }
+
+  private List<ConnectionInfo> reconnectCandidates(ClientMessageTransport cmt, boolean firstRound, Logger logger) {
+    List<ConnectionInfo> candidates = new ArrayList<ConnectionInfo>(this.connAddressProvider);
+    // DEV-1945
+    if (firstRound) {
+      String previousConnectHost = "";
+      int previousConnectHostPort = -1;
+      if (cmt.getRemoteAddress() != null) {
+        previousConnectHost = cmt.getRemoteAddress().getAddress().getHostAddress();
+        previousConnectHostPort = cmt.getRemoteAddress().getPort();
+      }
+      Iterator<ConnectionInfo> addresses = candidates.iterator();
+      while (addresses.hasNext()) {
+        ConnectionInfo target = addresses.next();
+        String connectingToHost;
+        try {
+          connectingToHost = getHostByName(target);
+        } catch (UnknownHostException e) {
+          logConnectException(e, true, logger);
+          // keep trying reconnects, for maxReconnectTries
+          addresses.remove();
+          continue;
+        }
+        if ((addresses.hasNext()) && (previousConnectHost.equals(connectingToHost))
+            && (previousConnectHostPort == target.getPort())) {
+          addresses.remove();
+        }
+      }
+    }
+    return candidates;
+  }
+
+  private boolean connectInTurn(ReconnectAttempt attempt, List<ConnectionInfo> candidates) throws MaxConnectionsExceededException {
+    for (ConnectionInfo target : candidates) {
+      if (!tryToConnect(false)) {
+        break;
+      }
+      if (handshake(attempt, target, null)) {
+        return true;
+      }
+      if (attempt.gaveUp) {
+        break;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Connects to all the candidates at once and handshakes over each connection in the order they came up, so the
+   * first server to report itself active wins without waiting out the connect timeouts of unreachable servers.
+   * Whatever connections are left over once the transport is connected are closed.
+   */
+  private boolean connectFirstActive(ReconnectAttempt attempt, List<ConnectionInfo> candidates) throws MaxConnectionsExceededException, InterruptedException {
+    ClientMessageTransport cmt = attempt.cmt;
+    try (ConnectRace race = new ConnectRace(candidates, info -> cmt.connectQuietly(new TCSocketAddress(info)))) {
+      ConnectRace.Result result;
+      while (tryToConnect(false) && (result = race.next()) != null) {
+        if (result.getConnection() == null) {
+          attempt.attempts += 1;
+          Exception e = result.getFailure();
+          logConnectException(e, !(e instanceof IOException || e instanceof TCTimeoutException), attempt.logger);
+        } else if (handshake(attempt, result.getConnectionInfo(), result.getConnection())) {
+          return true;
+        } else if (attempt.gaveUp) {
+          break;
+        }
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Handshakes with a server, over the given connection if there is one, following redirects to servers not yet
+   * known.
+   * 
+   * @return true once the transport is connected
+   */
+  private boolean handshake(ReconnectAttempt attempt, ConnectionInfo target, TCConnection connection) throws MaxConnectionsExceededException {
+    ClientMessageTransport cmt = attempt.cmt;
+    while (target != null && tryToConnect(false)) {
+      if (attempt.reconnectionRejected) {
+        if (reconnectionRejectedHandler.isRetryOnReconnectionRejected()) {
+          LOGGER.info("Reconnection rejected by L2, trying again to reconnect - " + cmt);
+        } else {
+          LOGGER.info("Reconnection rejected by L2, no more trying to reconnect - " + cmt);
+          attempt.gaveUp = true;
+          break;
+        }
+      }
+
+      ConnectionInfo next = null;
+      attempt.attempts += 1;
+      try {
+        if (connection != null) {
+          cmt.reopen(connection);
+        } else {
+          cmt.reopen(target);
+        }
+        if (cmt.getConnectionID().isValid()) {
+          attempt.connectedTo = target;
+          return true;
+        }
+      } catch (TransportRedirect redirect) {
+        ConnectionInfo add = new ConnectionInfo(redirect.getHostname(), redirect.getPort());
+        if (this.connAddressProvider.add(add)) {
+          next = add;
+        }
+      } catch (NoActiveException noactive) {
+        logConnectException(new IOException(noactive), false, attempt.logger);
+      } catch (MaxConnectionsExceededException e) {
+        reset();
+        throw e;
+      } catch (ReconnectionRejectedException e) {
+        reset();
+        attempt.reconnectionRejected = true;
+        logConnectException(e, false, attempt.logger);
+      } catch (CommStackMismatchException e) {
+        reset();
+        logConnectException(e, false, attempt.logger);
+      } catch (TCTimeoutException e) {
+        logConnectException(e, true, attempt.logger);
+      } catch (IOException e) {
+        logConnectException(e, false, attempt.logger);
+      } catch (Exception e) {
+        logConnectException(e, true, attempt.logger);
+      }
+      target = next;
+      connection = null;
+    }
+    if (connection != null) {
+      // stopped before the connection could be used
+      connection.close(100);
+    }
+    return false;
+  }
+
   String getHostByName(ConnectionInfo connInfo) throws UnknownHostException {
     return InetAddress.getByName(connInfo.getHostname()).getHostAddress();
   }
@@ -353,9 +455,7 @@ public class ClientConnectionEstablisher {
   }
 
   private void handleConnectException(Exception e, boolean logFullException, Logger logger) {
-    if (logger.isDebugEnabled() || logFullException) {
-      logger.error("Connect Exception", e);
-    }
+    logConnectException(e, logFullException, logger);
 
     if (CONNECT_RETRY_INTERVAL > 0) {
       try {
@@ -366,6 +466,12 @@ public class ClientConnectionEstablisher {
     }
   }
 
+  private static void logConnectException(Exception e, boolean logFullException, Logger logger) {
+    if (logger.isDebugEnabled() || logFullException) {
+      logger.error("Connect Exception", e);
+    }
+  }
+
   public void asyncReconnect(ClientMessageTransport cmt, Supplier<Boolean> stopCheck) {
     if (cmt.getConnectionID().isValid()) {
       putConnectionRequest(ConnectionRequest.newReconnectRequest(cmt, stopCheck));
@@ -509,6 +615,25 @@ public class ClientConnectionEstablisher {
     }
   }
 
+  /**
+   * Book keeping for one run of {@link ClientConnectionEstablisher#reconnect}.
+   */
+  private static class ReconnectAttempt {
+    private final ClientMessageTransport cmt;
+    private final Logger                 logger;
+    private final long                   start = System.nanoTime();
+    private int                          attempts;
+    private int                          rounds;
+    private boolean                      reconnectionRejected;
+    private boolean                      gaveUp;
+    private ConnectionInfo               connectedTo;
+
+    private ReconnectAttempt(ClientMessageTransport cmt, Logger logger) {
+      this.cmt = cmt;
+      this.logger = logger;
+    }
+  }
+
   static enum ConnectionRequestType {
     RECONNECT, RESTORE_CONNECTION;
   }
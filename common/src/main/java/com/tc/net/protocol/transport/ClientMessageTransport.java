@@ -42,7 +42,9 @@ import com.tc.util.concurrent.TCFuture;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import com.tc.net.protocol.TCProtocolAdaptor;
 
 /**
@@ -60,6 +62,7 @@ public class ClientMessageTransport extends MessageTransportBase {
   private final WireProtocolAdaptorFactory  wireProtocolAdaptorFactory;
   private final int                         callbackPort;
   private final int                         timeout;
+  private final ReconnectStats              reconnectStats                     = new ReconnectStats();
 
   public ClientMessageTransport(TCConnectionManager clientConnectionEstablisher,
                                 TransportHandshakeErrorHandler handshakeErrorHandler,
@@ -133,8 +136,16 @@ public class ClientMessageTransport extends MessageTransportBase {
    * @throws MaxConnectionsExceededException
    */
   TCConnection connect(TCSocketAddress sa) throws TCTimeoutException, IOException {
-    TCConnection connection = this.connectionManager.createConnection(getProtocolAdapter());
     fireTransportConnectAttemptEvent();
+    return connectQuietly(sa);
+  }
+
+  /**
+   * Makes a connection without telling the transport listeners about the attempt, for connects made off the
+   * reconnecting thread.  {@link #reopen(TCConnection)} reports the attempt once the connection is used.
+   */
+  TCConnection connectQuietly(TCSocketAddress sa) throws TCTimeoutException, IOException {
+    TCConnection connection = this.connectionManager.createConnection(getProtocolAdapter());
     try {
       connection.connect(sa, this.timeout);
     } catch (IOException e) {
@@ -427,9 +438,26 @@ public class ClientMessageTransport extends MessageTransportBase {
     reconnect(socket);
   }
   
+  /**
+   * Like {@link #reopen(ConnectionInfo)} but handshakes over a connection that was already made with
+   * {@link #connectQuietly(TCSocketAddress)}, such as the winner of a connect race.
+   */
+  void reopen(TCConnection connection) throws Exception {
+    if (!wasOpened()) {
+      this.getLogger().info("Transport not opened yet. Skip reconnect " + connection);
+      connection.close(100);
+      return;
+    }
+
+    fireTransportConnectAttemptEvent();
+    reconnect(connection);
+  }
+  
   void reconnect(TCSocketAddress socket) throws Exception {
-    TCConnection connection = connect(socket);
-      
+    reconnect(connect(socket));
+  }
+
+  private void reconnect(TCConnection connection) throws Exception {
     Assert.eval(!isConnected());
     if (wireNewConnection(connection)) {
       try {
@@ -498,6 +526,17 @@ public class ClientMessageTransport extends MessageTransportBase {
     super.fireTransportConnectAttemptEvent();
   }
 
+  ReconnectStats getReconnectStats() {
+    return this.reconnectStats;
+  }
+
+  @Override
+  public Map<String, ?> getStateMap() {
+    Map<String, Object> map = new LinkedHashMap<>(super.getStateMap());
+    map.put("reconnects", this.reconnectStats.getStateMap());
+    return map;
+  }
+
   @Override
   public boolean isConnected() {
     return super.isConnected();
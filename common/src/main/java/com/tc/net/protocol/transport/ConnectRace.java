@@ -0,0 +1,131 @@
+/*
+ *
+ *  The contents of this file are subject to the Terracotta Public License Version
+ *  2.0 (the "License"); You may not use this file except in compliance with the
+ *  License. You may obtain a copy of the License at
+ *
+ *  http://terracotta.org/legal/terracotta-public-license.
+ *
+ *  Software distributed under the License is distributed on an "AS IS" basis,
+ *  WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing rights and limitations under the License.
+ *
+ *  The Covered Software is Terracotta Core.
+ *
+ *  The Initial Developer of the Covered Software is
+ *  Terracotta, Inc., a Software AG company
+ *
+ */
+package com.tc.net.protocol.transport;
+
+import com.tc.net.core.ConnectionInfo;
+import com.tc.net.core.TCConnection;
+import com.tc.util.concurrent.ThreadFactoryBuilder;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * Connects to a set of servers all at once so a reconnect waits on the quickest live server rather than on the
+ * connect timeouts of dead ones in turn.  Connections are handed out in the order they complete.  Once the race is
+ * closed every connection that was not handed out is closed, including those which complete afterwards.
+ */
+class ConnectRace implements AutoCloseable {
+
+  interface Connector {
+    TCConnection connect(ConnectionInfo info) throws Exception;
+  }
+
+  private static final ExecutorService CONNECTORS = Executors.newCachedThreadPool(new ThreadFactoryBuilder()
+      .setNameFormat(ClientConnectionEstablisher.RECONNECT_THREAD_NAME + "-race-%d").setDaemon(true).build());
+
+  private final BlockingQueue<Result> completed = new LinkedBlockingQueue<>();
+  private int                         outstanding;
+  // guarded by this
+  private boolean                     closed;
+
+  ConnectRace(Collection<ConnectionInfo> candidates, Connector connector) {
+    this.outstanding = candidates.size();
+    for (ConnectionInfo info : candidates) {
+      CONNECTORS.execute(() -> {
+        Result result;
+        try {
+          result = new Result(info, connector.connect(info), null);
+        } catch (Exception e) {
+          result = new Result(info, null, e);
+        }
+        offer(result);
+      });
+    }
+  }
+
+  private void offer(Result result) {
+    synchronized (this) {
+      if (!closed) {
+        completed.add(result);
+        return;
+      }
+    }
+    result.discard();
+  }
+
+  /**
+   * @return the next connect to complete, successfully or not, or null once every candidate has been handed out
+   */
+  Result next() throws InterruptedException {
+    if (outstanding == 0) {
+      return null;
+    }
+    Result result = completed.take();
+    outstanding -= 1;
+    return result;
+  }
+
+  @Override
+  public void close() {
+    List<Result> unclaimed = new ArrayList<>();
+    synchronized (this) {
+      closed = true;
+      completed.drainTo(unclaimed);
+    }
+    unclaimed.forEach(Result::discard);
+  }
+
+  static class Result {
+    private final ConnectionInfo info;
+    private final TCConnection   connection;
+    private final Exception      failure;
+
+    private Result(ConnectionInfo info, TCConnection connection, Exception failure) {
+      this.info = info;
+      this.connection = connection;
+      this.failure = failure;
+    }
+
+    ConnectionInfo getConnectionInfo() {
+      return info;
+    }
+
+    /**
+     * @return the connected connection, null if the connect failed
+     */
+    TCConnection getConnection() {
+      return connection;
+    }
+
+    Exception getFailure() {
+      return failure;
+    }
+
+    private void discard() {
+      if (connection != null) {
+        connection.close(100);
+      }
+    }
+  }
+}
@@ -25,25 +25,30 @@ import com.tc.net.TCSocketAddress;
 import com.tc.net.core.TCConnection;
 import com.tc.net.core.TCConnectionManager;
 import com.tc.util.Assert;
+import com.tc.util.concurrent.HashedWheelTimer;
 import com.tc.util.concurrent.SetOnceFlag;
+import com.tc.util.concurrent.Timer;
 
 import java.util.Iterator;
-import java.util.Timer;
-import java.util.TimerTask;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * The Engine which does the peer health checking work. Based on the config passed, it probes the peer once in specified
  * interval. When it doesn't get a reply from the peer, it disconnects the transport.
+ * <p>
+ * Every connection has its own deadline on a {@link HashedWheelTimer} kept for health checking, so a check only
+ * touches the connection that is due instead of walking all of them each ping interval. Probes may block on the
+ * network, so the wheel is not shared with other subsystems.
  * 
  * @author Manoj
  */
 public class ConnectionHealthCheckerImpl implements ConnectionHealthChecker {
 
   private final Logger logger;
-  private static final Timer                           monitorThread = new Timer("HealthCheck-Timer", true);
   private final HealthCheckerMonitorThreadEngine monitorThreadEngine;
 
   private final SetOnceFlag                      shutdown = new SetOnceFlag();
@@ -66,7 +71,7 @@ public class ConnectionHealthCheckerImpl implements ConnectionHealthChecker {
   @Override
   public void start() {
     if (started.attemptSet()) {
-      monitorThread.scheduleAtFixedRate(monitorThreadEngine, 0L, (long)monitorThreadEngine.pingInterval);
+      monitorThreadEngine.start();
       logger.info("HealthChecker Started");
     } else {
       logger.warn("HealthChecker already started");
@@ -135,18 +140,21 @@ public class ConnectionHealthCheckerImpl implements ConnectionHealthChecker {
     // NOP
   }
 
-  static class HealthCheckerMonitorThreadEngine extends TimerTask {
-    private final ConcurrentMap<ConnectionID, MessageTransportBase> connectionMap =
+  static class HealthCheckerMonitorThreadEngine {
+    private final ConcurrentMap<ConnectionID, MonitoredConnection> connectionMap =
         new ConcurrentHashMap<>();
+    private static final Timer        timer         = new HashedWheelTimer("HealthCheck-Timer");
     private final long                pingIdleTime;
     private final long                pingInterval;
     private final int                 pingProbes;
     private final long                checkTimeInterval;
+    private final SetOnceFlag         started       = new SetOnceFlag();
     private final SetOnceFlag         stop          = new SetOnceFlag();
     private final HealthCheckerConfig config;
     private final Logger logger;
     private final TCConnectionManager connectionManager;
     private final AtomicLong          lastCheckTime = new AtomicLong(System.currentTimeMillis());
+    private volatile ScheduledFuture<?> timeCheck;
 
     public HealthCheckerMonitorThreadEngine(HealthCheckerConfig healthCheckerConfig,
                                             TCConnectionManager connectionManager, Logger logger) {
@@ -169,14 +177,41 @@ public class ConnectionHealthCheckerImpl implements ConnectionHealthChecker {
 
     }
 
+    public void start() {
+      if (started.attemptSet()) {
+        for (MonitoredConnection monitored : connectionMap.values()) {
+          monitored.schedule(0);
+        }
+        if (config.isCheckTimeEnabled()) {
+          long interval = Math.max(checkTimeInterval, pingInterval);
+          timeCheck = timer.scheduleAtFixedRate(this::checkTimes, interval, interval, TimeUnit.MILLISECONDS);
+        }
+      }
+    }
+
     private void addConnection(MessageTransport transport) {
       MessageTransportBase mtb = (MessageTransportBase) transport;
       mtb.setHealthCheckerContext(getHealthCheckerContext(mtb, config, connectionManager));
-      connectionMap.put(transport.getConnectionID(), mtb);
+      MonitoredConnection monitored = new MonitoredConnection(mtb);
+      MonitoredConnection previous = connectionMap.put(transport.getConnectionID(), monitored);
+      if (previous != null) {
+        previous.cancel();
+      }
+      if (started.isSet() && !stop.isSet()) {
+        monitored.schedule(0);
+      }
     }
 
     private boolean removeConnection(MessageTransport transport) {
-      return (connectionMap.remove(transport.getConnectionID())) != null;
+      MonitoredConnection monitored = connectionMap.remove(transport.getConnectionID());
+      if (monitored == null) { return false; }
+      monitored.cancel();
+      return true;
+    }
+
+    private void removeConnection(ConnectionID id, MonitoredConnection monitored) {
+      connectionMap.remove(id, monitored);
+      monitored.cancel();
     }
 
     protected ConnectionHealthCheckerContext getHealthCheckerContext(MessageTransportBase transport,
@@ -187,57 +222,61 @@ public class ConnectionHealthCheckerImpl implements ConnectionHealthChecker {
 
     public void stop() {
       stop.attemptSet();
-      this.cancel();
+      ScheduledFuture<?> check = timeCheck;
+      if (check != null) {
+        check.cancel(false);
+      }
+      for (MonitoredConnection monitored : connectionMap.values()) {
+        monitored.cancel();
+      }
     }
 
-    @Override
-    public void run() {
-      // same interval for all connections
-      final boolean canCheckTime = canCheckTime();
-
-      Iterator<MessageTransportBase> connectionIterator = connectionMap.values().iterator();
-      while (connectionIterator.hasNext()) {
-        MessageTransportBase mtb = connectionIterator.next();
-
-        TCConnection conn = mtb.getConnection();
-        if (conn == null || !mtb.isConnected()) {
-          logger.info("[" + (conn == null ? null : conn.getRemoteAddress().getCanonicalStringForm())
-                      + "] is not connected. Health Monitoring for this node is now disabled.");
-          connectionIterator.remove();
-          continue;
-        }
+    /**
+     * Checks one connection and returns the delay until it is due again, or -1 if it is no longer monitored.
+     */
+    long check(MessageTransportBase mtb) {
+      TCConnection conn = mtb.getConnection();
+      if (conn == null || !mtb.isConnected()) {
+        logger.info("[" + (conn == null ? null : conn.getRemoteAddress().getCanonicalStringForm())
+                    + "] is not connected. Health Monitoring for this node is now disabled.");
+        return -1;
+      }
+
+      if (mtb.getReceiveLayer() == null) {
+        logger.info("[" + conn.getRemoteAddress().getCanonicalStringForm()
+                    + "] is no longer referenced.  Closing the connection");
+        mtb.disconnect();
+        return -1;
+      }
 
-        if (mtb.getReceiveLayer() == null) {
-          logger.info("[" + (conn == null ? null : conn.getRemoteAddress().getCanonicalStringForm())
-                      + "] is no longer referenced.  Closing the connection");
+      ConnectionHealthCheckerContext connContext = mtb.getHealthCheckerContext();
+      long idleTime = conn.getIdleReceiveTime();
+      if (idleTime >= this.pingIdleTime) {
+        if (!connContext.probeIfAlive()) {
+          // Connection is dead. Disconnect the transport.
+          logger.error("Declared connection dead " + mtb.getConnectionID() + " idle time " + idleTime + "ms");
           mtb.disconnect();
-          connectionIterator.remove();
-          continue;
+          return -1;
         }
+        // the probe cycle counts ping intervals
+        return this.pingInterval;
+      } else {
+        connContext.refresh();
+        // nothing to do until the connection could have gone idle
+        return Math.max(this.pingInterval, this.pingIdleTime - idleTime);
+      }
+    }
 
-        ConnectionHealthCheckerContext connContext = mtb.getHealthCheckerContext();
-        if ((conn.getIdleReceiveTime() >= this.pingIdleTime)) {
-
-          if (!connContext.probeIfAlive()) {
-            // Connection is dead. Disconnect the transport.
-            logger.error("Declared connection dead " + mtb.getConnectionID() + " idle time "
-                         + conn.getIdleReceiveTime() + "ms");
-            mtb.disconnect();
-            connectionIterator.remove();
-          }
-        } else {
-          connContext.refresh();
-        }
-        // is there any significant time difference between hosts ?
-        if (canCheckTime) {
-          connContext.checkTime();
+    private void checkTimes() {
+      // is there any significant time difference between hosts ?
+      if (!canCheckTime()) { return; }
+      for (MonitoredConnection monitored : connectionMap.values()) {
+        if (monitored.transport.isConnected()) {
+          monitored.transport.getHealthCheckerContext().checkTime();
         }
       }
-
       // update last check time once for all connections
-      if (canCheckTime) {
-        this.lastCheckTime.set(System.currentTimeMillis());
-      }
+      this.lastCheckTime.set(System.currentTimeMillis());
     }
 
     boolean canCheckTime() {
@@ -251,16 +290,62 @@ public class ConnectionHealthCheckerImpl implements ConnectionHealthChecker {
     }
 
     long getTotalProbesSentOnAllConnections() {
-      Iterator<MessageTransportBase> connIterator = connectionMap.values().iterator();
+      Iterator<MonitoredConnection> connIterator = connectionMap.values().iterator();
       long totalProbeSent = 0;
       while (connIterator.hasNext()) {
-        MessageTransportBase mtb = connIterator.next();
+        MessageTransportBase mtb = connIterator.next().transport;
         ConnectionHealthCheckerContextImpl connContext = (ConnectionHealthCheckerContextImpl) mtb
             .getHealthCheckerContext();
         totalProbeSent += connContext.getTotalProbesSent();
       }
       return totalProbeSent;
     }
+
+    /**
+     * The health check deadline of one connection, rescheduled after every check.
+     */
+    private final class MonitoredConnection implements Runnable {
+      private final MessageTransportBase transport;
+      private ScheduledFuture<?>         future;
+      private boolean                    cancelled;
+
+      MonitoredConnection(MessageTransportBase transport) {
+        this.transport = transport;
+      }
+
+      synchronized void schedule(long delay) {
+        if (!cancelled && !stop.isSet() && (future == null || future.isDone())) {
+          future = timer.schedule(this, delay, TimeUnit.MILLISECONDS);
+        }
+      }
+
+      synchronized void cancel() {
+        cancelled = true;
+        if (future != null) {
+          future.cancel(false);
+        }
+      }
+
+      @Override
+      public void run() {
+        long next;
+        try {
+          next = check(transport);
+        } catch (RuntimeException e) {
+          logger.error("Health check failed for " + transport.getConnectionID(), e);
+          next = pingInterval;
+        }
+        if (next < 0) {
+          removeConnection(transport.getConnectionID(), this);
+        } else {
+          synchronized (this) {
+            // we are still running so the current future isn't done yet
+            future = null;
+          }
+          schedule(next);
+        }
+      }
+    }
   }
 
   /* For testing only */
@@ -0,0 +1,58 @@
+/*
+ *
+ *  The contents of this file are subject to the Terracotta Public License Version
+ *  2.0 (the "License"); You may not use this file except in compliance with the
+ *  License. You may obtain a copy of the License at
+ *
+ *  http://terracotta.org/legal/terracotta-public-license.
+ *
+ *  Software distributed under the License is distributed on an "AS IS" basis,
+ *  WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing rights and limitations under the License.
+ *
+ *  The Covered Software is Terracotta Core.
+ *
+ *  The Initial Developer of the Covered Software is
+ *  Terracotta, Inc., a Software AG company
+ *
+ */
+package com.tc.net.protocol.transport;
+
+import com.tc.net.core.ConnectionInfo;
+import com.tc.stats.LatencyHistogram;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * What it took to bring a {@link ClientMessageTransport} back after each disconnect: how many handshakes were tried,
+ * over how many rounds, and how long it was until one succeeded.
+ */
+class ReconnectStats {
+  private final LatencyHistogram latency = new LatencyHistogram();
+  // guarded by this
+  private long reconnects;
+  private long attempts;
+  private long rounds;
+  private String last = "none";
+
+  synchronized void record(ConnectionInfo target, int attempts, int rounds, long elapsedNanos) {
+    this.reconnects += 1;
+    this.attempts += attempts;
+    this.rounds += rounds;
+    this.last = target + " after " + attempts + " attempts over " + rounds + " rounds in "
+                + TimeUnit.NANOSECONDS.toMillis(elapsedNanos) + "ms";
+    latency.record(elapsedNanos);
+  }
+
+  synchronized Map<String, Object> getStateMap() {
+    Map<String, Object> map = new LinkedHashMap<>();
+    map.put("reconnects", reconnects);
+    map.put("attempts", attempts);
+    map.put("rounds", rounds);
+    map.put("last", last);
+    map.put("latency", latency.getStateMap());
+    return map;
+  }
+}
@@ -53,6 +53,8 @@ public interface TCPropertiesConsts {
   public static final String L2_SEDA_STAGE_DISABLE_DIRECT_SINKS                                    = "l2.seda.stage.sink.disable.direct";
   public static final String L2_SEDA_STAGE_SINGLE_THREAD                                    = "l2.seda.stage.single.thread";
   public static final String L2_SEDA_STAGE_STALL_WARNING                                    = "l2.seda.stage.stall.warning";
+  public static final String L2_SEDA_HYDRATE_OFFLOAD                                        = "l2.seda.hydrate.offload";
+  public static final String L2_SEDA_VOLTRON_STAGE_LANES                                    = "l2.seda.voltron.stage.lanes";
   String L2_TCCOM_WORKERTHREADS                                                          = "l2.tccom.workerthreads";
   String L2_SEDA_STAGE_WORKERTHREADS                                                     = "l2.seda.stage.workerthreads";
 
@@ -103,10 +105,20 @@ public interface TCPropertiesConsts {
    *                                 instance in a cluster with no passives present
    * startuplock.retries.enabled   : If true then L2s will try to lock indefinitely on the data
    *                                 directory while starting up
+   * passive.sync.window.entities  : Number of entities synced to a new passive at the same time
+   * passive.sync.window.keys      : Number of concurrency keys of an entity synced to a new passive
+   *                                 at the same time.  1 syncs strictly one key after another
+   * plugins.discovery.index.enabled : Cache plugin discovery results keyed by jar checksum
+   * plugins.discovery.index.file  : Location of the discovery index, empty for the default
    * </code>
    ********************************************************************************************************************/
   public static final String L2_STARTUPLOCK_RETRIES_ENABLED                                 = "l2.startuplock.retries.enabled";
   public static final String ENTITY_DEFERMENT_QUEUE_SIZE                                    = "server.entity.deferment.queue.size";
+  public static final String L2_PASSIVE_SYNC_ENTITY_WINDOW                                  = "l2.passive.sync.window.entities";
+  public static final String L2_PASSIVE_SYNC_KEY_WINDOW                                     = "l2.passive.sync.window.keys";
+  public static final String L2_FAILOVER_PROMOTE_PARALLELISM                                = "l2.failover.promote.parallelism";
+  public static final String L2_PLUGINS_DISCOVERY_INDEX_ENABLED                             = "l2.plugins.discovery.index.enabled";
+  public static final String L2_PLUGINS_DISCOVERY_INDEX_FILE                                = "l2.plugins.discovery.index.file";
   
   /*********************************************************************************************************************
    * <code>
@@ -137,10 +149,15 @@ public interface TCPropertiesConsts {
    * socket.connect.timeout            - Socket timeout (ms) when connecting to server
    * reconnect.waitInterval            - Sleep time (ms) between trying connections to the server
    *                                     (values less than 10ms will be set to 10ms)
+   * reconnect.maxWaitInterval         - Upper bound (ms) of the jittered backoff between reconnect rounds, set it
+   *                                     to reconnect.waitInterval for a fixed wait
+   * reconnect.parallel                - Connect to every server of the stripe at once when reconnecting
    * </code>
    ********************************************************************************************************************/
   public static final String L1_SOCKET_CONNECT_TIMEOUT                                      = "l1.socket.connect.timeout";
   public static final String L1_SOCKET_RECONNECT_WAIT_INTERVAL                              = "l1.socket.reconnect.waitInterval";
+  public static final String L1_SOCKET_RECONNECT_MAX_WAIT_INTERVAL                          = "l1.socket.reconnect.maxWaitInterval";
+  public static final String L1_SOCKET_RECONNECT_PARALLEL                                   = "l1.socket.reconnect.parallel";
   
   /*********************************************************************************************************************
    * <code>
@@ -184,6 +201,11 @@ public interface TCPropertiesConsts {
    * bytebuffer.pooling.enabled           : Enable/disable tc byte buffer pooling
    * bytebuffer.common.pool.maxcount      : Max size of pool for tc byte buffer
    * bytebuffer.threadlocal.pool.maxcount : Thread pool size
+   * bytebuffer.pool.leakdetection.enabled: Report and reclaim pooled buffers that are never recycled
+   * messages.gatheringio.enabled        : <true/false>    - Gathering writes and scattering reads on sockets
+   * messages.compression.enabled        : <true/false>    - LZ4 compress payloads on connections where both ends enable it
+   * messages.compression.threshold      : int             - Payloads smaller than this many bytes are not compressed
+   * messages.compression.maxUncompressedBytes : int       - Compressed payloads inflating past this are rejected
    * </code>
    ********************************************************************************************************************/
   public static final String TC_GC_MONITOR_ENABLED                                          = "tc.gc.monitor.enabled";
@@ -193,6 +215,14 @@ public interface TCPropertiesConsts {
   public static final String TC_MESSAGE_GROUPING_ENABLED                                    = "tc.messages.grouping.enabled";
   public static final String TC_MESSAGE_GROUPING_MAXSIZE_KB                                 = "tc.messages.grouping.maxSizeKiloBytes";
   public static final String TC_MESSAGE_PACKUP_ENABLED                                      = "tc.messages.packup.enabled";
+  public static final String TC_MESSAGE_GATHERING_IO_ENABLED                                = "tc.messages.gatheringio.enabled";
+  public static final String TC_MESSAGE_COMPRESSION_ENABLED                                 = "tc.messages.compression.enabled";
+  public static final String TC_MESSAGE_COMPRESSION_THRESHOLD                               = "tc.messages.compression.threshold";
+  public static final String TC_MESSAGE_COMPRESSION_MAX_UNCOMPRESSED_BYTES                  = "tc.messages.compression.maxUncompressedBytes";
+  public static final String TC_BYTEBUFFER_POOLING_ENABLED                                  = "tc.bytebuffer.pooling.enabled";
+  public static final String TC_BYTEBUFFER_COMMON_POOL_MAXCOUNT                             = "tc.bytebuffer.common.pool.maxcount";
+  public static final String TC_BYTEBUFFER_THREADLOCAL_POOL_MAXCOUNT                        = "tc.bytebuffer.threadlocal.pool.maxcount";
+  public static final String TC_BYTEBUFFER_POOL_LEAK_DETECTION_ENABLED                      = "tc.bytebuffer.pool.leakdetection.enabled";
 
   /*********************************************************************************************************************
    * <code>
@@ -218,10 +248,18 @@ public interface TCPropertiesConsts {
    * Section : TCP Settings
    * tcpnodelay : Enable/disable tcp packet batching
    * keepalive  : Enable/disable tcp probe for running/broken connections
+   * read.budget.bytes : Bytes read from one connection per select pass before the next ready connection is served,
+   *                     0 for no limit
+   * read.budget.reads : Reads from one connection per select pass, 0 for no limit
+   * rebalance.interval : Interval (in milliseconds) at which hot connections are moved between worker comms by
+   *                      measured traffic, 0 disables rebalancing
    * </code>
    ********************************************************************************************************************/
   public static final String NET_CORE_KEEPALIVE                                             = "net.core.keepalive";
   public static final String NET_CORE_TCP_NO_DELAY                                          = "net.core.tcpnodelay";
+  public static final String NET_CORE_READ_BUDGET_BYTES                                     = "net.core.read.budget.bytes";
+  public static final String NET_CORE_READ_BUDGET_READS                                     = "net.core.read.budget.reads";
+  public static final String NET_CORE_REBALANCE_INTERVAL                                    = "net.core.rebalance.interval";
 
   /*********************************************************************************************************************
    * <code>
@@ -0,0 +1,203 @@
+/*
+ *
+ *  The contents of this file are subject to the Terracotta Public License Version
+ *  2.0 (the "License"); You may not use this file except in compliance with the
+ *  License. You may obtain a copy of the License at
+ *
+ *  http://terracotta.org/legal/terracotta-public-license.
+ *
+ *  Software distributed under the License is distributed on an "AS IS" basis,
+ *  WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing rights and limitations under the License.
+ *
+ *  The Covered Software is Terracotta Core.
+ *
+ *  The Initial Developer of the Covered Software is
+ *  Terracotta, Inc., a Software AG company
+ *
+ */
+package com.tc.stats;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Records durations into log-linear buckets in the style of an HDR histogram.  Each power of two range is split into
+ * 16 linear sub-buckets so any percentile is reported within 1/16th (6.25%) of the recorded value, from a single
+ * nanosecond up to Long.MAX_VALUE.  Recording is lock-free and does not allocate so it can sit on hot paths.
+ * <p>
+ * Reading a histogram has no side effect, the state map is cumulative.  A periodic reader that wants to see a tail
+ * latency spike not averaged away by hours of quiet history keeps its own {@link Interval}.
+ */
+public class LatencyHistogram {
+
+  private static final int      SUB_BUCKET_BITS = 4;
+  private static final int      SUB_BUCKETS     = 1 << SUB_BUCKET_BITS;
+  private static final int      BUCKETS         = (64 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+  private final AtomicLongArray counts  = new AtomicLongArray(BUCKETS);
+  private final AtomicLong      sum     = new AtomicLong();
+  private final AtomicLong      max     = new AtomicLong();
+
+  public void record(long nanos) {
+    if (nanos < 0) {
+      nanos = 0;
+    }
+    counts.incrementAndGet(bucketOf(nanos));
+    sum.addAndGet(nanos);
+    long current = max.get();
+    while (nanos > current && !max.compareAndSet(current, nanos)) {
+      current = max.get();
+    }
+  }
+
+  public long getCount() {
+    long count = 0;
+    for (int i = 0; i < BUCKETS; i++) {
+      count += counts.get(i);
+    }
+    return count;
+  }
+
+  public long getMax() {
+    return max.get();
+  }
+
+  /**
+   * @param percentile in the range (0, 100]
+   * @return the upper bound, in nanoseconds, of the bucket holding the given percentile, 0 if nothing was recorded
+   */
+  public long getValueAtPercentile(double percentile) {
+    return snapshot().getValueAtPercentile(percentile);
+  }
+
+  /**
+   * @return everything recorded so far
+   */
+  public Snapshot snapshot() {
+    long[] copy = new long[BUCKETS];
+    for (int i = 0; i < BUCKETS; i++) {
+      copy[i] = counts.get(i);
+    }
+    return new Snapshot(copy, sum.get(), max.get());
+  }
+
+  /**
+   * @return a new interval for one reader, its first {@link Interval#next()} covers everything recorded so far
+   */
+  public Interval newInterval() {
+    return new Interval();
+  }
+
+  public Map<String, Object> getStateMap() {
+    return snapshot().getStateMap();
+  }
+
+  static int bucketOf(long nanos) {
+    if (nanos < SUB_BUCKETS) {
+      return (int)nanos;
+    }
+    int shift = 63 - Long.numberOfLeadingZeros(nanos) - SUB_BUCKET_BITS;
+    return (shift + 1) * SUB_BUCKETS + (int)((nanos >>> shift) & (SUB_BUCKETS - 1));
+  }
+
+  static long upperBoundOf(int bucket) {
+    if (bucket < SUB_BUCKETS) {
+      return bucket;
+    }
+    int shift = bucket / SUB_BUCKETS - 1;
+    long lower = ((long)(SUB_BUCKETS + bucket % SUB_BUCKETS)) << shift;
+    return lower + ((1L << shift) - 1);
+  }
+
+  /**
+   * The interval of one reader over the histogram, other readers and the histogram itself are not affected by it.
+   */
+  public class Interval {
+    // guarded by this
+    private long[] lastCounts = new long[BUCKETS];
+    private long   lastSum;
+
+    private Interval() {
+    }
+
+    /**
+     * @return what was recorded since the previous call, a new interval starts here
+     */
+    public synchronized Snapshot next() {
+      long[] current = new long[BUCKETS];
+      long[] interval = new long[BUCKETS];
+      long intervalMax = 0;
+      for (int i = 0; i < BUCKETS; i++) {
+        current[i] = counts.get(i);
+        interval[i] = current[i] - lastCounts[i];
+        if (interval[i] > 0) {
+          intervalMax = upperBoundOf(i);
+        }
+      }
+      long currentSum = sum.get();
+      Snapshot snapshot = new Snapshot(interval, currentSum - lastSum, Math.min(intervalMax, max.get()));
+      lastCounts = current;
+      lastSum = currentSum;
+      return snapshot;
+    }
+  }
+
+  /**
+   * A point in time copy of the bucket counts.
+   */
+  public static class Snapshot {
+    private final long[] counts;
+    private final long   count;
+    private final long   sum;
+    private final long   max;
+
+    private Snapshot(long[] counts, long sum, long max) {
+      long total = 0;
+      for (long c : counts) {
+        total += c;
+      }
+      this.counts = counts;
+      this.count = total;
+      this.sum = sum;
+      this.max = max;
+    }
+
+    public long getCount() {
+      return count;
+    }
+
+    public long getMax() {
+      return max;
+    }
+
+    public long getValueAtPercentile(double percentile) {
+      if (count == 0) {
+        return 0;
+      }
+      long rank = (long)Math.ceil(count * percentile / 100d);
+      long seen = 0;
+      for (int i = 0; i < counts.length; i++) {
+        seen += counts[i];
+        if (seen >= rank) {
+          return Math.min(upperBoundOf(i), max);
+        }
+      }
+      return max;
+    }
+
+    public Map<String, Object> getStateMap() {
+      Map<String, Object> map = new LinkedHashMap<>();
+      map.put("count", count);
+      map.put("averageMicros", (count > 0) ? TimeUnit.NANOSECONDS.toMicros(sum / count) : 0L);
+      map.put("p50Micros", TimeUnit.NANOSECONDS.toMicros(getValueAtPercentile(50)));
+      map.put("p99Micros", TimeUnit.NANOSECONDS.toMicros(getValueAtPercentile(99)));
+      map.put("p999Micros", TimeUnit.NANOSECONDS.toMicros(getValueAtPercentile(99.9)));
+      map.put("maxMicros", TimeUnit.NANOSECONDS.toMicros(max));
+      return map;
+    }
+  }
+}
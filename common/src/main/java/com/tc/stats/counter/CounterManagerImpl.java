@@ -21,10 +21,14 @@ package com.tc.stats.counter;
 import com.tc.stats.counter.sampled.SampledCounter;
 import com.tc.stats.counter.sampled.SampledCounterImpl;
 
-import java.util.Timer;
+import com.tc.util.concurrent.HashedWheelTimer;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
 
 public class CounterManagerImpl implements CounterManager {
-  private Timer timer    = null;
+  private final Set<SampledCounter> sampledCounters = Collections.newSetFromMap(new IdentityHashMap<>());
   private boolean     shutdown = false;
 
   public CounterManagerImpl() {
@@ -35,9 +39,10 @@ public class CounterManagerImpl implements CounterManager {
   public synchronized void shutdown() {
     if (shutdown) { return; }
     try {
-      if (timer != null) {
-        timer.cancel();
+      for (SampledCounter counter : sampledCounters) {
+        counter.shutdown();
       }
+      sampledCounters.clear();
     } finally {
       shutdown = true;
     }
@@ -51,21 +56,19 @@ public class CounterManagerImpl implements CounterManager {
     Counter counter = config.createCounter();
     if (counter instanceof SampledCounterImpl) {
       SampledCounterImpl sampledCounter = (SampledCounterImpl) counter;
-      if (timer == null) {
-        timer = new Timer("SampledCounterManager Timer", true);
-      }
-      timer.schedule(sampledCounter.getTimerTask(), sampledCounter.getIntervalMillis(), sampledCounter
-          .getIntervalMillis());
+      sampledCounter.start(HashedWheelTimer.getSharedTimer());
+      sampledCounters.add(sampledCounter);
     }
     return counter;
 
   }
 
   @Override
-  public void shutdownCounter(Counter counter) {
+  public synchronized void shutdownCounter(Counter counter) {
     if (counter instanceof SampledCounter) {
       SampledCounter sc = (SampledCounter) counter;
       sc.shutdown();
+      sampledCounters.remove(sc);
     }
   }
 
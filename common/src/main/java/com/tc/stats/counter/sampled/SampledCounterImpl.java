@@ -19,15 +19,18 @@
 package com.tc.stats.counter.sampled;
 
 import com.tc.stats.counter.CounterImpl;
+import com.tc.util.concurrent.Timer;
 
-import java.util.TimerTask;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 
 /**
  * A counter that keeps sampled values
  */
 public class SampledCounterImpl extends CounterImpl implements SampledCounter {
   protected final boolean                                     resetOnSample;
-  private final TimerTask                                     samplerTask;
+  private ScheduledFuture<?>                                  sampler;
+  private boolean                                             shutdown;
   private final long                                          intervalMillis;
   private volatile TimeStampedCounterValue                    mostRecentSample;
   
@@ -37,13 +40,6 @@ public class SampledCounterImpl extends CounterImpl implements SampledCounter {
     this.intervalMillis = config.getIntervalSecs() * 1000;
     this.resetOnSample = config.isResetOnSample();
 
-    this.samplerTask = new TimerTask() {
-      @Override
-      public void run() {
-        recordSample();
-      }
-    };
-    
     recordSample();
   }
 
@@ -52,15 +48,20 @@ public class SampledCounterImpl extends CounterImpl implements SampledCounter {
     return mostRecentSample;
   }
 
-  @Override
-  public void shutdown() {
-    if (samplerTask != null) {
-      samplerTask.cancel();
-    }
+  /**
+   * Starts taking a sample every interval on the given timer.
+   */
+  public synchronized void start(Timer timer) {
+    if (shutdown || sampler != null) { return; }
+    sampler = timer.scheduleWithFixedDelay(this::recordSample, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
   }
 
-  public TimerTask getTimerTask() {
-    return this.samplerTask;
+  @Override
+  public synchronized void shutdown() {
+    shutdown = true;
+    if (sampler != null) {
+      sampler.cancel(false);
+    }
   }
 
   public long getIntervalMillis() {
@@ -22,7 +22,6 @@ package com.tc.util;
 import com.tc.classloader.OverrideService;
 import com.tc.classloader.OverrideServiceType;
 import java.io.IOException;
-import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.LineNumberReader;
 import org.slf4j.Logger;
@@ -31,6 +30,7 @@ import org.slf4j.LoggerFactory;
 import java.net.URL;
 import java.nio.charset.Charset;
 import java.util.AbstractList;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Enumeration;
@@ -91,13 +91,11 @@ public class ManagedServiceLoader {
         } else {
           LOG.debug("reading " + urlString + " for " + interfaceName);
         }
-        InputStream s = x.openStream();
-        LineNumberReader reader = new LineNumberReader(new InputStreamReader(s, Charset.forName("UTF-8")));
-        String split = reader.readLine();
-        while (split != null) {
-          LOG.debug(reader.getLineNumber() + ":processing " + split);
+        List<String> lines = readServiceEntries(x, urlString, interfaceName);
+        for (int line=0;line<lines.size();line++) {
+          String split = lines.get(line);
+          LOG.debug((line + 1) + ":processing " + split);
           String[] trim = split.trim().split("\\#");
-          split = reader.readLine();
           for (int c=0;c<trim.length;c++) {
             trim[c] = trim[c].trim();
           }
@@ -168,6 +166,26 @@ public class ManagedServiceLoader {
     return null;
   }
   
+  /**
+   * Reads the lines of one service configuration file.
+   *
+   * @param resource the META-INF/services resource
+   * @param location the jar or directory the resource was found in
+   * @param interfaceName service interface name being queried
+   * @return the lines of the file
+   */
+  protected List<String> readServiceEntries(URL resource, String location, String interfaceName) throws IOException {
+    List<String> lines = new ArrayList<>();
+    try (LineNumberReader reader = new LineNumberReader(new InputStreamReader(resource.openStream(), Charset.forName("UTF-8")))) {
+      String line = reader.readLine();
+      while (line != null) {
+        lines.add(line);
+        line = reader.readLine();
+      }
+    }
+    return lines;
+  }
+
   private static String parseURLString(URL src, String interfaceName) {
     String urlString = src.toExternalForm();
     if (urlString.startsWith("jar:")) {
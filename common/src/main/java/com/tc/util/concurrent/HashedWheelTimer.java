@@ -0,0 +1,480 @@
+/*
+ *
+ *  The contents of this file are subject to the Terracotta Public License Version
+ *  2.0 (the "License"); You may not use this file except in compliance with the
+ *  License. You may obtain a copy of the License at
+ *
+ *  http://terracotta.org/legal/terracotta-public-license.
+ *
+ *  Software distributed under the License is distributed on an "AS IS" basis,
+ *  WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing rights and limitations under the License.
+ *
+ *  The Covered Software is Terracotta Core.
+ *
+ *  The Initial Developer of the Covered Software is
+ *  Terracotta, Inc., a Software AG company
+ *
+ */
+package com.tc.util.concurrent;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Queue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A {@link Timer} backed by a hashed timing wheel: scheduling and cancelling are O(1) whatever the number of pending
+ * tasks, at the price of firing on tick boundaries (so up to one tick late). Deadlines further out than one turn of the
+ * wheel sit in their bucket for as many rounds as needed.
+ * <p>
+ * The single worker thread of the timer only keeps the deadlines, expired tasks are handed to an executor so a task
+ * that blocks (a socket connect, a lock) delays neither the tick nor the other tasks. Unless one is given the timer
+ * owns a pool of daemon threads, created on demand and shut down with the timer. The worker is started with the first
+ * scheduled task.
+ * <p>
+ * {@link #getSharedTimer()} is the process wide instance meant to replace the one-thread-per-subsystem
+ * {@link java.util.Timer}s, it can't be cancelled. Subsystems whose deadlines must not queue behind anybody else's,
+ * health checking and group handshakes, keep a wheel of their own.
+ */
+public class HashedWheelTimer implements Timer {
+  private static final Logger LOGGER            = LoggerFactory.getLogger(HashedWheelTimer.class);
+
+  public static final long    DEFAULT_TICK_MILLIS = 10;
+  public static final int     DEFAULT_WHEEL_SIZE  = 512;
+
+  // bounds the work done per tick when a burst of tasks gets scheduled
+  private static final int    MAX_TRANSFERS_PER_TICK = 100000;
+
+  private static class SharedTimerHolder {
+    private static final HashedWheelTimer SHARED = new HashedWheelTimer("TC Timer Wheel", DEFAULT_TICK_MILLIS,
+                                                                        TimeUnit.MILLISECONDS, DEFAULT_WHEEL_SIZE, null,
+                                                                        true);
+  }
+
+  public static HashedWheelTimer getSharedTimer() {
+    return SharedTimerHolder.SHARED;
+  }
+
+  private final String                 name;
+  private final long                   tickNanos;
+  private final Bucket[]               wheel;
+  private final int                    mask;
+  private final boolean                shared;
+  private final Executor               executor;
+  private final ExecutorService        ownedExecutor;
+  private final long                   startTime   = System.nanoTime();
+  private final Queue<WheelTask>       scheduled   = new ConcurrentLinkedQueue<>();
+  private final Queue<WheelTask>       cancelled   = new ConcurrentLinkedQueue<>();
+  private final AtomicInteger          pending     = new AtomicInteger();
+  private final AtomicBoolean          started     = new AtomicBoolean();
+  private volatile boolean             terminated;
+  private volatile Thread              worker;
+
+  public HashedWheelTimer(String name) {
+    this(name, DEFAULT_TICK_MILLIS, TimeUnit.MILLISECONDS, DEFAULT_WHEEL_SIZE);
+  }
+
+  /**
+   * @param wheelSize number of buckets, rounded up to a power of two
+   */
+  public HashedWheelTimer(String name, long tickDuration, TimeUnit unit, int wheelSize) {
+    this(name, tickDuration, unit, wheelSize, null, false);
+  }
+
+  /**
+   * @param wheelSize number of buckets, rounded up to a power of two
+   * @param executor runs the expired tasks, it is not shut down by {@link #cancel()}
+   */
+  public HashedWheelTimer(String name, long tickDuration, TimeUnit unit, int wheelSize, Executor executor) {
+    this(name, tickDuration, unit, wheelSize, executor, false);
+  }
+
+  private HashedWheelTimer(String name, long tickDuration, TimeUnit unit, int wheelSize, Executor executor,
+                           boolean shared) {
+    if (tickDuration <= 0) { throw new IllegalArgumentException("tick duration must be positive: " + tickDuration); }
+    if (wheelSize <= 0 || wheelSize > (1 << 30)) { throw new IllegalArgumentException("invalid wheel size: " + wheelSize); }
+    this.name = name;
+    this.tickNanos = Math.max(unit.toNanos(tickDuration), TimeUnit.MILLISECONDS.toNanos(1));
+    int size = Integer.highestOneBit(wheelSize);
+    if (size < wheelSize) {
+      size <<= 1;
+    }
+    this.wheel = new Bucket[size];
+    for (int i = 0; i < size; i++) {
+      this.wheel[i] = new Bucket();
+    }
+    this.mask = size - 1;
+    this.shared = shared;
+    if (executor == null) {
+      ThreadFactory threads = new ThreadFactoryBuilder().setNameFormat(name + " Task-%d").setDaemon(true).build();
+      this.ownedExecutor = new ThreadPoolExecutor(0, Integer.MAX_VALUE, 60, TimeUnit.SECONDS,
+                                                  new SynchronousQueue<Runnable>(), threads);
+      this.executor = this.ownedExecutor;
+    } else {
+      this.ownedExecutor = null;
+      this.executor = executor;
+    }
+  }
+
+  @Override
+  public ScheduledFuture<?> schedule(Runnable command, long delay, TimeUnit unit) {
+    return add(new WheelTask(command, deadline(delay, unit), 0));
+  }
+
+  @Override
+  public ScheduledFuture<?> scheduleAtFixedRate(Runnable command, long initialDelay, long period, TimeUnit unit) {
+    if (period <= 0) { throw new IllegalArgumentException("period must be positive: " + period); }
+    return add(new WheelTask(command, deadline(initialDelay, unit), unit.toNanos(period)));
+  }
+
+  @Override
+  public ScheduledFuture<?> scheduleWithFixedDelay(Runnable command, long initialDelay, long delay, TimeUnit unit) {
+    if (delay <= 0) { throw new IllegalArgumentException("delay must be positive: " + delay); }
+    // a negative period means fixed delay, as in ScheduledThreadPoolExecutor
+    return add(new WheelTask(command, deadline(initialDelay, unit), -unit.toNanos(delay)));
+  }
+
+  @Override
+  public void execute(Runnable command) {
+    schedule(command, 0, TimeUnit.NANOSECONDS);
+  }
+
+  /**
+   * Stops the worker and cancels every pending task, tasks already handed to the executor finish. Ignored on the shared
+   * timer.
+   */
+  @Override
+  public void cancel() {
+    if (shared) {
+      LOGGER.warn("Ignoring attempt to cancel the shared timer", new Exception("cancel"));
+      return;
+    }
+    terminated = true;
+    Thread thread = worker;
+    if (thread != null) {
+      thread.interrupt();
+    }
+  }
+
+  /**
+   * @return the number of tasks scheduled and not yet completed or cancelled, periodic tasks included
+   */
+  public int getPendingCount() {
+    return pending.get();
+  }
+
+  @Override
+  public String toString() {
+    return "HashedWheelTimer[" + name + ", pending=" + pending.get() + "]";
+  }
+
+  private WheelTask add(WheelTask task) {
+    if (terminated) { throw new RejectedExecutionException(name + " is cancelled"); }
+    if (started.compareAndSet(false, true)) {
+      Thread thread = new Thread(this::runWorker, name);
+      thread.setDaemon(true);
+      worker = thread;
+      thread.start();
+    }
+    pending.incrementAndGet();
+    scheduled.add(task);
+    if (terminated) {
+      // lost the race with cancel(), the worker may have drained already
+      task.cancel(false);
+    }
+    return task;
+  }
+
+  private long now() {
+    return System.nanoTime() - startTime;
+  }
+
+  private long deadline(long delay, TimeUnit unit) {
+    long now = now();
+    long nanos = Math.max(0, unit.toNanos(delay));
+    return nanos > Long.MAX_VALUE - now ? Long.MAX_VALUE : now + nanos;
+  }
+
+  private void runWorker() {
+    long tick = now() / tickNanos;
+    while (true) {
+      long current = waitForTick(tick);
+      if (current < 0) {
+        break;
+      }
+      removeCancelled();
+      transferScheduled(tick);
+      wheel[(int) (tick & mask)].expire(current, this);
+      tick++;
+    }
+
+    for (Bucket bucket : wheel) {
+      bucket.cancelAll();
+    }
+    for (WheelTask task = scheduled.poll(); task != null; task = scheduled.poll()) {
+      task.cancel(false);
+    }
+    if (ownedExecutor != null) {
+      ownedExecutor.shutdown();
+    }
+  }
+
+  private void dispatch(WheelTask task) {
+    try {
+      executor.execute(task::fire);
+    } catch (RejectedExecutionException e) {
+      LOGGER.warn("Executor of " + name + " rejected " + task + ", cancelling it", e);
+      task.cancel(false);
+    }
+  }
+
+  /**
+   * @return the current time relative to the start of the timer, or -1 once cancelled
+   */
+  private long waitForTick(long tick) {
+    long deadline = tickNanos * (tick + 1);
+    while (true) {
+      if (terminated) { return -1; }
+      long current = now();
+      long sleepMillis = (deadline - current + 999999) / 1000000;
+      if (sleepMillis <= 0) { return current; }
+      try {
+        Thread.sleep(sleepMillis);
+      } catch (InterruptedException e) {
+        // cancel() interrupts us, otherwise keep ticking
+      }
+    }
+  }
+
+  private void removeCancelled() {
+    for (WheelTask task = cancelled.poll(); task != null; task = cancelled.poll()) {
+      if (task.bucket != null) {
+        task.bucket.remove(task);
+      }
+    }
+  }
+
+  private void transferScheduled(long tick) {
+    for (int i = 0; i < MAX_TRANSFERS_PER_TICK; i++) {
+      WheelTask task = scheduled.poll();
+      if (task == null) {
+        break;
+      }
+      if (task.isCancelled()) {
+        continue;
+      }
+      long calculated = task.deadline / tickNanos;
+      task.remainingRounds = (calculated - tick) / wheel.length;
+      wheel[(int) (Math.max(calculated, tick) & mask)].add(task);
+    }
+  }
+
+  /**
+   * Tasks of one wheel slot, in a doubly linked list so removal is O(1). Only touched by the worker thread.
+   */
+  private static final class Bucket {
+    private WheelTask head;
+    private WheelTask tail;
+
+    void add(WheelTask task) {
+      task.bucket = this;
+      if (head == null) {
+        head = tail = task;
+      } else {
+        tail.next = task;
+        task.prev = tail;
+        tail = task;
+      }
+    }
+
+    void remove(WheelTask task) {
+      WheelTask next = task.next;
+      if (task.prev != null) {
+        task.prev.next = next;
+      }
+      if (task.next != null) {
+        task.next.prev = task.prev;
+      }
+      if (task == head) {
+        head = next;
+      }
+      if (task == tail) {
+        tail = task.prev;
+      }
+      task.prev = null;
+      task.next = null;
+      task.bucket = null;
+    }
+
+    void expire(long current, HashedWheelTimer timer) {
+      WheelTask task = head;
+      while (task != null) {
+        WheelTask next = task.next;
+        if (task.isCancelled()) {
+          remove(task);
+        } else if (task.remainingRounds <= 0 && task.deadline <= current) {
+          remove(task);
+          timer.dispatch(task);
+        } else {
+          task.remainingRounds--;
+        }
+        task = next;
+      }
+    }
+
+    void cancelAll() {
+      while (head != null) {
+        WheelTask task = head;
+        remove(task);
+        task.cancel(false);
+      }
+    }
+  }
+
+  private final class WheelTask implements ScheduledFuture<Object> {
+    private static final int WAITING   = 0;
+    private static final int RUNNING   = 1;
+    private static final int DONE      = 2;
+    private static final int FAILED    = 3;
+    private static final int CANCELLED = 4;
+
+    private final Runnable       command;
+    private final long           period;
+    private final AtomicInteger  state = new AtomicInteger(WAITING);
+    private volatile long        deadline;
+    private volatile Throwable   failure;
+
+    // owned by the worker thread
+    private long                 remainingRounds;
+    private Bucket               bucket;
+    private WheelTask            prev;
+    private WheelTask            next;
+
+    WheelTask(Runnable command, long deadline, long period) {
+      if (command == null) { throw new NullPointerException("command"); }
+      this.command = command;
+      this.deadline = deadline;
+      this.period = period;
+    }
+
+    void fire() {
+      if (!state.compareAndSet(WAITING, RUNNING)) { return; }
+      try {
+        command.run();
+      } catch (Throwable t) {
+        LOGGER.error("Exception running " + command + " on " + name + ", it won't run again", t);
+        failure = t;
+        complete(RUNNING, FAILED);
+        return;
+      }
+      if (period == 0) {
+        complete(RUNNING, DONE);
+        return;
+      }
+      deadline = period > 0 ? deadline + period : now() - period;
+      if (state.compareAndSet(RUNNING, WAITING)) {
+        scheduled.add(this);
+        if (terminated) {
+          // the timer was cancelled while the task ran, the worker won't see it again
+          cancel(false);
+        }
+      }
+    }
+
+    private boolean complete(int expect, int update) {
+      if (state.compareAndSet(expect, update)) {
+        pending.decrementAndGet();
+        synchronized (this) {
+          notifyAll();
+        }
+        return true;
+      }
+      return false;
+    }
+
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+      while (true) {
+        int current = state.get();
+        if (current != WAITING && current != RUNNING) { return false; }
+        if (complete(current, CANCELLED)) {
+          if (current == WAITING) {
+            cancelled.add(this);
+          }
+          return true;
+        }
+      }
+    }
+
+    @Override
+    public boolean isCancelled() {
+      return state.get() == CANCELLED;
+    }
+
+    @Override
+    public boolean isDone() {
+      return state.get() > RUNNING;
+    }
+
+    @Override
+    public Object get() throws InterruptedException, ExecutionException {
+      synchronized (this) {
+        while (!isDone()) {
+          wait();
+        }
+      }
+      return report();
+    }
+
+    @Override
+    public Object get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+      long end = System.nanoTime() + unit.toNanos(timeout);
+      synchronized (this) {
+        while (!isDone()) {
+          long remaining = end - System.nanoTime();
+          if (remaining <= 0) { throw new TimeoutException(); }
+          TimeUnit.NANOSECONDS.timedWait(this, remaining);
+        }
+      }
+      return report();
+    }
+
+    private Object report() throws ExecutionException {
+      int current = state.get();
+      if (current == CANCELLED) { throw new CancellationException(); }
+      if (current == FAILED) { throw new ExecutionException(failure); }
+      return null;
+    }
+
+    @Override
+    public long getDelay(TimeUnit unit) {
+      return unit.convert(deadline - now(), TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public int compareTo(Delayed other) {
+      return Long.compare(getDelay(TimeUnit.NANOSECONDS), other.getDelay(TimeUnit.NANOSECONDS));
+    }
+
+    @Override
+    public String toString() {
+      return "WheelTask[" + command + ", delay=" + getDelay(TimeUnit.MILLISECONDS) + "ms, period=" + period + "ns]";
+    }
+  }
+}
@@ -18,13 +18,27 @@
  */
 package com.tc.util.concurrent;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.LinkedBlockingQueue;
 import com.tc.async.impl.Event;
+import com.tc.properties.TCProperties;
+import com.tc.properties.TCPropertiesImpl;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.SynchronousQueue;
 
 public class QueueFactory {
+  private static final Logger LOGGER = LoggerFactory.getLogger(QueueFactory.class);
+
+  /**
+   * tc.properties value of {@code seda.<stage>.queue} selecting {@link RingBufferBlockingQueue}.  The wait strategy
+   * is read from {@code seda.<stage>.queue.wait} (spin, yield or park) and the size of the preallocated ring for an
+   * otherwise unbounded stage from {@code seda.<stage>.queue.size}.
+   */
+  public static final String RING_BUFFER = "ringbuffer";
+  public static final int DEFAULT_RING_BUFFER_SIZE = 16 * 1024;
 
   public <E> BlockingQueue<Event> createInstance(Class<E> type) {
     return new LinkedBlockingQueue<>();
@@ -35,4 +49,20 @@ public class QueueFactory {
             (capacity < 256) ? new ArrayBlockingQueue<>(capacity) :
             new LinkedBlockingQueue<>(capacity);
   }
+
+  public <E> BlockingQueue<Event> createInstance(String stage, Class<E> type, int capacity) {
+    TCProperties props = TCPropertiesImpl.getProperties();
+    String queue = props.getProperty("seda." + stage + ".queue", true);
+    if (RING_BUFFER.equalsIgnoreCase(queue) && capacity > 0) {
+      WaitStrategy wait = WaitStrategy.parse(props.getProperty("seda." + stage + ".queue.wait", true), WaitStrategy.PARK);
+      int size = capacity;
+      if (capacity == Integer.MAX_VALUE) {
+        // a ring is preallocated so an unbounded stage gets a bound, and its producers block once it fills
+        size = props.getInt("seda." + stage + ".queue.size", DEFAULT_RING_BUFFER_SIZE);
+        LOGGER.warn("stage {} is unbounded but uses a ring buffer, it is bounded to {} events (seda.{}.queue.size)", stage, size, stage);
+      }
+      return new RingBufferBlockingQueue<>(size, wait);
+    }
+    return createInstance(type, capacity);
+  }
 }
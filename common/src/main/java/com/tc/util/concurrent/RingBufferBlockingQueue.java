@@ -0,0 +1,352 @@
+/*
+ *
+ *  The contents of this file are subject to the Terracotta Public License Version
+ *  2.0 (the "License"); You may not use this file except in compliance with the
+ *  License. You may obtain a copy of the License at
+ *
+ *  http://terracotta.org/legal/terracotta-public-license.
+ *
+ *  Software distributed under the License is distributed on an "AS IS" basis,
+ *  WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing rights and limitations under the License.
+ *
+ *  The Covered Software is Terracotta Core.
+ *
+ *  The Initial Developer of the Covered Software is
+ *  Terracotta, Inc., a Software AG company
+ *
+ */
+package com.tc.util.concurrent;
+
+import java.util.AbstractQueue;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A preallocated, lock-free, bounded ring buffer queue.
+ * <p>
+ * Any number of threads may offer.  The queue is tuned for a single consumer (one SEDA worker thread per source queue)
+ * but every slot carries its own sequence number so the occasional poll from a second thread (a stage {@code clear()}
+ * for instance) stays safe.  Nothing is allocated on the put/poll path.
+ * <p>
+ * Blocked threads first run the configured {@link WaitStrategy} and then park.  A parked consumer is unparked by the
+ * next producer so an idle stage does not burn a core, and a parked producer by the poll that frees a slot so a full
+ * stage resumes as soon as its worker catches up.
+ * <p>
+ * The iterator is a weakly consistent snapshot and does not support removal.
+ */
+public class RingBufferBlockingQueue<E> extends AbstractQueue<E> implements BlockingQueue<E> {
+
+  private static final long    CONTENDED_CONSUMER_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+
+  private final Object[]       buffer;
+  private final AtomicLongArray sequences;
+  private final int            mask;
+  private final int            capacity;
+  private final WaitStrategy   waitStrategy;
+
+  private final AtomicLong     head = new AtomicLong();
+  private final AtomicLong     tail = new AtomicLong();
+  private final AtomicReference<Thread> waitingConsumer = new AtomicReference<>();
+  private final Queue<Thread>  waitingProducers = new ConcurrentLinkedQueue<>();
+
+  public RingBufferBlockingQueue(int capacity) {
+    this(capacity, WaitStrategy.PARK);
+  }
+
+  /**
+   * @param capacity requested capacity, rounded up to the next power of two
+   * @param waitStrategy how blocked threads wait before falling back to parking
+   */
+  public RingBufferBlockingQueue(int capacity, WaitStrategy waitStrategy) {
+    if (capacity <= 0 || capacity > (1 << 30)) {
+      throw new IllegalArgumentException("invalid ring buffer capacity " + capacity);
+    }
+    int size = Integer.highestOneBit(capacity);
+    if (size < capacity) {
+      size <<= 1;
+    }
+    this.capacity = size;
+    this.mask = size - 1;
+    this.buffer = new Object[size];
+    this.sequences = new AtomicLongArray(size);
+    for (int i = 0; i < size; i++) {
+      this.sequences.set(i, i);
+    }
+    this.waitStrategy = waitStrategy;
+  }
+
+  public int capacity() {
+    return capacity;
+  }
+
+  public WaitStrategy getWaitStrategy() {
+    return waitStrategy;
+  }
+
+  @Override
+  public boolean offer(E e) {
+    if (e == null) {
+      throw new NullPointerException();
+    }
+    long pos = tail.get();
+    while (true) {
+      int index = (int) pos & mask;
+      long dif = sequences.get(index) - pos;
+      if (dif == 0) {
+        if (tail.compareAndSet(pos, pos + 1)) {
+          buffer[index] = e;
+          sequences.lazySet(index, pos + 1);
+          signalConsumer();
+          return true;
+        }
+        pos = tail.get();
+      } else if (dif < 0) {
+        return false;
+      } else {
+        pos = tail.get();
+      }
+    }
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public E poll() {
+    long pos = head.get();
+    while (true) {
+      int index = (int) pos & mask;
+      long dif = sequences.get(index) - (pos + 1);
+      if (dif == 0) {
+        if (head.compareAndSet(pos, pos + 1)) {
+          E e = (E) buffer[index];
+          buffer[index] = null;
+          sequences.lazySet(index, pos + capacity);
+          signalProducer();
+          return e;
+        }
+        pos = head.get();
+      } else if (dif < 0) {
+        return null;
+      } else {
+        pos = head.get();
+      }
+    }
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public E peek() {
+    long pos = head.get();
+    int index = (int) pos & mask;
+    if (sequences.get(index) - (pos + 1) == 0) {
+      return (E) buffer[index];
+    }
+    return null;
+  }
+
+  @Override
+  public void put(E e) throws InterruptedException {
+    int round = 0;
+    while (!offer(e)) {
+      if (Thread.interrupted()) {
+        throw new InterruptedException();
+      }
+      if (!waitStrategy.idle(round++)) {
+        awaitNotFull(0L);
+      }
+    }
+  }
+
+  @Override
+  public boolean offer(E e, long timeout, TimeUnit unit) throws InterruptedException {
+    final long deadline = System.nanoTime() + unit.toNanos(timeout);
+    int round = 0;
+    while (!offer(e)) {
+      if (Thread.interrupted()) {
+        throw new InterruptedException();
+      }
+      long remaining = deadline - System.nanoTime();
+      if (remaining <= 0) {
+        return false;
+      }
+      if (!waitStrategy.idle(round++)) {
+        awaitNotFull(remaining);
+      }
+    }
+    return true;
+  }
+
+  @Override
+  public E take() throws InterruptedException {
+    E e;
+    int round = 0;
+    while ((e = poll()) == null) {
+      if (Thread.interrupted()) {
+        throw new InterruptedException();
+      }
+      if (!waitStrategy.idle(round++)) {
+        awaitNotEmpty(0L);
+      }
+    }
+    return e;
+  }
+
+  @Override
+  public E poll(long timeout, TimeUnit unit) throws InterruptedException {
+    E e = poll();
+    if (e != null || timeout <= 0) {
+      return e;
+    }
+    final long deadline = System.nanoTime() + unit.toNanos(timeout);
+    int round = 0;
+    while ((e = poll()) == null) {
+      if (Thread.interrupted()) {
+        throw new InterruptedException();
+      }
+      long remaining = deadline - System.nanoTime();
+      if (remaining <= 0) {
+        return null;
+      }
+      if (!waitStrategy.idle(round++)) {
+        awaitNotEmpty(remaining);
+      }
+    }
+    return e;
+  }
+
+  /**
+   * Parks the calling consumer until a producer signals or the timeout expires (zero means no timeout).  Producers
+   * advance {@code tail} before reading {@code waitingConsumer} and the consumer publishes itself before reading
+   * {@code tail}, so one side always sees the other.
+   */
+  private void awaitNotEmpty(long nanos) {
+    Thread me = Thread.currentThread();
+    if (waitingConsumer.compareAndSet(null, me)) {
+      try {
+        if (tail.get() == head.get()) {
+          if (nanos > 0) {
+            LockSupport.parkNanos(this, nanos);
+          } else {
+            LockSupport.park(this);
+          }
+        }
+      } finally {
+        waitingConsumer.compareAndSet(me, null);
+      }
+    } else {
+      // another thread is already registered as the consumer, back off briefly
+      LockSupport.parkNanos(this, nanos > 0 ? Math.min(nanos, CONTENDED_CONSUMER_PARK_NANOS) : CONTENDED_CONSUMER_PARK_NANOS);
+    }
+  }
+
+  private void signalConsumer() {
+    Thread waiter = waitingConsumer.get();
+    if (waiter != null) {
+      LockSupport.unpark(waiter);
+    }
+  }
+
+  /**
+   * Parks the calling producer until a poll frees a slot or the timeout expires (zero means no timeout).  The consumer
+   * advances {@code head} before taking a waiter off {@code waitingProducers} and the producer registers before
+   * reading {@code head}, so a producer never parks on a slot which was freed without waking it.
+   */
+  private void awaitNotFull(long nanos) {
+    Thread me = Thread.currentThread();
+    waitingProducers.add(me);
+    try {
+      if (tail.get() - head.get() >= capacity) {
+        if (nanos > 0) {
+          LockSupport.parkNanos(this, nanos);
+        } else {
+          LockSupport.park(this);
+        }
+      }
+    } finally {
+      waitingProducers.remove(me);
+    }
+  }
+
+  /**
+   * Wakes one parked producer per freed slot.
+   */
+  private void signalProducer() {
+    Thread waiter = waitingProducers.poll();
+    if (waiter != null) {
+      LockSupport.unpark(waiter);
+    }
+  }
+
+  @Override
+  public int size() {
+    // read head first so a concurrent poll can only make the result smaller than tail - head
+    long h = head.get();
+    long t = tail.get();
+    long size = t - h;
+    if (size < 0) {
+      return 0;
+    }
+    return (int) Math.min(size, capacity);
+  }
+
+  @Override
+  public boolean isEmpty() {
+    return tail.get() == head.get();
+  }
+
+  @Override
+  public int remainingCapacity() {
+    return capacity - size();
+  }
+
+  @Override
+  public int drainTo(Collection<? super E> c) {
+    return drainTo(c, Integer.MAX_VALUE);
+  }
+
+  @Override
+  public int drainTo(Collection<? super E> c, int maxElements) {
+    if (c == this) {
+      throw new IllegalArgumentException();
+    }
+    int count = 0;
+    E e;
+    while (count < maxElements && (e = poll()) != null) {
+      c.add(e);
+      count++;
+    }
+    return count;
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public Iterator<E> iterator() {
+    List<E> snapshot = new ArrayList<>();
+    long h = head.get();
+    long t = tail.get();
+    for (long pos = h; pos < t; pos++) {
+      int index = (int) pos & mask;
+      Object o = buffer[index];
+      if (o != null) {
+        snapshot.add((E) o);
+      }
+    }
+    return Collections.unmodifiableList(snapshot).iterator();
+  }
+
+  @Override
+  public String toString() {
+    return "RingBufferBlockingQueue{capacity=" + capacity + ", size=" + size() + ", wait=" + waitStrategy + '}';
+  }
+}
@@ -0,0 +1,420 @@
+/*
+ *
+ *  The contents of this file are subject to the Terracotta Public License Version
+ *  2.0 (the "License"); You may not use this file except in compliance with the
+ *  License. You may obtain a copy of the License at
+ *
+ *  http://terracotta.org/legal/terracotta-public-license.
+ *
+ *  Software distributed under the License is distributed on an "AS IS" basis,
+ *  WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing rights and limitations under the License.
+ *
+ *  The Covered Software is Terracotta Core.
+ *
+ *  The Initial Developer of the Covered Software is
+ *  Terracotta, Inc., a Software AG company
+ *
+ */
+package com.tc.util.concurrent;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.LongBinaryOperator;
+
+/**
+ * A concurrent map from primitive <code>long</code> keys to objects for the transaction and activity indexed state on
+ * the invoke path, where a {@link java.util.concurrent.ConcurrentHashMap} boxes and hashes a key wrapper and allocates
+ * a node on every put.
+ * <p>
+ * Keys are spread over a fixed number of stripes, each an open addressing (linear probing) table held in a pair of
+ * parallel <code>long[]</code> and <code>Object[]</code> arrays, so entries cost no allocation outside of a resize.
+ * Writes lock their stripe.  Reads probe the table optimistically without locking and only fall back to the stripe's
+ * read lock if a write to the same stripe overlapped them.  Removal shifts the following entries back rather than
+ * leaving tombstones so probe chains stay short however much the map churns.
+ * <p>
+ * <code>null</code> values are not allowed.  Iteration ({@link #forEach}, {@link #values}) works on a per stripe
+ * snapshot, so the callback may modify the map, and is weakly consistent across stripes.
+ */
+public class TCConcurrentLongMap<V> {
+
+  static final int          DEFAULT_STRIPES          = 16;
+  static final int          DEFAULT_INITIAL_CAPACITY = 16;
+  static final int          MAX_STRIPES              = 1 << 16;
+  static final int          MAXIMUM_CAPACITY         = 1 << 30;
+
+  private final Stripe<V>[] stripes;
+  private final int         stripeShift;
+
+  public interface EntryConsumer<V> {
+    void accept(long key, V value);
+  }
+
+  public TCConcurrentLongMap() {
+    this(DEFAULT_INITIAL_CAPACITY, DEFAULT_STRIPES);
+  }
+
+  /**
+   * @param initialCapacity how many entries the map should hold before any stripe has to grow
+   * @param concurrencyLevel the number of stripes writes are spread over, rounded up to a power of two
+   */
+  @SuppressWarnings("unchecked")
+  public TCConcurrentLongMap(int initialCapacity, int concurrencyLevel) {
+    if (initialCapacity < 0 || concurrencyLevel <= 0) {
+      throw new IllegalArgumentException("initialCapacity : " + initialCapacity + " concurrencyLevel : " + concurrencyLevel);
+    }
+    int stripeCount = powerOfTwoAtLeast(Math.min(concurrencyLevel, MAX_STRIPES));
+    this.stripeShift = 32 - Integer.numberOfTrailingZeros(stripeCount);
+    int perStripe = (int) Math.min(MAXIMUM_CAPACITY, (long) Math.ceil(initialCapacity / (double) stripeCount / Stripe.LOAD_FACTOR));
+    this.stripes = new Stripe[stripeCount];
+    for (int i = 0; i < stripeCount; i++) {
+      this.stripes[i] = new Stripe<>(Math.max(2, powerOfTwoAtLeast(perStripe)));
+    }
+  }
+
+  public V get(long key) {
+    int hash = hash(key);
+    return stripeFor(hash).get(key, hash);
+  }
+
+  public boolean containsKey(long key) {
+    return get(key) != null;
+  }
+
+  /**
+   * @return the previous value for the key, null if there was none
+   */
+  public V put(long key, V value) {
+    checkValue(value);
+    int hash = hash(key);
+    return stripeFor(hash).put(key, hash, value, false);
+  }
+
+  /**
+   * @return the current value for the key, null if there was none and the given value was added
+   */
+  public V putIfAbsent(long key, V value) {
+    checkValue(value);
+    int hash = hash(key);
+    return stripeFor(hash).put(key, hash, value, true);
+  }
+
+  /**
+   * @return the removed value, null if the key was not present
+   */
+  public V remove(long key) {
+    int hash = hash(key);
+    return stripeFor(hash).remove(key, hash, null);
+  }
+
+  /**
+   * Removes the key only if it is currently mapped to the given value (by identity or equality).
+   */
+  public boolean remove(long key, V value) {
+    checkValue(value);
+    int hash = hash(key);
+    return stripeFor(hash).remove(key, hash, value) != null;
+  }
+
+  public int size() {
+    long size = 0;
+    for (Stripe<V> stripe : stripes) {
+      size += stripe.size;
+    }
+    return (int) Math.min(Integer.MAX_VALUE, size);
+  }
+
+  public boolean isEmpty() {
+    for (Stripe<V> stripe : stripes) {
+      if (stripe.size != 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  public void clear() {
+    for (Stripe<V> stripe : stripes) {
+      stripe.clear();
+    }
+  }
+
+  /**
+   * Folds every key into <code>identity</code> with the given operator, e.g. <code>reduceKeys(x, Math::min)</code> for
+   * the smallest key at or below x.  Each stripe is folded atomically and without allocating, so a key present for the
+   * whole call is always included.  The operator may be applied more than once to the same key so it must be
+   * idempotent, like min or max.
+   */
+  public long reduceKeys(long identity, LongBinaryOperator op) {
+    long result = identity;
+    for (Stripe<V> stripe : stripes) {
+      result = stripe.reduceKeys(result, op);
+    }
+    return result;
+  }
+
+  public void forEach(EntryConsumer<? super V> action) {
+    for (Stripe<V> stripe : stripes) {
+      stripe.forEach(action);
+    }
+  }
+
+  /**
+   * @return a snapshot of the values
+   */
+  public List<V> values() {
+    List<V> values = new ArrayList<>(size());
+    forEach((key, value) -> values.add(value));
+    return values;
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder sb = new StringBuilder("{");
+    forEach((key, value) -> {
+      if (sb.length() > 1) {
+        sb.append(", ");
+      }
+      sb.append(key).append('=').append(value);
+    });
+    return sb.append('}').toString();
+  }
+
+  private Stripe<V> stripeFor(int hash) {
+    // the top bits pick the stripe, the bottom bits the slot inside it
+    return stripes[stripeShift == 32 ? 0 : hash >>> stripeShift];
+  }
+
+  static int hash(long key) {
+    long h = key * 0x9E3779B97F4A7C15L;
+    return (int) (h ^ (h >>> 32));
+  }
+
+  private static int powerOfTwoAtLeast(int value) {
+    return value <= 1 ? 1 : Integer.highestOneBit(value - 1) << 1;
+  }
+
+  private static void checkValue(Object value) {
+    if (value == null) {
+      throw new NullPointerException();
+    }
+  }
+
+  private static final class Table {
+    private final long[]   keys;
+    // null marks a free slot
+    private final Object[] values;
+
+    private Table(int capacity) {
+      this.keys = new long[capacity];
+      this.values = new Object[capacity];
+    }
+  }
+
+  @SuppressWarnings("serial")
+  private static final class Stripe<V> extends StampedLock {
+    private static final float LOAD_FACTOR = 0.75f;
+
+    // replaced, never resized in place, so an optimistic reader always sees arrays of matching length
+    private Table              table;
+    private volatile int       size;
+    private int                resizeThreshold;
+
+    private Stripe(int capacity) {
+      this.table = new Table(capacity);
+      this.resizeThreshold = (int) (capacity * LOAD_FACTOR);
+    }
+
+    V get(long key, int hash) {
+      long stamp = tryOptimisticRead();
+      V value = find(key, hash);
+      if (!validate(stamp)) {
+        stamp = readLock();
+        try {
+          value = find(key, hash);
+        } finally {
+          unlockRead(stamp);
+        }
+      }
+      return value;
+    }
+
+    @SuppressWarnings("unchecked")
+    private V find(long key, int hash) {
+      Table t = this.table;
+      Object[] values = t.values;
+      long[] keys = t.keys;
+      int mask = values.length - 1;
+      // bounded so that a probe racing a writer can not spin, validation throws the answer away anyway
+      for (int i = hash & mask, probes = 0; probes <= mask; i = (i + 1) & mask, probes++) {
+        Object value = values[i];
+        if (value == null) {
+          return null;
+        }
+        if (keys[i] == key) {
+          return (V) value;
+        }
+      }
+      return null;
+    }
+
+    @SuppressWarnings("unchecked")
+    V put(long key, int hash, V value, boolean onlyIfAbsent) {
+      long stamp = writeLock();
+      try {
+        Table t = this.table;
+        int mask = t.values.length - 1;
+        for (int i = hash & mask;; i = (i + 1) & mask) {
+          Object current = t.values[i];
+          if (current == null) {
+            t.keys[i] = key;
+            t.values[i] = value;
+            if (++size > resizeThreshold) {
+              resize();
+            }
+            return null;
+          }
+          if (t.keys[i] == key) {
+            if (!onlyIfAbsent) {
+              t.values[i] = value;
+            }
+            return (V) current;
+          }
+        }
+      } finally {
+        unlockWrite(stamp);
+      }
+    }
+
+    /**
+     * @param expected the value the key must map to, or null to remove whatever it maps to
+     */
+    @SuppressWarnings("unchecked")
+    V remove(long key, int hash, Object expected) {
+      long stamp = writeLock();
+      try {
+        Table t = this.table;
+        int mask = t.values.length - 1;
+        for (int i = hash & mask;; i = (i + 1) & mask) {
+          Object current = t.values[i];
+          if (current == null) {
+            return null;
+          }
+          if (t.keys[i] == key) {
+            if (expected != null && expected != current && !expected.equals(current)) {
+              return null;
+            }
+            removeAt(t, i);
+            return (V) current;
+          }
+        }
+      } finally {
+        unlockWrite(stamp);
+      }
+    }
+
+    private void removeAt(Table t, int slot) {
+      int mask = t.values.length - 1;
+      int gap = slot;
+      // shift back every following entry of the run whose home slot does not lie between the gap and itself
+      for (int i = (slot + 1) & mask; t.values[i] != null; i = (i + 1) & mask) {
+        int home = hash(t.keys[i]) & mask;
+        if (((i - home) & mask) >= ((i - gap) & mask)) {
+          t.keys[gap] = t.keys[i];
+          t.values[gap] = t.values[i];
+          gap = i;
+        }
+      }
+      t.values[gap] = null;
+      size -= 1;
+    }
+
+    private void resize() {
+      Table old = this.table;
+      if (old.values.length >= MAXIMUM_CAPACITY) {
+        // can't grow, keep probing a fuller table
+        resizeThreshold = Integer.MAX_VALUE;
+        return;
+      }
+      Table grown = new Table(old.values.length << 1);
+      int mask = grown.values.length - 1;
+      for (int i = 0; i < old.values.length; i++) {
+        Object value = old.values[i];
+        if (value != null) {
+          long key = old.keys[i];
+          int slot = hash(key) & mask;
+          while (grown.values[slot] != null) {
+            slot = (slot + 1) & mask;
+          }
+          grown.keys[slot] = key;
+          grown.values[slot] = value;
+        }
+      }
+      this.table = grown;
+      this.resizeThreshold = (int) (grown.values.length * LOAD_FACTOR);
+    }
+
+    void clear() {
+      long stamp = writeLock();
+      try {
+        Arrays.fill(this.table.values, null);
+        size = 0;
+      } finally {
+        unlockWrite(stamp);
+      }
+    }
+
+    long reduceKeys(long identity, LongBinaryOperator op) {
+      long stamp = tryOptimisticRead();
+      long result = fold(identity, op);
+      if (!validate(stamp)) {
+        stamp = readLock();
+        try {
+          result = fold(identity, op);
+        } finally {
+          unlockRead(stamp);
+        }
+      }
+      return result;
+    }
+
+    private long fold(long identity, LongBinaryOperator op) {
+      Table t = this.table;
+      long result = identity;
+      for (int i = 0; i < t.values.length; i++) {
+        if (t.values[i] != null) {
+          result = op.applyAsLong(result, t.keys[i]);
+        }
+      }
+      return result;
+    }
+
+    @SuppressWarnings("unchecked")
+    void forEach(EntryConsumer<? super V> action) {
+      long[] keys;
+      Object[] values;
+      int count = 0;
+      // copy out under the read lock so the action runs unlocked and is free to write to the map
+      long stamp = readLock();
+      try {
+        Table t = this.table;
+        keys = new long[size];
+        values = new Object[keys.length];
+        for (int i = 0; i < t.values.length; i++) {
+          if (t.values[i] != null) {
+            keys[count] = t.keys[i];
+            values[count] = t.values[i];
+            count += 1;
+          }
+        }
+      } finally {
+        unlockRead(stamp);
+      }
+      for (int i = 0; i < count; i++) {
+        action.accept(keys[i], (V) values[i]);
+      }
+    }
+  }
+}
@@ -0,0 +1,74 @@
+/*
+ *
+ *  The contents of this file are subject to the Terracotta Public License Version
+ *  2.0 (the "License"); You may not use this file except in compliance with the
+ *  License. You may obtain a copy of the License at
+ *
+ *  http://terracotta.org/legal/terracotta-public-license.
+ *
+ *  Software distributed under the License is distributed on an "AS IS" basis,
+ *  WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing rights and limitations under the License.
+ *
+ *  The Covered Software is Terracotta Core.
+ *
+ *  The Initial Developer of the Covered Software is
+ *  Terracotta, Inc., a Software AG company
+ *
+ */
+package com.tc.util.concurrent;
+
+/**
+ * How a thread waits on a {@link RingBufferBlockingQueue} before it gives up and parks.
+ */
+public enum WaitStrategy {
+  /**
+   * Busy spin for a while.  Lowest hand-off latency, costs a core while waiting.
+   */
+  SPIN {
+    @Override
+    boolean idle(int round) {
+      return round < 10_000;
+    }
+  },
+  /**
+   * Yield the processor for a while.
+   */
+  YIELD {
+    @Override
+    boolean idle(int round) {
+      if (round < 100) {
+        Thread.yield();
+        return true;
+      }
+      return false;
+    }
+  },
+  /**
+   * Park straight away.
+   */
+  PARK {
+    @Override
+    boolean idle(int round) {
+      return false;
+    }
+  };
+
+  /**
+   * @param round number of times the caller has already waited
+   * @return false if the caller should now park
+   */
+  abstract boolean idle(int round);
+
+  public static WaitStrategy parse(String name, WaitStrategy defaultValue) {
+    if (name == null) {
+      return defaultValue;
+    }
+    for (WaitStrategy w : values()) {
+      if (w.name().equalsIgnoreCase(name.trim())) {
+        return w;
+      }
+    }
+    return defaultValue;
+  }
+}
@@ -39,10 +39,13 @@ import java.util.Queue;
 import java.util.Random;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertThat;
@@ -87,11 +90,11 @@ public class MultiStageQueueImplTest {
     final List<BlockingQueue<Object>> cxts = new ArrayList<BlockingQueue<Object>>();
 
     QueueFactory context = mock(QueueFactory.class);
-    when(context.createInstance(Matchers.any(), Matchers.anyInt())).thenAnswer(new Answer<BlockingQueue<Object>>() {
+    when(context.createInstance(Matchers.anyString(), Matchers.any(), Matchers.anyInt())).thenAnswer(new Answer<BlockingQueue<Object>>() {
 
       @Override
       public BlockingQueue<Object> answer(InvocationOnMock invocation) throws Throwable {
-        BlockingQueue<Object> queue = new ArrayBlockingQueue<Object>((Integer) invocation.getArguments()[1]);
+        BlockingQueue<Object> queue = new ArrayBlockingQueue<Object>((Integer) invocation.getArguments()[2]);
         cxts.add(queue);
         return queue;
       }
@@ -154,11 +157,11 @@ public class MultiStageQueueImplTest {
     final List<BlockingQueue<Object>> cxts = new ArrayList<BlockingQueue<Object>>();
 
     QueueFactory context = mock(QueueFactory.class);
-    when(context.createInstance(Matchers.any(), Matchers.anyInt())).thenAnswer(new Answer<BlockingQueue<Object>>() {
+    when(context.createInstance(Matchers.anyString(), Matchers.any(), Matchers.anyInt())).thenAnswer(new Answer<BlockingQueue<Object>>() {
 
       @Override
       public BlockingQueue<Object> answer(InvocationOnMock invocation) throws Throwable {
-        BlockingQueue<Object> queue = new ArrayBlockingQueue<Object>((Integer) invocation.getArguments()[1]);
+        BlockingQueue<Object> queue = new ArrayBlockingQueue<Object>((Integer) invocation.getArguments()[2]);
         cxts.add(queue);
         return queue;
       }
@@ -236,6 +239,154 @@ public class MultiStageQueueImplTest {
     assertTrue(impl.partitionHand.get() < prior);
   }
 
+  @Test
+  public void testIdleWorkerStealsUnkeyedEvents() throws Exception {
+    MultiStageQueueImpl<TaskContext> impl = new MultiStageQueueImpl<>(2, new QueueFactory(), TaskContext.class,
+        (c)->()->c.task.run(), new DefaultLoggerProvider(), "steal", Integer.MAX_VALUE, true);
+    AtomicBoolean die = new AtomicBoolean(false);
+    List<Thread> workers = startWorkers(impl, 2, die);
+    try {
+      CountDownLatch release = new CountDownLatch(1);
+      CountDownLatch blocked = new CountDownLatch(1);
+      // key 0 always lands on the first worker
+      impl.addToSink(new TaskContext(0, false, ()->{
+        blocked.countDown();
+        awaitUninterruptibly(release);
+      }));
+      assertTrue(blocked.await(10, TimeUnit.SECONDS));
+      CountDownLatch done = new CountDownLatch(100);
+      for (int x = 0; x < 100; x++) {
+        impl.addToSink(new TaskContext(null, false, done::countDown));
+      }
+      // nothing is stuck behind the blocked worker
+      assertTrue(done.await(10, TimeUnit.SECONDS));
+      release.countDown();
+    } finally {
+      die.set(true);
+      for (Thread t : workers) {
+        t.join();
+      }
+    }
+  }
+
+  @Test
+  public void testFlushWaitsForStolenEvents() throws Exception {
+    MultiStageQueueImpl<TaskContext> impl = new MultiStageQueueImpl<>(4, new QueueFactory(), TaskContext.class,
+        (c)->()->c.task.run(), new DefaultLoggerProvider(), "steal", Integer.MAX_VALUE, true);
+    AtomicBoolean die = new AtomicBoolean(false);
+    List<Thread> workers = startWorkers(impl, 4, die);
+    try {
+      AtomicInteger finished = new AtomicInteger();
+      for (int x = 0; x < 20; x++) {
+        impl.addToSink(new TaskContext(null, false, ()->{
+          sleepUninterruptibly(10);
+          finished.incrementAndGet();
+        }));
+      }
+      CountDownLatch flushed = new CountDownLatch(1);
+      AtomicInteger seenAtFlush = new AtomicInteger(-1);
+      impl.addToSink(new TaskContext(null, true, ()->{
+        seenAtFlush.set(finished.get());
+        flushed.countDown();
+      }));
+      assertTrue(flushed.await(10, TimeUnit.SECONDS));
+      assertEquals(20, seenAtFlush.get());
+    } finally {
+      die.set(true);
+      for (Thread t : workers) {
+        t.join();
+      }
+    }
+  }
+
+  @Test
+  public void testSharedWorkIsBoundedByQueueSize() throws Exception {
+    MultiStageQueueImpl<TaskContext> impl = new MultiStageQueueImpl<>(2, new QueueFactory(), TaskContext.class,
+        (c)->()->c.task.run(), new DefaultLoggerProvider(), "steal", 4, true);
+    for (int x = 0; x < 4; x++) {
+      impl.addToSink(new TaskContext(null, false, ()->{}));
+    }
+    assertEquals(4, impl.getState().get("shared"));
+
+    CountDownLatch added = new CountDownLatch(1);
+    Thread producer = new Thread(()->{
+      impl.addToSink(new TaskContext(null, false, ()->{}));
+      added.countDown();
+    }, "producer");
+    producer.setDaemon(true);
+    producer.start();
+    // the shared queue is full, the producer waits just as it would on a full worker queue
+    assertFalse(added.await(200, TimeUnit.MILLISECONDS));
+    assertEquals(4, impl.getState().get("shared"));
+
+    assertNotNull(impl.getSource(1).poll(0));
+    assertTrue(added.await(10, TimeUnit.SECONDS));
+    assertEquals(4, impl.getState().get("shared"));
+    assertEquals(4, impl.clear());
+    producer.join();
+  }
+
+  private static List<Thread> startWorkers(MultiStageQueueImpl<?> impl, int count, AtomicBoolean die) {
+    List<Thread> workers = new ArrayList<>();
+    for (int x = 0; x < count; x++) {
+      final int index = x;
+      Thread t = new Thread(()->{
+        while (!die.get()) {
+          try {
+            Event e = impl.getSource(index).poll(10);
+            if (e != null) {
+              e.call();
+            }
+          } catch (Exception e) {
+            throw new RuntimeException(e);
+          }
+        }
+      }, "worker-" + x);
+      t.setDaemon(true);
+      t.start();
+      workers.add(t);
+    }
+    return workers;
+  }
+
+  private static void awaitUninterruptibly(CountDownLatch latch) {
+    try {
+      latch.await();
+    } catch (InterruptedException ie) {
+      throw new RuntimeException(ie);
+    }
+  }
+
+  private static void sleepUninterruptibly(long millis) {
+    try {
+      Thread.sleep(millis);
+    } catch (InterruptedException ie) {
+      throw new RuntimeException(ie);
+    }
+  }
+
+  private static class TaskContext implements MultiThreadedEventContext {
+    private final Object key;
+    private final boolean flush;
+    private final Runnable task;
+
+    TaskContext(Object key, boolean flush, Runnable task) {
+      this.key = key;
+      this.flush = flush;
+      this.task = task;
+    }
+
+    @Override
+    public Object getSchedulingKey() {
+      return key;
+    }
+
+    @Override
+    public boolean flush() {
+      return flush;
+    }
+  }
+
   @Test
   @Ignore
   public void testThroughput8() throws InterruptedException {
@@ -88,7 +88,7 @@ public class StageImplTest {
     TCLoggerProvider logger = new DefaultLoggerProvider();
     QueueFactory context = mock(QueueFactory.class);
     when(context.createInstance(Matchers.any())).thenReturn(new ArrayBlockingQueue<>(16));
-    when(context.createInstance(Matchers.any(), anyInt())).thenReturn(new ArrayBlockingQueue<>(16));
+    when(context.createInstance(Matchers.anyString(), Matchers.any(), anyInt())).thenReturn(new ArrayBlockingQueue<>(16));
     EventHandler handler = mock(EventHandler.class);
 
     StageImpl<Object> instance = new StageImpl<Object>(logger, "mock", Object.class, handler, 1, null, context, 16, false);
@@ -112,7 +112,7 @@ public class StageImplTest {
     QueueFactory context = mock(QueueFactory.class);
     ArrayBlockingQueue queue = new ArrayBlockingQueue<>(16);
     when(context.createInstance(Matchers.any())).thenReturn(queue);
-    when(context.createInstance(Matchers.any(), anyInt())).thenReturn(queue);
+    when(context.createInstance(Matchers.anyString(), Matchers.any(), anyInt())).thenReturn(queue);
     EventHandler handler = mock(EventHandler.class);
 
     StageImpl<Object> instance = new StageImpl<Object>(logger, "mock", Object.class, handler, 1, null, context, 16, false);
@@ -136,7 +136,7 @@ public class StageImplTest {
     QueueFactory context = mock(QueueFactory.class);
     ArrayBlockingQueue queue = new ArrayBlockingQueue<>(16);
     when(context.createInstance(Matchers.any())).thenReturn(queue);
-    when(context.createInstance(Matchers.any(), anyInt())).thenReturn(queue);
+    when(context.createInstance(Matchers.anyString(), Matchers.any(), anyInt())).thenReturn(queue);
     EventHandler handler = mock(EventHandler.class);
 
     StageImpl<MultiThreadedEventContext> instance = new StageImpl<>(logger, "mock", MultiThreadedEventContext.class, handler, 4, null, context, 16, false);
@@ -189,12 +189,12 @@ public class StageImplTest {
     };
     
     QueueFactory context = mock(QueueFactory.class);
-    when(context.createInstance(Matchers.any(), Matchers.anyInt())).thenAnswer(new Answer<BlockingQueue<Object>>() {
+    when(context.createInstance(Matchers.anyString(), Matchers.any(), Matchers.anyInt())).thenAnswer(new Answer<BlockingQueue<Object>>() {
 
       @Override
       public BlockingQueue<Object> answer(InvocationOnMock invocation) throws Throwable {
 //  spy each call to put of the queue to make sure each queue is getting hit.
-        BlockingQueue<Object> queue = Mockito.spy(new ArrayBlockingQueue<Object>((Integer)invocation.getArguments()[1]));
+        BlockingQueue<Object> queue = Mockito.spy(new ArrayBlockingQueue<Object>((Integer)invocation.getArguments()[2]));
         cxts.add(queue);
         return queue;
       }
@@ -28,6 +28,7 @@ import com.tc.async.api.Stage;
 import com.tc.lang.TCThreadGroup;
 import com.tc.lang.ThrowableHandlerImpl;
 import com.tc.util.concurrent.QueueFactory;
+import java.util.Map;
 
 import junit.framework.TestCase;
 
@@ -88,6 +89,27 @@ public class StageManagerImplTest extends TestCase {
     stageManager.stopAll();
   }
 
+  @SuppressWarnings("unchecked")
+  public void testStageLatencies() throws Exception {
+    stageManager.createStage("testStage", TestEventContext.class, testEventHandler, 1, 3);
+    Stage<TestEventContext> s = stageManager.getStage("testStage", TestEventContext.class);
+    s.getSink().addToSink(new TestEventContext());
+    s.getSink().addToSink(new TestEventContext());
+    s.start(new ConfigurationContextImpl(null));
+    testEventHandler.waitForEventContextCount(2, 60, SECONDS);
+    ((StageImpl)s).waitForIdle();
+    Map<String, Map<String, Map<String, Object>>> latencies = (Map<String, Map<String, Map<String, Object>>>)stageManager.getLatencies();
+    assertEquals(2L, latencies.get("testStage").get("queue").get("count"));
+    assertEquals(2L, latencies.get("testStage").get("run").get("count"));
+    // reading the latencies leaves the interval alone, taking it starts the next one
+    stageManager.getLatencies();
+    Map<String, Map<String, Map<String, Object>>> interval = (Map<String, Map<String, Map<String, Object>>>)stageManager.takeLatencyInterval();
+    assertEquals(2L, interval.get("testStage").get("queue").get("count"));
+    interval = (Map<String, Map<String, Map<String, Object>>>)stageManager.takeLatencyInterval();
+    assertEquals(0L, interval.get("testStage").get("run").get("count"));
+    stageManager.stopAll();
+  }
+
   public void testMultiThreadedStage() throws Exception {
     stageManager.createStage("testStage2", TestMultiThreadedEventContext.class, multiThreadedTestEventHandler, 3, 30);
     Stage<TestMultiThreadedEventContext> s = stageManager.getStage("testStage2", TestMultiThreadedEventContext.class);
@@ -0,0 +1,94 @@
+/*
+ *
+ *  The contents of this file are subject to the Terracotta Public License Version
+ *  2.0 (the "License"); You may not use this file except in compliance with the
+ *  License. You may obtain a copy of the License at
+ *
+ *  http://terracotta.org/legal/terracotta-public-license.
+ *
+ *  Software distributed under the License is distributed on an "AS IS" basis,
+ *  WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing rights and limitations under the License.
+ *
+ *  The Covered Software is Terracotta Core.
+ *
+ *  The Initial Developer of the Covered Software is
+ *  Terracotta, Inc., a Software AG company
+ *
+ */
+package com.tc.net.core;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ClearTextBufferManagerTest {
+
+  private ServerSocketChannel server;
+  private SocketChannel       client;
+  private SocketChannel       accepted;
+
+  @Before
+  public void setUp() throws Exception {
+    server = ServerSocketChannel.open();
+    server.bind(new InetSocketAddress("localhost", 0));
+    client = SocketChannel.open(server.getLocalAddress());
+    accepted = server.accept();
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    client.close();
+    accepted.close();
+    server.close();
+  }
+
+  @Test
+  public void testGatheringWriteSendsStagedDataFirst() throws Exception {
+    ClearTextBufferManager sender = new ClearTextBufferManager(client);
+    assertTrue(sender.supportsGatheringIO());
+    assertEquals(2, sender.forwardToWriteBuffer(ByteBuffer.wrap(new byte[] { 1, 2 })));
+
+    ByteBuffer[] srcs = { ByteBuffer.wrap(new byte[] { 3, 4, 5 }), ByteBuffer.wrap(new byte[] { 6 }) };
+    assertEquals(4, sender.sendFromBuffers(srcs, 0, srcs.length));
+    assertEquals(0, srcs[0].remaining() + srcs[1].remaining());
+
+    assertArrayEquals(new byte[] { 1, 2, 3, 4, 5, 6 }, readFully(accepted, 6));
+  }
+
+  @Test
+  public void testScatteringReadHandsOutStagedDataFirst() throws Exception {
+    client.write(ByteBuffer.wrap(new byte[] { 1, 2, 3 }));
+    ClearTextBufferManager receiver = new ClearTextBufferManager(accepted);
+    while (receiver.getRecvBuffer().position() < 3) {
+      receiver.recvToBuffer();
+    }
+    client.write(ByteBuffer.wrap(new byte[] { 4, 5, 6 }));
+
+    ByteBuffer[] dsts = { ByteBuffer.allocate(2), ByteBuffer.allocate(4) };
+    assertEquals(3, receiver.recvToBuffers(dsts, 0, dsts.length));
+    long read = 3;
+    while (read < 6) {
+      read += receiver.recvToBuffers(dsts, 0, dsts.length);
+    }
+    assertArrayEquals(new byte[] { 1, 2 }, dsts[0].array());
+    assertArrayEquals(new byte[] { 3, 4, 5, 6 }, dsts[1].array());
+  }
+
+  private static byte[] readFully(SocketChannel channel, int length) throws Exception {
+    ByteBuffer buf = ByteBuffer.allocate(length);
+    while (buf.hasRemaining()) {
+      channel.read(buf);
+    }
+    return buf.array();
+  }
+}
@@ -64,9 +64,15 @@ import com.tc.properties.TCPropertiesConsts;
 import com.tc.util.ProductID;
 
 import java.net.InetAddress;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.spi.AbstractSelectionKey;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
 import java.util.concurrent.Callable;
 import org.junit.Ignore;
@@ -230,6 +236,61 @@ public class TCWorkerCommManagerTest extends TCTestCase {
     connMgr.shutdown();
   }
 
+  public void testMigratedConnectionIsServedByNewWorker() throws Exception {
+    TCConnectionManager connMgr = new TCConnectionManagerImpl("Server-TestCommsMgr", 2, 
+      new DisabledHealthCheckerConfigImpl(), new ClearTextBufferManagerFactory());
+    // comms manager with 2 worker comms
+    CommunicationsManager commsMgr = new CommunicationsManagerImpl(new NullMessageMonitor(),
+                                                                   getNetworkStackHarnessFactory(false),
+                                                                   connMgr,
+                                                                   new NullConnectionPolicy());
+    NetworkListener listener = commsMgr.createListener(new TCSocketAddress(0), true,
+                                                       new DefaultConnectionIdFactory(), (t)->true);
+    listener.start(Collections.<ConnectionID>emptySet());
+    int port = listener.getBindPort();
+
+    ConnectionInfo connectTo = new ConnectionInfo("localhost", port);
+
+    ClientMessageChannel client1 = createClientMsgCh(false);
+    ClientMessageChannel client2 = createClientMsgCh(false);
+
+    client1.open(connectTo);
+    client2.open(connectTo);
+
+    waitForConnected(client1, client2);
+    waitForWeight(commsMgr, 0, 1);
+    waitForWeight(commsMgr, 1, 1);
+
+    TCCommImpl comm = (TCCommImpl) commsMgr.getConnectionManager().getTcComm();
+    CoreNIOServices worker0 = comm.getWorkerComm(0);
+    CoreNIOServices worker1 = comm.getWorkerComm(1);
+    TCConnectionImpl moving = null;
+    for (TCConnection conn : commsMgr.getConnectionManager().getAllConnections()) {
+      if (((TCConnectionImpl) conn).getCommWorker() == worker0) {
+        moving = (TCConnectionImpl) conn;
+      }
+    }
+    Assert.assertNotNull(moving);
+
+    worker0.migrateConnection(moving, worker1);
+
+    waitForWeight(commsMgr, 0, 0);
+    waitForWeight(commsMgr, 1, 2);
+    Assert.assertTrue(moving.getCommWorker() == worker1);
+    Assert.assertEquals(1, worker0.getState().get("migratedOut"));
+    Assert.assertEquals(1, worker1.getState().get("migratedIn"));
+
+    // the end of stream of both clients is only seen if the new worker reads the moved connection
+    client1.close();
+    client2.close();
+
+    waitForWeight(commsMgr, 1, 0);
+
+    listener.stop(5000);
+    commsMgr.shutdown();
+    connMgr.shutdown();
+  }
+
   @Ignore("this test expects add more weight from a thread not able to do it")
   public void WorkerCommDistributionAfterAddMoreWeight() throws Exception {
     TCConnectionManager connMgr = new TCConnectionManagerImpl("Server-TestCommsMgr", 3, 
@@ -510,6 +571,129 @@ public class TCWorkerCommManagerTest extends TCTestCase {
     });
   }
 
+  public void testReadBudget() throws Exception {
+    assertTrue(CoreNIOServices.withinReadBudget(15, 1024, 16, 1024 * 1024));
+    assertFalse(CoreNIOServices.withinReadBudget(16, 1024, 16, 1024 * 1024));
+    assertFalse(CoreNIOServices.withinReadBudget(1, 1024 * 1024, 16, 1024 * 1024));
+    // zero or less lifts a limit
+    assertTrue(CoreNIOServices.withinReadBudget(1000, 1024, 0, 1024 * 1024));
+    assertTrue(CoreNIOServices.withinReadBudget(1, Long.MAX_VALUE - 1, 16, 0));
+    assertTrue(CoreNIOServices.withinReadBudget(1000, Long.MAX_VALUE - 1, -1, -1));
+  }
+
+  public void testReaderYieldsWhenBudgetIsSpent() throws Exception {
+    CoreNIOServices services = new CoreNIOServices("budget", null, new SocketParams());
+    try {
+      CoreNIOServices.CommThread reader = services.getReaderComm();
+
+      // small reads run out of reads first
+      CountingReader small = new CountingReader(100, Integer.MAX_VALUE);
+      reader.readWithinBudget(new ReadableKey(small));
+      assertEquals(16, small.reads);
+      assertEquals(1L, readYields(services));
+
+      // large reads run out of bytes first
+      CountingReader large = new CountingReader(512 * 1024, Integer.MAX_VALUE);
+      reader.readWithinBudget(new ReadableKey(large));
+      assertEquals(2, large.reads);
+      assertEquals(2L, readYields(services));
+
+      // a drained connection is not a yield
+      CountingReader drained = new CountingReader(100, 3);
+      reader.readWithinBudget(new ReadableKey(drained));
+      assertEquals(4, drained.reads);
+      assertEquals(2L, readYields(services));
+      assertEquals(16 * 100 + 2 * 512 * 1024 + 3 * 100, reader.getTotalBytesRead());
+    } finally {
+      services.start();
+      services.requestStop();
+    }
+  }
+
+  public void testMigrationLimit() throws Exception {
+    long min = TCWorkerCommManager.REBALANCE_MIN_RATE;
+    // too little traffic to be worth moving
+    assertEquals(-1L, TCWorkerCommManager.migrationLimit(min - 1, 0));
+    // not lopsided enough
+    assertEquals(-1L, TCWorkerCommManager.migrationLimit(3 * min, 2 * min));
+    assertEquals(-1L, TCWorkerCommManager.migrationLimit(4 * min, 3 * min));
+    // at most half the gap moves so the two do not trade places
+    assertEquals(min / 2, TCWorkerCommManager.migrationLimit(min, 0));
+    assertEquals(min, TCWorkerCommManager.migrationLimit(4 * min, 2 * min));
+  }
+
+  public void testMigrationCandidate() throws Exception {
+    Map<String, Long> rates = new HashMap<>();
+    rates.put("a", 100L);
+    // a lone connection stays
+    assertNull(CoreNIOServices.pickMigrationCandidate(rates, 1000, c -> true));
+    rates.put("b", 400L);
+    rates.put("c", 700L);
+    rates.put("d", 900L);
+    assertEquals("c", CoreNIOServices.pickMigrationCandidate(rates, 800, c -> true));
+    assertEquals("c", CoreNIOServices.pickMigrationCandidate(rates, 700, c -> true));
+    assertEquals("b", CoreNIOServices.pickMigrationCandidate(rates, 800, c -> !c.equals("c")));
+    assertNull(CoreNIOServices.pickMigrationCandidate(rates, 50, c -> true));
+    assertNull(CoreNIOServices.pickMigrationCandidate(rates, 1000, c -> false));
+  }
+
+  private static long readYields(CoreNIOServices services) {
+    return (Long) ((Map<?, ?>) services.getState().get("reader")).get("readYields");
+  }
+
+  /**
+   * Hands out {@code size} bytes per read for {@code available} reads, then nothing.
+   */
+  private static class CountingReader implements TCChannelReader {
+    private final int size;
+    private final int available;
+    private int       reads;
+
+    CountingReader(int size, int available) {
+      this.size = size;
+      this.available = available;
+    }
+
+    @Override
+    public int doRead() {
+      return reads++ < available ? size : 0;
+    }
+  }
+
+  /**
+   * Always ready to read, like a connection whose peer keeps sending.
+   */
+  private static class ReadableKey extends AbstractSelectionKey {
+    ReadableKey(TCChannelReader reader) {
+      attach(reader);
+    }
+
+    @Override
+    public SelectableChannel channel() {
+      return null;
+    }
+
+    @Override
+    public Selector selector() {
+      return null;
+    }
+
+    @Override
+    public int interestOps() {
+      return SelectionKey.OP_READ;
+    }
+
+    @Override
+    public SelectionKey interestOps(int ops) {
+      return this;
+    }
+
+    @Override
+    public int readyOps() {
+      return SelectionKey.OP_READ;
+    }
+  }
+
   private static void waitForRead(final CoreNIOServices commThread) throws Exception {
     CallableWaiter.waitOnCallable(new Callable<Boolean>() {
       @Override
@@ -21,10 +21,13 @@ package com.tc.net.protocol.tcm;
 import com.tc.async.api.Sink;
 import com.tc.test.TCTestCase;
 
+import java.util.Map;
+
 import static org.mockito.Matchers.any;
 import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -45,4 +48,21 @@ public class HydrateHandlerTest extends TCTestCase {
     verify(message).hydrate();
     verify(sink, never()).addToSink(any(TCMessage.class));
   }
+
+  @SuppressWarnings("unchecked")
+  public void testHydrateTimeRecordedByType() throws Exception {
+    HydrateHandler handler = new HydrateHandler();
+
+    Sink<TCMessage> sink = mock(Sink.class);
+    TCMessage message = when(mock(TCMessage.class).getMessageType()).thenReturn(TCMessageType.VOLTRON_ENTITY_MESSAGE).getMock();
+
+    handler.handleEvent(new HydrateContext(message, sink));
+    handler.handleEvent(new HydrateContext(message, sink));
+    verify(sink, times(2)).addToSink(message);
+
+    Map<String, ?> times = (Map<String, ?>)handler.getStateMap().get("hydrateTimes");
+    assertEquals(1, times.size());
+    Map<String, ?> histogram = (Map<String, ?>)times.get(TCMessageType.VOLTRON_ENTITY_MESSAGE.getTypeName());
+    assertEquals(2L, histogram.get("count"));
+  }
 }
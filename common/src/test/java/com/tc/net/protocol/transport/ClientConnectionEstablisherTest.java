@@ -21,6 +21,7 @@ package com.tc.net.protocol.transport;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
+import org.mockito.InOrder;
 import org.mockito.Matchers;
 import org.mockito.Mock;
 import org.mockito.Mockito;
@@ -39,6 +40,8 @@ import com.tc.net.protocol.TCNetworkMessage;
 import com.tc.net.protocol.delivery.OOOConnectionWatcher;
 import com.tc.net.protocol.delivery.OnceAndOnlyOnceProtocolNetworkLayer;
 import com.tc.net.protocol.transport.ClientConnectionEstablisher.AsyncReconnect;
+import com.tc.properties.TCPropertiesConsts;
+import com.tc.properties.TCPropertiesImpl;
 import com.tc.util.TCAssertionError;
 import com.tc.util.TCTimeoutException;
 
@@ -48,6 +51,8 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.eq;
@@ -261,4 +266,49 @@ public class ClientConnectionEstablisherTest {
     verify(cmt).open(eq(connInfo));
     verify(cmt).open(eq(connInfo2));
   }  
+
+  @Test
+  public void test_reconnect_races_connects_and_keeps_first_active() throws Exception {
+    ConnectionInfo passive = new ConnectionInfo("localhost", 9510);
+    ConnectionInfo active = new ConnectionInfo("localhost", 9511);
+    TCConnection passiveConnection = mock(TCConnection.class);
+    TCConnection activeConnection = mock(TCConnection.class);
+    Mockito.doReturn(logger).when(cmt).getLogger();
+    Mockito.doReturn(null).when(spyConnEstablisher).connectTryAllOnce(Matchers.any(ClientMessageTransport.class), Matchers.any(ClientConnectionErrorListener.class));
+    // the active connect only completes once the passive one has been taken, so the passive is always tried first
+    CountDownLatch passiveTaken = new CountDownLatch(1);
+    doReturn(passiveConnection).when(cmt).connectQuietly(eq(new TCSocketAddress(passive)));
+    Mockito.doAnswer(invocation -> {
+      assertTrue(passiveTaken.await(30, TimeUnit.SECONDS));
+      return activeConnection;
+    }).when(cmt).connectQuietly(eq(new TCSocketAddress(active)));
+    Mockito.doAnswer(invocation -> {
+      passiveTaken.countDown();
+      throw new NoActiveException();
+    }).when(cmt).reopen(passiveConnection);
+    doNothing().when(cmt).reopen(activeConnection);
+
+    spyConnEstablisher.open(Arrays.asList(passive, active), cmt, errorListener);
+    spyConnEstablisher.reconnect(cmt, ()->false);
+
+    // both servers are tried over the raced connections, never by connecting again in turn
+    InOrder order = Mockito.inOrder(cmt);
+    order.verify(cmt).reopen(passiveConnection);
+    order.verify(cmt).reopen(activeConnection);
+    verify(cmt, Mockito.never()).reopen(any(ConnectionInfo.class));
+    verify(activeConnection, Mockito.never()).close(Matchers.anyLong());
+    Assert.assertEquals(1L, cmt.getReconnectStats().getStateMap().get("reconnects"));
+  }
+
+  @Test
+  public void test_retry_interval_backs_off_with_bounded_jitter() {
+    long base = TCPropertiesImpl.getProperties().getLong(TCPropertiesConsts.L1_SOCKET_RECONNECT_WAIT_INTERVAL);
+    long wait = base;
+    for (int i = 0; i < 1000; i++) {
+      long next = ClientConnectionEstablisher.nextRetryInterval(wait);
+      assertTrue(next >= base);
+      assertTrue(next <= Math.max(base, wait * 3));
+      wait = next;
+    }
+  }
 }
@@ -0,0 +1,135 @@
+/*
+ *
+ *  The contents of this file are subject to the Terracotta Public License Version
+ *  2.0 (the "License"); You may not use this file except in compliance with the
+ *  License. You may obtain a copy of the License at
+ *
+ *  http://terracotta.org/legal/terracotta-public-license.
+ *
+ *  Software distributed under the License is distributed on an "AS IS" basis,
+ *  WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing rights and limitations under the License.
+ *
+ *  The Covered Software is Terracotta Core.
+ *
+ *  The Initial Developer of the Covered Software is
+ *  Terracotta, Inc., a Software AG company
+ *
+ */
+package com.tc.stats;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+
+public class LatencyHistogramTest {
+
+  @Test
+  public void testEmpty() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    assertEquals(0L, histogram.getCount());
+    assertEquals(0L, histogram.getValueAtPercentile(99));
+    assertEquals(0L, histogram.getStateMap().get("maxMicros"));
+  }
+
+  @Test
+  public void testPercentilesWithinBucket() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    for (int i = 0; i < 990; i++) {
+      histogram.record(TimeUnit.MICROSECONDS.toNanos(10));
+    }
+    for (int i = 0; i < 10; i++) {
+      histogram.record(TimeUnit.MILLISECONDS.toNanos(5));
+    }
+    assertEquals(1000L, histogram.getCount());
+    assertEquals(TimeUnit.MILLISECONDS.toNanos(5), histogram.getMax());
+    long p50 = histogram.getValueAtPercentile(50);
+    // log-linear buckets, so within 1/16th of the recorded value
+    assertTrue(p50 >= TimeUnit.MICROSECONDS.toNanos(10) && p50 <= TimeUnit.MICROSECONDS.toNanos(10) * 17 / 16);
+    long p99 = histogram.getValueAtPercentile(99);
+    assertTrue(p99 < TimeUnit.MICROSECONDS.toNanos(20));
+    assertEquals(TimeUnit.MILLISECONDS.toNanos(5), histogram.getValueAtPercentile(99.9));
+  }
+
+  @Test
+  public void testBucketBoundaries() {
+    long previous = -1;
+    for (long value : new long[] {0, 1, 15, 16, 17, 31, 32, 1000, 1023, 1024, 123456789, Long.MAX_VALUE / 3, Long.MAX_VALUE}) {
+      int bucket = LatencyHistogram.bucketOf(value);
+      long upper = LatencyHistogram.upperBoundOf(bucket);
+      assertTrue(upper >= value);
+      assertTrue(upper - value <= value / 16);
+      assertTrue(upper >= previous);
+      previous = upper;
+    }
+    assertEquals(Long.MAX_VALUE, LatencyHistogram.upperBoundOf(LatencyHistogram.bucketOf(Long.MAX_VALUE)));
+  }
+
+  @Test
+  public void testIntervalSnapshot() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    LatencyHistogram.Interval interval = histogram.newInterval();
+    for (int i = 0; i < 100; i++) {
+      histogram.record(TimeUnit.MILLISECONDS.toNanos(1));
+    }
+    LatencyHistogram.Snapshot first = interval.next();
+    assertEquals(100L, first.getCount());
+    for (int i = 0; i < 10; i++) {
+      histogram.record(TimeUnit.MICROSECONDS.toNanos(1));
+    }
+    LatencyHistogram.Snapshot second = interval.next();
+    assertEquals(10L, second.getCount());
+    // the slow history does not leak into the interval
+    assertTrue(second.getValueAtPercentile(100) < TimeUnit.MICROSECONDS.toNanos(2));
+    assertEquals(0L, interval.next().getCount());
+    assertEquals(110L, histogram.snapshot().getCount());
+  }
+
+  @Test
+  public void testIntervalsArePerReader() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    LatencyHistogram.Interval periodic = histogram.newInterval();
+    for (int i = 0; i < 100; i++) {
+      histogram.record(TimeUnit.MILLISECONDS.toNanos(1));
+    }
+    periodic.next();
+    LatencyHistogram.Interval other = histogram.newInterval();
+    for (int i = 0; i < 10; i++) {
+      histogram.record(TimeUnit.MICROSECONDS.toNanos(1));
+    }
+    // state dumps and other readers don't cut short the periodic reader's interval
+    for (int i = 0; i < 3; i++) {
+      assertEquals(110L, histogram.getStateMap().get("count"));
+    }
+    assertEquals(110L, other.next().getCount());
+    assertEquals(0L, other.next().getCount());
+    assertEquals(10L, periodic.next().getCount());
+    assertEquals(0L, periodic.next().getCount());
+  }
+
+  @Test
+  public void testConcurrentRecording() throws Exception {
+    LatencyHistogram histogram = new LatencyHistogram();
+    List<Thread> threads = new ArrayList<>();
+    for (int t = 0; t < 4; t++) {
+      Thread thread = new Thread(()->{
+        for (int i = 1; i <= 10000; i++) {
+          histogram.record(i);
+        }
+      });
+      threads.add(thread);
+      thread.start();
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    assertEquals(40000L, histogram.getCount());
+    assertEquals(10000L, histogram.getMax());
+  }
+}
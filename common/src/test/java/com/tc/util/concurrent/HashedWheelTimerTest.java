@@ -0,0 +1,181 @@
+/*
+ *
+ *  The contents of this file are subject to the Terracotta Public License Version
+ *  2.0 (the "License"); You may not use this file except in compliance with the
+ *  License. You may obtain a copy of the License at
+ *
+ *  http://terracotta.org/legal/terracotta-public-license.
+ *
+ *  Software distributed under the License is distributed on an "AS IS" basis,
+ *  WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing rights and limitations under the License.
+ *
+ *  The Covered Software is Terracotta Core.
+ *
+ *  The Initial Developer of the Covered Software is
+ *  Terracotta, Inc., a Software AG company
+ *
+ */
+package com.tc.util.concurrent;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class HashedWheelTimerTest {
+
+  private HashedWheelTimer timer;
+
+  @Before
+  public void setUp() {
+    // a small wheel so that the tests also cover deadlines more than one round away
+    timer = new HashedWheelTimer("test-wheel", 5, TimeUnit.MILLISECONDS, 8);
+  }
+
+  @After
+  public void tearDown() {
+    timer.cancel();
+  }
+
+  @Test
+  public void testScheduleRunsAfterDelay() throws Exception {
+    long start = System.nanoTime();
+    CountDownLatch latch = new CountDownLatch(1);
+    ScheduledFuture<?> future = timer.schedule(latch::countDown, 100, TimeUnit.MILLISECONDS);
+    assertTrue(latch.await(5, TimeUnit.SECONDS));
+    assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) >= 100);
+    future.get(5, TimeUnit.SECONDS);
+    assertTrue(future.isDone());
+    assertEquals(0, timer.getPendingCount());
+  }
+
+  @Test
+  public void testCancelBeforeRun() throws Exception {
+    AtomicInteger runs = new AtomicInteger();
+    ScheduledFuture<?> future = timer.schedule(runs::incrementAndGet, 50, TimeUnit.MILLISECONDS);
+    assertTrue(future.cancel(false));
+    assertFalse(future.cancel(false));
+    assertTrue(future.isCancelled());
+    assertEquals(0, timer.getPendingCount());
+    Thread.sleep(150);
+    assertEquals(0, runs.get());
+    try {
+      future.get();
+      fail();
+    } catch (CancellationException e) {
+      // expected
+    }
+  }
+
+  @Test
+  public void testFixedRateRepeatsUntilCancelled() throws Exception {
+    AtomicInteger runs = new AtomicInteger();
+    CountDownLatch latch = new CountDownLatch(5);
+    ScheduledFuture<?> future = timer.scheduleAtFixedRate(() -> {
+      runs.incrementAndGet();
+      latch.countDown();
+    }, 0, 10, TimeUnit.MILLISECONDS);
+    assertTrue(latch.await(5, TimeUnit.SECONDS));
+    assertEquals(1, timer.getPendingCount());
+    future.cancel(false);
+    Thread.sleep(50);
+    int count = runs.get();
+    Thread.sleep(100);
+    assertEquals(count, runs.get());
+  }
+
+  @Test
+  public void testFailingTaskStopsRepeating() throws Exception {
+    AtomicInteger runs = new AtomicInteger();
+    ScheduledFuture<?> future = timer.scheduleWithFixedDelay(() -> {
+      runs.incrementAndGet();
+      throw new IllegalStateException("boom");
+    }, 0, 10, TimeUnit.MILLISECONDS);
+    try {
+      future.get(5, TimeUnit.SECONDS);
+      fail();
+    } catch (ExecutionException e) {
+      assertTrue(e.getCause() instanceof IllegalStateException);
+    }
+    Thread.sleep(100);
+    assertEquals(1, runs.get());
+  }
+
+  @Test
+  public void testManyTasksNeverFireEarly() throws Exception {
+    int count = 10000;
+    CountDownLatch latch = new CountDownLatch(count);
+    AtomicInteger early = new AtomicInteger();
+    for (int i = 0; i < count; i++) {
+      // spread over several rounds of the 8 bucket wheel
+      long delay = i % 200;
+      final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delay);
+      timer.schedule(() -> {
+        if (System.nanoTime() < deadline) {
+          early.incrementAndGet();
+        }
+        latch.countDown();
+      }, delay, TimeUnit.MILLISECONDS);
+    }
+    assertTrue(latch.await(10, TimeUnit.SECONDS));
+    assertEquals(0, early.get());
+    // the last task counts down before it completes
+    for (int i = 0; i < 100 && timer.getPendingCount() > 0; i++) {
+      Thread.sleep(10);
+    }
+    assertEquals(0, timer.getPendingCount());
+  }
+
+  @Test
+  public void testBlockedTaskDoesNotDelayTheWheel() throws Exception {
+    CountDownLatch release = new CountDownLatch(1);
+    CountDownLatch blocked = new CountDownLatch(1);
+    timer.execute(() -> {
+      blocked.countDown();
+      try {
+        release.await();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    });
+    assertTrue(blocked.await(5, TimeUnit.SECONDS));
+    CountDownLatch ran = new CountDownLatch(1);
+    timer.schedule(ran::countDown, 20, TimeUnit.MILLISECONDS);
+    try {
+      assertTrue(ran.await(5, TimeUnit.SECONDS));
+    } finally {
+      release.countDown();
+    }
+  }
+
+  @Test
+  public void testCancelTimerCancelsPendingTasks() throws Exception {
+    ScheduledFuture<?> future = timer.schedule(() -> {}, 1, TimeUnit.HOURS);
+    timer.cancel();
+    try {
+      future.get(5, TimeUnit.SECONDS);
+      fail();
+    } catch (CancellationException e) {
+      // expected
+    }
+    try {
+      timer.execute(() -> {});
+      fail();
+    } catch (RejectedExecutionException e) {
+      // expected
+    }
+  }
+}
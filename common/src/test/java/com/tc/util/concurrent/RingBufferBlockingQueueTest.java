@@ -0,0 +1,135 @@
+/*
+ *
+ *  The contents of this file are subject to the Terracotta Public License Version
+ *  2.0 (the "License"); You may not use this file except in compliance with the
+ *  License. You may obtain a copy of the License at
+ *
+ *  http://terracotta.org/legal/terracotta-public-license.
+ *
+ *  Software distributed under the License is distributed on an "AS IS" basis,
+ *  WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing rights and limitations under the License.
+ *
+ *  The Covered Software is Terracotta Core.
+ *
+ *  The Initial Developer of the Covered Software is
+ *  Terracotta, Inc., a Software AG company
+ *
+ */
+package com.tc.util.concurrent;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class RingBufferBlockingQueueTest {
+
+  @Test
+  public void testCapacityRoundsUpToPowerOfTwo() {
+    RingBufferBlockingQueue<Integer> queue = new RingBufferBlockingQueue<>(100);
+    assertEquals(128, queue.capacity());
+    assertEquals(128, queue.remainingCapacity());
+  }
+
+  @Test
+  public void testFifoAndFull() {
+    RingBufferBlockingQueue<Integer> queue = new RingBufferBlockingQueue<>(4);
+    for (int i = 0; i < 4; i++) {
+      assertTrue(queue.offer(i));
+    }
+    assertFalse(queue.offer(4));
+    assertEquals(4, queue.size());
+    assertEquals(0, (int) queue.peek());
+    for (int i = 0; i < 4; i++) {
+      assertEquals(i, (int) queue.poll());
+    }
+    assertNull(queue.poll());
+    assertTrue(queue.isEmpty());
+  }
+
+  @Test
+  public void testPollTimesOut() throws Exception {
+    RingBufferBlockingQueue<Integer> queue = new RingBufferBlockingQueue<>(4);
+    long start = System.nanoTime();
+    assertNull(queue.poll(50, TimeUnit.MILLISECONDS));
+    assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(50));
+  }
+
+  @Test
+  public void testDrainTo() {
+    RingBufferBlockingQueue<Integer> queue = new RingBufferBlockingQueue<>(8);
+    for (int i = 0; i < 6; i++) {
+      queue.offer(i);
+    }
+    List<Integer> out = new ArrayList<>();
+    assertEquals(4, queue.drainTo(out, 4));
+    assertEquals(2, queue.size());
+    assertEquals(2, queue.drainTo(out));
+    assertEquals(6, out.size());
+  }
+
+  @Test
+  public void testPollWakesBlockedProducer() throws Exception {
+    RingBufferBlockingQueue<Integer> queue = new RingBufferBlockingQueue<>(2);
+    queue.put(0);
+    queue.put(1);
+    Thread producer = new Thread(() -> {
+      try {
+        queue.put(2);
+      } catch (InterruptedException ie) {
+        throw new AssertionError(ie);
+      }
+    });
+    producer.start();
+    while (producer.getState() != Thread.State.WAITING) {
+      Thread.sleep(1);
+    }
+    assertEquals(0, (int) queue.poll());
+    producer.join(TimeUnit.SECONDS.toMillis(10));
+    assertFalse(producer.isAlive());
+    assertEquals(1, (int) queue.poll());
+    assertEquals(2, (int) queue.poll());
+  }
+
+  @Test
+  public void testMultipleProducersKeepPerProducerOrder() throws Exception {
+    for (WaitStrategy wait : WaitStrategy.values()) {
+      checkProducers(new RingBufferBlockingQueue<>(64, wait));
+    }
+  }
+
+  private void checkProducers(RingBufferBlockingQueue<long[]> queue) throws Exception {
+    final int producers = 4;
+    final int count = 50_000;
+    Thread[] threads = new Thread[producers];
+    for (int p = 0; p < producers; p++) {
+      final int id = p;
+      threads[p] = new Thread(() -> {
+        try {
+          for (int i = 0; i < count; i++) {
+            queue.put(new long[] {id, i});
+          }
+        } catch (InterruptedException ie) {
+          throw new AssertionError(ie);
+        }
+      });
+      threads[p].start();
+    }
+    long[] next = new long[producers];
+    for (int i = 0; i < producers * count; i++) {
+      long[] e = queue.take();
+      assertEquals(next[(int) e[0]]++, e[1]);
+    }
+    for (Thread t : threads) {
+      t.join();
+    }
+    assertTrue(queue.isEmpty());
+  }
+}
@@ -0,0 +1,149 @@
+/*
+ *
+ *  The contents of this file are subject to the Terracotta Public License Version
+ *  2.0 (the "License"); You may not use this file except in compliance with the
+ *  License. You may obtain a copy of the License at
+ *
+ *  http://terracotta.org/legal/terracotta-public-license.
+ *
+ *  Software distributed under the License is distributed on an "AS IS" basis,
+ *  WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing rights and limitations under the License.
+ *
+ *  The Covered Software is Terracotta Core.
+ *
+ *  The Initial Developer of the Covered Software is
+ *  Terracotta, Inc., a Software AG company
+ *
+ */
+package com.tc.util.concurrent;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class TCConcurrentLongMapTest {
+
+  @Test
+  public void testPutGetRemove() {
+    TCConcurrentLongMap<String> map = new TCConcurrentLongMap<>();
+    assertTrue(map.isEmpty());
+    assertNull(map.put(0L, "zero"));
+    assertNull(map.put(-1L, "minus one"));
+    assertNull(map.put(Long.MAX_VALUE, "max"));
+    assertEquals("zero", map.put(0L, "ZERO"));
+    assertEquals("ZERO", map.putIfAbsent(0L, "other"));
+    assertEquals(3, map.size());
+    assertEquals("ZERO", map.get(0L));
+    assertEquals("minus one", map.get(-1L));
+    assertEquals("max", map.get(Long.MAX_VALUE));
+    assertNull(map.get(1L));
+
+    assertFalse(map.remove(-1L, "not it"));
+    assertTrue(map.remove(-1L, "minus one"));
+    assertEquals("max", map.remove(Long.MAX_VALUE));
+    assertNull(map.remove(Long.MAX_VALUE));
+    assertEquals(1, map.size());
+    map.clear();
+    assertTrue(map.isEmpty());
+    assertNull(map.get(0L));
+  }
+
+  @Test(expected = NullPointerException.class)
+  public void testNullValuesRejected() {
+    new TCConcurrentLongMap<String>().put(1L, null);
+  }
+
+  @Test
+  public void testMatchesHashMapUnderChurn() {
+    // a single small stripe so that runs collide, wrap and get shifted back on removal
+    TCConcurrentLongMap<Long> map = new TCConcurrentLongMap<>(2, 1);
+    Map<Long, Long> model = new HashMap<>();
+    Random random = new Random(42);
+    for (int i = 0; i < 200000; i++) {
+      long key = random.nextInt(512);
+      if (random.nextInt(3) == 0) {
+        assertEquals(model.remove(key), map.remove(key));
+      } else {
+        Long value = random.nextLong();
+        assertEquals(model.put(key, value), map.put(key, value));
+      }
+      if (i % 1000 == 0) {
+        assertEquals(model.size(), map.size());
+        for (long k = 0; k < 512; k++) {
+          assertEquals(model.get(k), map.get(k));
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testReduceAndIterate() {
+    TCConcurrentLongMap<String> map = new TCConcurrentLongMap<>();
+    assertEquals(100L, map.reduceKeys(100L, Math::min));
+    for (long i = 10; i < 60; i++) {
+      map.put(i, Long.toString(i));
+    }
+    assertEquals(10L, map.reduceKeys(100L, Math::min));
+    assertEquals(5L, map.reduceKeys(5L, Math::min));
+    assertEquals(59L, map.reduceKeys(Long.MIN_VALUE, Math::max));
+
+    List<String> values = map.values();
+    assertEquals(50, values.size());
+    assertTrue(values.contains("42"));
+
+    // the callback is free to write to the map
+    map.forEach((key, value) -> map.remove(key, value));
+    assertTrue(map.isEmpty());
+  }
+
+  @Test
+  public void testReadersSeeStableKeysDuringWrites() throws Exception {
+    TCConcurrentLongMap<Long> map = new TCConcurrentLongMap<>(2, 2);
+    for (long i = 0; i < 64; i++) {
+      map.put(i * 2, i * 2);
+    }
+    AtomicReference<Throwable> failure = new AtomicReference<>();
+    CountDownLatch done = new CountDownLatch(1);
+    Thread writer = new Thread(() -> {
+      // odd keys come and go, growing and shifting the tables under the readers
+      Random random = new Random();
+      for (int i = 0; i < 500000; i++) {
+        long key = random.nextInt(100000) * 2L + 1;
+        map.put(key, key);
+        map.remove(key);
+      }
+      done.countDown();
+    });
+    Thread reader = new Thread(() -> {
+      try {
+        while (done.getCount() > 0) {
+          for (long i = 0; i < 64; i++) {
+            assertEquals(i * 2, map.get(i * 2).longValue());
+          }
+          assertEquals(0L, map.reduceKeys(Long.MAX_VALUE, Math::min));
+        }
+      } catch (Throwable t) {
+        failure.set(t);
+      }
+    });
+    writer.start();
+    reader.start();
+    writer.join();
+    reader.join();
+    if (failure.get() != null) {
+      throw new AssertionError(failure.get());
+    }
+    assertEquals(64, map.size());
+  }
+}
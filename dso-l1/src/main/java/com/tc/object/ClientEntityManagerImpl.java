@@ -56,6 +56,7 @@ import com.tc.text.MapListPrettyPrint;
 import com.tc.text.PrettyPrintable;
 import com.tc.util.Assert;
 import com.tc.util.Util;
+import com.tc.util.concurrent.TCConcurrentLongMap;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.util.Collections;
@@ -64,6 +65,7 @@ import java.util.EnumSet;
 import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutorService;
@@ -81,8 +83,8 @@ public class ClientEntityManagerImpl implements ClientEntityManager {
   private final Logger logger;
   
   private final ClientMessageChannel channel;
-  private final ConcurrentMap<TransactionID, InFlightMessage> inFlightMessages;
-  private final MessagePendingCount requestTickets = new MessagePendingCount();
+  private final TCConcurrentLongMap<InFlightMessage> inFlightMessages;
+  private final InFlightPermits requestTickets = new InFlightPermits(ClientConfigurationContext.MAX_PENDING_REQUESTS);
   private final AtomicLong currentTransactionID;
 
   private final ClientEntityStateManager stateManager;
@@ -103,7 +105,7 @@ public class ClientEntityManagerImpl implements ClientEntityManager {
     
     this.channel = channel;
 
-    this.inFlightMessages = new ConcurrentHashMap<>();
+    this.inFlightMessages = new TCConcurrentLongMap<>();
     this.currentTransactionID = new AtomicLong();
     this.stateManager = new ClientEntityStateManager();
     this.objectStoreMap = new ConcurrentHashMap<>(10240, 0.75f, 128);
@@ -118,36 +120,52 @@ public class ClientEntityManagerImpl implements ClientEntityManager {
     }
   } 
   
-  private synchronized boolean enqueueMessage(InFlightMessage msg, long timeout, TimeUnit unit, boolean waitUntilRunning) throws TimeoutException {
-    boolean enqueued = true;
-    boolean interrupted = false;
+  private boolean enqueueMessage(InFlightMessage msg, long timeout, TimeUnit unit, boolean waitUntilRunning) throws TimeoutException {
     long end = (timeout > 0) ? System.nanoTime() + unit.toNanos(timeout) : 0;
  //  stop drains the permits so even if asked to not waitUntilRunning, stop is still checked
-    while ((waitUntilRunning && !this.stateManager.isRunning()) || !requestTickets.messagePendingSlotAvailable()) {
-      try {
-        if (!this.stateManager.isShutdown()) {
-          long timing = (end > 0) ? end - System.nanoTime() : 0;
-          if (timing < 0) {
-            throw new TimeoutException();
-          } else {
-            wait(timing / TimeUnit.MILLISECONDS.toNanos(1), (int)(timing % TimeUnit.MILLISECONDS.toNanos(1))); 
-          }
-        } else {
-          enqueued = false;
-          break;
+    if (waitUntilRunning && !waitUntilRunning(end)) {
+      return false;
+    }
+    return requestTickets.acquire(end) && register(msg);
+  }
+
+  /**
+   * Only lifecycle messages wait out a pause so only they ever touch the monitor here.  Invokes go straight to the
+   * permits.
+   */
+  private synchronized boolean waitUntilRunning(long end) throws TimeoutException {
+    boolean interrupted = false;
+    try {
+      while (!this.stateManager.isRunning()) {
+        if (this.stateManager.isShutdown()) {
+          return false;
+        }
+        long timing = (end > 0) ? end - System.nanoTime() : 0;
+        if (timing < 0) {
+          throw new TimeoutException();
+        }
+        try {
+          wait(timing / TimeUnit.MILLISECONDS.toNanos(1), (int)(timing % TimeUnit.MILLISECONDS.toNanos(1)));
+        } catch (InterruptedException ie) {
+          interrupted = true;
         }
-      } catch (InterruptedException ie) {
-        interrupted = true;
+      }
+      return true;
+    } finally {
+      if (interrupted) {
+        Thread.currentThread().interrupt();
       }
     }
-    if (interrupted) {
-      Thread.currentThread().interrupt();
-    }
-    if (enqueued) {
-      inFlightMessages.put(msg.getTransactionID(), msg);
-      requestTickets.messagePending();
-    }
-    return enqueued;
+  }
+
+  /**
+   * Publishes a message that holds a permit.  If shutdown raced with us, exactly one of us takes it back out of the map
+   * and fails it.
+   */
+  private boolean register(InFlightMessage msg) {
+    long tid = msg.getTransactionID().toLong();
+    inFlightMessages.put(tid, msg);
+    return !(requestTickets.isStopped() && inFlightMessages.remove(tid, msg));
   }
   
   @SuppressWarnings("rawtypes")
@@ -158,7 +176,7 @@ public class ClientEntityManagerImpl implements ClientEntityManager {
 
   @Override
   public void handleMessage(TransactionID tid, byte[] message) {
-    InFlightMessage msg = this.inFlightMessages.get(tid);
+    InFlightMessage msg = this.inFlightMessages.get(tid.toLong());
     if (msg != null) {
       msg.handleMessage(message);
     } else {
@@ -168,7 +186,7 @@ public class ClientEntityManagerImpl implements ClientEntityManager {
 
   @Override
   public void handleStatistics(TransactionID tid, long[] message) {
-    InFlightMessage msg = this.inFlightMessages.get(tid);
+    InFlightMessage msg = this.inFlightMessages.get(tid.toLong());
     if (msg != null) {
       msg.addServerStatistics(message);
     } else {
@@ -277,13 +295,61 @@ public class ClientEntityManagerImpl implements ClientEntityManager {
     }
   }
 
+  @Override
+  public CompletableFuture<InFlightMessage> invokeActionAsync(EntityID eid, EntityDescriptor entityDescriptor, Set<VoltronEntityMessage.Acks> requestedAcks,
+          InFlightMonitor monitor, boolean requiresReplication, boolean shouldBlockGetOnRetire, byte[] payload) {
+    CompletableFuture<InFlightMessage> result = new CompletableFuture<>();
+    // the message, and with it the transaction ID, is only created once a permit is held so transactions still go out
+    // in order and the oldest pending transaction stays accurate while callers are queued
+    Supplier<InFlightMessage> inFlight = ()->new InFlightMessage(eid,
+            ()->createMessageWithDescriptor(eid, entityDescriptor, requiresReplication, payload, VoltronEntityMessage.Type.INVOKE_ACTION, makeServerAcks(shouldBlockGetOnRetire, requestedAcks)),
+            requestedAcks, monitor, shouldBlockGetOnRetire);
+    msgCount.increment();
+    inflights.add(requestTickets.inUse());
+    requestTickets.acquire(()->{
+      InFlightMessage msg = null;
+      try {
+        msg = inFlight.get();
+      } catch (Throwable t) {
+        // nothing was registered so hand the permit on
+        requestTickets.release();
+        result.completeExceptionally(t);
+        return;
+      }
+      if (register(msg)) {
+        try {
+          sendInFlightMessage(msg);
+        } catch (Throwable t) {
+          // this may be running on the thread that retired another message, keep it out of there
+          result.completeExceptionally(t);
+          return;
+        }
+      } else {
+        throwClosedExceptionOnMessage(msg, "Connection closed before sending message");
+      }
+      InFlightMessage sent = msg;
+      msg.getAcksFuture().whenComplete((m, t)->result.complete(sent));
+    }, ()->{
+      try {
+        InFlightMessage msg = inFlight.get();
+        throwClosedExceptionOnMessage(msg, "Connection closed before sending message");
+        result.complete(msg);
+      } catch (Throwable t) {
+        result.completeExceptionally(t);
+      }
+    });
+    return result;
+  }
+
   @Override
   public Map<String, ?> getStateMap() {
     Map<String, Object> map = new LinkedHashMap<>();
     for (EntityClientEndpointImpl<?,?> s : objectStoreMap.values()) {
       map.put(s.getEntityID().toString(), s.getStatistics().getStateMap());
     }
+    map.put("latencies", InFlightStats.getLatencies());
     map.put("messagesOut", msgCount.sum());
+    map.put("messagesInFlight", requestTickets.inUse());
     if (msgCount.sum() > 0) {
       map.put("averagePending", inflights.sum()/msgCount.sum());
       map.put("averageServerWindow", addWindow.sum()/msgCount.sum());
@@ -305,7 +371,7 @@ public class ClientEntityManagerImpl implements ClientEntityManager {
   @Override
   public void received(TransactionID id) {
     // Note that this call comes the platform, potentially concurrently with complete()/failure().
-    InFlightMessage inFlight = inFlightMessages.get(id);
+    InFlightMessage inFlight = inFlightMessages.get(id.toLong());
     if (inFlight != null) {
       inFlight.received();
     } else {
@@ -322,7 +388,7 @@ public class ClientEntityManagerImpl implements ClientEntityManager {
   @Override
   public void complete(TransactionID id, byte[] value) {
     // Note that this call comes the platform, potentially concurrently with received().
-    InFlightMessage inFlight = inFlightMessages.get(id);
+    InFlightMessage inFlight = inFlightMessages.get(id.toLong());
     if (inFlight != null) {
       inFlight.setResult(value, null);
     } else {
@@ -333,7 +399,7 @@ public class ClientEntityManagerImpl implements ClientEntityManager {
   @Override
   public void failed(TransactionID id, EntityException error) {
     // Note that this call comes the platform, potentially concurrently with received().
-    InFlightMessage inFlight = inFlightMessages.get(id);
+    InFlightMessage inFlight = inFlightMessages.get(id.toLong());
     if (inFlight != null) {
       inFlight.setResult(null, error);
     } else {
@@ -344,13 +410,10 @@ public class ClientEntityManagerImpl implements ClientEntityManager {
   @Override
   public void retired(TransactionID id) {
     // We only retire the InFlightMessage from our mapping and release the request ticket once we get the retired ACK.
-    InFlightMessage inFlight = inFlightMessages.remove(id);
+    InFlightMessage inFlight = inFlightMessages.remove(id.toLong());
     if (inFlight != null) {
       inFlight.retired();
-      synchronized (this) {
-        requestTickets.messageRetired();
-        notify();
-      }
+      requestTickets.release();
     } else {
    // resend result or stop
     }
@@ -409,9 +472,12 @@ public class ClientEntityManagerImpl implements ClientEntityManager {
         notifyAll();
       }
     }
-    for (InFlightMessage msg : inFlightMessages.values()) {
-      throwClosedExceptionOnMessage(msg, "Connection closed under in-flight message");
-    }
+    inFlightMessages.forEach((tid, inFlight) -> {
+      // a racing register() may take its own message back out, whoever removes it fails it
+      if (inFlightMessages.remove(tid, inFlight)) {
+        throwClosedExceptionOnMessage(inFlight, "Connection closed under in-flight message");
+      }
+    });
     // We also want to notify any end-points that they have been disconnected.
     for(EntityClientEndpointImpl<?, ?> endpoint : this.objectStoreMap.values()) {
       try {
@@ -546,19 +612,16 @@ public class ClientEntityManagerImpl implements ClientEntityManager {
   private InFlightMessage queueInFlightMessage(EntityID eid, Supplier<NetworkVoltronEntityMessage> message, Set<VoltronEntityMessage.Acks> requestedAcks, InFlightMonitor monitor, long timeout, TimeUnit units, boolean shouldBlockGetOnRetire) throws TimeoutException {
     InFlightMessage inFlight = new InFlightMessage(eid, message, requestedAcks, monitor, shouldBlockGetOnRetire);
     msgCount.increment();
-    inflights.add(ClientConfigurationContext.MAX_PENDING_REQUESTS - requestTickets.messagesPending);
+    inflights.add(requestTickets.inUse());
     // NOTE:  If we are already stop, the handler in outbound will fail this message for us.
         if(enqueueMessage(inFlight, timeout, units, inFlight.getMessage().getVoltronType() != VoltronEntityMessage.Type.INVOKE_ACTION)) {
-          inFlight.sent();
-          if (inFlight.send()) {
+          if (sendInFlightMessage(inFlight)) {
 //  when encountering a send for anything other than an invoke, wait here before sending anything else
 //  this is a bit paranoid but it is to prevent too many resends of lifecycle operations.  Just
 //  make sure those complete before sending any new invokes or lifecycle messages
             if (inFlight.getMessage().getVoltronType() != VoltronEntityMessage.Type.INVOKE_ACTION) {
               inFlight.waitForAcks();
             }
-          } else {
-            logger.debug("message not sent.  Make sure resend happens " + inFlight);
           }
         } else {
           throwClosedExceptionOnMessage(inFlight, "Connection closed before sending message");
@@ -566,6 +629,16 @@ public class ClientEntityManagerImpl implements ClientEntityManager {
         return inFlight;
   }
 
+  private boolean sendInFlightMessage(InFlightMessage inFlight) {
+    inFlight.sent();
+    if (inFlight.send()) {
+      return true;
+    } else {
+      logger.debug("message not sent.  Make sure resend happens " + inFlight);
+      return false;
+    }
+  }
+
   private NetworkVoltronEntityMessage createMessageWithoutClientInstance(EntityID entityID, long version, boolean requiresReplication, byte[] config, VoltronEntityMessage.Type type, Set<VoltronEntityMessage.Acks> acks) {
     // We have no client instance for a create but the request currently requires a full descriptor.
     EntityDescriptor entityDescriptor = EntityDescriptor.createDescriptorForLifecycle(entityID, version);
@@ -581,11 +654,9 @@ public class ClientEntityManagerImpl implements ClientEntityManager {
     TransactionID oldestTransactionPending = transactionID;
     // if reconnectable, discover the oldest transaction still being waited for
     if (this.channel.getProductID().isReconnectEnabled()) {
-      for (TransactionID pendingID : this.inFlightMessages.keySet()) {
-        if (oldestTransactionPending.compareTo(pendingID) > 0) {
-          // pendingID is earlier than oldestTransactionPending.
-          oldestTransactionPending = pendingID;
-        }
+      long oldestPendingID = this.inFlightMessages.reduceKeys(transactionID.toLong(), Math::min);
+      if (oldestPendingID != transactionID.toLong()) {
+        oldestTransactionPending = new TransactionID(oldestPendingID);
       }
     }
     // Create the message and populate it.
@@ -720,28 +791,4 @@ public class ClientEntityManagerImpl implements ClientEntityManager {
       }
     }
   }
-  
-  private static class MessagePendingCount {
-    private int messagesPending = ClientConfigurationContext.MAX_PENDING_REQUESTS;
-  
-    // synchronized by caller
-    private int messagePending() {
-      Assert.assertTrue(messagesPending > 0);
-      return --messagesPending;
-    }
-
-    // synchronized by caller
-    private int messageRetired() {
-      Assert.assertTrue(messagesPending < ClientConfigurationContext.MAX_PENDING_REQUESTS);
-      return ++messagesPending;
-    }
-    
-    private boolean messagePendingSlotAvailable() {
-      return messagesPending > 0;
-    }
-    
-    private void stop() {
-      messagesPending = 0;
-    }
-  }
 }
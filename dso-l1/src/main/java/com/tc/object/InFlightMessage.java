@@ -44,12 +44,13 @@ import static com.tc.object.StatType.SERVER_SCHEDULE;
 import java.util.ArrayList;
 
 import java.util.EnumSet;
-import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 import java.util.function.Supplier;
@@ -62,6 +63,9 @@ import org.slf4j.LoggerFactory;
  * The message is stored here, since it is sent asynchronously, along with storage for the return value.
  * Note that this is only used from within ClietEntityManagerImpl, and was originally embedded there, but was extracted to
  * make unit testing more direct.
+ * <p>
+ * Completion is carried by two futures, one for the requested ACKs and one for the result, so callers can either block
+ * on them or chain work onto them.  The monitor only guards the bookkeeping and is never held while waiting.
  */
 public class InFlightMessage implements PrettyPrintable {
   private static Logger LOGGER = LoggerFactory.getLogger(InFlightMessage.class);
@@ -78,11 +82,12 @@ public class InFlightMessage implements PrettyPrintable {
   // Note that the point where we wait for acks isn't exposed outside the InvokeFuture interface so this set of waiting
   // threads only applies to those threads waiting to get a response.
   private final Set<Thread> waitingThreads;
+  private final CompletableFuture<InFlightMessage> acked = new CompletableFuture<>();
+  private final CompletableFuture<byte[]> done = new CompletableFuture<>();
 
   private boolean isSent;
   private EntityException exception;
   private byte[] value;
-  private boolean getCanComplete;
   private final boolean blockGetOnRetired;
   private final Trace trace;
   
@@ -108,7 +113,7 @@ public class InFlightMessage implements PrettyPrintable {
     Assert.assertNotNull(message);
     this.pendingAcks = EnumSet.noneOf(VoltronEntityMessage.Acks.class);
     this.pendingAcks.addAll(acks);
-    this.waitingThreads = new HashSet<>();
+    this.waitingThreads = ConcurrentHashMap.newKeySet();
     this.blockGetOnRetired = shouldBlockGetOnRetire;
     this.trace = Trace.newTrace(this.message, "InFlightMessage");
   }
@@ -236,40 +241,59 @@ public class InFlightMessage implements PrettyPrintable {
   
   public void waitForAcks(long timeout, TimeUnit unit) throws InterruptedException, TimeoutException {
     Trace.activeTrace().log("InFlightMessage.waitForAcks");
-    timedWait(() -> pendingAcks.isEmpty(), timeout, unit);
+    try {
+      timedWait(acked, timeout, unit);
+    } catch (ExecutionException ee) {
+      throw new AssertionError(ee);
+    }
   }
-  
-  public synchronized void sent() {
-    this.notifySent = System.nanoTime();
-    ackDelivered(VoltronEntityMessage.Acks.SENT);
-    if (this.pendingAcks.isEmpty()) {
-      notifyAll();
+
+  /**
+   * @return a future which completes with this message once all the requested ACKs have arrived or the message failed
+   */
+  public CompletableFuture<InFlightMessage> getAcksFuture() {
+    return acked.thenApply(m -> m);
+  }
+
+  /**
+   * @return a future which completes with the result, or exceptionally with the {@link EntityException}, at the point
+   * {@link #get()} would return
+   */
+  public CompletableFuture<byte[]> getResultFuture() {
+    return done.thenApply(v -> v);
+  }
+
+  public void sent() {
+    synchronized (this) {
+      this.notifySent = System.nanoTime();
+      ackDelivered(VoltronEntityMessage.Acks.SENT);
     }
+    completeAcks();
   }
 
-  public synchronized void received() {
-    this.received = System.nanoTime();
-    ackDelivered(VoltronEntityMessage.Acks.RECEIVED);
-    if (this.pendingAcks.isEmpty()) {
-      notifyAll();
+  public void received() {
+    synchronized (this) {
+      this.received = System.nanoTime();
+      ackDelivered(VoltronEntityMessage.Acks.RECEIVED);
     }
+    completeAcks();
   }
 
-  public synchronized void interrupt() {
+  public void interrupt() {
     for (Thread waitingThread : this.waitingThreads) {
       waitingThread.interrupt();
     }
   }
 
-  public synchronized boolean isDone() {
-    return this.getCanComplete;
+  public boolean isDone() {
+    return this.done.isDone();
   }
 
   public synchronized boolean isSent() {
     return this.isSent;
   }
   
-  public synchronized byte[] get() throws InterruptedException, EntityException {
+  public byte[] get() throws InterruptedException, EntityException {
     try {
       return getWithTimeout(0, TimeUnit.MILLISECONDS);
     } catch (TimeoutException to) {
@@ -278,26 +302,13 @@ public class InFlightMessage implements PrettyPrintable {
     }
   }
   
-  private synchronized void timedWait(Callable<Boolean> predicate, long timeout, TimeUnit unit) throws InterruptedException, TimeoutException {
-   Thread callingThread = Thread.currentThread();
+  private <T> T timedWait(CompletableFuture<T> future, long timeout, TimeUnit unit) throws InterruptedException, TimeoutException, ExecutionException {
+    Thread callingThread = Thread.currentThread();
     boolean didAdd = this.waitingThreads.add(callingThread);
     // We can't have already been waiting.
     Assert.assertTrue(didAdd);
-    
-    long end = (timeout > 0) ? System.nanoTime() + unit.toNanos(timeout) : 0;
     try {
-      while (!predicate.call()) {
-        long timing = (end > 0) ? end - System.nanoTime() : 0;
-        if (timing < 0) {
-          throw new TimeoutException();
-        } else {
-          wait(timing / TimeUnit.MILLISECONDS.toNanos(1), (int)(timing % TimeUnit.MILLISECONDS.toNanos(1))); 
-        }
-      }
-    } catch (InterruptedException | TimeoutException ie) {
-      throw ie;
-    } catch (Exception exp) {
-      throw new AssertionError(exp);
+      return (timeout > 0) ? future.get(timeout, unit) : future.get();
     } finally {
       this.waitingThreads.remove(callingThread);
     }
@@ -305,45 +316,76 @@ public class InFlightMessage implements PrettyPrintable {
 
   public byte[] getWithTimeout(long timeout, TimeUnit unit) throws InterruptedException, EntityException, TimeoutException {
     trace.log("getWithTimeout()");
-    timedWait(() -> getCanComplete, timeout, unit);
-    this.got = System.nanoTime();
-    if (exception != null) {
-      throw ExceptionUtils.addLocalStackTraceToEntityException(eid, exception);
-    } else {
+    try {
+      byte[] result = timedWait(done, timeout, unit);
+      this.got = System.nanoTime();
       if (this.message.getVoltronType() == VoltronEntityMessage.Type.INVOKE_ACTION) {
-        Assert.assertNotNull(value);
+        Assert.assertNotNull(result);
       }
-      return value;
+      return result;
+    } catch (ExecutionException ee) {
+      this.got = System.nanoTime();
+      if (ee.getCause() instanceof EntityException) {
+        throw ExceptionUtils.addLocalStackTraceToEntityException(eid, (EntityException) ee.getCause());
+      }
+      throw new AssertionError(ee.getCause());
     }
   }
 
-  public synchronized void setResult(byte[] value, EntityException error) {
-    if (Trace.isTraceEnabled()) {
-      trace.log("Received Result: " + value + " ; Exception: " + (error != null ? error.getLocalizedMessage() : "None"));
+  public void setResult(byte[] value, EntityException error) {
+    boolean canComplete;
+    synchronized (this) {
+      if (Trace.isTraceEnabled()) {
+        trace.log("Received Result: " + value + " ; Exception: " + (error != null ? error.getLocalizedMessage() : "None"));
+      }
+      if (this.received == 0) {
+        this.received = System.nanoTime();
+      }
+      ackDelivered(VoltronEntityMessage.Acks.RECEIVED);
+      this.complete = System.nanoTime();
+      ackDelivered(VoltronEntityMessage.Acks.COMPLETED);
+
+      if (error != null) {
+        Assert.assertNull(value);
+        this.pendingAcks.clear();
+        this.exception = error;
+        canComplete = true;
+      } else {
+        Assert.assertNotNull(value);
+        this.value = value;
+        canComplete = !this.blockGetOnRetired;
+      }
     }
-    if (this.received == 0) {
-      this.received = System.nanoTime();
+    completeAcks();
+    if (canComplete) {
+      completeResult();
+    }
+  }
+
+  /**
+   * Futures are always completed outside the monitor so dependent stages never run while holding it.
+   */
+  private void completeAcks() {
+    boolean complete;
+    synchronized (this) {
+      complete = this.pendingAcks.isEmpty();
     }
-    ackDelivered(VoltronEntityMessage.Acks.RECEIVED);
-    this.complete = System.nanoTime();
-    ackDelivered(VoltronEntityMessage.Acks.COMPLETED);
-    if (pendingAcks.isEmpty()) {
-      notifyAll();
+    if (complete) {
+      this.acked.complete(this);
     }
+  }
 
+  private void completeResult() {
+    EntityException error;
+    byte[] result;
+    synchronized (this) {
+      error = this.exception;
+      result = this.value;
+    }
     if (error != null) {
-      Assert.assertNull(value);
-      this.pendingAcks.clear();
-      this.exception = error;
-      this.getCanComplete = true;
-      notifyAll();
+      this.done.completeExceptionally(error);
     } else {
-      Assert.assertNotNull(value);
-      this.value = value;
-      if (!this.blockGetOnRetired) {
-        this.getCanComplete = true;
-        notifyAll();
-      }
+      this.done.complete(result);
     }
   }
   
@@ -366,17 +408,19 @@ public class InFlightMessage implements PrettyPrintable {
     this.retired = System.nanoTime();
     ackDelivered(VoltronEntityMessage.Acks.RETIRED);
     if (this.blockGetOnRetired) {
-      this.getCanComplete = true;
       if (message.getVoltronType() == VoltronEntityMessage.Type.INVOKE_ACTION) {
         Assert.assertTrue("failed " + this.message.getTransactionID(), value != null || exception != null);
       }
     }
-    notifyAll();
     return this.runOnRetire;
   }
 
   public void retired() {
     Runnable runAfter = retiredBookeeping();
+    completeAcks();
+    if (this.blockGetOnRetired) {
+      completeResult();
+    }
     if (monitor != null) {
       monitor.close();
     }
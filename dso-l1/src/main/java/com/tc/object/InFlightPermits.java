@@ -0,0 +1,224 @@
+/*
+ *
+ *  The contents of this file are subject to the Terracotta Public License Version
+ *  2.0 (the "License"); You may not use this file except in compliance with the
+ *  License. You may obtain a copy of the License at
+ *
+ *  http://terracotta.org/legal/terracotta-public-license.
+ *
+ *  Software distributed under the License is distributed on an "AS IS" basis,
+ *  WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing rights and limitations under the License.
+ *
+ *  The Covered Software is Terracotta Core.
+ *
+ *  The Initial Developer of the Covered Software is
+ *  Terracotta, Inc., a Software AG company
+ *
+ */
+package com.tc.object;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Bounds the number of messages a client has in flight without a monitor.
+ * <p>
+ * Callers take a permit with a CAS while nobody is queued.  Otherwise they join a FIFO queue and the thread that
+ * returns a permit hands it straight to the head of the queue, so a late caller can never overtake a queued one.
+ * Blocking callers park until they are granted; asynchronous callers are run on the thread that granted them.
+ * <p>
+ * {@link #stop()} fails every queued caller and every later acquisition.
+ */
+class InFlightPermits {
+  private static final int WAITING = 0;
+  private static final int GRANTED = 1;
+  private static final int CANCELLED = 2;
+  private static final int STOPPED = 3;
+
+  private final int maximum;
+  private final AtomicInteger available;
+  private final Queue<Waiter> waiters = new ConcurrentLinkedQueue<>();
+  private volatile boolean stopped;
+
+  InFlightPermits(int maximum) {
+    this.maximum = maximum;
+    this.available = new AtomicInteger(maximum);
+  }
+
+  /**
+   * @return number of permits currently handed out
+   */
+  int inUse() {
+    return maximum - available.get();
+  }
+
+  boolean isStopped() {
+    return stopped;
+  }
+
+  boolean tryAcquire() {
+    return waiters.isEmpty() && take();
+  }
+
+  /**
+   * Blocks until a permit is granted.  Interrupts are remembered and restored on return, they do not abort the wait.
+   *
+   * @param deadline {@link System#nanoTime()} to give up at, zero waits forever
+   * @return false if the permits were stopped
+   * @throws TimeoutException if the deadline passed first
+   */
+  boolean acquire(long deadline) throws TimeoutException {
+    if (tryAcquire()) {
+      return true;
+    } else if (stopped) {
+      return false;
+    }
+    ThreadWaiter waiter = new ThreadWaiter(Thread.currentThread());
+    enqueue(waiter);
+    boolean interrupted = false;
+    try {
+      while (true) {
+        int state = waiter.state.get();
+        if (state == GRANTED) {
+          return true;
+        } else if (state == STOPPED) {
+          return false;
+        }
+        if (deadline > 0) {
+          long remaining = deadline - System.nanoTime();
+          if (remaining <= 0) {
+            if (waiter.state.compareAndSet(WAITING, CANCELLED)) {
+              waiters.remove(waiter);
+              throw new TimeoutException();
+            }
+            // granted or stopped underneath us, pick it up on the next pass
+            continue;
+          }
+          LockSupport.parkNanos(this, remaining);
+        } else {
+          LockSupport.park(this);
+        }
+        if (Thread.interrupted()) {
+          interrupted = true;
+        }
+      }
+    } finally {
+      if (interrupted) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
+  /**
+   * Never blocks.  {@code granted} runs once a permit is held for the caller, on this thread if one is free right away,
+   * otherwise on the thread that releases one.  {@code failed} runs instead if the permits are stopped first.
+   */
+  void acquire(Runnable granted, Runnable failed) {
+    if (tryAcquire()) {
+      granted.run();
+    } else if (stopped) {
+      failed.run();
+    } else {
+      enqueue(new TaskWaiter(granted, failed));
+    }
+  }
+
+  void release() {
+    available.incrementAndGet();
+    dispatch();
+  }
+
+  void stop() {
+    stopped = true;
+    dispatch();
+  }
+
+  private void enqueue(Waiter waiter) {
+    waiters.add(waiter);
+    // a permit may have come back between the failed attempt and the add
+    dispatch();
+  }
+
+  private void dispatch() {
+    while (stopped) {
+      Waiter waiter = waiters.poll();
+      if (waiter == null) {
+        return;
+      }
+      if (waiter.state.compareAndSet(WAITING, STOPPED)) {
+        waiter.stopped();
+      }
+    }
+    while (!waiters.isEmpty() && take()) {
+      Waiter waiter = waiters.poll();
+      if (waiter != null && waiter.state.compareAndSet(WAITING, GRANTED)) {
+        waiter.granted();
+      } else {
+        // cancelled or raced with another dispatcher, put the permit back and look again
+        available.incrementAndGet();
+      }
+    }
+  }
+
+  private boolean take() {
+    while (!stopped) {
+      int current = available.get();
+      if (current <= 0) {
+        return false;
+      } else if (available.compareAndSet(current, current - 1)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static abstract class Waiter {
+    final AtomicInteger state = new AtomicInteger(WAITING);
+
+    abstract void granted();
+
+    abstract void stopped();
+  }
+
+  private static class ThreadWaiter extends Waiter {
+    private final Thread thread;
+
+    ThreadWaiter(Thread thread) {
+      this.thread = thread;
+    }
+
+    @Override
+    void granted() {
+      LockSupport.unpark(thread);
+    }
+
+    @Override
+    void stopped() {
+      LockSupport.unpark(thread);
+    }
+  }
+
+  private static class TaskWaiter extends Waiter {
+    private final Runnable granted;
+    private final Runnable failed;
+
+    TaskWaiter(Runnable granted, Runnable failed) {
+      this.granted = granted;
+      this.failed = failed;
+    }
+
+    @Override
+    void granted() {
+      granted.run();
+    }
+
+    @Override
+    void stopped() {
+      failed.run();
+    }
+  }
+}
@@ -23,6 +23,7 @@ import static com.tc.object.StatType.CLIENT_ENCODE;
 import static com.tc.object.StatType.CLIENT_GOT;
 import static com.tc.object.StatType.CLIENT_SEND;
 import static com.tc.object.StatType.CLIENT_SENT;
+import com.tc.stats.LatencyHistogram;
 import com.tc.text.PrettyPrintable;
 import java.util.LinkedHashMap;
 import java.util.List;
@@ -63,11 +64,24 @@ class InFlightStats implements PrettyPrintable {
     new Combo(SERVER_RECEIVED, SERVER_COMPLETE),
     new Combo(SERVER_COMPLETE, SERVER_RETIRED)
   );
+  // like the combos above, the percentiles are shared by every entity endpoint in the client
+  private static final LatencyHistogram[] latencies = new LatencyHistogram[values.size()];
+  static {
+    for (int x = 0; x < latencies.length; x++) {
+      latencies[x] = new LatencyHistogram();
+    }
+  }
   private final LongAdder totalCount = new LongAdder();
   
   public void collect(long[] input) {
     if (input != null) {
       values.forEach(c->c.add(input));
+      for (int x = 0; x < latencies.length; x++) {
+        Combo c = values.get(x);
+        if (c.isRecorded(input)) {
+          latencies[x].record(c.between(input));
+        }
+      }
     }
     totalCount.increment();
   }
@@ -80,6 +94,16 @@ class InFlightStats implements PrettyPrintable {
     }
     return map;
   } 
+
+  static Map<String, ?> getLatencies() {
+    Map<String, Object> map = new LinkedHashMap<>();
+    for (int x = 0; x < latencies.length; x++) {
+      if (latencies[x].getCount() > 0) {
+        map.put(values.get(x).toString(), latencies[x].getStateMap());
+      }
+    }
+    return map;
+  }
   
   static class Combo {
     Logger LOG = LoggerFactory.getLogger(Combo.class);
@@ -94,12 +118,21 @@ class InFlightStats implements PrettyPrintable {
     
     Combo add(long[] vals) {
       try {
-        value.add(vals[to.ordinal()] - vals[from.ordinal()]);
+        value.add(between(vals));
       } catch (Throwable t) {
         LOG.warn("error collecting stats", t);
       }
       return this;
     }
+
+    long between(long[] vals) {
+      return vals[to.ordinal()] - vals[from.ordinal()];
+    }
+
+    boolean isRecorded(long[] vals) {
+      // server side stamps are missing when the server does not send statistics back
+      return vals.length > Math.max(from.ordinal(), to.ordinal()) && vals[from.ordinal()] != 0 && vals[to.ordinal()] != 0;
+    }
     
     long value() {
       return value.sum();
@@ -21,6 +21,7 @@ package com.tc.object;
 import com.tc.entity.VoltronEntityMessage;
 
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 
@@ -32,4 +33,12 @@ import java.util.concurrent.TimeoutException;
 public interface InvocationHandler {
   InFlightMessage invokeAction(EntityID eid, EntityDescriptor entityDescriptor, Set<VoltronEntityMessage.Acks> acks, InFlightMonitor monitor, boolean requiresReplication, boolean shouldBlockGetOnRetire, byte[] payload);
   InFlightMessage invokeActionWithTimeout(EntityID eid, EntityDescriptor entityDescriptor, Set<VoltronEntityMessage.Acks> acks, InFlightMonitor monitor, boolean requiresReplication, boolean shouldBlockGetOnRetire, long invokeTimeout, TimeUnit units, byte[] payload) throws InterruptedException, TimeoutException;
+
+  /**
+   * Same as {@link #invokeAction} but never blocks the calling thread, not even for a free in-flight slot.  The future
+   * completes with the message once the requested ACKs have arrived.
+   */
+  default CompletableFuture<InFlightMessage> invokeActionAsync(EntityID eid, EntityDescriptor entityDescriptor, Set<VoltronEntityMessage.Acks> acks, InFlightMonitor monitor, boolean requiresReplication, boolean shouldBlockGetOnRetire, byte[] payload) {
+    return CompletableFuture.completedFuture(invokeAction(eid, entityDescriptor, acks, monitor, requiresReplication, shouldBlockGetOnRetire, payload));
+  }
 }
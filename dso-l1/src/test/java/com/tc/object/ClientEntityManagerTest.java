@@ -56,6 +56,7 @@ import java.util.Collections;
 import java.util.EnumSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
@@ -592,6 +593,35 @@ public class ClientEntityManagerTest extends TestCase {
     // We are waiting for no ACKs so this should be available since the send will trigger the delivery.
   }
 
+  @Test
+  public void testAsyncInvokeDoesNotBlockCaller() throws Exception {
+    TestRequestBatchMessage message = new TestRequestBatchMessage(this.manager, null, null, false);
+    when(channel.createMessage(TCMessageType.VOLTRON_ENTITY_MESSAGE)).thenReturn(message);
+    EnumSet<VoltronEntityMessage.Acks> requestedAcks = EnumSet.of(VoltronEntityMessage.Acks.RECEIVED);
+    CompletableFuture<InFlightMessage> future = this.manager.invokeActionAsync(entityID, descriptor, requestedAcks, null, false, false, new byte[0]);
+    // the caller is back before any ack has arrived
+    assertFalse(future.isDone());
+
+    this.manager.received(message.getTransactionID());
+    InFlightMessage result = future.get(5, TimeUnit.SECONDS);
+    byte[] resultObject = new byte[0];
+    message.explicitComplete(resultObject, null);
+    assertTrue(resultObject == result.get());
+  }
+
+  @Test
+  public void testAsyncInvokeFailsOnShutdown() throws Exception {
+    this.manager.shutdown();
+    when(channel.createMessage(TCMessageType.VOLTRON_ENTITY_MESSAGE)).thenReturn(new TestRequestBatchMessage(this.manager, null, null, false));
+    InFlightMessage result = this.manager.invokeActionAsync(entityID, descriptor, EnumSet.noneOf(Acks.class), null, false, true, new byte[0]).get(5, TimeUnit.SECONDS);
+    try {
+      result.get();
+      fail();
+    } catch (ConnectionClosedException closed) {
+      // expected
+    }
+  }
+
   @Test
   public void testRequestAcks() throws Exception {
     TestRequestBatchMessage message = new TestRequestBatchMessage(this.manager, null, null, false);
@@ -30,6 +30,8 @@ import java.util.Collections;
 import java.util.EnumSet;
 import java.util.Set;
 import java.util.concurrent.BrokenBarrierException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.CyclicBarrier;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
@@ -150,6 +152,22 @@ public class InFlightMessageTest extends TestCase {
     assertTrue(thread.didInterrupt);
   }
 
+  public void testAcksFutureCompletesWithoutBlocking() throws Exception {
+    Set<VoltronEntityMessage.Acks> acks = EnumSet.of(VoltronEntityMessage.Acks.SENT, VoltronEntityMessage.Acks.RECEIVED);
+    VoltronEntityMessage msg = mock(VoltronEntityMessage.class);
+    final InFlightMessage inf = new InFlightMessage(mock(EntityID.class), ()->msg, acks, null, false);
+    CompletableFuture<InFlightMessage> acked = inf.getAcksFuture();
+    inf.sent();
+    assertFalse(acked.isDone());
+    inf.received();
+    assertSame(inf, acked.getNow(null));
+    assertFalse(inf.getResultFuture().isDone());
+    byte[] value = new byte[0];
+    inf.setResult(value, null);
+    assertSame(value, inf.getResultFuture().getNow(null));
+    assertTrue(inf.isDone());
+  }
+
   /**
    * This thread just calls get() on the given message and records whether or not it was interrupted.
    */
@@ -176,22 +194,21 @@ public class InFlightMessageTest extends TestCase {
   }
 
   /**
-   * Even though we are trying to test InFlightMessage we need this subclass to expose details of the monitor state in order
-   * to test the thread interaction in a deterministic way.
+   * Even though we are trying to test InFlightMessage we need this subclass to expose when the caller has reached get()
+   * in order to test the thread interaction in a deterministic way.  The interlock must not hold the message monitor
+   * while blocked since completion no longer waits on it.
    */
   private static class InterlockMessage extends InFlightMessage {
-    private boolean didEnter;
+    private final CountDownLatch didEnter = new CountDownLatch(1);
     
     public InterlockMessage(NetworkVoltronEntityMessage message, Set<Acks> acks, boolean shouldBlockGetOnRetire) {
       super(message.getEntityID(), ()->message, acks, null, shouldBlockGetOnRetire);
-      this.didEnter = false;
     }
 
     @Override
-    public synchronized byte[] get() throws InterruptedException, EntityException {
-      // Notify anyone waiting so that they know we now have the monitor and are going to block in get().
-      this.didEnter = true;
-      notifyAll();
+    public byte[] get() throws InterruptedException, EntityException {
+      // Let anyone waiting know that we are going to block in get().
+      this.didEnter.countDown();
       // Call the super to actually block.
       return super.get();
     }
@@ -199,14 +216,12 @@ public class InFlightMessageTest extends TestCase {
     /**
      * Blocks the caller until someone has called get() on the same instance.
      */
-    public synchronized void waitOnEnter() {
-      while (!this.didEnter) {
-        try {
-          wait();
-        } catch (InterruptedException e) {
-          // NOT expected.
-          fail();
-        }
+    public void waitOnEnter() {
+      try {
+        this.didEnter.await();
+      } catch (InterruptedException e) {
+        // NOT expected.
+        fail();
       }
     }
   }
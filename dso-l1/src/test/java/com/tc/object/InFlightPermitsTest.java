@@ -0,0 +1,160 @@
+/*
+ *
+ *  The contents of this file are subject to the Terracotta Public License Version
+ *  2.0 (the "License"); You may not use this file except in compliance with the
+ *  License. You may obtain a copy of the License at
+ *
+ *  http://terracotta.org/legal/terracotta-public-license.
+ *
+ *  Software distributed under the License is distributed on an "AS IS" basis,
+ *  WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing rights and limitations under the License.
+ *
+ *  The Covered Software is Terracotta Core.
+ *
+ *  The Initial Developer of the Covered Software is
+ *  Terracotta, Inc., a Software AG company
+ *
+ */
+package com.tc.object;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class InFlightPermitsTest {
+
+  @Test
+  public void testAcquireAndRelease() throws Exception {
+    InFlightPermits permits = new InFlightPermits(2);
+    assertTrue(permits.tryAcquire());
+    assertTrue(permits.acquire(0L));
+    assertEquals(2, permits.inUse());
+    assertFalse(permits.tryAcquire());
+    permits.release();
+    assertEquals(1, permits.inUse());
+    assertTrue(permits.tryAcquire());
+  }
+
+  @Test
+  public void testAcquireTimesOut() throws Exception {
+    InFlightPermits permits = new InFlightPermits(1);
+    assertTrue(permits.tryAcquire());
+    long start = System.nanoTime();
+    try {
+      permits.acquire(System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(100));
+      fail();
+    } catch (TimeoutException expected) {
+      assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(100));
+    }
+    // the cancelled waiter must not swallow the next permit
+    permits.release();
+    assertTrue(permits.tryAcquire());
+  }
+
+  @Test
+  public void testAsyncWaitersRunInOrderOnRelease() throws Exception {
+    InFlightPermits permits = new InFlightPermits(1);
+    List<Integer> granted = new ArrayList<>();
+    permits.acquire(() -> granted.add(0), () -> fail());
+    for (int x = 1; x < 4; x++) {
+      int id = x;
+      permits.acquire(() -> granted.add(id), () -> fail());
+    }
+    assertEquals(1, granted.size());
+    // queued callers are ahead of a new one
+    assertFalse(permits.tryAcquire());
+    for (int x = 1; x < 4; x++) {
+      permits.release();
+      assertEquals(x + 1, granted.size());
+      assertEquals(x, (int) granted.get(x));
+    }
+  }
+
+  @Test
+  public void testBlockedThreadIsHandedPermit() throws Exception {
+    InFlightPermits permits = new InFlightPermits(1);
+    assertTrue(permits.tryAcquire());
+    AtomicBoolean acquired = new AtomicBoolean();
+    Thread t = new Thread(() -> {
+      try {
+        acquired.set(permits.acquire(0L));
+      } catch (TimeoutException to) {
+        throw new AssertionError(to);
+      }
+    });
+    t.start();
+    t.join(200);
+    assertTrue(t.isAlive());
+    permits.release();
+    t.join();
+    assertTrue(acquired.get());
+    assertEquals(1, permits.inUse());
+  }
+
+  @Test
+  public void testStopFailsWaiters() throws Exception {
+    InFlightPermits permits = new InFlightPermits(1);
+    assertTrue(permits.tryAcquire());
+    AtomicInteger failed = new AtomicInteger();
+    permits.acquire(() -> fail(), failed::incrementAndGet);
+    CountDownLatch done = new CountDownLatch(1);
+    AtomicBoolean acquired = new AtomicBoolean(true);
+    Thread t = new Thread(() -> {
+      try {
+        acquired.set(permits.acquire(0L));
+      } catch (TimeoutException to) {
+        throw new AssertionError(to);
+      }
+      done.countDown();
+    });
+    t.start();
+    permits.stop();
+    assertTrue(done.await(5, TimeUnit.SECONDS));
+    assertFalse(acquired.get());
+    assertEquals(1, failed.get());
+    permits.release();
+    assertFalse(permits.tryAcquire());
+    permits.acquire(() -> fail(), failed::incrementAndGet);
+    assertEquals(2, failed.get());
+  }
+
+  @Test
+  public void testConcurrentCallersNeverExceedLimit() throws Exception {
+    InFlightPermits permits = new InFlightPermits(4);
+    AtomicInteger inside = new AtomicInteger();
+    AtomicInteger peak = new AtomicInteger();
+    Thread[] threads = new Thread[8];
+    for (int x = 0; x < threads.length; x++) {
+      threads[x] = new Thread(() -> {
+        for (int i = 0; i < 10_000; i++) {
+          try {
+            assertTrue(permits.acquire(0L));
+          } catch (TimeoutException to) {
+            throw new AssertionError(to);
+          }
+          peak.accumulateAndGet(inside.incrementAndGet(), Math::max);
+          inside.decrementAndGet();
+          permits.release();
+        }
+      });
+      threads[x].start();
+    }
+    for (Thread t : threads) {
+      t.join();
+    }
+    assertTrue(peak.get() <= 4);
+    assertEquals(0, permits.inUse());
+  }
+}
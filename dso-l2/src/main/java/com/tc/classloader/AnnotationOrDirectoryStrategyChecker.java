@@ -4,6 +4,19 @@ package com.tc.classloader;
  * @author vmad
  */
 public class AnnotationOrDirectoryStrategyChecker implements CommonComponentChecker {
+    private final PluginDiscoveryIndex index;
+
+    public AnnotationOrDirectoryStrategyChecker() {
+        this(PluginDiscoveryIndex.EMPTY);
+    }
+
+    /**
+     * @param index answers for the classes of indexed plugin jars without reflection
+     */
+    public AnnotationOrDirectoryStrategyChecker(PluginDiscoveryIndex index) {
+        this.index = index;
+    }
+
     /**
      * @param clazz to be checked
      * @return true if given class is a common component
@@ -12,6 +25,9 @@ public class AnnotationOrDirectoryStrategyChecker implements CommonComponentChec
     public boolean check(Class<?> clazz) {
         if(clazz.getClassLoader() instanceof ApiClassLoader) {
             return true;
+        } else if(Boolean.FALSE.equals(index.isCommonComponent(clazz))) {
+            // the index found no annotation in the class file
+            return false;
         } else if(clazz.getAnnotation(CommonComponent.class) != null) {
             return true;
         } else {
@@ -0,0 +1,340 @@
+/*
+ *
+ *  The contents of this file are subject to the Terracotta Public License Version
+ *  2.0 (the "License"); You may not use this file except in compliance with the
+ *  License. You may obtain a copy of the License at
+ *
+ *  http://terracotta.org/legal/terracotta-public-license.
+ *
+ *  Software distributed under the License is distributed on an "AS IS" basis,
+ *  WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing rights and limitations under the License.
+ *
+ *  The Covered Software is Terracotta Core.
+ *
+ *  The Initial Developer of the Covered Software is
+ *  Terracotta, Inc., a Software AG company
+ *
+ */
+package com.tc.classloader;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.security.CodeSource;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * What the plugin jars provide: the META-INF/services entries and the classes annotated with {@link CommonComponent}
+ * of every jar, keyed by the checksum of the jar.  The index is saved so that a restart only rescans the jars which
+ * changed.
+ */
+public class PluginDiscoveryIndex {
+
+  private static final Logger LOG = LoggerFactory.getLogger(PluginDiscoveryIndex.class);
+
+  private static final int VERSION = 1;
+  private static final String SERVICES = "META-INF/services/";
+  private static final byte[] COMMON_COMPONENT_DESCRIPTOR =
+      ("L" + CommonComponent.class.getName().replace('.', '/') + ";").getBytes(StandardCharsets.UTF_8);
+
+  public static final PluginDiscoveryIndex EMPTY = new PluginDiscoveryIndex(Collections.emptyMap(), 0, 0, 0);
+
+  private final Map<String, JarEntry> jars;
+  private final int scanned;
+  private final int reused;
+  private final long buildNanos;
+
+  private PluginDiscoveryIndex(Map<String, JarEntry> jars, int scanned, int reused, long buildNanos) {
+    this.jars = jars;
+    this.scanned = scanned;
+    this.reused = reused;
+    this.buildNanos = buildNanos;
+  }
+
+  /**
+   * Indexes the jars and zips of the given directories, reusing the entries of {@code indexFile} whose checksum still
+   * matches, and saves the result back to {@code indexFile} if anything changed.
+   *
+   * @param indexFile the saved index, may be null to not persist anything
+   */
+  public static PluginDiscoveryIndex build(File indexFile, File... directories) {
+    long start = System.nanoTime();
+    Map<String, JarEntry> previous = indexFile != null ? read(indexFile) : Collections.emptyMap();
+    Map<String, JarEntry> jars = new HashMap<>();
+    int scanned = 0;
+    int reused = 0;
+    for (File directory : directories) {
+      File[] files = directory.listFiles();
+      if (files == null) {
+        continue;
+      }
+      for (File file : files) {
+        String name = file.getName().toLowerCase();
+        if (!file.isFile() || !(name.endsWith(".jar") || name.endsWith(".zip"))) {
+          continue;
+        }
+        try {
+          String location = file.toURI().toURL().toExternalForm();
+          long checksum = checksum(file);
+          JarEntry entry = previous.get(location);
+          if (entry != null && entry.checksum == checksum) {
+            reused += 1;
+          } else {
+            entry = scan(location, checksum, file);
+            scanned += 1;
+          }
+          jars.put(location, entry);
+        } catch (IOException ioe) {
+          LOG.warn("unable to index " + file + ", it will be scanned on use", ioe);
+        }
+      }
+    }
+    if (indexFile != null && (scanned > 0 || jars.size() != previous.size())) {
+      write(indexFile, jars);
+    }
+    return new PluginDiscoveryIndex(Collections.unmodifiableMap(jars), scanned, reused, System.nanoTime() - start);
+  }
+
+  /**
+   * @return the lines of META-INF/services/{@code interfaceName} in the jar at {@code location}, or null if that jar
+   *         isn't indexed
+   */
+  public List<String> getServiceEntries(String location, String interfaceName) {
+    JarEntry jar = jars.get(location);
+    if (jar == null) {
+      return null;
+    }
+    List<String> lines = jar.services.get(interfaceName);
+    return lines != null ? lines : Collections.emptyList();
+  }
+
+  /**
+   * @return whether the class is annotated with {@link CommonComponent}, or null if the jar it came from isn't indexed
+   */
+  public Boolean isCommonComponent(Class<?> clazz) {
+    if (jars.isEmpty()) {
+      return null;
+    }
+    CodeSource source = clazz.getProtectionDomain().getCodeSource();
+    URL location = source != null ? source.getLocation() : null;
+    JarEntry jar = location != null ? jars.get(location.toExternalForm()) : null;
+    if (jar == null) {
+      return null;
+    }
+    return jar.commonComponents.contains(clazz.getName());
+  }
+
+  public int getJarCount() {
+    return jars.size();
+  }
+
+  public int getScannedCount() {
+    return scanned;
+  }
+
+  public int getReusedCount() {
+    return reused;
+  }
+
+  public long getBuildTime(TimeUnit unit) {
+    return unit.convert(buildNanos, TimeUnit.NANOSECONDS);
+  }
+
+  @Override
+  public String toString() {
+    return "PluginDiscoveryIndex{jars=" + jars.size() + ", scanned=" + scanned + ", reused=" + reused + ", buildTime="
+           + getBuildTime(TimeUnit.MILLISECONDS) + "ms}";
+  }
+
+  private static long checksum(File file) throws IOException {
+    CRC32 crc = new CRC32();
+    byte[] buffer = new byte[64 * 1024];
+    try (InputStream in = new FileInputStream(file)) {
+      int read = in.read(buffer);
+      while (read >= 0) {
+        crc.update(buffer, 0, read);
+        read = in.read(buffer);
+      }
+    }
+    return crc.getValue();
+  }
+
+  private static JarEntry scan(String location, long checksum, File file) throws IOException {
+    Map<String, List<String>> services = new HashMap<>();
+    Set<String> commonComponents = new HashSet<>();
+    try (ZipFile zip = new ZipFile(file)) {
+      Enumeration<? extends ZipEntry> entries = zip.entries();
+      while (entries.hasMoreElements()) {
+        ZipEntry entry = entries.nextElement();
+        String name = entry.getName();
+        if (entry.isDirectory()) {
+          continue;
+        }
+        if (name.startsWith(SERVICES) && name.indexOf('/', SERVICES.length()) < 0) {
+          services.put(name.substring(SERVICES.length()), readLines(zip, entry));
+        } else if (name.endsWith(".class") && isAnnotated(readBytes(zip, entry))) {
+          commonComponents.add(name.substring(0, name.length() - ".class".length()).replace('/', '.'));
+        }
+      }
+    }
+    return new JarEntry(location, checksum, services, commonComponents);
+  }
+
+  private static List<String> readLines(ZipFile zip, ZipEntry entry) throws IOException {
+    List<String> lines = new ArrayList<>();
+    try (BufferedReader reader = new BufferedReader(new InputStreamReader(zip.getInputStream(entry), StandardCharsets.UTF_8))) {
+      String line = reader.readLine();
+      while (line != null) {
+        lines.add(line);
+        line = reader.readLine();
+      }
+    }
+    return lines;
+  }
+
+  private static byte[] readBytes(ZipFile zip, ZipEntry entry) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream(entry.getSize() > 0 ? (int) entry.getSize() : 4096);
+    byte[] buffer = new byte[8192];
+    try (InputStream in = zip.getInputStream(entry)) {
+      int read = in.read(buffer);
+      while (read >= 0) {
+        out.write(buffer, 0, read);
+        read = in.read(buffer);
+      }
+    }
+    return out.toByteArray();
+  }
+
+  /**
+   * A runtime annotation is referenced from the constant pool by its type descriptor, which no other use of the
+   * annotation type produces in practice.  A false positive only costs a reflective check.
+   */
+  static boolean isAnnotated(byte[] classBytes) {
+    byte[] target = COMMON_COMPONENT_DESCRIPTOR;
+    outer:
+    for (int i = 0; i <= classBytes.length - target.length; i++) {
+      for (int j = 0; j < target.length; j++) {
+        if (classBytes[i + j] != target[j]) {
+          continue outer;
+        }
+      }
+      return true;
+    }
+    return false;
+  }
+
+  private static Map<String, JarEntry> read(File indexFile) {
+    if (!indexFile.isFile()) {
+      return Collections.emptyMap();
+    }
+    try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)))) {
+      if (in.readInt() != VERSION) {
+        LOG.info("ignoring discovery index " + indexFile + " written by another version");
+        return Collections.emptyMap();
+      }
+      int count = in.readInt();
+      Map<String, JarEntry> jars = new HashMap<>();
+      for (int i = 0; i < count; i++) {
+        String location = in.readUTF();
+        long checksum = in.readLong();
+        int serviceCount = in.readInt();
+        Map<String, List<String>> services = new HashMap<>();
+        for (int s = 0; s < serviceCount; s++) {
+          String interfaceName = in.readUTF();
+          int lineCount = in.readInt();
+          List<String> lines = new ArrayList<>(lineCount);
+          for (int l = 0; l < lineCount; l++) {
+            lines.add(in.readUTF());
+          }
+          services.put(interfaceName, lines);
+        }
+        int componentCount = in.readInt();
+        Set<String> commonComponents = new HashSet<>();
+        for (int c = 0; c < componentCount; c++) {
+          commonComponents.add(in.readUTF());
+        }
+        jars.put(location, new JarEntry(location, checksum, services, commonComponents));
+      }
+      return jars;
+    } catch (IOException ioe) {
+      LOG.warn("unable to read discovery index " + indexFile + ", rescanning all plugins", ioe);
+      return Collections.emptyMap();
+    }
+  }
+
+  private static void write(File indexFile, Map<String, JarEntry> jars) {
+    File temp = new File(indexFile.getPath() + ".tmp");
+    try {
+      try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+        out.writeInt(VERSION);
+        out.writeInt(jars.size());
+        for (JarEntry jar : jars.values()) {
+          out.writeUTF(jar.location);
+          out.writeLong(jar.checksum);
+          out.writeInt(jar.services.size());
+          for (Map.Entry<String, List<String>> service : jar.services.entrySet()) {
+            out.writeUTF(service.getKey());
+            out.writeInt(service.getValue().size());
+            for (String line : service.getValue()) {
+              out.writeUTF(line);
+            }
+          }
+          out.writeInt(jar.commonComponents.size());
+          for (String component : jar.commonComponents) {
+            out.writeUTF(component);
+          }
+        }
+      }
+      if (!temp.renameTo(indexFile)) {
+        indexFile.delete();
+        if (!temp.renameTo(indexFile)) {
+          throw new IOException("unable to replace " + indexFile);
+        }
+      }
+    } catch (IOException ioe) {
+      // a read-only installation just rescans on every start
+      LOG.info("unable to save discovery index " + indexFile + ": " + ioe.getMessage());
+      temp.delete();
+    }
+  }
+
+  private static class JarEntry {
+    private final String location;
+    private final long checksum;
+    private final Map<String, List<String>> services;
+    private final Set<String> commonComponents;
+
+    JarEntry(String location, long checksum, Map<String, List<String>> services, Set<String> commonComponents) {
+      this.location = location;
+      this.checksum = checksum;
+      this.services = services;
+      this.commonComponents = commonComponents;
+    }
+  }
+}
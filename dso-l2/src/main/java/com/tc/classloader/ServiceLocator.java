@@ -23,10 +23,13 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.tc.config.Directories;
+import com.tc.properties.TCPropertiesConsts;
+import com.tc.properties.TCPropertiesImpl;
 import com.tc.util.ManagedServiceLoader;
 import java.io.File;
 import java.io.FileNotFoundException;
 
+import java.io.IOException;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.net.URLClassLoader;
@@ -35,6 +38,8 @@ import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.WeakHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
 
 
 /**
@@ -62,7 +67,7 @@ public class ServiceLocator extends ManagedServiceLoader {
   @Override
   protected Class<?> loadClass(String className, String location, ClassLoader loader) {
     try {
-      return Class.forName(className, false, new ComponentURLClassLoader(new URL[] {new URL(location)}, getApiClassLoader(loader), new AnnotationOrDirectoryStrategyChecker()));
+      return Class.forName(className, false, new ComponentURLClassLoader(new URL[] {new URL(location)}, getApiClassLoader(loader), new AnnotationOrDirectoryStrategyChecker(DISCOVERY_INDEX)));
     } catch (MalformedURLException aml) {
       LOG.warn("unable to load " + className + " from " + location, aml);
     } catch  (ClassNotFoundException nf) {
@@ -129,6 +134,9 @@ public class ServiceLocator extends ManagedServiceLoader {
     return createURLS(Directories.getServerPluginsLibDir());
   }
   
+  private static final LongAdder DISCOVERY_NANOS = new LongAdder();
+  private static final PluginDiscoveryIndex DISCOVERY_INDEX = createDiscoveryIndex();
+
   public static ClassLoader PLATFORM_LOADER = createPlatformClassLoader();
   
   public static ClassLoader getPlatformLoader() {
@@ -145,6 +153,48 @@ public class ServiceLocator extends ManagedServiceLoader {
     }
   }
 
+  private static PluginDiscoveryIndex createDiscoveryIndex() {
+    if (!TCPropertiesImpl.getProperties().getBoolean(TCPropertiesConsts.L2_PLUGINS_DISCOVERY_INDEX_ENABLED, true)) {
+      return PluginDiscoveryIndex.EMPTY;
+    }
+    try {
+      File lib = Directories.getServerPluginsLibDir();
+      File api = Directories.getServerPluginsApiDir();
+      String location = TCPropertiesImpl.getProperties().getProperty(TCPropertiesConsts.L2_PLUGINS_DISCOVERY_INDEX_FILE, true);
+      File indexFile = (location == null || location.trim().isEmpty()) ? new File(lib.getParentFile(), ".discovery-index") : new File(location.trim());
+      PluginDiscoveryIndex index = PluginDiscoveryIndex.build(indexFile, lib, api);
+      DISCOVERY_NANOS.add(index.getBuildTime(TimeUnit.NANOSECONDS));
+      LOG.info("Indexed " + index.getJarCount() + " plugin jars in " + index.getBuildTime(TimeUnit.MILLISECONDS) + "ms ("
+               + index.getReusedCount() + " unchanged, " + index.getScannedCount() + " scanned)");
+      return index;
+    } catch (FileNotFoundException file) {
+      return PluginDiscoveryIndex.EMPTY;
+    }
+  }
+
+  /**
+   * @return the time spent discovering plugins and service implementations so far, index included
+   */
+  public static long getDiscoveryTime(TimeUnit unit) {
+    return unit.convert(DISCOVERY_NANOS.sum(), TimeUnit.NANOSECONDS);
+  }
+
+  @Override
+  protected Collection<Class<?>> discoverImplementations(String interfaceName, ClassLoader loader) {
+    long start = System.nanoTime();
+    try {
+      return super.discoverImplementations(interfaceName, loader);
+    } finally {
+      DISCOVERY_NANOS.add(System.nanoTime() - start);
+    }
+  }
+
+  @Override
+  protected List<String> readServiceEntries(URL resource, String location, String interfaceName) throws IOException {
+    List<String> indexed = DISCOVERY_INDEX.getServiceEntries(location, interfaceName);
+    return indexed != null ? indexed : super.readServiceEntries(resource, location, interfaceName);
+  }
+
   private static ApiClassLoader createApiClassLoader(ClassLoader parent) {
     try {
       return new ApiClassLoader(createURLS(Directories.getServerPluginsApiDir()), parent);
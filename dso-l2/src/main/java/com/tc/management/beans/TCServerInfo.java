@@ -45,6 +45,7 @@ import java.util.Map;
 import java.util.Properties;
 import java.util.Timer;
 import java.util.TimerTask;
+import java.util.TreeMap;
 
 import javax.management.AttributeChangeNotification;
 import javax.management.MBeanNotificationInfo;
@@ -421,4 +422,14 @@ public class TCServerInfo extends AbstractTerracottaMBean implements TCServerInf
   public String getResourceState() {
     return server.getResourceState();
   }
+
+  @Override
+  public Map<String, Object> getStageLatencies() {
+    return new TreeMap<>(server.getStageLatencies());
+  }
+
+  @Override
+  public Map<String, Object> takeStageLatencyInterval() {
+    return new TreeMap<>(server.takeStageLatencyInterval());
+  }
 }
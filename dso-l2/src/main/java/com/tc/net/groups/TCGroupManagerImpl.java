@@ -86,6 +86,8 @@ import com.tc.util.ProductID;
 import com.tc.util.ProductInfo;
 import com.tc.util.TCTimeoutException;
 import com.tc.util.UUID;
+import com.tc.util.concurrent.HashedWheelTimer;
+import com.tc.util.concurrent.Timer;
 import com.tc.util.sequence.Sequence;
 import com.tc.util.sequence.SimpleSequence;
 
@@ -104,10 +106,11 @@ import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
-import java.util.Timer;
-import java.util.TimerTask;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 
@@ -128,9 +131,7 @@ public class TCGroupManagerImpl implements GroupManager<AbstractGroupMessage>, C
   private final Map<MessageID, GroupResponse<AbstractGroupMessage>>               pendingRequests             = new ConcurrentHashMap<>();
   private final AtomicBoolean                               isStopped                   = new AtomicBoolean(false);
   private final ConcurrentHashMap<ServerID, TCGroupMember>  members                     = new ConcurrentHashMap<>();
-  private final Timer                                       handshakeTimer              = new Timer(
-                                                                                                    "TC Group Manager Handshake timer",
-                                                                                                    true);
+  private final Timer                                       handshakeTimer              = new HashedWheelTimer("TC Group Manager Handshake timer");
   private final Set<NodeID>                                 zappedSet                   = Collections
                                                                                             .synchronizedSet(new HashSet<NodeID>());
   private final StageManager                                stageManager;
@@ -351,6 +352,7 @@ public class TCGroupManagerImpl implements GroupManager<AbstractGroupMessage>, C
     groupListener.stop(timeout);
     communicationsManager.shutdown();
     connectionManager.shutdown();
+    handshakeTimer.cancel();
     for (TCGroupMember m : members.values()) {
       notifyAnyPendingRequests(m);
     }
@@ -987,7 +989,7 @@ public class TCGroupManagerImpl implements GroupManager<AbstractGroupMessage>, C
 
     private HandshakeState           current;
     private ServerID                 peerNodeID;
-    private TimerTask                timerTask;
+    private ScheduledFuture<?>       timerTask;
     private TCGroupMember            member;
     private boolean                  stateTransitionInProgress;
 
@@ -1077,21 +1079,18 @@ public class TCGroupManagerImpl implements GroupManager<AbstractGroupMessage>, C
     }
 
     private synchronized void setTimerTask(long timeout) {
-      TimerTask task = new TimerTask() {
-        @Override
-        public void run() {
-          handshakeTimeout();
-        }
-      };
-      timerTask = task;
-      Timer timer = manager.getHandshakeTimer();
-      timer.purge();
-      timer.schedule(task, timeout);
+      cancelTimerTask();
+      try {
+        timerTask = manager.getHandshakeTimer().schedule(this::handshakeTimeout, timeout, TimeUnit.MILLISECONDS);
+      } catch (RejectedExecutionException e) {
+        // the group manager is stopping, the channel goes with it
+        debugInfo("Handshake timer stopped, no timeout for channel " + channel);
+      }
     }
 
     private synchronized void cancelTimerTask() {
       if (timerTask != null) {
-        this.timerTask.cancel();
+        this.timerTask.cancel(false);
         timerTask = null;
       }
     }
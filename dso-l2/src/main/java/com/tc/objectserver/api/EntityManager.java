@@ -24,6 +24,7 @@ import com.tc.entity.VoltronEntityMessage;
 import com.tc.object.EntityDescriptor;
 import com.tc.object.EntityID;
 import com.tc.object.FetchID;
+import com.tc.objectserver.entity.FailoverTimings;
 import com.tc.objectserver.entity.ServerEntityFactory;
 import com.tc.text.PrettyPrintable;
 import java.util.Collection;
@@ -99,4 +100,9 @@ public interface EntityManager extends MessageCodecSupplier, PrettyPrintable {
    * @return the classloader used to create all entities
    */
   ServerEntityFactory getEntityLoader();
+  /**
+   * 
+   * @return the phase by phase breakdown of the last failover to active
+   */
+  FailoverTimings getFailoverTimings();
 }
@@ -76,6 +76,14 @@ public interface ManagedEntity {
   boolean isActive();
   
   boolean isRemoveable();
+
+  /**
+   * Permanent entities are created from configuration and can never be deleted.  Other entities may depend on them
+   * so they are promoted ahead of everything else on failover.
+   * 
+   * @return true if this entity can never be destroyed
+   */
+  boolean isPermanent();
   
   boolean clearQueue();
   
@@ -22,99 +22,132 @@ import com.tc.exception.TCServerRestartException;
 import com.tc.l2.msg.ReplicationResultCode;
 import com.tc.net.NodeID;
 import com.tc.util.Assert;
-import java.util.Collections;
-import java.util.HashMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
-import java.util.HashSet;
-import java.util.Map;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 
 /**
  * This type is used by ActiveToPassiveReplication in order to wait on all the passives either sending a RECEIVED or
  * COMPLETED acknowledgement for a specific message.
+ * <p>
+ * There is no lock: each passive has a state word updated by CAS and the two phases are CompletableFutures which are
+ * completed by whichever ack brings the pending count of that phase to zero.
  */
 public class ActivePassiveAckWaiter {
+  private static final Logger LOGGER = LoggerFactory.getLogger(ActivePassiveAckWaiter.class);
+  private static final int RECEIVED = 0x1;
+  private static final int COMPLETED = 0x2;
+  // the passive completed without acking the receive first
+  private static final int RECEIVED_BY_COMPLETE = 0x4;
+
   private final Set<NodeID> start;
-  private final Set<NodeID> receivedPending;
-  private final Set<NodeID> receivedByComplete;
-  private final Set<NodeID> completedPending;
-  private Runnable finalizer;
-  private final Map<NodeID, ReplicationResultCode> results;
+  private final NodeID[] nodes;
+  private final AtomicIntegerArray nodeStates;
+  private final AtomicReferenceArray<ReplicationResultCode> results;
+  private final AtomicInteger receivedPending;
+  private final AtomicInteger completedPending;
+  private final CompletableFuture<Void> received = new CompletableFuture<>();
+  private final CompletableFuture<Void> completed = new CompletableFuture<>();
   private final PassiveReplicationBroker parent;
 
   public ActivePassiveAckWaiter(Set<NodeID> allPassiveNodes, PassiveReplicationBroker parent) {
     this.start =  Collections.unmodifiableSet(allPassiveNodes);
-    this.receivedPending =  new HashSet<>(allPassiveNodes);
-    this.completedPending =  new HashSet<>(allPassiveNodes);
-    this.receivedByComplete =  new HashSet<>();
-    this.results = new HashMap<>();
+    this.nodes = allPassiveNodes.toArray(new NodeID[allPassiveNodes.size()]);
+    this.nodeStates = new AtomicIntegerArray(nodes.length);
+    this.results = new AtomicReferenceArray<>(nodes.length);
+    this.receivedPending = new AtomicInteger(nodes.length);
+    this.completedPending = new AtomicInteger(nodes.length);
     this.parent = parent;
+    if (nodes.length == 0) {
+      received.complete(null);
+      completed.complete(null);
+    }
   }
 
-  public synchronized void waitForReceived() {
-    try {
-      while (!this.receivedPending.isEmpty()) {
-        wait();
-      }
-    } catch (InterruptedException ie) {
-      throw new RuntimeException(ie);
-    }
+  public void waitForReceived() {
+    await(this.received);
   }
   
   public void runWhenCompleted(Runnable r) {
-    boolean wasSet = false;
-    synchronized (this) {
-      if (!this.completedPending.isEmpty()) {
-        finalizer = r;
-        wasSet = true;
-      }
-    }
-    if (!wasSet) {
+    if (this.completed.isDone()) {
       r.run();
+    } else {
+      this.completed.thenRun(r).exceptionally(t -> {
+        LOGGER.error("failure running completion of " + this, t);
+        return null;
+      });
     }
   }
 
-  public synchronized void waitForCompleted() {
+  public void waitForCompleted() {
+    await(this.completed);
+  }
+
+  private static void await(CompletableFuture<Void> phase) {
     try {
-      while (!this.completedPending.isEmpty()) {
-        wait();
-     }
+      phase.get();
     } catch (InterruptedException ie) {
       throw new RuntimeException(ie);
+    } catch (ExecutionException ee) {
+      // the phases are never completed exceptionally
+      throw new AssertionError(ee);
     }
   }
   
   public boolean verifyLifecycleResult(boolean success) {
-    if(results.entrySet().stream().anyMatch(e->e.getValue() == (success ? ReplicationResultCode.FAIL : ReplicationResultCode.SUCCESS))) {
-      boolean zapped = false;
-      for (Map.Entry<NodeID, ReplicationResultCode> r : results.entrySet()) {
-        if (r.getValue() == ReplicationResultCode.FAIL) {
-          parent.zapAndWait(r.getKey());
-          zapped = true;
-        }
+    List<NodeID> failed = new ArrayList<>();
+    boolean inconsistent = false;
+    for (int i = 0; i < nodes.length; i++) {
+      ReplicationResultCode result = this.results.get(i);
+      if (result == (success ? ReplicationResultCode.FAIL : ReplicationResultCode.SUCCESS)) {
+        inconsistent = true;
+      }
+      if (result == ReplicationResultCode.FAIL) {
+        failed.add(nodes[i]);
+      }
+    }
+    if (inconsistent) {
+      for (NodeID node : failed) {
+        parent.zapAndWait(node);
       }
       if (!success) {
         throw new TCServerRestartException("inconsistent lifecycle");
       }
-      return zapped;
+      return !failed.isEmpty();
     }
     return false;
   }
 
-  public synchronized boolean isCompleted() {
-    return this.completedPending.isEmpty();
+  public boolean isCompleted() {
+    return this.completedPending.get() == 0;
   }
 
-  public synchronized void didReceiveOnPassive(NodeID onePassive) {
-    boolean didContain = this.receivedPending.remove(onePassive);
-    // We must have contained this passive in order to receive.
-    if (!didContain) {
-      Assert.assertTrue(onePassive + " " + toString(), this.receivedByComplete.contains(onePassive));
-    }    
+  public void didReceiveOnPassive(NodeID onePassive) {
+    int index = indexOf(onePassive);
+    boolean didContain = false;
+    if (index >= 0) {
+      int state = setState(index, RECEIVED);
+      didContain = (state & RECEIVED) == 0;
+      // We must have contained this passive in order to receive.
+      if (!didContain) {
+        Assert.assertTrue(onePassive + " " + toString(), (state & RECEIVED_BY_COMPLETE) != 0);
+      }
+    } else {
+      Assert.fail(onePassive + " " + toString());
+    }
     // Wake everyone up if this changed something.
-    if (this.receivedPending.isEmpty()) {
-      notifyAll();
+    if (didContain && this.receivedPending.decrementAndGet() == 0) {
+      this.received.complete(null);
     }
   }
 
@@ -127,40 +160,80 @@ public class ActivePassiveAckWaiter {
    * @return True if this was the last outstanding completion required and the waiter is now done.
    */
   public boolean didCompleteOnPassive(NodeID onePassive, boolean isNormalComplete, ReplicationResultCode payload) {
-    boolean isDone = updateCompletionFlags(onePassive, isNormalComplete, payload);
-//  by passing through the synchronization block above, the finalizer if present 
-//  will be properly visible
-    if (isDone && finalizer != null) {
-      finalizer.run();
-    }
-    return isDone;
-  }
-  
-  private synchronized boolean updateCompletionFlags(NodeID onePassive, boolean isNormalComplete, ReplicationResultCode payload) {
-    // Note that we will try to remove from the received set, but usually it will already have been removed.
-    boolean didContainInReceived = this.receivedPending.remove(onePassive);
-    if (didContainInReceived) {
-      this.receivedByComplete.add(onePassive);
+    int index = indexOf(onePassive);
+    boolean didContainInCompleted = false;
+    if (index >= 0) {
+      if (isNormalComplete) {
+        // published by the decrement below
+        this.results.set(index, payload);
+      }
+      // Note that we will try to mark it received, as well, but usually it will already have been.
+      int state = setState(index, RECEIVED | COMPLETED);
+      didContainInCompleted = (state & COMPLETED) == 0;
+      if ((state & RECEIVED) == 0 && this.receivedPending.decrementAndGet() == 0) {
+        this.received.complete(null);
+      }
     }
-    // We know that it must still be in the completed set, though.
-    boolean didContainInCompleted = this.completedPending.remove(onePassive);
     // We must have contained this passive in order to complete.
     if (isNormalComplete) {
       // In the unexpected case, we are just making sure this node is removed from all waiters, even though it might have
       // already completed on some of them.
       Assert.assertTrue(didContainInCompleted);
-      this.results.put(onePassive, payload);
     }
-    boolean isDoneWaiting = this.completedPending.isEmpty();
-    // Wake everyone up if this changed something.
-    if ((didContainInReceived && this.receivedPending.isEmpty()) || isDoneWaiting) {
-      notifyAll();
+    if (didContainInCompleted && this.completedPending.decrementAndGet() == 0) {
+      // runs the finalizers on this thread
+      this.completed.complete(null);
+      return true;
+    }
+    return isCompleted();
+  }
+
+  private int indexOf(NodeID node) {
+    for (int i = 0; i < nodes.length; i++) {
+      if (nodes[i].equals(node)) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Sets the given flags on the state word of one passive, returning the previous state.
+   */
+  private int setState(int index, int flags) {
+    while (true) {
+      int state = this.nodeStates.get(index);
+      int update = state | flags;
+      if ((flags & COMPLETED) != 0 && (state & RECEIVED) == 0) {
+        update |= RECEIVED_BY_COMPLETE;
+      }
+      if (update == state || this.nodeStates.compareAndSet(index, state, update)) {
+        return state;
+      }
     }
-    return isDoneWaiting;
   }
 
   @Override
   public String toString() {
-    return "ActivePassiveAckWaiter{" + "start=" + start + ", receivedPending=" + receivedPending + ", receivedByComplete=" + receivedByComplete + ", completedPending=" + completedPending + ", results=" + results + '}';
+    StringBuilder receivedPending = new StringBuilder();
+    StringBuilder receivedByComplete = new StringBuilder();
+    StringBuilder completedPending = new StringBuilder();
+    StringBuilder results = new StringBuilder();
+    for (int i = 0; i < nodes.length; i++) {
+      int state = this.nodeStates.get(i);
+      if ((state & RECEIVED) == 0) {
+        receivedPending.append(nodes[i]).append(' ');
+      }
+      if ((state & RECEIVED_BY_COMPLETE) != 0) {
+        receivedByComplete.append(nodes[i]).append(' ');
+      }
+      if ((state & COMPLETED) == 0) {
+        completedPending.append(nodes[i]).append(' ');
+      }
+      if (this.results.get(i) != null) {
+        results.append(nodes[i]).append('=').append(this.results.get(i)).append(' ');
+      }
+    }
+    return "ActivePassiveAckWaiter{" + "start=" + start + ", receivedPending=[" + receivedPending.toString().trim() + "], receivedByComplete=[" + receivedByComplete.toString().trim() + "], completedPending=[" + completedPending.toString().trim() + "], results={" + results.toString().trim() + "}}";
   }
 }
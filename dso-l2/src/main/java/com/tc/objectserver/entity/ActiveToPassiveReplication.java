@@ -33,7 +33,10 @@ import com.tc.net.groups.GroupManager;
 import com.tc.objectserver.api.ManagedEntity;
 import com.tc.objectserver.handler.ProcessTransactionHandler;
 import com.tc.objectserver.persistence.EntityPersistor;
+import com.tc.properties.TCPropertiesConsts;
+import com.tc.properties.TCPropertiesImpl;
 import com.tc.util.Assert;
+import com.tc.util.concurrent.TCConcurrentLongMap;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.ObjectOutputStream;
@@ -47,6 +50,8 @@ import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArraySet;
 import java.util.concurrent.Executor;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Consumer;
 import com.tc.l2.state.ConsistencyManager;
 import com.tc.l2.state.ServerMode;
@@ -64,11 +69,13 @@ import java.util.concurrent.TimeUnit;
 public class ActiveToPassiveReplication implements PassiveReplicationBroker, GroupEventsListener {
   
   private static final Logger logger = LoggerFactory.getLogger(PassiveReplicationBroker.class);
+  private static final int SYNC_ENTITY_WINDOW = TCPropertiesImpl.getProperties().getInt(TCPropertiesConsts.L2_PASSIVE_SYNC_ENTITY_WINDOW, 1);
   private final Iterable<NodeID> passives;
   private boolean activated = false;
   private final Set<NodeID> passiveNodes = new CopyOnWriteArraySet<>();
   private final Set<NodeID> standByNodes = new HashSet<>();
-  private final ConcurrentHashMap<SyncReplicationActivity.ActivityID, ActivePassiveAckWaiter> waiters = new ConcurrentHashMap<>();
+  // keyed by the activity id, a run of contiguous acks is cleared with one lookup per id
+  private final TCConcurrentLongMap<ActivePassiveAckWaiter> waiters = new TCConcurrentLongMap<>();
   private final ReplicationSender replicationSender;
   private final Executor passiveSyncPool = Executors.newCachedThreadPool();
   private final EntityPersistor persistor;
@@ -176,10 +183,12 @@ public class ActiveToPassiveReplication implements PassiveReplicationBroker, Gro
                   toArray(new SyncReplicationActivity.EntityCreationTuple[tuplesForCreation.size()])), Collections.singleton(newNode)).waitForCompleted();
         }}
       );
-      for (ManagedEntity entity : e) {
-        logger.debug("starting sync for entity " + newNode + "/" + entity.getID());
-        entity.sync(newNode);
-        logger.debug("ending sync for entity " + newNode + "/" + entity.getID());
+      if (SYNC_ENTITY_WINDOW > 1) {
+        syncEntitiesPipelined(e, newNode);
+      } else {
+        for (ManagedEntity entity : e) {
+          syncEntity(entity, newNode);
+        }
       }
       //  passive sync done message.  causes passive to go into passive standby mode
       logger.debug("ending sync " + newNode);
@@ -187,6 +196,46 @@ public class ActiveToPassiveReplication implements PassiveReplicationBroker, Gro
     });
   }
   
+  private void syncEntity(ManagedEntity entity, NodeID newNode) {
+    logger.debug("starting sync for entity " + newNode + "/" + entity.getID());
+    entity.sync(newNode);
+    logger.debug("ending sync for entity " + newNode + "/" + entity.getID());
+  }
+
+  /**
+   * Syncs up to SYNC_ENTITY_WINDOW entities to the new passive at once.  The end of sync message is only sent once 
+   * every entity has finished so the passive never moves to standby with an entity half sync'd.
+   */
+  private void syncEntitiesPipelined(Iterable<ManagedEntity> entities, NodeID newNode) {
+    Semaphore window = new Semaphore(SYNC_ENTITY_WINDOW);
+    AtomicReference<RuntimeException> failure = new AtomicReference<>();
+    try {
+      for (ManagedEntity entity : entities) {
+        window.acquire();
+        if (failure.get() != null) {
+          window.release();
+          break;
+        }
+        passiveSyncPool.execute(()->{
+          try {
+            syncEntity(entity, newNode);
+          } catch (RuntimeException re) {
+            logger.warn("sync of " + entity.getID() + " to " + newNode + " failed", re);
+            failure.compareAndSet(null, re);
+          } finally {
+            window.release();
+          }
+        });
+      }
+      window.acquire(SYNC_ENTITY_WINDOW);
+    } catch (InterruptedException ie) {
+      throw new RuntimeException(ie);
+    }
+    if (failure.get() != null) {
+      throw failure.get();
+    }
+  }
+  
   private byte[] replicateEntityPersistor() {
     ByteArrayOutputStream out = new ByteArrayOutputStream();
     try {
@@ -204,31 +253,56 @@ public class ActiveToPassiveReplication implements PassiveReplicationBroker, Gro
     NodeID messageFrom = context.messageFrom();
     Integer id = this.lane.get(messageFrom);
     this.receiveHandler.addToSink(new ReplicationReceivingAction(id, ()->{
-      for (ReplicationAckTuple tuple : context.getBatch()) {
-        if (ReplicationResultCode.RECEIVED == tuple.result) {
-          ActivePassiveAckWaiter waiter = waiters.get(tuple.respondTo);
-          if (null != waiter) {
-            waiter.didReceiveOnPassive(messageFrom);
-          }
-        } else {
-          // This is a normal completion.
-          boolean isNormalComplete = true;
-          internalAckCompleted(tuple.respondTo, messageFrom, tuple.result, isNormalComplete);
+      List<ReplicationAckTuple> batch = context.getBatch();
+      int start = 0;
+      while (start < batch.size()) {
+        // passives ack in order so the batch is mostly runs of contiguous ids of the same kind
+        boolean isReceived = ReplicationResultCode.RECEIVED == batch.get(start).result;
+        int end = start + 1;
+        while (end < batch.size()
+            && isReceived == (ReplicationResultCode.RECEIVED == batch.get(end).result)
+            && batch.get(end).respondTo.id == batch.get(end - 1).respondTo.id + 1) {
+          end += 1;
         }
+        ackRange(batch, start, end, isReceived, messageFrom);
+        start = end;
       }
     }));
   }
 
+  /**
+   * Applies the acks batch[start, end), which cover contiguous activity ids, to the waiters of that range.
+   */
+  private void ackRange(List<ReplicationAckTuple> batch, int start, int end, boolean isReceived, NodeID messageFrom) {
+    long first = batch.get(start).respondTo.id;
+    for (int i = start; i < end; i++) {
+      long id = first + (i - start);
+      ActivePassiveAckWaiter waiter = waiters.get(id);
+      if (waiter == null) {
+        continue;
+      }
+      if (isReceived) {
+        waiter.didReceiveOnPassive(messageFrom);
+      } else {
+        // This is a normal completion.
+        boolean isNormalComplete = true;
+        if (waiter.didCompleteOnPassive(messageFrom, isNormalComplete, batch.get(i).result)) {
+          waiters.remove(id, waiter);
+        }
+      }
+    }
+  }
+
   /**
    * This internal handling for completed is split out since it happens for both completed acks but also situations which
    * implies no ack is forthcoming (the passive disappearing, for example).
    */
-  private void internalAckCompleted(SyncReplicationActivity.ActivityID activityID, NodeID passive, ReplicationResultCode payload, boolean isNormalComplete) {
+  private void internalAckCompleted(long activityID, NodeID passive, ReplicationResultCode payload, boolean isNormalComplete) {
     ActivePassiveAckWaiter waiter = waiters.get(activityID);
     if (null != waiter) {
       boolean shouldDiscardWaiter = waiter.didCompleteOnPassive(passive, isNormalComplete, payload);
       if (shouldDiscardWaiter) {
-        waiters.remove(activityID);
+        waiters.remove(activityID, waiter);
       }
     }
   }
@@ -246,7 +320,7 @@ public class ActiveToPassiveReplication implements PassiveReplicationBroker, Gro
     ActivePassiveAckWaiter waiter = new ActivePassiveAckWaiter(copy, this);
     if (!copy.isEmpty()) {
       SyncReplicationActivity.ActivityID activityID = activity.getActivityID();
-      waiters.put(activityID, waiter);
+      waiters.put(activityID.id, waiter);
       // Note that we want to explicitly create the ReplicationEnvelope using a different helper if it is a local flush
       //  command.
       boolean isLocalFlush = (SyncReplicationActivity.ActivityType.FLUSH_LOCAL_PIPELINE == activity.getActivityType());
@@ -257,7 +331,7 @@ public class ActiveToPassiveReplication implements PassiveReplicationBroker, Gro
             if (!sent) {
               // We didn't send so just ack complete, internally.
               boolean isNormalComplete = true;
-              internalAckCompleted(activityID, node, null, isNormalComplete);
+              internalAckCompleted(activityID.id, node, null, isNormalComplete);
             }
           });
         }
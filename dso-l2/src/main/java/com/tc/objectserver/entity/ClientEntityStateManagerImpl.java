@@ -27,16 +27,25 @@ import com.tc.object.ClientInstanceID;
 import com.tc.object.EntityDescriptor;
 import com.tc.object.FetchID;
 import com.tc.util.Assert;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Objects;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.stream.Collectors;
 
 
+/**
+ * References are indexed by client so that everything a disconnecting client touches is found without looking at
+ * the references of every other client, and each entity keeps a count of its references so checking for remaining
+ * references is a single lookup.  Writers for one client are serialized by the client's slot in the index, readers
+ * never lock.
+ */
 public class ClientEntityStateManagerImpl implements ClientEntityStateManager {
-  private final Map<ClientDescriptorImpl, FetchID> clientStates = new ConcurrentHashMap<>();
+  private final ConcurrentMap<ClientID, Map<ClientDescriptorImpl, FetchID>> clientStates = new ConcurrentHashMap<>();
+  private final ConcurrentMap<FetchID, Integer> entityReferences = new ConcurrentHashMap<>();
   private static final Logger logger    = LoggerFactory.getLogger(ClientEntityStateManagerImpl.class);
 
   public ClientEntityStateManagerImpl() {
@@ -45,48 +54,76 @@ public class ClientEntityStateManagerImpl implements ClientEntityStateManager {
   @Override
   public boolean addReference(ClientDescriptorImpl instance, FetchID eid) {
     Assert.assertFalse(instance.getClientInstanceID() == ClientInstanceID.NULL_ID);
-    FetchID check = clientStates.put(instance, eid);
-    return Objects.isNull(check);
+    FetchID[] check = new FetchID[1];
+    clientStates.compute(instance.getNodeID(), (client, references)->{
+      if (references == null) {
+        references = new ConcurrentHashMap<>();
+      }
+      check[0] = references.put(instance, eid);
+      if (!eid.equals(check[0])) {
+        entityReferences.merge(eid, 1, Integer::sum);
+        if (check[0] != null) {
+          dropEntityReference(check[0]);
+        }
+      }
+      return references;
+    });
+    return check[0] == null;
   }
 
   @Override
   public boolean removeReference(ClientDescriptorImpl descriptor) {
     Assert.assertFalse(descriptor.getClientInstanceID() == ClientInstanceID.NULL_ID);
-    FetchID eid = clientStates.remove(descriptor);
-    return Objects.nonNull(eid);
+    FetchID[] eid = new FetchID[1];
+    clientStates.computeIfPresent(descriptor.getNodeID(), (client, references)->{
+      eid[0] = references.remove(descriptor);
+      if (eid[0] != null) {
+        dropEntityReference(eid[0]);
+      }
+      return references.isEmpty() ? null : references;
+    });
+    return eid[0] != null;
+  }
+
+  private void dropEntityReference(FetchID eid) {
+    entityReferences.computeIfPresent(eid, (fetch, count)->(count > 1) ? count - 1 : null);
   }
 
   @Override
   public boolean verifyNoEntityReferences(FetchID eid) {
-    return !clientStates.values().stream().anyMatch((led)->led.equals(eid));
+    return !entityReferences.containsKey(eid);
   }
 
   @Override
   public boolean verifyNoClientReferences(ClientID eid) {
-    return !clientStates.keySet().stream().anyMatch((led)->led.getNodeID().equals(eid));
+    return !clientStates.containsKey(eid);
   }
   
   @Override
   public List<FetchID> clientDisconnected(ClientID client) {
-    return clientStates.entrySet().stream()
-        .filter(e->e.getKey().getNodeID().equals(client))
-        .map(e->e.getValue())
+    return referencesOf(client).values().stream()
         .distinct()
         .collect(Collectors.toList());
   }
   
   @Override
   public List<EntityDescriptor> clientDisconnectedFromEntity(ClientID client, FetchID entity) {
-    return clientStates.entrySet().stream()
-        .filter(e->(e.getKey().getNodeID().equals(client) && e.getValue().equals(entity)))
+    return referencesOf(client).entrySet().stream()
+        .filter(e->e.getValue().equals(entity))
         .map(e->EntityDescriptor.createDescriptorForInvoke(e.getValue(), e.getKey().getClientInstanceID()))
         .collect(Collectors.toList());
   }
 
+  private Map<ClientDescriptorImpl, FetchID> referencesOf(ClientID client) {
+    Map<ClientDescriptorImpl, FetchID> references = clientStates.get(client);
+    return (references != null) ? references : Collections.emptyMap();
+  }
+
   @Override
   public Set<ClientID> clearClientReferences() {
-    Set<ClientID> msgs = clientStates.keySet().stream().map(ClientDescriptorImpl::getNodeID).distinct().collect(Collectors.toSet());
+    Set<ClientID> msgs = new HashSet<>(clientStates.keySet());
     clientStates.clear();
+    entityReferences.clear();
     return msgs;
   }
 }
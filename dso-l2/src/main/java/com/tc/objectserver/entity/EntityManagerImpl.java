@@ -39,6 +39,7 @@ import com.tc.objectserver.api.ManagedEntity;
 import com.tc.services.TerracottaServiceProviderRegistry;
 import com.tc.util.Assert;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
@@ -48,8 +49,14 @@ import java.util.Optional;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
 import java.util.function.Consumer;
+import java.util.function.Function;
 import org.terracotta.entity.ConfigurationException;
 import org.terracotta.entity.EntityResponse;
 import org.terracotta.entity.MessageCodec;
@@ -77,6 +84,9 @@ public class EntityManagerImpl implements EntityManager {
   private boolean shouldCreateActiveEntities;
   
   private final Semaphore snapshotLock = new Semaphore(1); // sync and create or destroy are mutually exclusive
+  private final int promoteParallelism;
+  private final ThreadFactory promotionThreads;
+  private final FailoverTimings failoverTimings = new FailoverTimings();
   
   // The sort comparator.
   private final Comparator<ManagedEntity> consumerIdSorter = new Comparator<ManagedEntity>() {
@@ -95,6 +105,15 @@ public class EntityManagerImpl implements EntityManager {
   public EntityManagerImpl(TerracottaServiceProviderRegistry serviceRegistry, 
       ClientEntityStateManager clientEntityStateManager, ManagementTopologyEventCollector eventCollector, 
       RequestProcessor processor, ManagementKeyCallback flushLocalPipeline, ServiceLocator locator) {
+    this(serviceRegistry, clientEntityStateManager, eventCollector, processor, flushLocalPipeline, locator, 1, Executors.defaultThreadFactory());
+  }
+
+  public EntityManagerImpl(TerracottaServiceProviderRegistry serviceRegistry, 
+      ClientEntityStateManager clientEntityStateManager, ManagementTopologyEventCollector eventCollector, 
+      RequestProcessor processor, ManagementKeyCallback flushLocalPipeline, ServiceLocator locator, 
+      int promoteParallelism, ThreadFactory promotionThreads) {
+    this.promoteParallelism = promoteParallelism;
+    this.promotionThreads = promotionThreads;
     this.serviceRegistry = serviceRegistry;
     this.clientEntityStateManager = clientEntityStateManager;
     this.eventCollector = eventCollector;
@@ -136,20 +155,13 @@ public class EntityManagerImpl implements EntityManager {
       // We can promote directly because this method is only called from PTH initialize 
       //  thus, this only happens once RTH is spun down and PTH is beginning to spin up.  We know the request queues are clear
       // issue-439: We need to sort these entities, ascending by consumerID.
+      long start = System.nanoTime();
       List<ManagedEntity> sortingList = new ArrayList<ManagedEntity>(this.entityIndex.values());
-      List<VoltronEntityMessage> reconnectDone = new ArrayList<>(this.entityIndex.size());
       Collections.sort(sortingList, this.consumerIdSorter);
-      for (ManagedEntity entity : sortingList) {
-        try {
-            reconnectDone.add(new LocalPipelineFlushMessage(
-              EntityDescriptor.createDescriptorForInvoke(new FetchID(entity.getConsumerID()), ClientInstanceID.NULL_ID), 
-              entity.promoteEntity()));
-        } catch (ConfigurationException ce) {
-          String errMsg = "failure to promote entity: " + entity.getID();
-          LOGGER.error(errMsg, ce);
-          throw new TCShutdownServerException(errMsg, ce);
-        }
-      }
+      List<VoltronEntityMessage> reconnectDone = (this.promoteParallelism > 1)
+          ? promoteInParallel(sortingList)
+          : promoteInOrder(sortingList);
+      this.failoverTimings.record("promote", System.nanoTime() - start);
   //  only enter active state after all the entities have promoted to active
       processorPipeline.enterActiveState();
       return reconnectDone;
@@ -158,6 +170,89 @@ public class EntityManagerImpl implements EntityManager {
     }
   }
 
+  private List<VoltronEntityMessage> promoteInOrder(List<ManagedEntity> sorted) {
+    List<VoltronEntityMessage> reconnectDone = new ArrayList<>(sorted.size());
+    for (ManagedEntity entity : sorted) {
+      reconnectDone.add(promote(entity));
+    }
+    return reconnectDone;
+  }
+
+  private List<VoltronEntityMessage> promoteInParallel(List<ManagedEntity> sorted) {
+    return promoteInGroups(sorted, this.promoteParallelism, this.promotionThreads, EntityManagerImpl::promote);
+  }
+
+  /**
+   * Permanent entities are promoted first and in consumerID order since any other entity may depend on them.  The rest
+   * are grouped by entity type.  Each group is promoted in consumerID order by a single thread and only the groups run
+   * in parallel, so entities of one type still see the issue-439 order among themselves.
+   * <p>
+   * The reconnect done markers are handed back in consumerID order.
+   */
+  static List<VoltronEntityMessage> promoteInGroups(List<ManagedEntity> sorted, int parallelism, ThreadFactory threads, 
+      Function<ManagedEntity, VoltronEntityMessage> promote) {
+    VoltronEntityMessage[] promoted = new VoltronEntityMessage[sorted.size()];
+    Map<String, List<Integer>> groups = new LinkedHashMap<>();
+    for (int x = 0; x < sorted.size(); x++) {
+      ManagedEntity entity = sorted.get(x);
+      if (entity.isPermanent()) {
+        promoted[x] = promote.apply(entity);
+      } else {
+        groups.computeIfAbsent(entity.getID().getClassName(), (type)->new ArrayList<>()).add(x);
+      }
+    }
+    if (!groups.isEmpty()) {
+      ExecutorService pool = Executors.newFixedThreadPool(Math.min(parallelism, groups.size()), threads);
+      try {
+        List<Future<?>> futures = new ArrayList<>(groups.size());
+        for (List<Integer> group : groups.values()) {
+          futures.add(pool.submit(()->{
+            for (int index : group) {
+              promoted[index] = promote.apply(sorted.get(index));
+            }
+          }));
+        }
+        for (Future<?> future : futures) {
+          waitForPromotion(future);
+        }
+      } finally {
+        pool.shutdownNow();
+      }
+    }
+    return new ArrayList<>(Arrays.asList(promoted));
+  }
+
+  private static void waitForPromotion(Future<?> future) {
+    try {
+      future.get();
+    } catch (InterruptedException ie) {
+      Thread.currentThread().interrupt();
+      throw new TCShutdownServerException("interrupted while promoting entities", ie);
+    } catch (ExecutionException ee) {
+      if (ee.getCause() instanceof TCShutdownServerException) {
+        throw (TCShutdownServerException)ee.getCause();
+      }
+      throw new TCShutdownServerException("failure to promote entity", ee.getCause());
+    }
+  }
+
+  private static VoltronEntityMessage promote(ManagedEntity entity) {
+    try {
+      return new LocalPipelineFlushMessage(
+          EntityDescriptor.createDescriptorForInvoke(new FetchID(entity.getConsumerID()), ClientInstanceID.NULL_ID), 
+          entity.promoteEntity());
+    } catch (ConfigurationException ce) {
+      String errMsg = "failure to promote entity: " + entity.getID();
+      LOGGER.error(errMsg, ce);
+      throw new TCShutdownServerException(errMsg, ce);
+    }
+  }
+
+  @Override
+  public FailoverTimings getFailoverTimings() {
+    return this.failoverTimings;
+  }
+
   @Override
   public ManagedEntity createEntity(EntityID id, long version, long consumerID, boolean canDelete) throws EntityException {
     // Valid entity versions start at 1.
@@ -337,6 +432,9 @@ public class EntityManagerImpl implements EntityManager {
     List<Map<String, Object>> entities  = new ArrayList<>(entityIndex.size());
     entityMap.put("entities", entities);
     entityIndex.values().forEach(entity->entities.add(entity.getState()));
+    if (!failoverTimings.isEmpty()) {
+      entityMap.put("failover", failoverTimings.getStateMap());
+    }
     return entityMap;
   }
 }
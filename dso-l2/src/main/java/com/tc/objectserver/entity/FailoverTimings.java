@@ -0,0 +1,56 @@
+/*
+ *
+ *  The contents of this file are subject to the Terracotta Public License Version
+ *  2.0 (the "License"); You may not use this file except in compliance with the
+ *  License. You may obtain a copy of the License at
+ *
+ *  http://terracotta.org/legal/terracotta-public-license.
+ *
+ *  Software distributed under the License is distributed on an "AS IS" basis,
+ *  WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing rights and limitations under the License.
+ *
+ *  The Covered Software is Terracotta Core.
+ *
+ *  The Initial Developer of the Covered Software is
+ *  Terracotta, Inc., a Software AG company
+ *
+ */
+package com.tc.objectserver.entity;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Records how long each phase of a passive to active failover took.  Phases are kept in the order they
+ * were first recorded so the state dump reads as a timeline:  entity promotion, then the replay of
+ * references, reconnect-done markers, already ordered resends and new resends.
+ */
+public class FailoverTimings {
+  private final Map<String, Long> phases = new LinkedHashMap<>();
+
+  public synchronized void record(String phase, long nanos) {
+    phases.merge(phase, nanos, Long::sum);
+  }
+
+  public synchronized boolean isEmpty() {
+    return phases.isEmpty();
+  }
+
+  public synchronized Map<String, Object> getStateMap() {
+    Map<String, Object> map = new LinkedHashMap<>();
+    long total = 0;
+    for (Map.Entry<String, Long> phase : phases.entrySet()) {
+      map.put(phase.getKey() + "Millis", TimeUnit.NANOSECONDS.toMillis(phase.getValue()));
+      total += phase.getValue();
+    }
+    map.put("totalMillis", TimeUnit.NANOSECONDS.toMillis(total));
+    return map;
+  }
+
+  @Override
+  public String toString() {
+    return "FailoverTimings{" + getStateMap() + '}';
+  }
+}
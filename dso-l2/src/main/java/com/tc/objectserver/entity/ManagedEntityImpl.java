@@ -91,6 +91,7 @@ import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
@@ -100,6 +101,7 @@ import java.util.stream.Collectors;
 
 public class ManagedEntityImpl implements ManagedEntity {
   private static final Logger logger   = LoggerFactory.getLogger(ManagedEntityImpl.class);
+  private static final int SYNC_KEY_WINDOW = TCPropertiesImpl.getProperties().getInt(TCPropertiesConsts.L2_PASSIVE_SYNC_KEY_WINDOW, 1);
 
   private final RequestProcessor executor;
   private final RetirementManager retirementManager;
@@ -304,7 +306,8 @@ public class ManagedEntityImpl implements ManagedEntity {
 //  synchronized here because this method must be mutually exclusive with clearQueue
   private synchronized SchedulingRunnable scheduleInOrder(ServerEntityRequest request, ResultCapture results, MessagePayload payload, Runnable r, int ckey) {
     Trace.activeTrace().log("ManagedEntityImpl.scheduleInOrder");
-// this all makes sense because this is only called by the PTH single thread
+// this all makes sense because this is only called by the PTH, the lanes of the voltron stage
+// order invokes per entity and flush for everything else
 // deferCleared is cleared by one of the request queues
     if (!DirectExecutionMode.isActivated()) {
       if (isInActiveState) {
@@ -694,6 +697,11 @@ public class ManagedEntityImpl implements ManagedEntity {
     return this.isDestroyed && runnables.isEmpty() && runnables.deferCleared;
   }
 
+  @Override
+  public boolean isPermanent() {
+    return !this.canDelete;
+  }
+
   private void destroyEntity(ServerEntityRequest request, ResultCapture response) {
     CommonServerEntity<EntityMessage, EntityResponse> commonServerEntity = this.isInActiveState
         ? activeServerEntity
@@ -1106,23 +1114,10 @@ public class ManagedEntityImpl implements ManagedEntity {
 // wait for future is ok, occuring on sync executor thread
     try {
       if (!this.isDestroyed) {
-        for (Integer concurrency : concurrencyStrategy.getKeysForSynchronization()) {
-    // make sure that concurrency key is in the valid range
-          //  MGMT_KEY and UNIVERSAL keys are not valid for sync
-          Assert.assertTrue(concurrency > 0);  
-
-          if (activeServerEntity != null) {
-            activeServerEntity.prepareKeyForSynchronizeOnPassive(new EntityMessagePassiveSynchronizationChannelImpl(Collections.singleton(passive), concurrency), concurrency);
-          }
-          // We don't actually use the message in the direct strategy so this is safe.
-          //  don't care about the result
-          BarrierCompletion sectionComplete = new BarrierCompletion();
-          this.executor.scheduleRequest(interop.isSyncing(), this.id, this.version, this.fetchID, req, MessagePayload.emptyPayload(),  (w)->invoke(req, new ResultCaptureImpl(null, result->sectionComplete.complete(), null, exception->{throw new RuntimeException("bad message", exception);}), MessagePayload.emptyPayload(), concurrency), true, concurrency);
-
-        //  wait for completed above waits for acknowledgment from the passive
-        //  waitForCompletion below waits for completion of the local request processor
-          sectionComplete.waitForCompletion();
-          executor.scheduleSync(SyncReplicationActivity.createEndEntityKeyMessage(id, version, fetchID, concurrency), passive).waitForCompleted();
+        if (SYNC_KEY_WINDOW > 1) {
+          syncKeysPipelined(passive, req);
+        } else {
+          syncKeys(passive, req);
         }
   //  end passive sync for an entity
   // wait for future is ok, occuring on sync executor thread
@@ -1139,6 +1134,59 @@ public class ManagedEntityImpl implements ManagedEntity {
     }
   }  
 
+  private void syncKeys(NodeID passive, PassiveSyncServerEntityRequest req) {
+    for (Integer concurrency : concurrencyStrategy.getKeysForSynchronization()) {
+// make sure that concurrency key is in the valid range
+      //  MGMT_KEY and UNIVERSAL keys are not valid for sync
+      Assert.assertTrue(concurrency > 0);  
+
+      if (activeServerEntity != null) {
+        activeServerEntity.prepareKeyForSynchronizeOnPassive(new EntityMessagePassiveSynchronizationChannelImpl(Collections.singleton(passive), concurrency), concurrency);
+      }
+      // We don't actually use the message in the direct strategy so this is safe.
+      //  don't care about the result
+      BarrierCompletion sectionComplete = new BarrierCompletion();
+      this.executor.scheduleRequest(interop.isSyncing(), this.id, this.version, this.fetchID, req, MessagePayload.emptyPayload(),  (w)->invoke(req, new ResultCaptureImpl(null, result->sectionComplete.complete(), null, exception->{throw new RuntimeException("bad message", exception);}), MessagePayload.emptyPayload(), concurrency), true, concurrency);
+
+    //  wait for completed above waits for acknowledgment from the passive
+    //  waitForCompletion below waits for completion of the local request processor
+      sectionComplete.waitForCompletion();
+      executor.scheduleSync(SyncReplicationActivity.createEndEntityKeyMessage(id, version, fetchID, concurrency), passive).waitForCompleted();
+    }
+  }
+
+/**
+ * Keeps up to SYNC_KEY_WINDOW key sections in flight to the passive.  Each section sends its own end key message 
+ * from the request processor thread as soon as its payloads are out so the start, payloads and end of a key stay 
+ * ordered on the wire, and the passive ack of that end message opens the window for the next key.
+ */
+  private void syncKeysPipelined(NodeID passive, PassiveSyncServerEntityRequest req) {
+    Semaphore window = new Semaphore(SYNC_KEY_WINDOW);
+    for (Integer concurrency : concurrencyStrategy.getKeysForSynchronization()) {
+// make sure that concurrency key is in the valid range
+      //  MGMT_KEY and UNIVERSAL keys are not valid for sync
+      Assert.assertTrue(concurrency > 0);  
+      acquire(window, 1);
+
+      if (activeServerEntity != null) {
+        activeServerEntity.prepareKeyForSynchronizeOnPassive(new EntityMessagePassiveSynchronizationChannelImpl(Collections.singleton(passive), concurrency), concurrency);
+      }
+      this.executor.scheduleRequest(interop.isSyncing(), this.id, this.version, this.fetchID, req, MessagePayload.emptyPayload(),  (w)->invoke(req, new ResultCaptureImpl(null, 
+          result->executor.scheduleSync(SyncReplicationActivity.createEndEntityKeyMessage(id, version, fetchID, concurrency), passive).runWhenCompleted(window::release), 
+          null, exception->{throw new RuntimeException("bad message", exception);}), MessagePayload.emptyPayload(), concurrency), true, concurrency);
+    }
+//  every key must be acknowledged by the passive before the end of the entity is sent
+    acquire(window, SYNC_KEY_WINDOW);
+  }
+
+  private static void acquire(Semaphore window, int permits) {
+    try {
+      window.acquire(permits);
+    } catch (InterruptedException ie) {
+      throw new RuntimeException(ie);
+    }
+  }
+
   @Override
   public SyncReplicationActivity.EntityCreationTuple startSync() {
     interop.startSync();
@@ -18,6 +18,7 @@
  */
 package com.tc.objectserver.entity;
 
+import com.tc.bytes.TCByteBufferReference;
 import org.terracotta.entity.ConcurrencyStrategy;
 import org.terracotta.entity.EntityMessage;
 import org.terracotta.entity.MessageCodecException;
@@ -52,12 +53,20 @@ public class MessagePayload {
     return new MessagePayload(raw, null, concurrencyKey, 0, false, false);
   }
 
+  /**
+   * A payload still sitting in the buffers of the replication message it arrived in.  It is only copied out when the
+   * entity decodes it, which happens on the entity's executor rather than on the replication stage.
+   */
+  public static final MessagePayload syncPayloadNormal(TCByteBufferReference raw, int concurrencyKey) {
+    return new MessagePayload(raw, null, concurrencyKey, 0, false, false);
+  }
+
   public static final MessagePayload syncPayloadCreation(byte[] raw, int referenceCount) {
     return new MessagePayload(raw, null, 0, referenceCount, false, false);
   }
 
 
-  private final byte[] raw;
+  private final TCByteBufferReference raw;
   private EntityMessage message;
   private MessageCodecException exception;
   private final int concurrency;
@@ -68,6 +77,10 @@ public class MessagePayload {
   
   // NOTE:  ReferenceCount is a special-case for synchronizing the creation of an existing entity.
   private MessagePayload(byte[] raw, EntityMessage message, int concurrency, int referenceCount, boolean replicate, boolean canBeBusy) {
+    this((raw != null) ? TCByteBufferReference.wrap(raw) : null, message, concurrency, referenceCount, replicate, canBeBusy);
+  }
+
+  private MessagePayload(TCByteBufferReference raw, EntityMessage message, int concurrency, int referenceCount, boolean replicate, boolean canBeBusy) {
     this.raw = raw;
     this.message = message;
     this.debugId = null;
@@ -78,7 +91,7 @@ public class MessagePayload {
   }
   
   public byte[] getRawPayload() {
-    return raw;
+    return (raw != null) ? raw.toByteArray() : null;
   }
   
   public void setDebugId(String debugId) {
@@ -102,7 +115,7 @@ public class MessagePayload {
     }
     try {
       if (message == null) {
-        message = codec.decode(raw);
+        message = codec.decode(getRawPayload());
       }
       return message;
     } catch (MessageCodecException ce) {
@@ -83,6 +83,11 @@ public class PlatformEntity implements ManagedEntity {
     return false;
   }
 
+  @Override
+  public boolean isPermanent() {
+    return true;
+  }
+
   @Override
   public void sync(NodeID passive) {
   //  never sync
@@ -31,9 +31,13 @@ import com.tc.object.FetchID;
 import com.tc.objectserver.handler.GroupMessageBatchContext;
 import com.tc.objectserver.handler.ReplicationSendingAction;
 import com.tc.properties.TCPropertiesImpl;
+import com.tc.text.PrettyPrintable;
 import com.tc.util.Assert;
+import java.util.Arrays;
 import java.util.EnumSet;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
@@ -45,12 +49,19 @@ import org.slf4j.LoggerFactory;
 import org.terracotta.entity.ConcurrencyStrategy;
 
 
-public class ReplicationSender {
+public class ReplicationSender implements PrettyPrintable {
   private static final int DEFAULT_BATCH_LIMIT = 64;
   private static final int DEFAULT_INFLIGHT_MESSAGES = 1;
   // Find out how many messages we should keep in-flight and our maximum batch size.
   private static int maximumBatchSize = TCPropertiesImpl.getProperties().getInt("active-passive.batchsize", DEFAULT_BATCH_LIMIT);
   private static int idealMessagesInFlight = TCPropertiesImpl.getProperties().getInt("active-passive.inflight", DEFAULT_INFLIGHT_MESSAGES);
+  // When adaptive, the in-flight window and batch size above are starting points which are tuned per passive from the
+  //  measured send latency, up to this window and aiming at this many payload bytes per batch.
+  private static final int DEFAULT_MAX_INFLIGHT_MESSAGES = 32;
+  private static final long DEFAULT_TARGET_BATCH_BYTES = 256 * 1024;
+  private static boolean adaptiveBatching = TCPropertiesImpl.getProperties().getBoolean("active-passive.adaptive", false);
+  private static int maximumMessagesInFlight = TCPropertiesImpl.getProperties().getInt("active-passive.inflight.max", DEFAULT_MAX_INFLIGHT_MESSAGES);
+  private static long targetBatchBytes = TCPropertiesImpl.getProperties().getLong("active-passive.batch.bytes", DEFAULT_TARGET_BATCH_BYTES);
   //  this is all single threaded.  If there is any attempt to make this multi-threaded,
   //  control structures must be fixed
   private final GroupManager<AbstractGroupMessage> group;
@@ -95,6 +106,16 @@ public class ReplicationSender {
 
   }
   
+  @Override
+  public Map<String, ?> getStateMap() {
+    Map<String, Object> passives = new LinkedHashMap<>();
+    filtering.forEach((node, state)->passives.put(String.valueOf(node), state.batchContext.getStateMap()));
+    Map<String, Object> map = new LinkedHashMap<>();
+    map.put("adaptiveBatching", adaptiveBatching);
+    map.put("passives", passives);
+    return map;
+  }
+
   private SyncState createAndRegisterSyncState(NodeID nodeid, int nodeToId) {
     // We can't already have a state for this passive.
     Assert.assertTrue(!filtering.containsKey(nodeid));    
@@ -129,19 +150,15 @@ public class ReplicationSender {
     private final NodeID target;
     // liveSet is the total set of entities which we believe have finished syncing and fully exist on the passive.
     private final Set<FetchID> liveFetch = new HashSet<>();
-    // syncdID is the set of concurrency keys, of the entity syncingID, which we believe have finished syncing and fully
-    //  exist on the passive.
-    private final Set<Integer> syncdID = new HashSet<>();
-    // syncingID is the entity currently being synced to this passive.
-    private FetchID syncingFetch = FetchID.NULL_ID;
-    // syncingConcurrency is the concurrency key we are currently syncing to syncingID, 0 if none is in progress.
-    private int syncingConcurrency = -1;
+    // syncingFetch holds the entities currently being synced to this passive.  A pipelined sync may have several 
+    //  entities, and several concurrency keys of each, in flight at once.
+    private final Map<FetchID, EntitySync> syncingFetch = new HashMap<>();
     // begun is true when we decide to start syncing to this passive node (triggered by SYNC_BEGIN).
     boolean begun = false;
     // complete is true when we decide that syncing to this node is now complete (triggered by SYNC_END).
     boolean complete = false;
-    private SyncReplicationActivity.ActivityType lastSeen;
-    private SyncReplicationActivity.ActivityType lastSent;
+    private final SyncOrder lastSeen = new SyncOrder();
+    private final SyncOrder lastSent = new SyncOrder();
 
     private final GroupMessageBatchContext<ReplicationMessage, SyncReplicationActivity> batchContext;
     
@@ -150,7 +167,8 @@ public class ReplicationSender {
     public SyncState(NodeID target, int nodeToId) {
       this.target = target;
       this.index = nodeToId;
-      this.batchContext = new GroupMessageBatchContext<>(ReplicationMessage::createActivityContainer, group, target, maximumBatchSize, idealMessagesInFlight, (node)->flushBatch());  
+      this.batchContext = new GroupMessageBatchContext<>(ReplicationMessage::createActivityContainer, group, target, maximumBatchSize, idealMessagesInFlight, (node)->flushBatch(), 
+          adaptiveBatching ? maximumMessagesInFlight : 0, targetBatchBytes);  
     }
     
     public boolean isSyncOccuring() {
@@ -197,39 +215,33 @@ public class ReplicationSender {
             if (liveFetch.contains(activity.getFetchID())) {
               return false;
             } else {
-              syncingFetch = activity.getFetchID();
-              syncdID.clear();
-              syncdID.add(ConcurrencyStrategy.MANAGEMENT_KEY);
-              syncdID.add(ConcurrencyStrategy.UNIVERSAL_KEY);
-              syncingConcurrency = 0;
+              syncingFetch.put(activity.getFetchID(), new EntitySync());
               return true;
             }
-          case SYNC_ENTITY_CONCURRENCY_BEGIN:
-            if (syncingFetch.equals(activity.getFetchID())) {
-              Assert.assertEquals(syncingConcurrency, 0);
-              syncingConcurrency = activity.getConcurrency();
+          case SYNC_ENTITY_CONCURRENCY_BEGIN: {
+            EntitySync entity = syncingFetch.get(activity.getFetchID());
+            if (entity != null) {
+              Assert.assertTrue(entity.syncingConcurrency.add(activity.getConcurrency()));
               return true;
             } else {
               return false;
             }
+          }
           case SYNC_ENTITY_CONCURRENCY_PAYLOAD:
-            if (syncingFetch.equals(activity.getFetchID())) {
-              return true;
-            } else {
-              return false;
-            }
-          case SYNC_ENTITY_CONCURRENCY_END:
-            if (syncingFetch.equals(activity.getFetchID())) {
-              syncdID.add(syncingConcurrency);
-              syncingConcurrency = 0;
+            return syncingFetch.containsKey(activity.getFetchID());
+          case SYNC_ENTITY_CONCURRENCY_END: {
+            EntitySync entity = syncingFetch.get(activity.getFetchID());
+            if (entity != null) {
+              entity.syncingConcurrency.remove(activity.getConcurrency());
+              entity.syncdID.add(activity.getConcurrency());
               return true;
             } else {
               return false;
             }
+          }
           case SYNC_ENTITY_END:
-            if (syncingFetch.equals(activity.getFetchID())) {
-              liveFetch.add(syncingFetch);
-              syncingFetch = FetchID.NULL_ID;
+            if (syncingFetch.remove(activity.getFetchID()) != null) {
+              liveFetch.add(activity.getFetchID());
               return true;
             } else {
               return false;
@@ -238,8 +250,7 @@ public class ReplicationSender {
  //  sync is complete, clear all collections and let everything pass
             complete = true;
             liveFetch.clear();
-            syncdID.clear();
-            syncingFetch = FetchID.NULL_ID;
+            syncingFetch.clear();
             return true;
           case CREATE_ENTITY:
 // if this create came through, it is not part of the snapshot set so everything
@@ -257,13 +268,14 @@ public class ReplicationSender {
           case INVOKE_ACTION:
             if (liveFetch.contains(activity.getFetchID())) {
               return true;
-            } else if (syncingFetch.equals(activity.getFetchID())) {
+            } else if (syncingFetch.containsKey(activity.getFetchID())) {
+              EntitySync entity = syncingFetch.get(activity.getFetchID());
               int concurrencyKey = activity.getConcurrency();
-              if (syncingConcurrency == concurrencyKey) {
+              if (entity.syncingConcurrency.contains(concurrencyKey)) {
 //  special case.  passive will apply this after sync of the key is complete
                 return true;
               }
-              return syncdID.contains(concurrencyKey);
+              return entity.syncdID.contains(concurrencyKey);
             } else {
 // hasn't been sync'd yet.  state will be captured in sync
               return false;
@@ -282,67 +294,94 @@ public class ReplicationSender {
     }
 
     public SyncReplicationActivity.ActivityType validateInput(SyncReplicationActivity activity) {
-      SyncReplicationActivity.ActivityType type = activity.getActivityType();
       if (activity.isSyncActivity()) {
-        lastSeen = validate(type, lastSeen);
+        lastSeen.validate(activity);
       }
-      return type;
+      return activity.getActivityType();
     }
     
     public void validateSending(SyncReplicationActivity activity) {
       if (activity.isSyncActivity()) {
-        lastSent = validate(activity.getActivityType(), lastSent);
+        lastSent.validate(activity);
       }
     }
     
-    private SyncReplicationActivity.ActivityType validate(SyncReplicationActivity.ActivityType type, SyncReplicationActivity.ActivityType compare) {
+    private boolean send(SyncReplicationActivity activity) {
+      if (this.batchContext.batchMessage(activity)) {
+        flushBatch();
+      }
+      return true;
+    }
+        
+    private void flushBatch() {
+      outgoing.addToSink(new ReplicationSendingAction(index, ()->{
+        try {
+          this.batchContext.flushBatch();
+        } catch (GroupException ge) {
+          logger.error("error sending sync to passive");
+          ReplicationSender.this.group.zapNode(this.target, L2HAZapNodeRequestProcessor.COMMUNICATION_ERROR, "failed to sync");
+        }
+      }));
+    }
+  }
+
+  private static class EntitySync {
+    // syncdID is the set of concurrency keys of this entity which we believe have finished syncing and fully
+    //  exist on the passive.
+    private final Set<Integer> syncdID = new HashSet<>(Arrays.asList(ConcurrencyStrategy.MANAGEMENT_KEY, ConcurrencyStrategy.UNIVERSAL_KEY));
+    // syncingConcurrency is the set of concurrency keys currently being synced.
+    private final Set<Integer> syncingConcurrency = new HashSet<>();
+  }
+
+  /**
+   * Validates the order of the sync stream.  The start and end of sync are checked against the whole stream while 
+   * the messages of an entity are only checked against the previous message of that same entity since entities and 
+   * their keys may be interleaved.
+   */
+  private static class SyncOrder {
+    private SyncReplicationActivity.ActivityType last;
+    private final Map<FetchID, SyncReplicationActivity.ActivityType> lastByFetch = new HashMap<>();
+    
+    private void validate(SyncReplicationActivity activity) {
+      SyncReplicationActivity.ActivityType type = activity.getActivityType();
+      FetchID fetch = activity.getFetchID();
+      SyncReplicationActivity.ActivityType compare = lastByFetch.get(fetch);
       switch (type) {
         case SYNC_BEGIN:
-          Assert.assertTrue(type + " " + compare, EnumSet.of(SyncReplicationActivity.ActivityType.SYNC_START).contains(compare));
+          Assert.assertTrue(type + " " + last, EnumSet.of(SyncReplicationActivity.ActivityType.SYNC_START).contains(last));
+          last = type;
           break;
         case SYNC_ENTITY_BEGIN:
-          Assert.assertTrue(type + " " + compare, EnumSet.of(SyncReplicationActivity.ActivityType.SYNC_BEGIN, SyncReplicationActivity.ActivityType.SYNC_ENTITY_END).contains(compare));
+          Assert.assertTrue(type + " " + last, SyncReplicationActivity.ActivityType.SYNC_BEGIN == last && compare == null);
+          lastByFetch.put(fetch, type);
           break;
         case SYNC_ENTITY_CONCURRENCY_BEGIN:
-          Assert.assertTrue(type + " " + compare, EnumSet.of(SyncReplicationActivity.ActivityType.SYNC_ENTITY_CONCURRENCY_PAYLOAD, SyncReplicationActivity.ActivityType.SYNC_ENTITY_BEGIN, SyncReplicationActivity.ActivityType.SYNC_ENTITY_CONCURRENCY_END).contains(compare));
+          Assert.assertTrue(type + " " + compare, EnumSet.of(SyncReplicationActivity.ActivityType.SYNC_ENTITY_CONCURRENCY_PAYLOAD, SyncReplicationActivity.ActivityType.SYNC_ENTITY_BEGIN, SyncReplicationActivity.ActivityType.SYNC_ENTITY_CONCURRENCY_BEGIN, SyncReplicationActivity.ActivityType.SYNC_ENTITY_CONCURRENCY_END).contains(compare));
+          lastByFetch.put(fetch, type);
           break;
         case SYNC_ENTITY_CONCURRENCY_PAYLOAD:
           Assert.assertTrue(type + " " + compare, EnumSet.of(SyncReplicationActivity.ActivityType.SYNC_ENTITY_BEGIN, SyncReplicationActivity.ActivityType.SYNC_ENTITY_CONCURRENCY_BEGIN, SyncReplicationActivity.ActivityType.SYNC_ENTITY_CONCURRENCY_END, SyncReplicationActivity.ActivityType.SYNC_ENTITY_CONCURRENCY_PAYLOAD).contains(compare));
+          lastByFetch.put(fetch, type);
           break;
         case SYNC_ENTITY_CONCURRENCY_END:
-          Assert.assertTrue(type + " " + compare, EnumSet.of(SyncReplicationActivity.ActivityType.SYNC_ENTITY_CONCURRENCY_BEGIN, SyncReplicationActivity.ActivityType.SYNC_ENTITY_CONCURRENCY_PAYLOAD).contains(compare));
+          Assert.assertTrue(type + " " + compare, EnumSet.of(SyncReplicationActivity.ActivityType.SYNC_ENTITY_CONCURRENCY_BEGIN, SyncReplicationActivity.ActivityType.SYNC_ENTITY_CONCURRENCY_PAYLOAD, SyncReplicationActivity.ActivityType.SYNC_ENTITY_CONCURRENCY_END).contains(compare));
+          lastByFetch.put(fetch, type);
           break;
         case SYNC_ENTITY_END:
           Assert.assertTrue(type + " " + compare, EnumSet.of(SyncReplicationActivity.ActivityType.SYNC_ENTITY_BEGIN, SyncReplicationActivity.ActivityType.SYNC_ENTITY_CONCURRENCY_END).contains(compare));
+          lastByFetch.remove(fetch);
           break;
         case SYNC_END:
-          Assert.assertTrue(type + " " + compare, EnumSet.of(SyncReplicationActivity.ActivityType.SYNC_ENTITY_END, SyncReplicationActivity.ActivityType.SYNC_BEGIN).contains(compare));
+          Assert.assertTrue(type + " " + last + " " + lastByFetch, SyncReplicationActivity.ActivityType.SYNC_BEGIN == last && lastByFetch.isEmpty());
+          last = type;
           break;
         case SYNC_START:
+          last = type;
           break;
           // SYNC_START shouldn't go down this path - it is handled, explicitly, at a higher level.
         default:
           throw new AssertionError("unexpected message type");
       }
-      return type;
-    }
-    
-    private boolean send(SyncReplicationActivity activity) {
-      if (this.batchContext.batchMessage(activity)) {
-        flushBatch();
-      }
-      return true;
-    }
-        
-    private void flushBatch() {
-      outgoing.addToSink(new ReplicationSendingAction(index, ()->{
-        try {
-          this.batchContext.flushBatch();
-        } catch (GroupException ge) {
-          logger.error("error sending sync to passive");
-          ReplicationSender.this.group.zapNode(this.target, L2HAZapNodeRequestProcessor.COMMUNICATION_ERROR, "failed to sync");
-        }
-      }));
     }
   }
 }
@@ -35,20 +35,27 @@ public class VoltronMessageSink extends TCMessageHydrateSink<VoltronEntityMessag
   private final MessageCodecSupplier codecSupplier;
   private final Stage<HydrateContext> helper;
   private final Sink<VoltronEntityMessage> dest;
+  // when set, the comm thread never hydrates (and so never runs an entity codec), every message goes to the helper
+  private final boolean alwaysOffload;
   private static final Logger LOGGER = LoggerFactory.getLogger(VoltronMessageSink.class);
 
   public VoltronMessageSink(Stage<HydrateContext> helper, Sink<VoltronEntityMessage> destSink, MessageCodecSupplier codecSupplier) {
+    this(helper, destSink, codecSupplier, false);
+  }
+
+  public VoltronMessageSink(Stage<HydrateContext> helper, Sink<VoltronEntityMessage> destSink, MessageCodecSupplier codecSupplier, boolean alwaysOffload) {
     super(destSink);
     this.helper = helper;
     this.codecSupplier = codecSupplier;
     this.dest = destSink;
+    this.alwaysOffload = alwaysOffload;
   }
 
   @Override
   public void putMessage(TCMessage message) { 
     if (message instanceof NetworkVoltronEntityMessage) {
       ((NetworkVoltronEntityMessage)message).setMessageCodecSupplier(codecSupplier);
-      if (TCComm.hasPendingRead() || !helper.isEmpty()) {
+      if (alwaysOffload || TCComm.hasPendingRead() || !helper.isEmpty()) {
         helper.getSink().addToSink(new HydrateContext(message, this.dest));
       } else {
         super.putMessage(message);
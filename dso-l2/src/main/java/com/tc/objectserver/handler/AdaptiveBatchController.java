@@ -0,0 +1,144 @@
+/*
+ *
+ *  The contents of this file are subject to the Terracotta Public License Version
+ *  2.0 (the "License"); You may not use this file except in compliance with the
+ *  License. You may obtain a copy of the License at
+ *
+ *  http://terracotta.org/legal/terracotta-public-license.
+ *
+ *  Software distributed under the License is distributed on an "AS IS" basis,
+ *  WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing rights and limitations under the License.
+ *
+ *  The Covered Software is Terracotta Core.
+ *
+ *  The Initial Developer of the Covered Software is
+ *  Terracotta, Inc., a Software AG company
+ *
+ */
+package com.tc.objectserver.handler;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tunes the in-flight window and the batch size of a {@link GroupMessageBatchContext} from what the network reports
+ * back.
+ * <p>
+ * The window follows an AIMD rule driven by send latency, measured from the hand-off to the group manager to the
+ * network sent callback.  Roughly once per window of completions the smoothed latency is compared with the lowest
+ * latency recently seen.  If it is within {@link #CONGESTION_FACTOR} of that floor the window grows by one message,
+ * otherwise the link is queueing and the window is halved.  The floor is re-measured every {@link #FLOOR_SAMPLES}
+ * completions so it can follow a change of route or load.
+ * <p>
+ * The batch limit is sized so a full batch carries about the target number of payload bytes, using the average
+ * element size seen so far.  Message types which do not report a payload size keep the configured maximum.
+ * <p>
+ * All methods are called under the lock of the owning batch context.
+ */
+class AdaptiveBatchController {
+  private static final double CONGESTION_FACTOR = 2.0;
+  private static final int FLOOR_SAMPLES = 256;
+  private static final int MIN_BATCH = 1;
+
+  private final int maxInFlight;
+  private final int maxBatch;
+  private final long targetBatchBytes;
+
+  private int inFlightLimit;
+  private int batchLimit;
+
+  private long latencyFloor = Long.MAX_VALUE;
+  private long nextLatencyFloor = Long.MAX_VALUE;
+  private long smoothedLatency;
+  private int samples;
+  private int sinceAdjust;
+  private double averageElementBytes;
+
+  private long batchesSent;
+  private long elementsSent;
+  private long bytesSent;
+  private long increases;
+  private long decreases;
+
+  /**
+   * @param initialInFlight the window to start from
+   * @param maxInFlight the largest window the controller may open
+   * @param maxBatch the largest batch, in elements
+   * @param targetBatchBytes the payload size a full batch should aim for
+   */
+  AdaptiveBatchController(int initialInFlight, int maxInFlight, int maxBatch, long targetBatchBytes) {
+    this.maxInFlight = Math.max(1, maxInFlight);
+    this.maxBatch = Math.max(MIN_BATCH, maxBatch);
+    this.targetBatchBytes = targetBatchBytes;
+    this.inFlightLimit = Math.min(Math.max(1, initialInFlight), this.maxInFlight);
+    this.batchLimit = this.maxBatch;
+  }
+
+  int getInFlightLimit() {
+    return inFlightLimit;
+  }
+
+  int getBatchLimit() {
+    return batchLimit;
+  }
+
+  void batchSent(int elements, long payloadBytes) {
+    batchesSent += 1;
+    elementsSent += elements;
+    bytesSent += payloadBytes;
+    if (payloadBytes > 0 && elements > 0) {
+      double perElement = (double) payloadBytes / elements;
+      averageElementBytes = (averageElementBytes == 0) ? perElement : averageElementBytes * 0.875 + perElement * 0.125;
+      long limit = (long) (targetBatchBytes / Math.max(1.0, averageElementBytes));
+      batchLimit = (int) Math.max(MIN_BATCH, Math.min(maxBatch, limit));
+    }
+  }
+
+  void networkDone(long latencyNanos) {
+    if (latencyNanos < 0) {
+      return;
+    }
+    samples += 1;
+    nextLatencyFloor = Math.min(nextLatencyFloor, latencyNanos);
+    if (samples % FLOOR_SAMPLES == 0) {
+      latencyFloor = nextLatencyFloor;
+      nextLatencyFloor = Long.MAX_VALUE;
+    } else {
+      latencyFloor = Math.min(latencyFloor, latencyNanos);
+    }
+    smoothedLatency = (smoothedLatency == 0) ? latencyNanos : smoothedLatency - (smoothedLatency >> 3) + (latencyNanos >> 3);
+
+    sinceAdjust += 1;
+    if (sinceAdjust >= inFlightLimit) {
+      // about one round of the window has completed since the last decision
+      sinceAdjust = 0;
+      if (smoothedLatency > latencyFloor * CONGESTION_FACTOR) {
+        if (inFlightLimit > 1) {
+          inFlightLimit = Math.max(1, inFlightLimit / 2);
+          decreases += 1;
+        }
+      } else if (inFlightLimit < maxInFlight) {
+        inFlightLimit += 1;
+        increases += 1;
+      }
+    }
+  }
+
+  Map<String, Object> getStateMap() {
+    Map<String, Object> map = new LinkedHashMap<>();
+    map.put("inFlightLimit", inFlightLimit);
+    map.put("maxInFlight", maxInFlight);
+    map.put("batchLimit", batchLimit);
+    map.put("maxBatch", maxBatch);
+    map.put("latencyFloorMicros", (latencyFloor == Long.MAX_VALUE) ? -1L : TimeUnit.NANOSECONDS.toMicros(latencyFloor));
+    map.put("smoothedLatencyMicros", TimeUnit.NANOSECONDS.toMicros(smoothedLatency));
+    map.put("batchesSent", batchesSent);
+    map.put("averageBatchSize", (batchesSent == 0) ? 0 : elementsSent / batchesSent);
+    map.put("averageBatchBytes", (batchesSent == 0) ? 0 : bytesSent / batchesSent);
+    map.put("windowIncreases", increases);
+    map.put("windowDecreases", decreases);
+    return map;
+  }
+}
@@ -26,6 +26,10 @@ import com.tc.net.NodeID;
 import com.tc.net.groups.AbstractGroupMessage;
 import com.tc.net.groups.GroupException;
 import com.tc.net.groups.GroupManager;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.function.Consumer;
 import java.util.function.Function;
 
@@ -39,6 +43,9 @@ public class GroupMessageBatchContext<M extends IBatchableGroupMessage<E>, E> {
   private final int maximumBatchSize;
   private final int idealMessagesInFlight;
   private final Consumer<NodeID> networkDoneTarget;
+  // null unless the batch size and in-flight window are tuned at runtime
+  private final AdaptiveBatchController adaptive;
+  private final Deque<Long> sendTimes = new ArrayDeque<>();
   
   private int messagesInFlight;
   private M cachedMessage;
@@ -46,12 +53,26 @@ public class GroupMessageBatchContext<M extends IBatchableGroupMessage<E>, E> {
 
 
   public GroupMessageBatchContext(Function<E, M> messageFactory, GroupManager<AbstractGroupMessage> groupManager, NodeID target, int maximumBatchSize, int idealMessagesInFlight, Consumer<NodeID> networkDoneTarget) {
+    this(messageFactory, groupManager, target, maximumBatchSize, idealMessagesInFlight, networkDoneTarget, 0, 0L);
+  }
+
+  /**
+   * Creates a batch context which adapts its in-flight window and batch size to the measured send latency.
+   * 
+   * @param maximumMessagesInFlight The largest window the context may open.  0 keeps the fixed idealMessagesInFlight
+   *  window and maximumBatchSize, as does an idealMessagesInFlight of 0 (unlimited).
+   * @param targetBatchBytes The payload size, in bytes, a full batch should aim for.
+   */
+  public GroupMessageBatchContext(Function<E, M> messageFactory, GroupManager<AbstractGroupMessage> groupManager, NodeID target, int maximumBatchSize, int idealMessagesInFlight, Consumer<NodeID> networkDoneTarget, int maximumMessagesInFlight, long targetBatchBytes) {
     this.messageFactory = messageFactory;
     this.groupManager = groupManager;
     this.target = target;
     this.maximumBatchSize = maximumBatchSize;
     this.idealMessagesInFlight = idealMessagesInFlight;
     this.networkDoneTarget = networkDoneTarget;
+    this.adaptive = (maximumMessagesInFlight > 0 && idealMessagesInFlight > 0) 
+        ? new AdaptiveBatchController(idealMessagesInFlight, maximumMessagesInFlight, maximumBatchSize, targetBatchBytes)
+        : null;
   }
 
   /**
@@ -89,14 +110,20 @@ public class GroupMessageBatchContext<M extends IBatchableGroupMessage<E>, E> {
     synchronized (this) {
       // See if we have a batched message and are ready to send one.
       // Note that we will override the ideal number of in-flight messages if the batch is getting too large.
+      int inFlightLimit = (null != this.adaptive) ? this.adaptive.getInFlightLimit() : this.idealMessagesInFlight;
+      int batchLimit = (null != this.adaptive) ? this.adaptive.getBatchLimit() : this.maximumBatchSize;
       if ((null != this.cachedMessage) && (
-          ((0 == this.idealMessagesInFlight) || (this.messagesInFlight < this.idealMessagesInFlight))
-          || (this.cachedMessage.getBatchSize() >= this.maximumBatchSize))
+          ((0 == this.idealMessagesInFlight) || (this.messagesInFlight < inFlightLimit))
+          || (this.cachedMessage.getBatchSize() >= batchLimit))
         ) {
         // There is a batched message so send it.
         messageToSend = this.cachedMessage;
         this.cachedMessage = null;
         this.messagesInFlight += 1;
+        if (null != this.adaptive) {
+          this.adaptive.batchSent(messageToSend.getBatchSize(), messageToSend.getPayloadSize());
+          this.sendTimes.addLast(System.nanoTime());
+        }
       }
     }
     
@@ -110,7 +137,7 @@ public class GroupMessageBatchContext<M extends IBatchableGroupMessage<E>, E> {
       } catch (GroupException e) {
         LOGGER.warn("replication message failed", e);
         //  message failed but we still need to reset state
-        this.handleNetworkDone();
+        this.networkDone(false);
         throw e;
       }
     }
@@ -118,8 +145,19 @@ public class GroupMessageBatchContext<M extends IBatchableGroupMessage<E>, E> {
   }
 
   public void handleNetworkDone() {
+    networkDone(true);
+  }
+
+  private void networkDone(boolean wasSent) {
     synchronized (this) {
       this.messagesInFlight -= 1;
+      if (null != this.adaptive) {
+        // sent callbacks arrive in send order, a failed send is always the most recent one
+        Long sentAt = wasSent ? this.sendTimes.pollFirst() : this.sendTimes.pollLast();
+        if (wasSent && null != sentAt) {
+          this.adaptive.networkDone(System.nanoTime() - sentAt);
+        }
+      }
     }
     
     // Call the network done target so that our owner can decide how to enqueue the next flush.
@@ -127,4 +165,18 @@ public class GroupMessageBatchContext<M extends IBatchableGroupMessage<E>, E> {
       this.networkDoneTarget.accept(target);
     }
   }
+
+  public synchronized Map<String, Object> getStateMap() {
+    Map<String, Object> map = new LinkedHashMap<>();
+    map.put("target", String.valueOf(target));
+    map.put("messagesInFlight", messagesInFlight);
+    map.put("pendingBatchSize", (null != cachedMessage) ? cachedMessage.getBatchSize() : 0);
+    if (null != this.adaptive) {
+      map.put("adaptive", this.adaptive.getStateMap());
+    } else {
+      map.put("inFlightLimit", idealMessagesInFlight);
+      map.put("batchLimit", maximumBatchSize);
+    }
+    return map;
+  }
 }
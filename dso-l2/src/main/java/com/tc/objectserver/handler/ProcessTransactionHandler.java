@@ -52,6 +52,7 @@ import com.tc.objectserver.api.StatisticsCapture;
 import com.tc.objectserver.entity.AbstractServerEntityRequestResponse;
 import com.tc.objectserver.entity.ActivePassiveAckWaiter;
 import com.tc.objectserver.entity.ClientDisconnectMessage;
+import com.tc.objectserver.entity.FailoverTimings;
 import com.tc.objectserver.entity.ReconnectListener;
 import com.tc.objectserver.entity.ReferenceMessage;
 import com.tc.objectserver.entity.ServerEntityRequestImpl;
@@ -63,6 +64,7 @@ import com.tc.services.EntityMessengerService;
 import com.tc.util.Assert;
 import com.tc.util.SparseList;
 import com.tc.util.concurrent.SetOnceFlag;
+import com.tc.util.concurrent.TCConcurrentLongMap;
 
 import java.util.ArrayList;
 import java.util.Collections;
@@ -101,16 +103,22 @@ public class ProcessTransactionHandler implements ReconnectListener {
   private SparseList<VoltronEntityMessage> resendReplayList;
   private List<VoltronEntityMessage> resendNewList;
   private boolean reconnecting = true;
+  private volatile boolean resendsPending = true;
+  // set once the intake ahead of the stage starts handing out the transaction order, only the intake thread flips it
+  private volatile boolean intakeOrdering = false;
+  private boolean replayTriggered = false;
+  // transaction order handed out on intake, picked up by whichever lane runs the message
+  private final ConcurrentHashMap<VoltronEntityMessage, Future<Void>> intakeOrder = new ConcurrentHashMap<>();
 
   private Stage<ResponseMessage> multiSend;
   private final ConcurrentHashMap<ClientID, VoltronEntityMultiResponse> invokeReturn = new ConcurrentHashMap<>();
   private final ConcurrentHashMap<ClientID, Integer> inflightFetch = new ConcurrentHashMap<>();
-  private final ConcurrentHashMap<TransactionID, Future<Void>> transactionOrderPersistenceFutures = new ConcurrentHashMap<>();
+  private final TCConcurrentLongMap<Future<Void>> transactionOrderPersistenceFutures = new TCConcurrentLongMap<>();
 
   @Override
   public synchronized void reconnectComplete() {
     reconnecting = false;
-    notify();
+    notifyAll();
   }
 
   private final AbstractEventHandler<ResponseMessage> multiSender = new AbstractEventHandler<ResponseMessage>() {
@@ -182,6 +190,7 @@ public class ProcessTransactionHandler implements ReconnectListener {
 //  see ManagedEntityImpl.scheduleInOrder()
 //  the call always happens and immediately returns if the resends have already been processed
       processAllResends(message);
+      Future<Void> order = intakeOrdering ? intakeOrder.remove(message) : orderTransaction(message.getSource(), message.getTransactionID(), message.getOldestTransactionOnClient());
       ClientID sourceNodeID = message.getSource();
       EntityDescriptor descriptor = message.getEntityDescriptor();
       ServerEntityAction action = decodeMessageType(message.getVoltronType());
@@ -225,7 +234,7 @@ public class ProcessTransactionHandler implements ReconnectListener {
           break;
       }
       MessagePayload payload =  MessagePayload.commonMessagePayload(extendedData, entityMessage, doesRequireReplication, !message.getSource().isNull());
-      ProcessTransactionHandler.this.addMessage(sourceNodeID, descriptor, action, payload, transactionID, oldestTransactionOnClient, completion, exception, requestedReceived, requestedRetired);
+      ProcessTransactionHandler.this.addMessage(sourceNodeID, descriptor, action, payload, transactionID, oldestTransactionOnClient, order, completion, exception, requestedReceived, requestedRetired);
     }
 
     @Override
@@ -261,6 +270,56 @@ public class ProcessTransactionHandler implements ReconnectListener {
     return this.voltronHandler;
   }
 
+  /**
+   * Called by the single threaded intake ahead of the voltron message stage.  Client transactions take their place in
+   * the persisted transaction order here, before the stage splits them into lanes, so the transactions of each client
+   * reach the {@link TransactionOrderPersistor} in the order the client sent them.
+   * <p>
+   * Nothing may be ordered ahead of the resends.  The first message goes through unordered and triggers the replay on
+   * its lane, which orders it behind the resends.  Everything after it waits here until the replay is done.
+   */
+  public void orderOnIntake(VoltronEntityMessage message) {
+    this.intakeOrdering = true;
+    if (this.resendsPending) {
+      if (!this.replayTriggered) {
+        this.replayTriggered = true;
+        return;
+      }
+      waitForResends();
+    }
+    takeIntakeOrder(message);
+  }
+
+  private void takeIntakeOrder(VoltronEntityMessage message) {
+    Future<Void> order = orderTransaction(message.getSource(), message.getTransactionID(), message.getOldestTransactionOnClient());
+    if (order != null) {
+      this.intakeOrder.put(message, order);
+    }
+  }
+
+  private synchronized void waitForResends() {
+    while (this.resendsPending) {
+      try {
+        this.wait();
+      } catch (InterruptedException ie) {
+        throw new RuntimeException(ie);
+      }
+    }
+  }
+
+  private Future<Void> orderTransaction(ClientID sourceNodeID, TransactionID transactionID, TransactionID oldestTransactionOnClient) {
+    // Note that we only want to persist the messages with a true sourceNodeID.  Synthetic invocations and sync messages
+    // don't have one (although sync messages shouldn't come down this path).
+    // if the client is valid and the transaction id is valid, then this came from a real client
+    // and the client expects to be able to reconnect
+    if (sourceNodeID != null && !sourceNodeID.isNull() && transactionID.isValid()) {
+      Assert.assertTrue(oldestTransactionOnClient.isValid());
+      // This client still needs transaction order persistence.
+      return this.persistor.getTransactionOrderPersistor().updateWithNewMessage(sourceNodeID, transactionID, oldestTransactionOnClient);
+    }
+    return null;
+  }
+
   public ClientMessageSender getClientMessageSender() {
     return sender;
   }
@@ -349,10 +408,10 @@ public class ProcessTransactionHandler implements ReconnectListener {
     }
   }
 
-// only the process transaction thread will add messages here except for on reconnect
+// only the voltron message stage lanes will add messages here except for on reconnect
   private void addMessage(ClientID sourceNodeID, EntityDescriptor descriptor, ServerEntityAction action, 
           MessagePayload entityMessage, TransactionID transactionID, TransactionID oldestTransactionOnClient, 
-          Consumer<byte[]> chaincomplete, Consumer<EntityException> chainfail, boolean requiresReceived, boolean requiresRetired) {
+          Future<Void> transactionOrderPersistenceFuture, Consumer<byte[]> chaincomplete, Consumer<EntityException> chainfail, boolean requiresReceived, boolean requiresRetired) {
     // Version error or duplicate creation requests will manifest as exceptions here so catch them so we can send them back
     //  over the wire as an error in the request.
 
@@ -360,17 +419,8 @@ public class ProcessTransactionHandler implements ReconnectListener {
     boolean isReplicatedMessage = false;
     // In the general case, however, we need to pass this as a real ServerEntityRequest, into the entityProcessor.
     // Before we pass this on to the entity or complete it, directly, we can send the received() ACK, since we now know the message order.
-    // Note that we only want to persist the messages with a true sourceNodeID.  Synthetic invocations and sync messages
-    // don't have one (although sync messages shouldn't come down this path).
-    Future<Void> transactionOrderPersistenceFuture = null;
-    // if the client is valid and the transaction id is valid, then this came from a real client
-    // and the client expects to be able to reconnect
+    // The order itself was taken before the message got here, see orderTransaction().
     ServerEntityRequestImpl request = new ServerEntityRequestImpl(descriptor.getClientInstanceID(), action, sourceNodeID, transactionID, transactionID, requiresReceived);
-    if (sourceNodeID != null && !sourceNodeID.isNull() && transactionID.isValid()) {
-      Assert.assertTrue(oldestTransactionOnClient.isValid());
-      // This client still needs transaction order persistence.
-      transactionOrderPersistenceFuture = this.persistor.getTransactionOrderPersistor().updateWithNewMessage(sourceNodeID, transactionID, oldestTransactionOnClient);
-    }
 
     Trace trace = null;
     if (Trace.isTraceEnabled()) {
@@ -422,7 +472,7 @@ public class ProcessTransactionHandler implements ReconnectListener {
         InvokeHandler handler = new InvokeHandler(request, this::insertMessageInStream, chaincomplete, chainfail, requiresReceived, requiresRetired);
         handler.addMessage();
         if(transactionOrderPersistenceFuture != null) {
-          transactionOrderPersistenceFutures.put(transactionID, transactionOrderPersistenceFuture);
+          transactionOrderPersistenceFutures.put(transactionID.toLong(), transactionOrderPersistenceFuture);
         }
         entity.addRequestMessage(handler, entityMessage, handler);
       } else if (action.isLifecycle()) {
@@ -459,14 +509,14 @@ public class ProcessTransactionHandler implements ReconnectListener {
   }
 
   private void waitForTransactionOrderPersistenceFuture(TransactionID transactionID) {
-    Future<Void> future = transactionOrderPersistenceFutures.get(transactionID);
+    Future<Void> future = transactionOrderPersistenceFutures.get(transactionID.toLong());
     if(future != null) {
       try {
         future.get();
       } catch (InterruptedException | ExecutionException e) {
         throw new RuntimeException(e);
       } finally {
-        transactionOrderPersistenceFutures.remove(transactionID);
+        transactionOrderPersistenceFutures.remove(transactionID.toLong());
       }
     }
   }
@@ -558,25 +608,40 @@ public class ProcessTransactionHandler implements ReconnectListener {
 
   private void processAllResends(VoltronEntityMessage trigger) {
     //   TODO:  investigate the need to fold FETCH and RELEASE resends on top of each other
-    if (this.references == null && this.resendReplayList == null && this.resendNewList == null) {
+    if (!this.resendsPending) {
       return;
-    } else {
-      LOGGER.debug("RESENDS:START");
-      synchronized (this) {
-        while (reconnecting) {
-          try {
-            this.wait();
-          } catch (InterruptedException ie) {
-            throw new RuntimeException(ie);
-          }
+    }
+//  the intake holds everything behind the trigger until the resends are replayed and ordered,
+//  the monitor still keeps a message handed straight to another lane from overtaking a resend
+    synchronized (this) {
+      while (reconnecting) {
+        try {
+          this.wait();
+        } catch (InterruptedException ie) {
+          throw new RuntimeException(ie);
+        }
+      }
+      if (this.resendsPending) {
+        LOGGER.debug("RESENDS:START");
+        replayResends();
+        if (this.intakeOrdering) {
+//  the trigger got past the intake before the resends were ordered, it takes its place behind them
+          takeIntakeOrder(trigger);
         }
+        this.resendsPending = false;
+        this.notifyAll();
       }
     }
+  }
 
+  private void replayResends() {
+    FailoverTimings timings = this.entityManager.getFailoverTimings();
+    long phase = System.nanoTime();
     this.stateManagerCleanup.run();
 
     // Clear the transaction order persistor since we are starting fresh.
     this.persistor.getTransactionOrderPersistor().clearAllRecords();
+    phase = recordPhase(timings, "cleanup", phase);
 
     for (ReferenceMessage msg : this.references) {
       LOGGER.debug("RESENDS:" + msg);
@@ -590,12 +655,14 @@ public class ProcessTransactionHandler implements ReconnectListener {
       executeResend(msg);
     }
     this.references = null;
+    phase = recordPhase(timings, "references", phase);
 //  reconnect done for all entities
     for (VoltronEntityMessage msg : this.reconnectDone) {
       LOGGER.debug("RECONNECT DONE:" + msg);
       executeResend(msg);
     }
     this.reconnectDone = null;
+    phase = recordPhase(timings, "reconnectDone", phase);
 
     // Replay all the already-ordered messages.
     for (VoltronEntityMessage message : this.resendReplayList) {
@@ -603,6 +670,7 @@ public class ProcessTransactionHandler implements ReconnectListener {
       executeResend(message);
     }
     this.resendReplayList = null;
+    phase = recordPhase(timings, "replay", phase);
 
     // Replay all the new messages found during resends.
     for (VoltronEntityMessage message : this.resendNewList) {
@@ -611,9 +679,16 @@ public class ProcessTransactionHandler implements ReconnectListener {
     }
 //  remove tracking for any resent create journal entries
     this.persistor.getEntityPersistor().removeTrackingForClient(ClientID.NULL_ID);
+    recordPhase(timings, "new", phase);
     LOGGER.debug("RESENDS:END");
     this.resendNewList = null;
+    LOGGER.info("failover complete " + timings.getStateMap());
+  }
 
+  private static long recordPhase(FailoverTimings timings, String name, long start) {
+    long now = System.nanoTime();
+    timings.record(name, now - start);
+    return now;
   }
 
   private Optional<MessageChannel> safeGetChannel(NodeID id) {
@@ -648,7 +723,8 @@ public class ProcessTransactionHandler implements ReconnectListener {
     if (message instanceof Runnable) {
       completion = (r)->((Runnable)message).run();
     }
-    ProcessTransactionHandler.this.addMessage(sourceNodeID, descriptor, action, payload, transactionID, oldestTransactionOnClient, completion, null, requestedReceived, requestedRetired);
+    Future<Void> order = orderTransaction(sourceNodeID, transactionID, oldestTransactionOnClient);
+    ProcessTransactionHandler.this.addMessage(sourceNodeID, descriptor, action, payload, transactionID, oldestTransactionOnClient, order, completion, null, requestedReceived, requestedRetired);
   }
 
   private static ServerEntityAction decodeMessageType(VoltronEntityMessage.Type type) {
@@ -57,15 +57,21 @@ import com.tc.objectserver.entity.PlatformEntity;
 import com.tc.objectserver.entity.ResultCaptureImpl;
 import com.tc.objectserver.persistence.Persistor;
 import com.tc.properties.TCPropertiesImpl;
+import com.tc.text.PrettyPrintable;
 import com.tc.tracing.Trace;
 import com.tc.util.Assert;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.ObjectInputStream;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Deque;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
+import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
 import java.util.concurrent.ExecutionException;
@@ -78,11 +84,14 @@ import org.terracotta.entity.ConcurrencyStrategy;
 import org.terracotta.exception.EntityException;
 
 
-public class ReplicatedTransactionHandler {
+public class ReplicatedTransactionHandler implements PrettyPrintable {
   private static final int DEFAULT_BATCH_LIMIT = 64;
   private static final int DEFAULT_INFLIGHT_MESSAGES = 1;
   private static final int maximumBatchSize = TCPropertiesImpl.getProperties().getInt("passive-active.batchsize", DEFAULT_BATCH_LIMIT);
   private static final int idealMessagesInFlight = TCPropertiesImpl.getProperties().getInt("passive-active.inflight", DEFAULT_INFLIGHT_MESSAGES);
+  private static final int DEFAULT_MAX_INFLIGHT_MESSAGES = 32;
+  private static final boolean adaptiveBatching = TCPropertiesImpl.getProperties().getBoolean("passive-active.adaptive", false);
+  private static final int maximumMessagesInFlight = TCPropertiesImpl.getProperties().getInt("passive-active.inflight.max", DEFAULT_MAX_INFLIGHT_MESSAGES);
 
   private static final Logger PLOGGER = LoggerFactory.getLogger(MessagePayload.class);
   private static final Logger LOGGER = LoggerFactory.getLogger(ReplicatedTransactionHandler.class);
@@ -190,6 +199,16 @@ public class ReplicatedTransactionHandler {
     }    
   };
 
+  @Override
+  public synchronized Map<String, ?> getStateMap() {
+    Map<String, Object> map = new LinkedHashMap<>();
+    map.put("adaptiveBatching", adaptiveBatching);
+    if (this.cachedBatchAck != null) {
+      map.put("acks", this.cachedBatchAck.getStateMap());
+    }
+    return map;
+  }
+
   public EventHandler<ReplicationMessage> getEventHandler() {
     return eventHorizon;
   }
@@ -287,12 +306,11 @@ public class ReplicatedTransactionHandler {
 
     final Future<Void> transactionOrderPersistenceFuture = tmpFuture;
 
-    byte[] extendedData = activity.getExtendedData();
-
     // Create the request, since it is how we will generically return complete.
     ServerEntityRequest request = activityToLocalRequest(activity);
     // If we satisfied this as a known re-send, don't add the request to the entity.
     if (request.getAction() == ServerEntityAction.CREATE_ENTITY) {
+      byte[] extendedData = activity.getExtendedData();
 // The common pattern for this is to pass an empty array on success ("found") or an exception on failure ("not found").
       this.persistor.getEntityPersistor().setNextConsumerID(activity.getFetchID().toLong());
       try {
@@ -325,7 +343,7 @@ public class ReplicatedTransactionHandler {
       Optional<ManagedEntity> entity = entityManager.getEntity(desp);
       if (entity.isPresent()) {
         ManagedEntity entityInstance = entity.get();
-        MessagePayload payload = MessagePayload.syncPayloadNormal(extendedData, activity.getConcurrency());
+        MessagePayload payload = MessagePayload.syncPayloadNormal(activity.getPayloadReference(), activity.getConcurrency());
         if (null != request.getAction()) switch (request.getAction()) {
           case RECONFIGURE_ENTITY:  
             entityInstance.addRequestMessage(request, payload, createCapture(()->ackReceived(activeSender, activity, transactionOrderPersistenceFuture),
@@ -454,7 +472,7 @@ public class ReplicatedTransactionHandler {
           payload = MessagePayload.emptyPayload();
         } else {
           int concurrencyKey = activity.getConcurrency();
-          payload = MessagePayload.syncPayloadNormal(activity.getExtendedData(), concurrencyKey);
+          payload = MessagePayload.syncPayloadNormal(activity.getPayloadReference(), concurrencyKey);
         }
         entity.get().addRequestMessage(activityToLocalRequest(activity), payload, createCapture(
             null, 
@@ -506,7 +524,7 @@ public class ReplicatedTransactionHandler {
   }
   
   private void finish(FetchID fetch) {
-    state.endEntity(fetch);
+    scheduleDeferred(state.endEntity(fetch));
   }
   
   private void finish(FetchID fetch, int concurrency) {
@@ -597,6 +615,8 @@ public class ReplicatedTransactionHandler {
   }
 
   private void acknowledge(ServerID activeSender, SyncReplicationActivity activity, ReplicationResultCode code) {
+//  the activity is done, give its message buffers back even if the payload was never decoded
+    activity.releasePayload();
 //  when is the right time to send the ack?
     if (!activeSender.equals(ServerID.NULL_ID)) {
       prepareAckForSend(activeSender, activity.getActivityID(), code);
@@ -613,7 +633,8 @@ public class ReplicatedTransactionHandler {
     // The batch context is cached and constructed lazily when the sender changes.
     if (!sender.equals(this.cachedMessageAckFrom)) {
       this.cachedMessageAckFrom = sender;
-      this.cachedBatchAck = new GroupMessageBatchContext<>(this::createAckMessage, this.groupManager, this.cachedMessageAckFrom, maximumBatchSize, idealMessagesInFlight, (node)->sendToActive());
+      this.cachedBatchAck = new GroupMessageBatchContext<>(this::createAckMessage, this.groupManager, this.cachedMessageAckFrom, maximumBatchSize, idealMessagesInFlight, (node)->sendToActive(),
+          adaptiveBatching ? maximumMessagesInFlight : 0, 0L);
     }
     
     boolean didCreate = this.cachedBatchAck.batchMessage(new ReplicationAckTuple(respondTo, code));
@@ -682,13 +703,11 @@ public class ReplicatedTransactionHandler {
   }  
   
  private class SyncState {
-    private LinkedList<DeferredContainer> defer = new LinkedList<>();
  //  at this point, id based checking is legacy.  Everything should have a fetchid.  TODO: remove 
     private final Set<FetchID> syncdFetches = new HashSet<>();
-    private final Set<Integer> syncdKeys = new HashSet<>();
- //  at this point, id based checking is legacy.  Everything should have a fetchid 
-    private FetchID syncingFetch = FetchID.NULL_ID;
-    private int currentKey = -1;
+ //  entities currently being sync'd.  a pipelining active may have several entities and several keys of
+ //  each entity in flight at once and may complete the keys in any order
+    private final Map<FetchID, EntitySyncState> syncingFetches = new HashMap<>();
     private boolean finished = false;
     private boolean started = false;
     
@@ -698,48 +717,49 @@ public class ReplicatedTransactionHandler {
     
     private void startEntity(FetchID fetch) {
       assertStarted(null);
-      Assert.assertTrue(syncingFetch.isNull());
-      syncingFetch = fetch;
-// these keys are never sync'd only replicated so add them to the set
-      syncdKeys.add(ConcurrencyStrategy.MANAGEMENT_KEY);
-      syncdKeys.add(ConcurrencyStrategy.UNIVERSAL_KEY);
+      Assert.assertFalse(syncingFetches.containsKey(fetch));
+      syncingFetches.put(fetch, new EntitySyncState());
       LOGGER.debug("Starting " + fetch);
     }
     
-    private void endEntity(FetchID fetch) {
+    private Deque<DeferredContainer> endEntity(FetchID fetch) {
       assertStarted(null);
-      Assert.assertEquals(syncingFetch, fetch);
+      EntitySyncState entity = syncingFetches.remove(fetch);
+      Assert.assertNotNull(entity);
+      Assert.assertTrue(entity.syncingKeys.isEmpty());
       syncdFetches.add(fetch);
-      syncdKeys.clear();
-      syncingFetch = FetchID.NULL_ID;
       LOGGER.debug("Ending " + fetch);
+//  anything left over is no longer held back by the sync of this entity
+      return entity.defer;
     }
     
     private void startConcurrency(FetchID fetch, int concurrency) {
       assertStarted(null);
-      Assert.assertEquals(syncingFetch, fetch);
-      currentKey = concurrency;
+      EntitySyncState entity = syncingFetches.get(fetch);
+      Assert.assertNotNull(entity);
+      Assert.assertTrue(entity.syncingKeys.add(concurrency));
       if (LOGGER.isDebugEnabled()) {
-        LOGGER.debug("Starting " + fetch + "/" + currentKey);
+        LOGGER.debug("Starting " + fetch + "/" + concurrency);
       }
     }
     
     private Deque<DeferredContainer> endConcurrency(FetchID fetch, int concurrency) {
       assertStarted(null);
-      try {
-        Assert.assertEquals(syncingFetch, fetch);
-        Assert.assertEquals(currentKey, concurrency);
-        syncdKeys.add(concurrency);
-        currentKey = -1;
-        return defer;
-      } finally {
-        defer = new LinkedList<>();
-      }
+      EntitySyncState entity = syncingFetches.get(fetch);
+      Assert.assertNotNull(entity);
+      Assert.assertTrue(entity.syncingKeys.remove(concurrency));
+      entity.syncdKeys.add(concurrency);
+      return entity.release(concurrency);
     }
     
     private Deque<DeferredContainer> finish() {
       assertStarted(null);
       syncdFetches.clear();
+      LinkedList<DeferredContainer> defer = new LinkedList<>();
+      for (EntitySyncState entity : syncingFetches.values()) {
+        defer.addAll(entity.defer);
+      }
+      syncingFetches.clear();
       finished = true;
       return defer;
     }
@@ -770,10 +790,11 @@ public class ReplicatedTransactionHandler {
       } 
       
       SyncReplicationActivity.ActivityType activityType = activity.getActivityType();
+      EntitySyncState entity = syncingFetches.get(fetch);
 
-      if (fetch.equals(syncingFetch)) {
+      if (entity != null) {
         int concurrencyKey = activity.getConcurrency();
-        if (syncdKeys.contains(concurrencyKey)) {
+        if (entity.syncdKeys.contains(concurrencyKey)) {
           return false;
         } else if (SyncReplicationActivity.ActivityType.CREATE_ENTITY == activityType) {
           return true;
@@ -783,14 +804,14 @@ public class ReplicatedTransactionHandler {
         } else if (SyncReplicationActivity.ActivityType.DESTROY_ENTITY == activityType) {
 //          Assert.fail("destroy received during a sync of an entity " + activity);
           return false;
-        } else if (currentKey == concurrencyKey) {
-          defer.add(new DeferredContainer(activeSender, activity));
+        } else if (entity.syncingKeys.contains(concurrencyKey)) {
+          entity.defer.add(new DeferredContainer(activeSender, activity));
           return true;
         } else if (concurrencyKey == ConcurrencyStrategy.UNIVERSAL_KEY) {
           // if a message comes on the universal key, make sure it lags at least one step by deferrign the 
           // operation.  This prevents the invoke from possibly outracing the creation message at the start 
           // of sync.  Consider deferring all universal key operations to the end of entity sync.
-          defer.add(new DeferredContainer(activeSender, activity));
+          entity.defer.add(new DeferredContainer(activeSender, activity));
           return true;
         }
       }
@@ -873,6 +894,31 @@ public class ReplicatedTransactionHandler {
   }
 
 
+  private static class EntitySyncState {
+// these keys are never sync'd only replicated so they start out in the set
+    private final Set<Integer> syncdKeys = new HashSet<>(Arrays.asList(ConcurrencyStrategy.MANAGEMENT_KEY, ConcurrencyStrategy.UNIVERSAL_KEY));
+    private final Set<Integer> syncingKeys = new HashSet<>();
+    private final LinkedList<DeferredContainer> defer = new LinkedList<>();
+
+    /**
+     * Pulls the messages held back by the given key, and any deferred on the universal key, out of the deferred
+     * list in the order they were received.  Messages for keys still in flight stay deferred.
+     */
+    private Deque<DeferredContainer> release(int concurrency) {
+      LinkedList<DeferredContainer> ready = new LinkedList<>();
+      Iterator<DeferredContainer> it = defer.iterator();
+      while (it.hasNext()) {
+        DeferredContainer c = it.next();
+        int key = c.activity.getConcurrency();
+        if (key == concurrency || key == ConcurrencyStrategy.UNIVERSAL_KEY) {
+          ready.add(c);
+          it.remove();
+        }
+      }
+      return ready;
+    }
+  }
+
   private static class DeferredContainer {
     public final ServerID activeSender;
     public final SyncReplicationActivity activity;
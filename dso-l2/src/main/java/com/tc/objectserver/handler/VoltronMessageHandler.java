@@ -34,6 +34,7 @@ import com.tc.properties.TCPropertiesConsts;
 import com.tc.properties.TCPropertiesImpl;
 import com.tc.util.ProductID;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -49,9 +50,12 @@ public class VoltronMessageHandler extends AbstractEventHandler<VoltronEntityMes
   private final AtomicInteger clientsConnected = new AtomicInteger();
   private final boolean ALWAYS_DIRECT = TCPropertiesImpl.getProperties().getBoolean(TCPropertiesConsts.L2_SEDA_STAGE_SINGLE_THREAD, false);
   private final TimedActivation timer = new TimedActivation();
+  // runs on this single thread, ahead of the lanes of the destination stage
+  private final Consumer<VoltronEntityMessage> intake;
   
-  public VoltronMessageHandler(DSOChannelManager clients, boolean use_direct) {
+  public VoltronMessageHandler(DSOChannelManager clients, boolean use_direct, Consumer<VoltronEntityMessage> intake) {
     this.useDirect = use_direct;
+    this.intake = intake;
     clients.addEventListener(new ChannelManagerEventListener() {
       @Override
       public void channelCreated(MessageChannel channel) {
@@ -92,6 +96,7 @@ public class VoltronMessageHandler extends AbstractEventHandler<VoltronEntityMes
     if (message.getVoltronType() == VoltronEntityMessage.Type.INVOKE_ACTION) {
       MonitoringEventCreator.start();
     }
+    intake.accept(message);
     destSink.addToSink(message);
   }
 
@@ -23,6 +23,7 @@ import com.tc.async.api.Sink;
 import org.slf4j.Logger;
 import org.terracotta.exception.EntityException;
 
+import com.tc.entity.LinearVoltronEntityMultiResponse;
 import com.tc.entity.ResendVoltronEntityMessage;
 import com.tc.entity.VoltronEntityMessage;
 import com.tc.l2.state.ConsistencyManager;
@@ -96,7 +97,7 @@ public class ServerClientHandshakeManager {
     return this.state == State.STARTED;
   }
   
-  private boolean canAcceptStats(String version) {
+  private boolean isCurrentVersion(String version) {
     return version.equals(ProductInfo.getInstance().version());
   }
 
@@ -107,8 +108,10 @@ public class ServerClientHandshakeManager {
       this.logger.info("Handling client handshake for " + clientID);
       handshake.getChannel().addAttachment(ClientHandshakeMonitoringInfo.MONITORING_INFO_ATTACHMENT, 
           new ClientHandshakeMonitoringInfo(handshake.getClientPID(), handshake.getUUID(), handshake.getName()), false);
-      if (canAcceptStats(handshake.getClientVersion())) {
+      if (isCurrentVersion(handshake.getClientVersion())) {
         handshake.getChannel().addAttachment("SendStats", true, true);
+        // older clients only decode the one op per value layout of multi responses
+        handshake.getChannel().addAttachment(LinearVoltronEntityMultiResponse.COMPACT_TIMELINE, true, true);
       }
       this.logger.info("confirming client handshake for " + state + " " + save + " " + clientID);
       if (this.state == State.STARTED) {
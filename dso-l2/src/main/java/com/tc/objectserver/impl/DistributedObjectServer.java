@@ -34,7 +34,9 @@ import com.tc.config.ServerConfiguration;
 import com.tc.objectserver.api.EntityManager;
 import com.tc.services.PlatformConfigurationImpl;
 import com.tc.services.PlatformServiceProvider;
-import com.tc.services.SingleThreadedTimer;
+import com.tc.classloader.ServiceLocator;
+import com.tc.services.ISimpleTimer;
+import com.tc.services.SharedWheelTimer;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -174,6 +176,7 @@ import com.tc.util.CommonShutDownHook;
 import com.tc.util.ProductInfo;
 import com.tc.util.TCTimeoutException;
 import com.tc.util.UUID;
+import com.tc.util.concurrent.ThreadFactoryBuilder;
 import com.tc.util.startuplock.FileNotCreatedException;
 import com.tc.util.startuplock.LocationNotCreatedException;
 
@@ -209,6 +212,7 @@ import java.nio.charset.Charset;
 import java.util.EnumSet;
 import java.util.HashSet;
 import java.util.Map;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
 
 import org.terracotta.entity.BasicServiceConfiguration;
@@ -274,10 +278,13 @@ public class DistributedObjectServer implements ServerConnectionValidator {
   private GroupManager<AbstractGroupMessage> groupCommManager;
   private StripeIDStateManagerImpl               stripeIDStateManager;
 
-  private final SingleThreadedTimer timer;
+  private final ISimpleTimer timer;
   private final TerracottaServiceProviderRegistryImpl serviceRegistry;
   private WeightGeneratorFactory globalWeightGeneratorFactory;
   private EntityManagerImpl entityManager;
+  private ReplicationSender replicationSender;
+  private ReplicatedTransactionHandler replicatedTransactionHandler;
+  private HydrateHandler hydrateHandler;
 
   // used by a test
   public DistributedObjectServer(ServerConfigurationManager configSetupManager, TCThreadGroup threadGroup,
@@ -301,7 +308,7 @@ public class DistributedObjectServer implements ServerConnectionValidator {
     this.seda = seda;
     this.server = server;
     this.serverBuilder = createServerBuilder(configSetupManager.getGroupConfiguration(), logger, server);
-    this.timer = new SingleThreadedTimer(null);
+    this.timer = new SharedWheelTimer();
     this.timer.start();
     this.serviceRegistry = new TerracottaServiceProviderRegistryImpl();
   }
@@ -331,6 +338,15 @@ public class DistributedObjectServer implements ServerConnectionValidator {
     collectState(this.groupCommManager, pp);
     collectState(this.l2Coordinator, pp);
     collectState(this.entityManager, pp);
+    if (this.hydrateHandler != null) {
+      collectState(this.hydrateHandler, pp);
+    }
+    if (this.replicationSender != null) {
+      collectState(this.replicationSender, pp);
+    }
+    if (this.replicatedTransactionHandler != null) {
+      collectState(this.replicatedTransactionHandler, pp);
+    }
     collectState(this.serviceRegistry, pp);
     addExtendedConfigState(pp);
     return pp.toString().getBytes(set);
@@ -425,6 +441,7 @@ public class DistributedObjectServer implements ServerConnectionValidator {
     PlatformConfiguration platformConfiguration =
         new PlatformConfigurationImpl(this.configSetupManager.getServerConfiguration(), configuration);
     serviceRegistry.initialize(platformConfiguration, configuration, Thread.currentThread().getContextClassLoader());
+    logger.info("Plugin discovery took " + ServiceLocator.getDiscoveryTime(TimeUnit.MILLISECONDS) + "ms");
     serviceRegistry.registerImplementationProvided(new PlatformServiceProvider(server));
 
     final EntityMessengerProvider messengerProvider = new EntityMessengerProvider();
@@ -634,10 +651,20 @@ public class DistributedObjectServer implements ServerConnectionValidator {
     ManagementTopologyEventCollector eventCollector = new ManagementTopologyEventCollector(serviceInterface);
     ClientEntityStateManager clientEntityStateManager = new ClientEntityStateManagerImpl();
 
-    entityManager = new EntityManagerImpl(this.serviceRegistry, clientEntityStateManager, eventCollector, processor, this::flushLocalPipeline, this.configSetupManager.getServiceLocator());
+    int promoteParallelism = tcProperties.getInt(TCPropertiesConsts.L2_FAILOVER_PROMOTE_PARALLELISM, 1);
+    ThreadFactory promotionThreads = new ThreadFactoryBuilder()
+        .setThreadFactory(r -> new Thread(this.threadGroup, r))
+        .setNameFormat("EntityPromotion-%d")
+        .setDaemon(true)
+        .build();
+    entityManager = new EntityManagerImpl(this.serviceRegistry, clientEntityStateManager, eventCollector, processor, this::flushLocalPipeline, this.configSetupManager.getServiceLocator(), promoteParallelism, promotionThreads);
     // We need to set up a stage to point at the ProcessTransactionHandler and we also need to register it for events, below.
     final ProcessTransactionHandler processTransactionHandler = new ProcessTransactionHandler(this.persistor, channelManager, entityManager, () -> l2Coordinator.getStateManager().cleanupKnownServers());
-    stageManager.createStage(ServerConfigurationContext.VOLTRON_MESSAGE_STAGE, VoltronEntityMessage.class, processTransactionHandler.getVoltronMessageHandler(), 1, maxStageSize, USE_DIRECT);
+    int voltronLanes = Math.max(1, tcProperties.getInt(TCPropertiesConsts.L2_SEDA_VOLTRON_STAGE_LANES, 1));
+    if (voltronLanes > 1) {
+      logger.info("voltron message stage running with " + voltronLanes + " ordered lanes");
+    }
+    stageManager.createStage(ServerConfigurationContext.VOLTRON_MESSAGE_STAGE, VoltronEntityMessage.class, processTransactionHandler.getVoltronMessageHandler(), voltronLanes, maxStageSize, USE_DIRECT);
     stageManager.createStage(ServerConfigurationContext.RESPOND_TO_REQUEST_STAGE, ResponseMessage.class, processTransactionHandler.getMultiResponseSender(), L2Utils.getOptimalCommWorkerThreads(), maxStageSize, false);
 //  add the server -> client communicator service
     final CommunicatorService communicatorService = new CommunicatorService(processTransactionHandler.getClientMessageSender());
@@ -645,7 +672,7 @@ public class DistributedObjectServer implements ServerConnectionValidator {
     communicatorService.initialized();
     serviceRegistry.registerImplementationProvided(communicatorService);
 
-    VoltronMessageHandler voltron = new VoltronMessageHandler(channelManager, USE_DIRECT);
+    VoltronMessageHandler voltron = new VoltronMessageHandler(channelManager, USE_DIRECT, processTransactionHandler::orderOnIntake);
     // We need to connect the IInterEntityMessengerProvider to the voltronMessageSink.
     
     Stage<VoltronEntityMessage> fast = stageManager.createStage(ServerConfigurationContext.SINGLE_THREADED_FAST_PATH, VoltronEntityMessage.class, voltron, 1, maxStageSize);
@@ -667,11 +694,13 @@ public class DistributedObjectServer implements ServerConnectionValidator {
     
     final Stage<ClientHandshakeMessage> clientHandshake = stageManager.createStage(ServerConfigurationContext.CLIENT_HANDSHAKE_STAGE, ClientHandshakeMessage.class, createHandShakeHandler(entityManager, processTransactionHandler, consistencyMgr), 1, maxStageSize);
     
-    Stage<HydrateContext> hydrator = stageManager.createStage(ServerConfigurationContext.HYDRATE_MESSAGE_STAGE, HydrateContext.class, new HydrateHandler(), L2Utils.getOptimalCommWorkerThreads(), maxStageSize);
+    this.hydrateHandler = new HydrateHandler();
+    Stage<HydrateContext> hydrator = stageManager.createStage(ServerConfigurationContext.HYDRATE_MESSAGE_STAGE, HydrateContext.class, this.hydrateHandler, L2Utils.getOptimalCommWorkerThreads(), maxStageSize);
     Stage<TCMessage> diagStage = stageManager.createStage(ServerConfigurationContext.MONITOR_STAGE, TCMessage.class, new DiagnosticsHandler(this), 1, 1);
     
     messageRouter.routeMessageType(TCMessageType.CLIENT_HANDSHAKE_MESSAGE, new TCMessageHydrateSink<>(clientHandshake.getSink()));
-    messageRouter.routeMessageType(TCMessageType.VOLTRON_ENTITY_MESSAGE, new VoltronMessageSink(hydrator, fast.getSink(), entityManager));
+    boolean offloadHydrate = tcProperties.getBoolean(TCPropertiesConsts.L2_SEDA_HYDRATE_OFFLOAD, false);
+    messageRouter.routeMessageType(TCMessageType.VOLTRON_ENTITY_MESSAGE, new VoltronMessageSink(hydrator, fast.getSink(), entityManager, offloadHydrate));
     messageRouter.routeMessageType(TCMessageType.DIAGNOSTIC_REQUEST, m -> diagStage.getSink().addToSink(m));    
 
     HASettingsChecker haChecker = new HASettingsChecker(configSetupManager, tcProperties);
@@ -690,7 +719,7 @@ public class DistributedObjectServer implements ServerConnectionValidator {
     Stage<Runnable> replicationResponseStage = stageManager.createStage(ServerConfigurationContext.PASSIVE_OUTGOING_RESPONSE_STAGE, Runnable.class, 
         new GenericHandler<>(), 1, maxStageSize);
 //  routing for passive to receive replication    
-    ReplicatedTransactionHandler replicatedTransactionHandler = new ReplicatedTransactionHandler(state, replicationResponseStage, this.persistor, entityManager, groupCommManager);
+    this.replicatedTransactionHandler = new ReplicatedTransactionHandler(state, replicationResponseStage, this.persistor, entityManager, groupCommManager);
     // This requires both the stage for handling the replication/sync messages.
     Stage<ReplicationMessage> replicationStage = stageManager.createStage(ServerConfigurationContext.PASSIVE_REPLICATION_STAGE, ReplicationMessage.class, 
         replicatedTransactionHandler.getEventHandler(), 1, maxStageSize);
@@ -714,7 +743,7 @@ public class DistributedObjectServer implements ServerConnectionValidator {
 // setup replication    
     final Sink<ReplicationSendingAction> replicationSenderStage = knownPeers > 0 ? stageManager.createStage(ServerConfigurationContext.ACTIVE_TO_PASSIVE_DRIVER_STAGE, ReplicationSendingAction.class, new GenericHandler<ReplicationSendingAction>(), knownPeers, maxStageSize).getSink() :
             (context) -> {throw new AssertionError("no messages to replication");};
-    ReplicationSender replicationSender = new ReplicationSender(replicationSenderStage, groupCommManager);
+    this.replicationSender = new ReplicationSender(replicationSenderStage, groupCommManager);
     final Sink<ReplicationReceivingAction> replicationReceivingStage = knownPeers > 0 ? stageManager.createStage(ServerConfigurationContext.PASSIVE_TO_ACTIVE_DRIVER_STAGE, ReplicationReceivingAction.class, new GenericHandler<>(), knownPeers, maxStageSize).getSink() :
             (context) -> {throw new AssertionError("no messages to replication");};
     
@@ -0,0 +1,288 @@
+/*
+ *
+ *  The contents of this file are subject to the Terracotta Public License Version
+ *  2.0 (the "License"); You may not use this file except in compliance with the
+ *  License. You may obtain a copy of the License at
+ *
+ *  http://terracotta.org/legal/terracotta-public-license.
+ *
+ *  Software distributed under the License is distributed on an "AS IS" basis,
+ *  WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing rights and limitations under the License.
+ *
+ *  The Covered Software is Terracotta Core.
+ *
+ *  The Initial Developer of the Covered Software is
+ *  Terracotta, Inc., a Software AG company
+ *
+ */
+package com.tc.objectserver.persistence;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.terracotta.persistence.IPlatformPersistence;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.CRC32;
+
+/**
+ * An append-only, checksummed log of changes kept in {@link IPlatformPersistence} data elements.
+ * <p>
+ * Each change is stored as its own small element so the cost of recording a change does not depend on how much state
+ * the owner holds.  Once enough changes have piled up the owner's whole state is written out as a snapshot.  Snapshots
+ * alternate between two slots so a torn snapshot write leaves the previous snapshot and its changes intact.
+ * <p>
+ * Snapshots and changes share one sequence, carried in every frame.  A change is stored under its position after the
+ * snapshot it follows ({@code <name>.journal.<index>}), so the element names are reused once a snapshot is taken and
+ * never number more than the compaction threshold.  Nothing is ever deleted: the changes a snapshot covers are left
+ * in place and no longer match the sequences expected after it.
+ * <p>
+ * On recovery the newest valid snapshot is loaded and the changes that follow it are replayed in order, stopping at
+ * the first missing, stale, tombstoned or corrupt one.
+ */
+class AppendOnlyJournal {
+  private static final Logger LOGGER = LoggerFactory.getLogger(AppendOnlyJournal.class);
+
+  static final int            DEFAULT_COMPACTION_THRESHOLD = 1024;
+
+  private static final int    MAGIC                        = 0x544a524e;
+  private static final int    HEADER_SIZE                  = 4 + 8 + 4 + 4;
+  // the length of a tombstone frame, which ends the journal at its sequence and has no payload
+  private static final int    TOMBSTONE_LENGTH             = -1;
+  private static final byte[] TOMBSTONE                    = new byte[0];
+
+  interface Encoder {
+    void encode(DataOutput out) throws IOException;
+  }
+
+  interface Decoder {
+    void decode(DataInput in) throws IOException;
+  }
+
+  private final IPlatformPersistence storage;
+  private final String               name;
+  private final Encoder              snapshotEncoder;
+  private final int                  compactionThreshold;
+
+  private long                       nextSequence     = 1;
+  private long                       snapshotSequence = 0;
+  private int                        snapshotSlot     = -1;
+  private int                        pending          = 0;
+
+  /**
+   * @param snapshotEncoder writes the owner's complete state, it is called with the journal lock held
+   */
+  AppendOnlyJournal(IPlatformPersistence storage, String name, Encoder snapshotEncoder, int compactionThreshold) {
+    this.storage = storage;
+    this.name = name;
+    this.snapshotEncoder = snapshotEncoder;
+    this.compactionThreshold = compactionThreshold;
+  }
+
+  AppendOnlyJournal(IPlatformPersistence storage, String name, Encoder snapshotEncoder) {
+    this(storage, name, snapshotEncoder, DEFAULT_COMPACTION_THRESHOLD);
+  }
+
+  /**
+   * Rebuilds the owner's state from the stored snapshot and changes.
+   *
+   * @return false if nothing was stored under this journal's name
+   */
+  synchronized boolean recover(Decoder snapshotDecoder, Decoder changeDecoder) throws IOException {
+    boolean found = false;
+    byte[] snapshot = null;
+    for (int slot = 0; slot < 2; slot++) {
+      Serializable element = this.storage.loadDataElement(snapshotName(slot));
+      if (element != null) {
+        long sequence = sequenceOf(element);
+        byte[] payload = payloadOf(element, sequence);
+        if (payload == null) {
+          LOGGER.warn("ignoring corrupt snapshot " + snapshotName(slot));
+        } else if (sequence > this.snapshotSequence) {
+          this.snapshotSequence = sequence;
+          this.snapshotSlot = slot;
+          snapshot = payload;
+        }
+      }
+    }
+    if (snapshot != null) {
+      snapshotDecoder.decode(new DataInputStream(new ByteArrayInputStream(snapshot)));
+      found = true;
+    }
+
+    int index = 1;
+    long sequence = this.snapshotSequence + 1;
+    Serializable element;
+    while ((element = this.storage.loadDataElement(changeName(index))) != null) {
+      byte[] payload = payloadOf(element, sequence);
+      if (payload == TOMBSTONE) {
+        break;
+      }
+      if (payload == null) {
+        // a change from before the snapshot is the normal end of the journal, anything else is damage
+        if (sequenceOf(element) >= sequence) {
+          LOGGER.warn("discarding corrupt journal tail of " + this.name + " from sequence " + sequence);
+          discardTail(index, sequence);
+        }
+        break;
+      }
+      changeDecoder.decode(new DataInputStream(new ByteArrayInputStream(payload)));
+      found = true;
+      index += 1;
+      sequence += 1;
+    }
+    this.nextSequence = sequence;
+    this.pending = (int) (sequence - this.snapshotSequence - 1);
+    return found;
+  }
+
+  /**
+   * Records a change, folding the journal into a new snapshot once enough changes have been recorded.
+   */
+  synchronized void append(Encoder change) throws IOException {
+    long sequence = this.nextSequence++;
+    this.pending += 1;
+    this.storage.storeDataElement(changeName(this.pending), frame(sequence, change));
+    if (this.pending >= this.compactionThreshold) {
+      compact();
+    }
+  }
+
+  /**
+   * Writes the owner's current state as a snapshot, the changes it covers are overwritten by the ones that follow it.
+   */
+  synchronized void compact() throws IOException {
+    long sequence = this.nextSequence++;
+    int slot = (this.snapshotSlot + 1) & 1;
+    this.storage.storeDataElement(snapshotName(slot), frame(sequence, this.snapshotEncoder));
+    this.snapshotSlot = slot;
+    this.snapshotSequence = sequence;
+    this.pending = 0;
+  }
+
+  synchronized int getPendingChanges() {
+    return this.pending;
+  }
+
+  static void writeBytes(DataOutput out, byte[] bytes) throws IOException {
+    if (bytes == null) {
+      out.writeInt(-1);
+    } else {
+      out.writeInt(bytes.length);
+      out.write(bytes);
+    }
+  }
+
+  static byte[] readBytes(DataInput in) throws IOException {
+    int length = in.readInt();
+    if (length < 0) {
+      return null;
+    }
+    byte[] bytes = new byte[length];
+    in.readFully(bytes);
+    return bytes;
+  }
+
+  static void writeString(DataOutput out, String string) throws IOException {
+    writeBytes(out, string == null ? null : string.getBytes(StandardCharsets.UTF_8));
+  }
+
+  static String readString(DataInput in) throws IOException {
+    byte[] bytes = readBytes(in);
+    return bytes == null ? null : new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Tombstones the corrupt change and whatever was recorded after it, so that none of it is mistaken for a change once
+   * appends carry on from that sequence.  Only elements carrying the sequences expected there are touched.
+   */
+  private void discardTail(int index, long sequence) throws IOException {
+    do {
+      this.storage.storeDataElement(changeName(index), tombstone(sequence));
+      index += 1;
+      sequence += 1;
+    } while (sequenceOf(this.storage.loadDataElement(changeName(index))) == sequence);
+  }
+
+  private String changeName(int index) {
+    return this.name + ".journal." + index;
+  }
+
+  private String snapshotName(int slot) {
+    return this.name + ".snapshot." + slot;
+  }
+
+  private static byte[] frame(long sequence, Encoder encoder) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    DataOutputStream out = new DataOutputStream(bytes);
+    out.writeInt(MAGIC);
+    out.writeLong(sequence);
+    out.writeInt(0);
+    out.writeInt(0);
+    encoder.encode(out);
+    out.flush();
+    byte[] frame = bytes.toByteArray();
+    int length = frame.length - HEADER_SIZE;
+    ByteBuffer.wrap(frame).putInt(12, length).putInt(16, checksum(frame, sequence, length));
+    return frame;
+  }
+
+  private static byte[] tombstone(long sequence) {
+    byte[] frame = new byte[HEADER_SIZE];
+    ByteBuffer.wrap(frame).putInt(0, MAGIC).putLong(4, sequence).putInt(12, TOMBSTONE_LENGTH)
+        .putInt(16, checksum(frame, sequence, 0));
+    return frame;
+  }
+
+  private static long sequenceOf(Serializable element) {
+    if (element instanceof byte[] && ((byte[]) element).length >= HEADER_SIZE) {
+      return ByteBuffer.wrap((byte[]) element).getLong(4);
+    }
+    return -1;
+  }
+
+  /**
+   * @return the payload of a well formed frame carrying the expected sequence, {@link #TOMBSTONE} for a tombstone
+   *         carrying it, null otherwise
+   */
+  private static byte[] payloadOf(Serializable element, long expectedSequence) {
+    if (!(element instanceof byte[])) {
+      return null;
+    }
+    byte[] frame = (byte[]) element;
+    if (frame.length < HEADER_SIZE) {
+      return null;
+    }
+    ByteBuffer header = ByteBuffer.wrap(frame);
+    if (header.getInt(0) != MAGIC || header.getLong(4) != expectedSequence) {
+      return null;
+    }
+    int length = header.getInt(12);
+    if (length == TOMBSTONE_LENGTH && frame.length == HEADER_SIZE
+        && header.getInt(16) == checksum(frame, expectedSequence, 0)) {
+      return TOMBSTONE;
+    }
+    if (length != frame.length - HEADER_SIZE || header.getInt(16) != checksum(frame, expectedSequence, length)) {
+      return null;
+    }
+    byte[] payload = new byte[length];
+    System.arraycopy(frame, HEADER_SIZE, payload, 0, length);
+    return payload;
+  }
+
+  private static int checksum(byte[] frame, long sequence, int length) {
+    CRC32 crc = new CRC32();
+    crc.update(ByteBuffer.allocate(8).putLong(0, sequence).array());
+    crc.update(frame, HEADER_SIZE, length);
+    return (int) crc.getValue();
+  }
+}
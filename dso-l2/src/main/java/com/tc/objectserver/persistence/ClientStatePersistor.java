@@ -24,6 +24,8 @@ import com.tc.util.Assert;
 import com.tc.util.ProductID;
 import com.tc.util.sequence.MutableSequence;
 
+import java.io.DataInput;
+import java.io.DataOutput;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
@@ -35,29 +37,34 @@ import org.terracotta.persistence.IPlatformPersistence;
 
 
 public class ClientStatePersistor {
+  private static final String JOURNAL_NAME = "client_state";
+  // map written by older versions, read once to seed the journal
   private static final String CLIENTS_MAP_FILE_NAME =  "clients_map.map";
   private static final String NEXT_CLIENT_ID_FILE_NAME =  "next_client_id.dat";
-  
+
+  // journal record types
+  private static final byte PUT_CLIENT = 1;
+  private static final byte REMOVE_CLIENT = 2;
   
   private final IPlatformPersistence storageManager;
-  private final ConcurrentHashMap<ClientID, Boolean> clients;
+  private final ConcurrentHashMap<ClientID, Boolean> clients = new ConcurrentHashMap<>();
+  private final AppendOnlyJournal journal;
   private final MutableSequence clientIDSequence;
   
-  @SuppressWarnings("unchecked")
   public ClientStatePersistor(IPlatformPersistence storageManager) {
     this.storageManager = storageManager;
-    
-    ConcurrentHashMap<ClientID, Boolean> clientsMap = null;
+    this.journal = new AppendOnlyJournal(storageManager, JOURNAL_NAME, this::writeSnapshot);
     try {
-      clientsMap = (ConcurrentHashMap<ClientID, Boolean>) this.storageManager.loadDataElement(CLIENTS_MAP_FILE_NAME);
-      if (null == clientsMap) {
-        clientsMap = new ConcurrentHashMap<>();
+      if (!this.journal.recover(this::readSnapshot, this::replay)) {
+        loadLegacyMap();
+      }
+      if (this.storageManager.loadDataElement(CLIENTS_MAP_FILE_NAME) != null) {
+        this.storageManager.storeDataElement(CLIENTS_MAP_FILE_NAME, null);
       }
     } catch (IOException e) {
       // We don't expect this during startup so just throw it as runtime.
       throw new RuntimeException("Failure reading ClientStatePersistor data", e);
     }
-    this.clients = clientsMap;
     // orphaned clients are not supposed to reconnect on restart.  since we are repopulating 
     // restart data, set aside the orphaned clients
     this.clientIDSequence = new Sequence(this.storageManager);
@@ -84,19 +91,27 @@ public class ClientStatePersistor {
     return clients.containsKey(id);
   }
 
-  public void saveClientState(ClientID channelID, ProductID product) {
+  public synchronized void saveClientState(ClientID channelID, ProductID product) {
     // if the client is in the orphaned set, do not add it to the saved list because 
     // it should never connect again.  this can happen if the ConnectionIDFactory services
     // a connection before the existing clients are loaded into the reconnect window
-    clients.put(channelID, product.isPermanent());
-    safeStoreClients();
+    boolean permanent = product.isPermanent();
+    clients.put(channelID, permanent);
+    safeAppend(out -> {
+      out.writeByte(PUT_CLIENT);
+      out.writeLong(channelID.toLong());
+      out.writeBoolean(permanent);
+    });
   }
 
-  public void deleteClientState(ClientID id) throws ClientNotFoundException {
+  public synchronized void deleteClientState(ClientID id) throws ClientNotFoundException {
     if (clients.remove(id) == null) {
       throw new ClientNotFoundException();
     }
-    safeStoreClients();
+    safeAppend(out -> {
+      out.writeByte(REMOVE_CLIENT);
+      out.writeLong(id.toLong());
+    });
   }
 
   Map<String, Object> reportStateToMap(Map<String, Object> map) {
@@ -111,15 +126,52 @@ public class ClientStatePersistor {
     return map;
   }
   
-  private void safeStoreClients() {
+  private void safeAppend(AppendOnlyJournal.Encoder change) {
     try {
-      this.storageManager.storeDataElement(CLIENTS_MAP_FILE_NAME, this.clients);
+      this.journal.append(change);
     } catch (IOException e) {
       // Not expected during run.
       Assert.fail(e.getLocalizedMessage());
     }
   }
 
+  private void replay(DataInput in) throws IOException {
+    byte type = in.readByte();
+    switch (type) {
+      case PUT_CLIENT:
+        clients.put(new ClientID(in.readLong()), in.readBoolean());
+        break;
+      case REMOVE_CLIENT:
+        clients.remove(new ClientID(in.readLong()));
+        break;
+      default:
+        throw new IOException("Unknown ClientStatePersistor journal record " + type);
+    }
+  }
+
+  private void writeSnapshot(DataOutput out) throws IOException {
+    out.writeInt(clients.size());
+    for (Map.Entry<ClientID, Boolean> client : clients.entrySet()) {
+      out.writeLong(client.getKey().toLong());
+      out.writeBoolean(client.getValue());
+    }
+  }
+
+  private void readSnapshot(DataInput in) throws IOException {
+    for (int count = in.readInt(); count > 0; count--) {
+      clients.put(new ClientID(in.readLong()), in.readBoolean());
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  private void loadLegacyMap() throws IOException {
+    Map<ClientID, Boolean> legacy = (Map<ClientID, Boolean>) this.storageManager.loadDataElement(CLIENTS_MAP_FILE_NAME);
+    if (legacy != null) {
+      clients.putAll(legacy);
+      this.journal.compact();
+    }
+  }
+
 
   private static class Sequence implements MutableSequence {
     private final IPlatformPersistence storageManager;
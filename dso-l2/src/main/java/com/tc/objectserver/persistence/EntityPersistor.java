@@ -24,13 +24,19 @@ import com.tc.objectserver.persistence.EntityData.JournalEntry;
 import com.tc.objectserver.persistence.EntityData.Key;
 import com.tc.objectserver.persistence.EntityData.Value;
 import com.tc.util.Assert;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataOutput;
 import java.io.IOException;
 import java.io.ObjectInput;
+import java.io.ObjectInputStream;
 import java.io.ObjectOutput;
-import java.io.Serializable;
+import java.io.ObjectOutputStream;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
@@ -45,39 +51,55 @@ import org.terracotta.persistence.IPlatformPersistence;
 
 /**
  * Stores the information relating to the entities currently alive on the platform into persistent storage.
+ * Changes are appended to an {@link AppendOnlyJournal} and the in-memory maps are rebuilt from it on startup.
  */
 public class EntityPersistor {
   private static final Logger LOGGER = LoggerFactory.getLogger(EntityPersistor.class);
 
+  private static final String JOURNAL_NAME = "entity_persistor";
+  // maps written by older versions, read once to seed the journal
   private static final String ENTITIES_ALIVE_FILE_NAME = "entities_alive.map";
   private static final String JOURNAL_CONTAINER_FILE_NAME = "journal_container.map";
   private static final String COUNTERS_FILE_NAME = "counters.map";
   private static final String COUNTERS_CONSUMER_ID = "counters:consumerID";
 
+  // journal record types
+  private static final byte PUT_ENTITY = 1;
+  private static final byte REMOVE_ENTITY = 2;
+  private static final byte TRACK_CLIENT = 3;
+  private static final byte UNTRACK_CLIENT = 4;
+  private static final byte ADD_JOURNAL_ENTRY = 5;
+  private static final byte SET_CLIENT_JOURNAL = 6;
+  private static final byte CLEAR_CLIENT_JOURNALS = 7;
+  private static final byte RETAIN_CLIENTS = 8;
+  private static final byte NEXT_CONSUMER_ID = 9;
+
   private final IPlatformPersistence storageManager;
   private final HashMap<EntityData.Key, EntityData.Value> entities;
   private final HashMap<EntityData.Key, EntityData.Value> deletes = new HashMap<>();
   private final HashMap<ClientID, List<EntityData.JournalEntry>> entityLifeJournal;
   private final HashMap<String, Long> counters;
   private final Map<EntityID, PermanentEntityResult> result = new ConcurrentHashMap<>();
+  private final AppendOnlyJournal journal;
 
-  @SuppressWarnings({ "unchecked" })
   public EntityPersistor(IPlatformPersistence storageManager) {
     this.storageManager = storageManager;
+    this.entities = new HashMap<>();
+    this.entityLifeJournal = new HashMap<>();
+    this.counters = new HashMap<>();
+    this.journal = new AppendOnlyJournal(storageManager, JOURNAL_NAME, this::writeSnapshot);
     try {
-      HashMap<EntityData.Key, EntityData.Value> entities = (HashMap<Key, Value>) this.storageManager.loadDataElement(ENTITIES_ALIVE_FILE_NAME);
-      this.entities = (null != entities) ? entities : new HashMap<>();
-      HashMap<ClientID, List<EntityData.JournalEntry>> entityLifeJournal = (HashMap<ClientID, List<JournalEntry>>) this.storageManager.loadDataElement(JOURNAL_CONTAINER_FILE_NAME);
-      this.entityLifeJournal = (null != entityLifeJournal) ? entityLifeJournal : new HashMap<>();
-      HashMap<String, Long> counters = (HashMap<String, Long>) this.storageManager.loadDataElement(COUNTERS_FILE_NAME);
-      this.counters = (null != counters) ? counters : new HashMap<>();
-      // Make sure that the consumerID is initialized to 1 (0 reserved for platform).
-      if (!this.counters.containsKey(COUNTERS_CONSUMER_ID)) {
-        this.counters.put(COUNTERS_CONSUMER_ID, new Long(1));
+      if (!this.journal.recover(this::readSnapshot, this::replay)) {
+        loadLegacyMaps();
       }
+      removeLegacyMaps();
     } catch (IOException e) {
       // We don't expect this during startup so just throw it as runtime.
-      throw new RuntimeException("Failure reading EntityPersistor map files", e);
+      throw new RuntimeException("Failure reading EntityPersistor journal", e);
+    }
+    // Make sure that the consumerID is initialized to 1 (0 reserved for platform).
+    if (!this.counters.containsKey(COUNTERS_CONSUMER_ID)) {
+      this.counters.put(COUNTERS_CONSUMER_ID, new Long(1));
     }
   }
 
@@ -88,25 +110,18 @@ public class EntityPersistor {
     if (!this.counters.containsKey(COUNTERS_CONSUMER_ID)) {
       this.counters.put(COUNTERS_CONSUMER_ID, new Long(1));
     }
-    // We can destroy the backing for these objects.
+    // Fold the (now empty) state into a snapshot, which also drops the recorded changes.
     try {
-      this.storageManager.storeDataElement(ENTITIES_ALIVE_FILE_NAME, null);
-      this.storageManager.storeDataElement(JOURNAL_CONTAINER_FILE_NAME, null);
-      this.storageManager.storeDataElement(COUNTERS_FILE_NAME, null);
+      this.journal.compact();
     } catch (IOException e) {
       // In general, we have no way of solving this problem so throw it.
-      throw new RuntimeException("Failure storing EntityPersistor map files", e);
+      throw new RuntimeException("Failure storing EntityPersistor journal", e);
     }
   }
   
   public synchronized void clearEntityClientJournal() {
     this.entityLifeJournal.clear();
-    try {
-      this.storageManager.storeDataElement(JOURNAL_CONTAINER_FILE_NAME, null);
-    } catch (IOException e) {
-      // In general, we have no way of solving this problem so throw it.
-      throw new RuntimeException("Failure storing EntityPersistor map files", e);
-    }
+    appendChange(out -> out.writeByte(CLEAR_CLIENT_JOURNALS));
   }
 
   public synchronized Collection<EntityData.Value> loadEntityData() {
@@ -203,8 +218,11 @@ public class EntityPersistor {
     Assert.assertTrue(this.entities.containsKey(key) || this.deletes.containsKey(key));
     if (this.deletes.remove(key) == null) {
       this.entities.remove(key);
+      appendChange(out -> {
+        out.writeByte(REMOVE_ENTITY);
+        writeKey(out, key);
+      });
     }
-    storeToDisk(ENTITIES_ALIVE_FILE_NAME, this.entities);
     
     // Record this in the journal - null error on success.
     addToJournal(clientID, transactionID, oldestTransactionOnClient, EntityData.Operation.DESTROY, null, null);
@@ -249,7 +267,10 @@ public class EntityPersistor {
     Assert.assertEquals(version, val.version);
     
     this.entities.put(key, val);
-    storeToDisk(ENTITIES_ALIVE_FILE_NAME, this.entities);
+    appendChange(out -> {
+      out.writeByte(PUT_ENTITY);
+      writeValue(out, val);
+    });
     
     // Record this in the journal.
     addToJournal(clientID, transactionID, oldestTransactionOnClient, EntityData.Operation.RECONFIGURE, previousConfiguration, null);
@@ -261,7 +282,7 @@ public class EntityPersistor {
   public synchronized long getNextConsumerID() {
     long consumerID = this.counters.get(COUNTERS_CONSUMER_ID);
     this.counters.put(COUNTERS_CONSUMER_ID, new Long(consumerID + 1));
-    storeToDisk(COUNTERS_FILE_NAME, this.counters);
+    appendNextConsumerID();
     return consumerID;
   }
 
@@ -269,19 +290,26 @@ public class EntityPersistor {
     long checkID = this.counters.get(COUNTERS_CONSUMER_ID);
     if (consumerID >= checkID) {
       this.counters.put(COUNTERS_CONSUMER_ID, new Long(consumerID + 1));
-      storeToDisk(COUNTERS_FILE_NAME, this.counters);
+      appendNextConsumerID();
     }
   }
   
   public synchronized void addTrackingForClient(ClientID sourceNodeID) {
     if (this.entityLifeJournal.putIfAbsent(sourceNodeID, new ArrayList<>()) == null) {
-      storeToDisk(JOURNAL_CONTAINER_FILE_NAME, this.entityLifeJournal);
+      appendChange(out -> {
+        out.writeByte(TRACK_CLIENT);
+        out.writeLong(sourceNodeID.toLong());
+      });
     }
   }
   
   public synchronized void removeTrackingForClient(ClientID sourceNodeID) {
-    this.entityLifeJournal.remove(sourceNodeID);
-    storeToDisk(JOURNAL_CONTAINER_FILE_NAME, this.entityLifeJournal);
+    if (this.entityLifeJournal.remove(sourceNodeID) != null) {
+      appendChange(out -> {
+        out.writeByte(UNTRACK_CLIENT);
+        out.writeLong(sourceNodeID.toLong());
+      });
+    }
   }
 
   public void reportStateToMap(Map<String, Object> map) {
@@ -322,22 +350,34 @@ public class EntityPersistor {
 
   private void addToJournal(ClientID clientID, long transactionID, long oldestTransactionOnClient, EntityData.Operation operation, byte[] reconfigureResult, EntityException error) {
     if (!clientID.isNull()) {
-      List<EntityData.JournalEntry> rawJournal = this.entityLifeJournal.get(clientID);
-      // If the list is not here, the client has already left the custer, don't bother saving the result
-      if (rawJournal != null) {
-        List<EntityData.JournalEntry> clientJournal = filterJournal(rawJournal, oldestTransactionOnClient);
-        JournalEntry newEntry = new JournalEntry();
-        newEntry.operation = operation;
-        newEntry.transactionID = transactionID;
-        newEntry.failure = error;
-        newEntry.reconfigureResponse = reconfigureResult;
-        clientJournal.add(newEntry);
-        this.entityLifeJournal.put(clientID, clientJournal);
-        storeToDisk(JOURNAL_CONTAINER_FILE_NAME, this.entityLifeJournal);
+      JournalEntry newEntry = new JournalEntry();
+      newEntry.operation = operation;
+      newEntry.transactionID = transactionID;
+      newEntry.failure = error;
+      newEntry.reconfigureResponse = reconfigureResult;
+      if (applyJournalEntry(clientID, oldestTransactionOnClient, newEntry)) {
+        appendChange(out -> {
+          out.writeByte(ADD_JOURNAL_ENTRY);
+          out.writeLong(clientID.toLong());
+          out.writeLong(oldestTransactionOnClient);
+          writeJournalEntry(out, newEntry);
+        });
       }
     }
   }
 
+  private boolean applyJournalEntry(ClientID clientID, long oldestTransactionOnClient, JournalEntry newEntry) {
+    List<EntityData.JournalEntry> rawJournal = this.entityLifeJournal.get(clientID);
+    // If the list is not here, the client has already left the custer, don't bother saving the result
+    if (rawJournal != null) {
+      List<EntityData.JournalEntry> clientJournal = filterJournal(rawJournal, oldestTransactionOnClient);
+      clientJournal.add(newEntry);
+      this.entityLifeJournal.put(clientID, clientJournal);
+      return true;
+    }
+    return false;
+  }
+
   private JournalEntry getEntryForTransaction(ClientID clientID, long transactionID) {
     JournalEntry foundEntry = null;
     List<EntityData.JournalEntry> clientJournal =  this.entityLifeJournal.get(clientID);
@@ -372,7 +412,10 @@ public class EntityPersistor {
     if (previous != null) {
       deletes.put(key, value);
     }
-    storeToDisk(ENTITIES_ALIVE_FILE_NAME, this.entities);
+    appendChange(out -> {
+      out.writeByte(PUT_ENTITY);
+      writeValue(out, value);
+    });
   }
   
   private void permanentEntityCreated(EntityID id, long consumerid, Exception e) {
@@ -386,8 +429,16 @@ public class EntityPersistor {
   }
   
   public synchronized void removeOrphanedClientsFromJournal(Set<ClientID> connectedClients) {
-    this.entityLifeJournal.entrySet().removeIf(e->!connectedClients.contains(e.getKey()));
-    storeToDisk(JOURNAL_CONTAINER_FILE_NAME, this.entityLifeJournal);
+    if (this.entityLifeJournal.entrySet().removeIf(e->!connectedClients.contains(e.getKey()))) {
+      List<ClientID> retained = new ArrayList<>(this.entityLifeJournal.keySet());
+      appendChange(out -> {
+        out.writeByte(RETAIN_CLIENTS);
+        out.writeInt(retained.size());
+        for (ClientID client : retained) {
+          out.writeLong(client.toLong());
+        }
+      });
+    }
   }
   
   public synchronized void serialize(ObjectOutput bucket) throws IOException {
@@ -413,6 +464,7 @@ public class EntityPersistor {
         if (check == null) {
           this.entityLifeJournal.put(key, journal);
           LOGGER.debug(key + " putting " + journal);
+          appendClientJournal(key, journal);
         } else {
           int pos = 0;
           for (JournalEntry je : journal) {
@@ -425,24 +477,231 @@ public class EntityPersistor {
           }
           LOGGER.debug(key + " layering " + journal + " " + check);
           this.entityLifeJournal.put(key, check);
+          appendClientJournal(key, check);
         }
       }
     } catch (ClassNotFoundException cnf) {
       throw new IOException(cnf);
     }
-    storeToDisk(JOURNAL_CONTAINER_FILE_NAME, this.entityLifeJournal);
     long nextConsumer = bucket.readLong();
     this.counters.put(COUNTERS_CONSUMER_ID, nextConsumer);
-    storeToDisk(COUNTERS_FILE_NAME, this.counters);
+    appendNextConsumerID();
   }
 
-  private void storeToDisk(String dataName, Serializable dataElement) {
+  private void appendClientJournal(ClientID client, List<EntityData.JournalEntry> entries) {
+    appendChange(out -> {
+      out.writeByte(SET_CLIENT_JOURNAL);
+      out.writeLong(client.toLong());
+      writeJournal(out, entries);
+    });
+  }
+
+  private void appendNextConsumerID() {
+    long next = this.counters.get(COUNTERS_CONSUMER_ID);
+    appendChange(out -> {
+      out.writeByte(NEXT_CONSUMER_ID);
+      out.writeLong(next);
+    });
+  }
+
+  private void appendChange(AppendOnlyJournal.Encoder change) {
     try {
-      this.storageManager.storeDataElement(dataName, dataElement);
+      this.journal.append(change);
     } catch (IOException e) {
       // In general, we have no way of solving this problem so throw it.
-      throw new RuntimeException("Failure storing EntityPersistor map file", e);
+      throw new RuntimeException("Failure storing EntityPersistor journal", e);
+    }
+  }
+
+  private void replay(DataInput in) throws IOException {
+    byte type = in.readByte();
+    switch (type) {
+      case PUT_ENTITY: {
+        EntityData.Value value = readValue(in);
+        this.entities.put(keyOf(value), value);
+        break;
+      }
+      case REMOVE_ENTITY:
+        this.entities.remove(readKey(in));
+        break;
+      case TRACK_CLIENT:
+        this.entityLifeJournal.putIfAbsent(new ClientID(in.readLong()), new ArrayList<>());
+        break;
+      case UNTRACK_CLIENT:
+        this.entityLifeJournal.remove(new ClientID(in.readLong()));
+        break;
+      case ADD_JOURNAL_ENTRY: {
+        ClientID client = new ClientID(in.readLong());
+        long oldestTransactionOnClient = in.readLong();
+        applyJournalEntry(client, oldestTransactionOnClient, readJournalEntry(in));
+        break;
+      }
+      case SET_CLIENT_JOURNAL: {
+        ClientID client = new ClientID(in.readLong());
+        this.entityLifeJournal.put(client, readJournal(in));
+        break;
+      }
+      case CLEAR_CLIENT_JOURNALS:
+        this.entityLifeJournal.clear();
+        break;
+      case RETAIN_CLIENTS: {
+        Set<ClientID> retained = new HashSet<>();
+        for (int count = in.readInt(); count > 0; count--) {
+          retained.add(new ClientID(in.readLong()));
+        }
+        this.entityLifeJournal.keySet().retainAll(retained);
+        break;
+      }
+      case NEXT_CONSUMER_ID:
+        this.counters.put(COUNTERS_CONSUMER_ID, in.readLong());
+        break;
+      default:
+        throw new IOException("Unknown EntityPersistor journal record " + type);
+    }
+  }
+
+  private void writeSnapshot(DataOutput out) throws IOException {
+    out.writeInt(this.entities.size());
+    for (EntityData.Value value : this.entities.values()) {
+      writeValue(out, value);
+    }
+    out.writeInt(this.entityLifeJournal.size());
+    for (Map.Entry<ClientID, List<EntityData.JournalEntry>> entry : this.entityLifeJournal.entrySet()) {
+      out.writeLong(entry.getKey().toLong());
+      writeJournal(out, entry.getValue());
+    }
+    out.writeLong(this.counters.get(COUNTERS_CONSUMER_ID));
+  }
+
+  private void readSnapshot(DataInput in) throws IOException {
+    for (int count = in.readInt(); count > 0; count--) {
+      EntityData.Value value = readValue(in);
+      this.entities.put(keyOf(value), value);
+    }
+    for (int count = in.readInt(); count > 0; count--) {
+      ClientID client = new ClientID(in.readLong());
+      this.entityLifeJournal.put(client, readJournal(in));
+    }
+    this.counters.put(COUNTERS_CONSUMER_ID, in.readLong());
+  }
+
+  @SuppressWarnings("unchecked")
+  private void loadLegacyMaps() throws IOException {
+    HashMap<EntityData.Key, EntityData.Value> entities = (HashMap<Key, Value>) this.storageManager.loadDataElement(ENTITIES_ALIVE_FILE_NAME);
+    HashMap<ClientID, List<EntityData.JournalEntry>> entityLifeJournal = (HashMap<ClientID, List<JournalEntry>>) this.storageManager.loadDataElement(JOURNAL_CONTAINER_FILE_NAME);
+    HashMap<String, Long> counters = (HashMap<String, Long>) this.storageManager.loadDataElement(COUNTERS_FILE_NAME);
+    if (entities == null && entityLifeJournal == null && counters == null) {
+      return;
+    }
+    LOGGER.info("Moving EntityPersistor map files into the journal");
+    if (entities != null) {
+      this.entities.putAll(entities);
+    }
+    if (entityLifeJournal != null) {
+      this.entityLifeJournal.putAll(entityLifeJournal);
+    }
+    if (counters != null) {
+      this.counters.putAll(counters);
+    }
+    if (!this.counters.containsKey(COUNTERS_CONSUMER_ID)) {
+      this.counters.put(COUNTERS_CONSUMER_ID, new Long(1));
+    }
+    this.journal.compact();
+  }
+
+  private void removeLegacyMaps() throws IOException {
+    for (String name : new String[] { ENTITIES_ALIVE_FILE_NAME, JOURNAL_CONTAINER_FILE_NAME, COUNTERS_FILE_NAME }) {
+      if (this.storageManager.loadDataElement(name) != null) {
+        this.storageManager.storeDataElement(name, null);
+      }
+    }
+  }
+
+  private static EntityData.Key keyOf(EntityData.Value value) {
+    EntityData.Key key = new EntityData.Key();
+    key.className = value.className;
+    key.entityName = value.entityName;
+    return key;
+  }
+
+  private static void writeKey(DataOutput out, EntityData.Key key) throws IOException {
+    AppendOnlyJournal.writeString(out, key.className);
+    AppendOnlyJournal.writeString(out, key.entityName);
+  }
+
+  private static EntityData.Key readKey(DataInput in) throws IOException {
+    EntityData.Key key = new EntityData.Key();
+    key.className = AppendOnlyJournal.readString(in);
+    key.entityName = AppendOnlyJournal.readString(in);
+    return key;
+  }
+
+  private static void writeValue(DataOutput out, EntityData.Value value) throws IOException {
+    AppendOnlyJournal.writeString(out, value.className);
+    AppendOnlyJournal.writeString(out, value.entityName);
+    out.writeLong(value.version);
+    out.writeLong(value.consumerID);
+    out.writeBoolean(value.canDelete);
+    AppendOnlyJournal.writeBytes(out, value.configuration);
+  }
+
+  private static EntityData.Value readValue(DataInput in) throws IOException {
+    EntityData.Value value = new EntityData.Value();
+    value.className = AppendOnlyJournal.readString(in);
+    value.entityName = AppendOnlyJournal.readString(in);
+    value.version = in.readLong();
+    value.consumerID = in.readLong();
+    value.canDelete = in.readBoolean();
+    value.configuration = AppendOnlyJournal.readBytes(in);
+    return value;
+  }
+
+  private static void writeJournal(DataOutput out, List<EntityData.JournalEntry> entries) throws IOException {
+    out.writeInt(entries.size());
+    for (JournalEntry entry : entries) {
+      writeJournalEntry(out, entry);
+    }
+  }
+
+  private static List<EntityData.JournalEntry> readJournal(DataInput in) throws IOException {
+    int count = in.readInt();
+    List<EntityData.JournalEntry> entries = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      entries.add(readJournalEntry(in));
+    }
+    return entries;
+  }
+
+  private static void writeJournalEntry(DataOutput out, JournalEntry entry) throws IOException {
+    out.writeByte(entry.operation.ordinal());
+    out.writeLong(entry.transactionID);
+    AppendOnlyJournal.writeBytes(out, entry.reconfigureResponse);
+    byte[] failure = null;
+    if (entry.failure != null) {
+      // failures are rare, plain serialization is good enough for them
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      try (ObjectOutputStream oos = new ObjectOutputStream(bytes)) {
+        oos.writeObject(entry.failure);
+      }
+      failure = bytes.toByteArray();
+    }
+    AppendOnlyJournal.writeBytes(out, failure);
+  }
+
+  private static JournalEntry readJournalEntry(DataInput in) throws IOException {
+    JournalEntry entry = new JournalEntry();
+    entry.operation = EntityData.Operation.values()[in.readByte()];
+    entry.transactionID = in.readLong();
+    entry.reconfigureResponse = AppendOnlyJournal.readBytes(in);
+    byte[] failure = AppendOnlyJournal.readBytes(in);
+    if (failure != null) {
+      try (ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(failure))) {
+        entry.failure = (EntityException) ois.readObject();
+      } catch (ClassNotFoundException cnf) {
+        throw new IOException(cnf);
+      }
     }
+    return entry;
   }
   
   private static class PermanentEntityResult {
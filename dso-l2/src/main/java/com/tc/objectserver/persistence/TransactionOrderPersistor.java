@@ -27,32 +27,41 @@ import com.tc.util.ProductID;
 
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.HashMap;
-import java.util.HashSet;
-import java.util.Iterator;
 import java.util.LinkedHashMap;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.TreeMap;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
 
 
 /**
  * Stores the information mapping the client-local TransactionIDs of in-flight transactions into a global order.
  * This is persisted because reconnect on restart needs to ensure that the transactions being replayed are done so in
  * the same order as their original order.
+ * <p>
+ * State is striped per client so clients only contend on the global sequence counter.  Each client keeps its live
+ * transactions in a {@link ClientSequence} and, since a client takes its global IDs under its own lock, every sequence
+ * is already sorted by global ID.  The global order is therefore never materialized: the position of a transaction is
+ * the number of live transactions, across all clients, with a smaller global ID.
+ * <p>
+ * That trade puts the cost on replay instead of on the message path: each {@link #getIndexToReplay} is a binary search
+ * in every tracked client's sequence, O(clients * log(live transactions per client)).  Replay lookups only happen
+ * while resent messages are sorted during a reconnect, whereas a shared global index would have to be updated, under
+ * a shared lock, for every message of every client.
  */
 public class TransactionOrderPersistor {
   private final IPlatformPersistence storageManager;
-  private Long receivedTransactionCount = 0L;
-    
-  private List<ClientTransaction> globalList = null;
-  private final Set<ClientID> permNodeIDs = new HashSet<>();
-  private final Map<ClientID, List<ClientTransaction>> fastSequenceCache = new HashMap<>();
+  private final AtomicLong receivedTransactionCount = new AtomicLong();
+
+  private final Set<ClientID> permNodeIDs = ConcurrentHashMap.newKeySet();
+  // in memory mirror of what the permanent clients have in storageManager, loaded on first use after a restart
+  private final ConcurrentMap<ClientID, ClientSequence> permSequences = new ConcurrentHashMap<>();
+  private final ConcurrentMap<ClientID, ClientSequence> fastSequenceCache = new ConcurrentHashMap<>();
+  private volatile boolean permanentLoaded = false;
   
   public TransactionOrderPersistor(IPlatformPersistence storageManager, Set<ClientID> clients) {
     this.storageManager = storageManager;
@@ -66,8 +75,12 @@ public class TransactionOrderPersistor {
    * Called to handle the changes to persisted transactions, based on a new one.
    * This new transactionID will be enqueued as the most recent transaction for the given source but also globally.
    * Any transactions for this source which are older than oldestTransactionOnClient will be removed from persistence.
+   * <p>
+   * The transactions of one source must be handed over in the order the source sent them, trimming here and in the
+   * platform persistence only ever looks at the head of a sequence.  The voltron message stage takes the order on its
+   * single threaded intake, before messages are split into lanes.
    */
-  public synchronized Future<Void> updateWithNewMessage(ClientID source, TransactionID transactionID, TransactionID oldestTransactionOnClient) {
+  public Future<Void> updateWithNewMessage(ClientID source, TransactionID transactionID, TransactionID oldestTransactionOnClient) {
     // We need to ensure that the arguments are sane.
     if ((null == oldestTransactionOnClient) || (null == transactionID)) {
       throw new IllegalArgumentException("Transactions cannot be null");
@@ -76,40 +89,46 @@ public class TransactionOrderPersistor {
       throw new IllegalArgumentException("Oldest transaction cannot come after new transaction");
     }
     
-    // This operation requires that the globalList be rebuilt.
-    this.globalList = null;
-    
-    // Increment the number of received transactions.
-    this.receivedTransactionCount += 1;
-    
     // We now pass this straight into the underlying storage.
     // if the oldestTransactionID is not valid, this is an internal message generated on 
     // the server and does not need to be kept.
     if (!source.isNull() && oldestTransactionOnClient.isValid()) {
       if (this.permNodeIDs.contains(source)) {
-        // Create the new pair.
-        IPlatformPersistence.SequenceTuple transaction = new IPlatformPersistence.SequenceTuple();
-        transaction.localSequenceID = transactionID.toLong();
-        transaction.globalSequenceID = this.receivedTransactionCount;
-
-        return this.storageManager.fastStoreSequence(source.toLong(), transaction, oldestTransactionOnClient.toLong());
+        ClientSequence sequence = permanentSequence(source);
+        synchronized (sequence) {
+          // Create the new pair.
+          IPlatformPersistence.SequenceTuple transaction = new IPlatformPersistence.SequenceTuple();
+          transaction.localSequenceID = transactionID.toLong();
+          transaction.globalSequenceID = this.receivedTransactionCount.incrementAndGet();
+          sequence.add(transaction.localSequenceID, transaction.globalSequenceID, oldestTransactionOnClient.toLong());
+          // the store happens under the client lock so the sequence reaches storage in order
+          return this.storageManager.fastStoreSequence(source.toLong(), transaction, oldestTransactionOnClient.toLong());
+        }
       } else {
-        ClientTransaction transaction = new ClientTransaction();
-        transaction.localTransactionID = transactionID.toLong();
-        transaction.globalTransactionID = this.receivedTransactionCount;
-        return fastStoreSequence(source, transaction, oldestTransactionOnClient.toLong());
+        ClientSequence sequence = fastSequenceCache.get(source);
+        if (sequence != null) {
+          synchronized (sequence) {
+            sequence.add(transactionID.toLong(), this.receivedTransactionCount.incrementAndGet(), oldestTransactionOnClient.toLong());
+          }
+        } else {
+          // must be a client that will not reconnect
+          this.receivedTransactionCount.incrementAndGet();
+        }
+        return CompletableFuture.completedFuture(null);
       }
     } else {
+      // Increment the number of received transactions.
+      this.receivedTransactionCount.incrementAndGet();
       return CompletableFuture.completedFuture(null);
     }
   }
   
-  synchronized void addTrackingForClient(ClientID source, ProductID product) {
+  void addTrackingForClient(ClientID source, ProductID product) {
     // Make sure we have tracking for this client.
     if (product.isPermanent()) {
       this.permNodeIDs.add(source);
     } else if (product.isReconnectEnabled()) {
-      this.fastSequenceCache.put(source, new LinkedList<>());
+      this.fastSequenceCache.put(source, new ClientSequence(source.toLong()));
     } else {
       // do nothing, this type of client will never reconnect
     }
@@ -118,11 +137,18 @@ public class TransactionOrderPersistor {
   /**
    * Called when we no longer need to track transaction ordering information from source (presumably due to a disconnect).
    */
-  synchronized void removeTrackingForClient(ClientID source) {
+  void removeTrackingForClient(ClientID source) {
     long sourceID = source.toLong();
     try {
       if (this.permNodeIDs.remove(source)) {
-        this.storageManager.deleteSequence(sourceID);
+        ClientSequence sequence = this.permSequences.remove(source);
+        if (sequence != null) {
+          synchronized (sequence) {
+            this.storageManager.deleteSequence(sourceID);
+          }
+        } else {
+          this.storageManager.deleteSequence(sourceID);
+        }
       } else {
         fastSequenceCache.remove(source);
       }
@@ -131,110 +157,71 @@ public class TransactionOrderPersistor {
     }
   }
 
-  private Future<Void> fastStoreSequence(ClientID sequenceIndex, ClientTransaction newEntry, long oldestValidSequenceID) {
-    List<ClientTransaction> sequence = fastSequenceCache.get(sequenceIndex);
-    if (sequence != null) {
-      if (!sequence.isEmpty()) {
-  //  exploiting the knowledge that sequences are always updated in an increasing fashion, as soon as the first
-  //  cleaning function fails, bail on the iteration
-        Iterator<ClientTransaction> tuple = sequence.iterator();
-        while (tuple.hasNext()) {
-          if (tuple.next().localTransactionID < oldestValidSequenceID) {
-            tuple.remove();
-          } else {
-            break;
-          }
-        }
-      }
-      sequence.add(newEntry);
-    } else {
-      // must be a client that will not reconnect
+  private ClientSequence permanentSequence(ClientID clientID) {
+    if (!this.permanentLoaded) {
+      loadPermanentSequences();
     }
-    return CompletableFuture.completedFuture(null);
+    return this.permSequences.computeIfAbsent(clientID, this::loadPermanentSequence);
   }
-    
-  private static class ClientTransaction {
-    public long clientID;
-    public long localTransactionID;
-    public long globalTransactionID;
 
-    @Override
-    public int hashCode() {
-      return (int) ((7 * clientID)
-          ^ (5 * localTransactionID)
-          ^ globalTransactionID);
-    }
-    @Override
-    public boolean equals(Object obj) {
-      boolean isEqual = (obj == this);
-      if (!isEqual && (obj instanceof ClientTransaction)) {
-        ClientTransaction other = (ClientTransaction) obj;
-        isEqual = (this.clientID == other.clientID)
-            && (this.localTransactionID == other.localTransactionID)
-            && (this.globalTransactionID == other.globalTransactionID);
+  /**
+   * Everything stored before a restart is loaded together, so the global counter is past every stored global ID before
+   * any new one is handed out.
+   */
+  private synchronized void loadPermanentSequences() {
+    if (!this.permanentLoaded) {
+      for (ClientID clientID : this.permNodeIDs) {
+        this.permSequences.computeIfAbsent(clientID, this::loadPermanentSequence);
       }
-      return isEqual;
+      this.permanentLoaded = true;
     }
+  }
 
-    @Override
-    public String toString() {
-      return "{clientID=" + clientID +
-             ", localTransactionID=" + localTransactionID +
-             ", globalTransactionID=" + globalTransactionID +
-             '}';
+  private ClientSequence loadPermanentSequence(ClientID clientID) {
+    ClientSequence sequence = new ClientSequence(clientID.toLong());
+    List<IPlatformPersistence.SequenceTuple> transactions = null;
+    try {
+      transactions = this.storageManager.loadSequence(clientID.toLong());
+    } catch (IOException e) {
+      Assert.fail(e.getLocalizedMessage());
     }
-  }
-  
-  private synchronized List<ClientTransaction> buildGlobalListIfNecessary() {
-    if (null == this.globalList) {
-      TreeMap<Long, ClientTransaction> sortMap = new TreeMap<>();
-      for (ClientID clientID : this.permNodeIDs) {
-        List<IPlatformPersistence.SequenceTuple> transactions = null;
-        try {
-          transactions = this.storageManager.loadSequence(clientID.toLong());
-        } catch (IOException e) {
-          Assert.fail(e.getLocalizedMessage());
-        }
-        if (transactions != null) {
-          for (IPlatformPersistence.SequenceTuple tuple : transactions) {
-            ClientTransaction transaction = new ClientTransaction();
-            transaction.clientID = clientID.toLong();
-            transaction.localTransactionID = tuple.localSequenceID;
-            transaction.globalTransactionID = tuple.globalSequenceID;
-            sortMap.put(tuple.globalSequenceID, transaction);
-          }
-        }
-      }
-      for (List<ClientTransaction> all : this.fastSequenceCache.values()) {
-        if (all != null) {
-          for (ClientTransaction t : all) {
-            sortMap.put(t.globalTransactionID, t);
-          }
-        }
+    if (transactions != null) {
+      long last = 0L;
+      for (IPlatformPersistence.SequenceTuple tuple : transactions) {
+        sequence.add(tuple.localSequenceID, tuple.globalSequenceID, Long.MIN_VALUE);
+        last = Math.max(last, tuple.globalSequenceID);
       }
-      globalList = Collections.unmodifiableList(new ArrayList<>(sortMap.values()));
-      receivedTransactionCount = !sortMap.isEmpty() ? sortMap.lastKey() : 0L;
+      // never hand out a global ID which is already in storage
+      final long loaded = last;
+      this.receivedTransactionCount.accumulateAndGet(loaded, Math::max);
     }
-    return globalList;
+    return sequence;
   }
 
   /**
    * Called to ask where a given client-local transaction exists in the global transaction list.
    * Returns the index or -1 if it isn't known.
+   * <p>
+   * Costs a linear scan of the source's sequence plus a binary search in the sequence of every tracked client.
    */
   public int getIndexToReplay(ClientID source, TransactionID transaction) {
-    long sourceID = source.toLong();
-    long transactionID = transaction.toLong();
-    
-    int index = -1;
-    List<ClientTransaction> list = buildGlobalListIfNecessary();
-    int seek = 0;
-    for (ClientTransaction oneTransaction : list) {
-      if ((oneTransaction.clientID == sourceID) && (oneTransaction.localTransactionID == transactionID)) {
-        index = seek;
-        break;
-      }
-      seek += 1;
+    ClientSequence sequence = this.permNodeIDs.contains(source) ? permanentSequence(source) : this.fastSequenceCache.get(source);
+    if (sequence == null) {
+      return -1;
+    }
+    long globalID;
+    synchronized (sequence) {
+      globalID = sequence.globalIDOf(transaction.toLong());
+    }
+    if (globalID < 0) {
+      return -1;
+    }
+    int index = 0;
+    for (ClientID clientID : this.permNodeIDs) {
+      index += permanentSequence(clientID).countBefore(globalID);
+    }
+    for (ClientSequence other : this.fastSequenceCache.values()) {
+      index += other.countBefore(globalID);
     }
     return index;
   }
@@ -242,11 +229,17 @@ public class TransactionOrderPersistor {
   /**
    * Clears all internal state.
    */
-  public synchronized  void clearAllRecords() {
-    this.globalList = null;
+  public void clearAllRecords() {
     for (ClientID nodeID : this.permNodeIDs) {
       try {
-        this.storageManager.deleteSequence(nodeID.toLong());
+        ClientSequence sequence = this.permSequences.remove(nodeID);
+        if (sequence != null) {
+          synchronized (sequence) {
+            this.storageManager.deleteSequence(nodeID.toLong());
+          }
+        } else {
+          this.storageManager.deleteSequence(nodeID.toLong());
+        }
       } catch (IOException e) {
         Assert.fail(e.getLocalizedMessage());
       }
@@ -258,13 +251,13 @@ public class TransactionOrderPersistor {
    * @return The number of transactions which have been observed by the persistor (NOT the number persisted).
    */
   public long getReceivedTransactionCount() {
-    return this.receivedTransactionCount;
+    return this.receivedTransactionCount.get();
   }
   
-  public synchronized Map<String, Object> reportStateToMap(Map<String, Object> map) {
+  public Map<String, Object> reportStateToMap(Map<String, Object> map) {
     map.put("className", this.getClass().getName());
     map.put("receivedTransactions", getReceivedTransactionCount());
-    if(this.permNodeIDs != null && storageManager != null) {
+    if(storageManager != null) {
       Map<String, Object> clientMap = new LinkedHashMap<>();
       map.put("permanentClients", clientMap);
       for (ClientID clientNodeID : permNodeIDs) {
@@ -286,15 +279,110 @@ public class TransactionOrderPersistor {
 
     Map<String, Object> clientMap = new LinkedHashMap<>();
     map.put("regularClients", clientMap);
-    for (Map.Entry<ClientID, List<ClientTransaction>> entry : fastSequenceCache.entrySet()) {
-      List<String> trans = new ArrayList<>();
-      if (entry.getValue() != null) {
-        clientMap.put(entry.getKey().toString(), trans);
-        for (ClientTransaction transaction : entry.getValue()) {
-          trans.add("Global seq Id = " + transaction.globalTransactionID + ", local seq id = " + transaction.localTransactionID);
+    for (Map.Entry<ClientID, ClientSequence> entry : fastSequenceCache.entrySet()) {
+      clientMap.put(entry.getKey().toString(), entry.getValue().describe());
+    }
+    return map;
+  }
+
+  /**
+   * The live transactions of one client, oldest first, held as two parallel rings of primitive longs.  Appending is
+   * amortized O(1) and trimming only ever drops from the head.  Global IDs only grow along the ring so the number of
+   * entries older than a given global ID is a binary search.
+   * <p>
+   * Mutators are synchronized by the caller on this instance.
+   */
+  static class ClientSequence {
+    private final long clientID;
+    private long[] localIDs = new long[16];
+    private long[] globalIDs = new long[16];
+    private int head;
+    private int size;
+
+    ClientSequence(long clientID) {
+      this.clientID = clientID;
+    }
+
+    void add(long localID, long globalID, long oldestLocalID) {
+  //  exploiting the knowledge that sequences are always updated in an increasing fashion, as soon as the first
+  //  cleaning function fails, bail on the iteration
+      int mask = localIDs.length - 1;
+      while (size > 0 && localIDs[head] < oldestLocalID) {
+        head = (head + 1) & mask;
+        size -= 1;
+      }
+      if (size == localIDs.length) {
+        grow();
+        mask = localIDs.length - 1;
+      }
+      int tail = (head + size) & mask;
+      localIDs[tail] = localID;
+      globalIDs[tail] = globalID;
+      size += 1;
+    }
+
+    private void grow() {
+      long[] locals = new long[localIDs.length << 1];
+      long[] globals = new long[globalIDs.length << 1];
+      int mask = localIDs.length - 1;
+      for (int x = 0; x < size; x++) {
+        locals[x] = localIDs[(head + x) & mask];
+        globals[x] = globalIDs[(head + x) & mask];
+      }
+      localIDs = locals;
+      globalIDs = globals;
+      head = 0;
+    }
+
+    /**
+     * @return the global ID of the first live entry for localID or -1
+     */
+    long globalIDOf(long localID) {
+      int mask = localIDs.length - 1;
+      for (int x = 0; x < size; x++) {
+        int slot = (head + x) & mask;
+        if (localIDs[slot] == localID) {
+          return globalIDs[slot];
         }
       }
+      return -1L;
+    }
+
+    /**
+     * @return how many live entries have a global ID lower than globalID
+     */
+    synchronized int countBefore(long globalID) {
+      int mask = globalIDs.length - 1;
+      int low = 0;
+      int high = size;
+      while (low < high) {
+        int mid = (low + high) >>> 1;
+        if (globalIDs[(head + mid) & mask] < globalID) {
+          low = mid + 1;
+        } else {
+          high = mid;
+        }
+      }
+      return low;
+    }
+
+    synchronized int size() {
+      return size;
+    }
+
+    synchronized List<String> describe() {
+      List<String> trans = new ArrayList<>(size);
+      int mask = localIDs.length - 1;
+      for (int x = 0; x < size; x++) {
+        int slot = (head + x) & mask;
+        trans.add("Global seq Id = " + globalIDs[slot] + ", local seq id = " + localIDs[slot]);
+      }
+      return trans;
+    }
+
+    @Override
+    public String toString() {
+      return "ClientSequence{clientID=" + clientID + ", size=" + size() + '}';
     }
-    return map;
   }
 }
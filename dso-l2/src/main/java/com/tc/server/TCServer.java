@@ -24,6 +24,7 @@ import org.terracotta.monitoring.PlatformStopException;
 import com.tc.config.schema.setup.ConfigurationSetupException;
 import com.tc.l2.state.StateChangeListener;
 import com.tc.util.State;
+import java.util.Map;
 
 
 public interface TCServer extends StateChangeListener {
@@ -83,4 +84,8 @@ public interface TCServer extends StateChangeListener {
 
   String getResourceState();
 
+  Map<String, ?> getStageLatencies();
+
+  Map<String, ?> takeStageLatencyInterval();
+
 }
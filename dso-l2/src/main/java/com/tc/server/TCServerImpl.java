@@ -57,6 +57,7 @@ import java.io.InputStream;
 import java.lang.management.ManagementFactory;
 import java.nio.charset.Charset;
 import java.util.Date;
+import java.util.Map;
 
 import javax.management.InstanceAlreadyExistsException;
 import javax.management.InstanceNotFoundException;
@@ -455,6 +456,16 @@ public class TCServerImpl extends SEDA implements TCServer, StateChangeListener
     return "";
   }
 
+  @Override
+  public Map<String, ?> getStageLatencies() {
+    return getStageManager().getLatencies();
+  }
+
+  @Override
+  public Map<String, ?> takeStageLatencyInterval() {
+    return getStageManager().takeLatencyInterval();
+  }
+
   @Override
   public void l2StateChanged(StateChangedEvent sce) {
     synchronized (this.stateLock) {
@@ -0,0 +1,40 @@
+/*
+ *
+ *  The contents of this file are subject to the Terracotta Public License Version
+ *  2.0 (the "License"); You may not use this file except in compliance with the
+ *  License. You may obtain a copy of the License at
+ *
+ *  http://terracotta.org/legal/terracotta-public-license.
+ *
+ *  Software distributed under the License is distributed on an "AS IS" basis,
+ *  WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing rights and limitations under the License.
+ *
+ *  The Covered Software is Terracotta Core.
+ *
+ *  The Initial Developer of the Covered Software is
+ *  Terracotta, Inc., a Software AG company
+ *
+ */
+package com.tc.services;
+
+import org.terracotta.entity.ClientCommunicator;
+import org.terracotta.entity.ClientDescriptor;
+import org.terracotta.entity.EntityResponse;
+import org.terracotta.entity.MessageCodecException;
+
+import java.util.Collection;
+
+/**
+ * A {@link ClientCommunicator} which can also send one message to many clients at once.  Entities obtain it from their
+ * service registry with a {@link BroadcastCommunicatorConfiguration}.
+ */
+public interface BroadcastCommunicator extends ClientCommunicator {
+  /**
+   * Sends the same message to each of the given clients, encoding it only once.  Clients which are no longer connected
+   * are skipped.
+   *
+   * @return the number of clients the message was handed to
+   */
+  int broadcastNoResponse(Collection<ClientDescriptor> clientDescriptors, EntityResponse message) throws MessageCodecException;
+}
@@ -0,0 +1,68 @@
+/*
+ *
+ *  The contents of this file are subject to the Terracotta Public License Version
+ *  2.0 (the "License"); You may not use this file except in compliance with the
+ *  License. You may obtain a copy of the License at
+ *
+ *  http://terracotta.org/legal/terracotta-public-license.
+ *
+ *  Software distributed under the License is distributed on an "AS IS" basis,
+ *  WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing rights and limitations under the License.
+ *
+ *  The Covered Software is Terracotta Core.
+ *
+ *  The Initial Developer of the Covered Software is
+ *  Terracotta, Inc., a Software AG company
+ *
+ */
+package com.tc.services;
+
+import com.tc.stats.LatencyHistogram;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Fan-out figures for {@link EntityClientCommunicatorService#broadcastNoResponse}, shared by every communicator
+ * handed out by one {@link CommunicatorService}.
+ */
+class BroadcastStats {
+  private final LatencyHistogram fanOutLatency = new LatencyHistogram();
+  private final LongAdder broadcasts = new LongAdder();
+  private final LongAdder deliveries = new LongAdder();
+  private final LongAdder encodesAvoided = new LongAdder();
+
+  void record(int delivered, long elapsedNanos) {
+    broadcasts.increment();
+    deliveries.add(delivered);
+    // every delivery past the first reuses the encoded payload rather than running the codec again.  Whether the bytes
+    // are shared as well is up to the message: small payloads are copied, so is anything compressed on the way out.
+    if (delivered > 1) {
+      encodesAvoided.add(delivered - 1);
+    }
+    fanOutLatency.record(elapsedNanos);
+  }
+
+  long getBroadcasts() {
+    return broadcasts.sum();
+  }
+
+  long getDeliveries() {
+    return deliveries.sum();
+  }
+
+  long getEncodesAvoided() {
+    return encodesAvoided.sum();
+  }
+
+  Map<String, Object> getStateMap() {
+    Map<String, Object> state = new LinkedHashMap<>();
+    state.put("broadcasts", getBroadcasts());
+    state.put("deliveries", getDeliveries());
+    state.put("encodesAvoided", getEncodesAvoided());
+    state.put("fanOutLatency", fanOutLatency.getStateMap());
+    return state;
+  }
+}
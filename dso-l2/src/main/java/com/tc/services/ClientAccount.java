@@ -37,13 +37,16 @@ public class ClientAccount {
     this.channel = channel;
   }
 
-  synchronized void sendNoResponse(ClientInstanceID clientInstance, byte[] payload) {
+  // Sends are not serialized on this account: the sender orders messages per client itself and a send racing close()
+  // is harmless since the sender drops messages for clients without a live channel.  This keeps a broadcast from
+  // queueing behind every other entity talking to the same client.
+  void sendNoResponse(ClientInstanceID clientInstance, byte[] payload) {
     if (open) {
       this.sender.send(this.clientID, clientInstance, payload);
     }
   }
 
-  synchronized void sendInvokeMessage(TransactionID transaction, byte[] payload) {
+  void sendInvokeMessage(TransactionID transaction, byte[] payload) {
     if (open) {
       this.sender.send(this.clientID, transaction, payload);
     }
@@ -25,8 +25,8 @@ import com.tc.objectserver.api.ManagedEntity;
 import com.tc.util.Assert;
 import com.tc.util.ProductID;
 
+import java.util.Arrays;
 import java.util.Collection;
-import java.util.Collections;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import org.terracotta.entity.ClientCommunicator;
@@ -38,6 +38,7 @@ import org.terracotta.entity.StateDumpCollector;
 public class CommunicatorService implements ImplementationProvidedServiceProvider, ChannelManagerEventListener {
   private final ConcurrentMap<NodeID, ClientAccount> clientAccounts = new ConcurrentHashMap<>();
   private final ClientMessageSender sender;
+  private final BroadcastStats broadcastStats = new BroadcastStats();
   private boolean serverIsActive;
   // We have late-bound logic so make sure that is called.
   private boolean wasInitialized;
@@ -49,6 +50,7 @@ public class CommunicatorService implements ImplementationProvidedServiceProvide
   @Override
   public void addStateTo(StateDumpCollector stateDumpCollector) {
     ImplementationProvidedServiceProvider.super.addStateTo(stateDumpCollector); 
+    stateDumpCollector.addState("broadcast", broadcastStats.getStateMap());
   }
 
   @Override
@@ -73,7 +75,7 @@ public class CommunicatorService implements ImplementationProvidedServiceProvide
     Assert.assertNotNull(owningEntity);
     T serviceToReturn = null;
     if (this.serverIsActive) {
-      EntityClientCommunicatorService service = new EntityClientCommunicatorService(clientAccounts, owningEntity);
+      EntityClientCommunicatorService service = new EntityClientCommunicatorService(clientAccounts, owningEntity, broadcastStats);
       serviceToReturn = configuration.getServiceType().cast(service);
     }
     return serviceToReturn;
@@ -81,7 +83,11 @@ public class CommunicatorService implements ImplementationProvidedServiceProvide
 
   @Override
   public Collection<Class<?>> getProvidedServiceTypes() {
-    return Collections.singleton(ClientCommunicator.class);
+    return Arrays.asList(ClientCommunicator.class, BroadcastCommunicator.class);
+  }
+
+  BroadcastStats getBroadcastStats() {
+    return broadcastStats;
   }
 
   public void close() {
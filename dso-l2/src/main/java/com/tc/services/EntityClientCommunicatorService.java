@@ -25,26 +25,32 @@ import com.tc.objectserver.api.ManagedEntity;
 import com.tc.objectserver.entity.ClientDescriptorImpl;
 import com.tc.util.Assert;
 
-import org.terracotta.entity.ClientCommunicator;
 import org.terracotta.entity.ClientDescriptor;
 import org.terracotta.entity.EntityResponse;
 import org.terracotta.entity.MessageCodec;
 import org.terracotta.entity.MessageCodecException;
 
+import java.util.Collection;
 import java.util.concurrent.ConcurrentMap;
 
 
-public class EntityClientCommunicatorService implements ClientCommunicator {
+public class EntityClientCommunicatorService implements BroadcastCommunicator {
   private final ConcurrentMap<NodeID, ClientAccount> clientAccounts;
   private final ManagedEntity owningEntity;
+  private final BroadcastStats broadcastStats;
   
 
   public EntityClientCommunicatorService(ConcurrentMap<NodeID, ClientAccount> clientAccounts, ManagedEntity owningEntity) {
+    this(clientAccounts, owningEntity, new BroadcastStats());
+  }
+
+  EntityClientCommunicatorService(ConcurrentMap<NodeID, ClientAccount> clientAccounts, ManagedEntity owningEntity, BroadcastStats broadcastStats) {
     Assert.assertNotNull(clientAccounts);
     Assert.assertNotNull(owningEntity);
     
     this.clientAccounts = clientAccounts;
     this.owningEntity = owningEntity;
+    this.broadcastStats = broadcastStats;
   }
 
   @Override
@@ -59,6 +65,28 @@ public class EntityClientCommunicatorService implements ClientCommunicator {
     }
   }
 
+  /**
+   * The message is encoded once and the array handed to every client.  It is never modified after encoding, so
+   * outgoing messages reference payloads big enough to be worth it instead of copying them.
+   */
+  @Override
+  public int broadcastNoResponse(Collection<ClientDescriptor> clientDescriptors, EntityResponse message) throws MessageCodecException {
+    long start = System.nanoTime();
+    byte[] payload = serialize(this.owningEntity.getCodec(), message);
+    int delivered = 0;
+    for (ClientDescriptor clientDescriptor : clientDescriptors) {
+      // We are in internal code so downcast the descriptor.
+      ClientDescriptorImpl rawDescriptor = (ClientDescriptorImpl)clientDescriptor;
+      ClientAccount clientAccount = clientAccounts.get(rawDescriptor.getNodeID());
+      if (clientAccount != null) {
+        clientAccount.sendNoResponse(rawDescriptor.getClientInstanceID(), payload);
+        delivered += 1;
+      }
+    }
+    broadcastStats.record(delivered, System.nanoTime() - start);
+    return delivered;
+  }
+
   public void sendInvokeMessage(ClientDescriptor clientDescriptor, long invokeID, EntityResponse message) throws MessageCodecException {
     // We are in internal code so downcast the descriptor.
     ClientDescriptorImpl rawDescriptor = (ClientDescriptorImpl)clientDescriptor;
@@ -0,0 +1,131 @@
+/*
+ *
+ *  The contents of this file are subject to the Terracotta Public License Version
+ *  2.0 (the "License"); You may not use this file except in compliance with the
+ *  License. You may obtain a copy of the License at
+ *
+ *  http://terracotta.org/legal/terracotta-public-license.
+ *
+ *  Software distributed under the License is distributed on an "AS IS" basis,
+ *  WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing rights and limitations under the License.
+ *
+ *  The Covered Software is Terracotta Core.
+ *
+ *  The Initial Developer of the Covered Software is
+ *  Terracotta, Inc., a Software AG company
+ *
+ */
+package com.tc.services;
+
+import com.tc.util.Assert;
+import com.tc.util.concurrent.HashedWheelTimer;
+import com.tc.util.concurrent.Timer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+/**
+ * An ISimpleTimer which runs its tasks on the shared {@link HashedWheelTimer} instead of a thread of its own.  Unlike
+ *  SingleThreadedTimer, cancelling is O(1) and times are only accurate to a tick of the wheel.
+ * NOTE:  Tasks run on the pool of the shared wheel, so several may run at once, unlike with SingleThreadedTimer.
+ */
+public class SharedWheelTimer implements ISimpleTimer {
+  private final Timer wheel;
+  private final AtomicLong nextId = new AtomicLong(1L);
+  private final Map<Long, ScheduledFuture<?>> scheduled = new ConcurrentHashMap<>();
+  // Tasks added before start() are held here.
+  private List<Runnable> beforeStart = new ArrayList<>();
+  private boolean isStopped = false;
+
+  public SharedWheelTimer() {
+    this(HashedWheelTimer.getSharedTimer());
+  }
+
+  public SharedWheelTimer(Timer wheel) {
+    this.wheel = wheel;
+  }
+
+  @Override
+  public synchronized void start() {
+    List<Runnable> toSchedule = this.beforeStart;
+    this.beforeStart = null;
+    if (null != toSchedule) {
+      for (Runnable schedule : toSchedule) {
+        schedule.run();
+      }
+    }
+  }
+
+  @Override
+  public void stop() {
+    synchronized (this) {
+      this.isStopped = true;
+    }
+    for (ScheduledFuture<?> future : this.scheduled.values()) {
+      future.cancel(false);
+    }
+    this.scheduled.clear();
+  }
+
+  @Override
+  public long currentTimeMillis() {
+    return System.currentTimeMillis();
+  }
+
+  @Override
+  public long addDelayed(Runnable toRun, long startTimeMillis) {
+    Assert.assertNotNull(toRun);
+    long id = this.nextId.getAndIncrement();
+    enqueue(() -> {
+      Runnable once = () -> {
+        this.scheduled.remove(id);
+        toRun.run();
+      };
+      ScheduledFuture<?> future = this.wheel.schedule(once, delayUntil(startTimeMillis), TimeUnit.MILLISECONDS);
+      this.scheduled.put(id, future);
+      if (future.isDone()) {
+        // It already ran (or was cancelled) before we could record it.
+        this.scheduled.remove(id, future);
+      }
+    });
+    return id;
+  }
+
+  @Override
+  public long addPeriodic(Runnable toRun, long startTimeMillis, long repeatPeriodMillis) {
+    Assert.assertNotNull(toRun);
+    Assert.assertTrue(repeatPeriodMillis > 0);
+    long id = this.nextId.getAndIncrement();
+    enqueue(() -> this.scheduled.put(id, this.wheel.scheduleAtFixedRate(toRun, delayUntil(startTimeMillis),
+                                                                         repeatPeriodMillis, TimeUnit.MILLISECONDS)));
+    return id;
+  }
+
+  @Override
+  public boolean cancel(long id) {
+    ScheduledFuture<?> future = this.scheduled.remove(id);
+    return (null != future) && future.cancel(false);
+  }
+
+  private synchronized void enqueue(Runnable schedule) {
+    if (this.isStopped) {
+      return;
+    }
+    if (null != this.beforeStart) {
+      this.beforeStart.add(schedule);
+    } else {
+      schedule.run();
+    }
+  }
+
+  private long delayUntil(long startTimeMillis) {
+    return Math.max(0L, startTimeMillis - currentTimeMillis());
+  }
+}
@@ -0,0 +1,112 @@
+/*
+ *
+ *  The contents of this file are subject to the Terracotta Public License Version
+ *  2.0 (the "License"); You may not use this file except in compliance with the
+ *  License. You may obtain a copy of the License at
+ *
+ *  http://terracotta.org/legal/terracotta-public-license.
+ *
+ *  Software distributed under the License is distributed on an "AS IS" basis,
+ *  WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing rights and limitations under the License.
+ *
+ *  The Covered Software is Terracotta Core.
+ *
+ *  The Initial Developer of the Covered Software is
+ *  Terracotta, Inc., a Software AG company
+ *
+ */
+package com.tc.classloader;
+
+import com.tc.util.ZipBuilder;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.Arrays;
+import java.util.Collections;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+
+public class PluginDiscoveryIndexTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void testIndexesServicesAndCommonComponents() throws Exception {
+    File plugins = folder.newFolder();
+    File jar = writeJar(new File(plugins, "plugin.jar"), "com.tc.classloader.TestInterfaceImpl # overrides something");
+    PluginDiscoveryIndex index = PluginDiscoveryIndex.build(null, plugins);
+    String location = jar.toURI().toURL().toExternalForm();
+
+    Assert.assertEquals(1, index.getJarCount());
+    Assert.assertEquals(Arrays.asList("com.tc.classloader.TestInterfaceImpl # overrides something"),
+                        index.getServiceEntries(location, "com.tc.classloader.TestInterface"));
+    Assert.assertEquals(Collections.emptyList(), index.getServiceEntries(location, "java.lang.Runnable"));
+    Assert.assertNull(index.getServiceEntries("file:/not/indexed.jar", "com.tc.classloader.TestInterface"));
+    // loaded from the test classpath, not from an indexed jar
+    Assert.assertNull(index.isCommonComponent(CommonComponentClass.class));
+    try (URLClassLoader loader = new URLClassLoader(new URL[] {jar.toURI().toURL()}, null)) {
+      Assert.assertEquals(Boolean.TRUE, index.isCommonComponent(loader.loadClass("com.tc.classloader.CommonComponentClass")));
+      Assert.assertEquals(Boolean.FALSE, index.isCommonComponent(loader.loadClass("com.tc.classloader.TestInterfaceImpl")));
+    }
+
+    Assert.assertTrue(PluginDiscoveryIndex.isAnnotated(resourceToBytes("com/tc/classloader/CommonComponentClass.class")));
+    Assert.assertFalse(PluginDiscoveryIndex.isAnnotated(resourceToBytes("com/tc/classloader/SpecificComponentClass.class")));
+  }
+
+  @Test
+  public void testRestartReusesUnchangedJars() throws Exception {
+    File plugins = folder.newFolder();
+    File indexFile = new File(folder.getRoot(), "index");
+    writeJar(new File(plugins, "one.jar"), "com.tc.classloader.TestInterfaceImpl");
+    File two = writeJar(new File(plugins, "two.jar"), "com.tc.classloader.TestInterfaceImpl");
+
+    PluginDiscoveryIndex cold = PluginDiscoveryIndex.build(indexFile, plugins);
+    Assert.assertEquals(2, cold.getScannedCount());
+    Assert.assertEquals(0, cold.getReusedCount());
+    Assert.assertTrue(indexFile.isFile());
+
+    PluginDiscoveryIndex warm = PluginDiscoveryIndex.build(indexFile, plugins);
+    Assert.assertEquals(0, warm.getScannedCount());
+    Assert.assertEquals(2, warm.getReusedCount());
+    Assert.assertEquals(Arrays.asList("com.tc.classloader.TestInterfaceImpl"),
+                        warm.getServiceEntries(two.toURI().toURL().toExternalForm(), "com.tc.classloader.TestInterface"));
+
+    // a changed jar is rescanned
+    writeJar(two, "com.tc.classloader.TestInterfaceHandle");
+    PluginDiscoveryIndex changed = PluginDiscoveryIndex.build(indexFile, plugins);
+    Assert.assertEquals(1, changed.getScannedCount());
+    Assert.assertEquals(1, changed.getReusedCount());
+    Assert.assertEquals(Arrays.asList("com.tc.classloader.TestInterfaceHandle"),
+                        changed.getServiceEntries(two.toURI().toURL().toExternalForm(), "com.tc.classloader.TestInterface"));
+  }
+
+  private File writeJar(File jar, String serviceLine) throws IOException {
+    ZipBuilder zip = new ZipBuilder(jar, false);
+    zip.putEntry("META-INF/services/com.tc.classloader.TestInterface", serviceLine.getBytes("UTF-8"));
+    zip.putEntry("com/tc/classloader/TestInterfaceImpl.class", resourceToBytes("com/tc/classloader/TestInterfaceImpl.class"));
+    zip.putEntry("com/tc/classloader/TestInterface.class", resourceToBytes("com/tc/classloader/TestInterface.class"));
+    zip.putEntry("com/tc/classloader/CommonComponentClass.class", resourceToBytes("com/tc/classloader/CommonComponentClass.class"));
+    zip.finish();
+    return jar;
+  }
+
+  private byte[] resourceToBytes(String loc) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (InputStream in = getClass().getClassLoader().getResourceAsStream(loc)) {
+      int read = in.read();
+      while (read >= 0) {
+        bytes.write(read);
+        read = in.read();
+      }
+    }
+    return bytes.toByteArray();
+  }
+}
@@ -25,6 +25,7 @@ import com.tc.util.Assert;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.junit.Test;
 
@@ -180,6 +181,29 @@ public class ActivePassiveAckWaiterTest {
     lockStep.join();
   }
 
+  @Test
+  public void testRunWhenCompletedRunsOnce() throws Exception {
+    Set<NodeID> passives = new HashSet<NodeID>();
+    NodeID onePassive = mock(NodeID.class);
+    passives.add(onePassive);
+    NodeID twoPassive = mock(NodeID.class);
+    passives.add(twoPassive);
+    ActivePassiveAckWaiter waiter = new ActivePassiveAckWaiter(passives, null);
+    AtomicInteger runs = new AtomicInteger();
+    waiter.runWhenCompleted(runs::incrementAndGet);
+    waiter.didCompleteOnPassive(onePassive, true, ReplicationResultCode.SUCCESS);
+    Assert.assertEquals(0, runs.get());
+    Assert.assertTrue(waiter.didCompleteOnPassive(twoPassive, true, ReplicationResultCode.SUCCESS));
+    Assert.assertEquals(1, runs.get());
+    // a disconnect after completion doesn't run it again
+    Assert.assertTrue(waiter.didCompleteOnPassive(twoPassive, false, null));
+    Assert.assertEquals(1, runs.get());
+    // once completed it runs right away
+    waiter.runWhenCompleted(runs::incrementAndGet);
+    Assert.assertEquals(2, runs.get());
+    Assert.assertFalse(waiter.verifyLifecycleResult(true));
+  }
+
 
   private static class LockStep extends Thread {
     private final ActivePassiveAckWaiter waiter;
@@ -19,19 +19,26 @@
 package com.tc.objectserver.entity;
 
 import com.tc.async.api.Sink;
+import com.tc.l2.msg.ReplicationAckTuple;
+import com.tc.l2.msg.ReplicationMessageAck;
+import com.tc.l2.msg.ReplicationResultCode;
 import com.tc.l2.msg.SyncReplicationActivity;
 import com.tc.net.ServerID;
 import com.tc.net.groups.GroupManager;
 import com.tc.objectserver.handler.ProcessTransactionHandler;
+import com.tc.objectserver.handler.ReplicationReceivingAction;
 import com.tc.objectserver.persistence.EntityPersistor;
 import com.tc.util.Assert;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.List;
 import java.util.concurrent.TimeUnit;
 import org.junit.After;
 import org.junit.AfterClass;
 import org.junit.Before;
 import org.junit.BeforeClass;
 import org.junit.Test;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 import com.tc.l2.state.ConsistencyManager;
@@ -64,7 +71,13 @@ public class ActiveToPassiveReplicationTest {
     ReplicationSender replicate = mock(ReplicationSender.class);
     ConsistencyManager cmgr = mock(ConsistencyManager.class);
     when(cmgr.requestTransition(any(ServerMode.class), any(NodeID.class), any(Transition.class))).thenReturn(Boolean.TRUE);
-    replication = new ActiveToPassiveReplication(cmgr, mock(ProcessTransactionHandler.class), Collections.singleton(passive), mock(EntityPersistor.class), replicate, mock(Sink.class), mock(GroupManager.class));
+    Sink<ReplicationReceivingAction> receiving = mock(Sink.class);
+    // run the ack handling inline
+    doAnswer(invocation -> {
+      ((ReplicationReceivingAction)invocation.getArguments()[0]).run();
+      return null;
+    }).when(receiving).addToSink(any(ReplicationReceivingAction.class));
+    replication = new ActiveToPassiveReplication(cmgr, mock(ProcessTransactionHandler.class), Collections.singleton(passive), mock(EntityPersistor.class), replicate, receiving, mock(GroupManager.class));
   }
   
   @Test
@@ -93,6 +106,44 @@ public class ActiveToPassiveReplicationTest {
     Assert.assertTrue(ack2.isCompleted());
   }
   
+  @Test
+  public void testBatchAckRanges() throws Exception {
+    replication.enterActiveState();
+    replication.nodeJoined(passive);
+    List<SyncReplicationActivity.ActivityID> ids = new ArrayList<>();
+    List<ActivePassiveAckWaiter> acks = new ArrayList<>();
+    for (int i = 0; i < 10; i++) {
+      SyncReplicationActivity activity = mock(SyncReplicationActivity.class);
+      SyncReplicationActivity.ActivityID id = SyncReplicationActivity.ActivityID.getNextID();
+      when(activity.getActivityID()).thenReturn(id);
+      ids.add(id);
+      acks.add(replication.replicateActivity(activity, Collections.singleton(passive)));
+    }
+    // receive all, then complete a contiguous run, a gap and a single
+    ReplicationMessageAck received = ReplicationMessageAck.createBatchAck();
+    for (SyncReplicationActivity.ActivityID id : ids) {
+      received.addToBatch(new ReplicationAckTuple(id, ReplicationResultCode.RECEIVED));
+    }
+    received.setMessageOrginator(passive);
+    replication.batchAckReceived(received);
+    for (ActivePassiveAckWaiter ack : acks) {
+      ack.waitForReceived();
+      Assert.assertFalse(ack.isCompleted());
+    }
+
+    ReplicationMessageAck completed = ReplicationMessageAck.createBatchAck();
+    for (int i = 0; i < 5; i++) {
+      completed.addToBatch(new ReplicationAckTuple(ids.get(i), i == 2 ? ReplicationResultCode.FAIL : ReplicationResultCode.SUCCESS));
+    }
+    completed.addToBatch(new ReplicationAckTuple(ids.get(7), ReplicationResultCode.SUCCESS));
+    completed.setMessageOrginator(passive);
+    replication.batchAckReceived(completed);
+    for (int i = 0; i < 10; i++) {
+      Assert.assertEquals(i < 5 || i == 7, acks.get(i).isCompleted());
+    }
+    Assert.assertTrue(acks.get(2).toString().contains("FAIL"));
+  }
+
   @After
   public void tearDown() {
   }
@@ -117,6 +117,50 @@ public class ClientEntityStateManagerImplTest {
     assertTrue(verifyNoReferences(new FetchID(1)));
   }
 
+  @Test
+  public void testReferencesAreScopedToClient() throws Exception {
+    FetchID first = new FetchID(1);
+    FetchID second = new FetchID(2);
+    ClientID clientOne = new ClientID(1);
+    ClientID clientTwo = new ClientID(2);
+    ClientDescriptorImpl oneFirst = new ClientDescriptorImpl(clientOne, new ClientInstanceID(1));
+    ClientDescriptorImpl oneFirstAgain = new ClientDescriptorImpl(clientOne, new ClientInstanceID(2));
+    ClientDescriptorImpl oneSecond = new ClientDescriptorImpl(clientOne, new ClientInstanceID(3));
+    ClientDescriptorImpl twoFirst = new ClientDescriptorImpl(clientTwo, new ClientInstanceID(1));
+    assertTrue(addReference(oneFirst, first));
+    assertTrue(addReference(oneFirstAgain, first));
+    assertTrue(addReference(oneSecond, second));
+    assertTrue(addReference(twoFirst, first));
+
+    List<FetchID> fetched = clientEntityStateManager.clientDisconnected(clientOne);
+    assertEquals(2, fetched.size());
+    assertTrue(fetched.contains(first) && fetched.contains(second));
+    assertEquals(2, clientEntityStateManager.clientDisconnectedFromEntity(clientOne, first).size());
+    assertEquals(1, clientEntityStateManager.clientDisconnectedFromEntity(clientTwo, first).size());
+    assertTrue(clientEntityStateManager.clientDisconnectedFromEntity(clientTwo, second).isEmpty());
+
+    assertTrue(removeReference(oneSecond));
+    assertTrue(verifyNoReferences(second));
+    assertTrue(removeReference(oneFirst));
+    assertTrue(removeReference(oneFirstAgain));
+    assertTrue(clientEntityStateManager.verifyNoClientReferences(clientOne));
+    assertFalse(clientEntityStateManager.verifyNoClientReferences(clientTwo));
+    // the other client still holds the entity
+    assertFalse(verifyNoReferences(first));
+    assertTrue(removeReference(twoFirst));
+    assertTrue(verifyNoReferences(first));
+    assertTrue(clientEntityStateManager.clientDisconnected(clientOne).isEmpty());
+  }
+
+  @Test
+  public void testClearClientReferences() throws Exception {
+    assertTrue(addReference(new ClientDescriptorImpl(new ClientID(1), new ClientInstanceID(1)), new FetchID(1)));
+    assertTrue(addReference(new ClientDescriptorImpl(new ClientID(2), new ClientInstanceID(1)), new FetchID(1)));
+    assertEquals(2, clientEntityStateManager.clearClientReferences().size());
+    assertTrue(verifyNoReferences(new FetchID(1)));
+    assertTrue(clientEntityStateManager.verifyNoClientReferences(new ClientID(1)));
+  }
+
   private boolean addReference(ClientDescriptorImpl clientID, FetchID descriptor) {
     // This only fails by asserting.
     boolean didSucceed = false;
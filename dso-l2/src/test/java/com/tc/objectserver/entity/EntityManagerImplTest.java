@@ -20,6 +20,7 @@ package com.tc.objectserver.entity;
 
 import com.tc.async.api.Sink;
 import com.tc.classloader.ServiceLocator;
+import com.tc.entity.VoltronEntityMessage;
 import com.tc.net.ClientID;
 import com.tc.net.NodeID;
 import com.tc.object.ClientInstanceID;
@@ -38,8 +39,14 @@ import com.tc.objectserver.testentity.TestEntity;
 import com.tc.services.InternalServiceRegistry;
 import com.tc.services.TerracottaServiceProviderRegistry;
 import com.tc.util.Assert;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 import static java.util.Optional.empty;
 import java.util.Set;
@@ -91,6 +98,48 @@ public class EntityManagerImplTest {
     version = 1;
   }
 
+  @Test
+  public void testPermanentEntitiesPromoteFirstAndTypesOverlap() throws Exception {
+    List<ManagedEntity> sorted = new ArrayList<>();
+    // consumers 1 and 2 are permanent, the rest alternate between two entity types
+    for (long x = 1; x <= 6; x++) {
+      String type = x <= 2 ? "Permanent" : (x % 2 == 0 ? "Even" : "Odd");
+      sorted.add(mockEntity(new EntityID(type, "entity" + x), x, x <= 2));
+    }
+    List<Long> promoted = Collections.synchronizedList(new ArrayList<>());
+    // the first entity of each type can only finish promoting while the other type is being promoted too
+    CyclicBarrier overlap = new CyclicBarrier(2);
+    List<VoltronEntityMessage> reconnectDone = EntityManagerImpl.promoteInGroups(sorted, 4, Executors.defaultThreadFactory(), (entity)->{
+      long consumer = entity.getConsumerID();
+      promoted.add(consumer);
+      if (consumer == 3 || consumer == 4) {
+        try {
+          overlap.await(10, TimeUnit.SECONDS);
+        } catch (Exception e) {
+          throw new AssertionError(e);
+        }
+      }
+      return new LocalPipelineFlushMessage(EntityDescriptor.createDescriptorForInvoke(new FetchID(consumer), ClientInstanceID.NULL_ID), false);
+    });
+
+    Assert.assertEquals(Arrays.asList(1L, 2L), promoted.subList(0, 2));
+    // each type keeps consumerID order
+    Assert.assertTrue(promoted.indexOf(3L) < promoted.indexOf(5L));
+    Assert.assertTrue(promoted.indexOf(4L) < promoted.indexOf(6L));
+    Assert.assertEquals(6, reconnectDone.size());
+    for (int x = 0; x < reconnectDone.size(); x++) {
+      Assert.assertEquals(x + 1, reconnectDone.get(x).getEntityDescriptor().getFetchID().toLong());
+    }
+  }
+
+  private static ManagedEntity mockEntity(EntityID entityID, long consumerID, boolean permanent) {
+    ManagedEntity entity = mock(ManagedEntity.class);
+    when(entity.getID()).thenReturn(entityID);
+    when(entity.getConsumerID()).thenReturn(consumerID);
+    when(entity.isPermanent()).thenReturn(permanent);
+    return entity;
+  }
+
   @Test
   public void testGetNonExistent() throws Exception {
     assertThat(entityManager.getEntity(EntityDescriptor.createDescriptorForLifecycle(id, version)), is(empty()));
@@ -305,6 +305,51 @@ public class ReplicationSenderTest {
     validateCollector(validation);
   }
   
+  @Test
+  public void filterPipelinedSync() throws Exception {
+    EntityID first = new EntityID("TEST", "first");
+    EntityID second = new EntityID("TEST", "second");
+    FetchID firstFetch = new FetchID(1L);
+    FetchID secondFetch = new FetchID(2L);
+    this.testSender.addPassive(node, 0, SyncReplicationActivity.createStartMessage());
+    assertSent(true, makeMessage(SyncReplicationActivity.ActivityType.SYNC_BEGIN));
+ //  two entities and two keys of the first entity in flight at once
+    assertSent(true, SyncReplicationActivity.createStartEntityMessage(first, 1, firstFetch, new byte[0], 0));
+    assertSent(true, SyncReplicationActivity.createStartEntityMessage(second, 1, secondFetch, new byte[0], 0));
+    assertSent(true, SyncReplicationActivity.createStartEntityKeyMessage(first, 1, firstFetch, 1));
+    assertSent(true, SyncReplicationActivity.createStartEntityKeyMessage(first, 1, firstFetch, 2));
+    assertSent(true, SyncReplicationActivity.createStartEntityKeyMessage(second, 1, secondFetch, 1));
+    assertSent(false, invoke(firstFetch, 3));
+    assertSent(true, invoke(firstFetch, 2));
+    assertSent(true, SyncReplicationActivity.createPayloadMessage(first, 1, firstFetch, 2, new byte[0], ""));
+    assertSent(true, SyncReplicationActivity.createPayloadMessage(second, 1, secondFetch, 1, new byte[0], ""));
+ //  keys may finish out of order
+    assertSent(true, SyncReplicationActivity.createEndEntityKeyMessage(first, 1, firstFetch, 2));
+    assertSent(true, SyncReplicationActivity.createEndEntityKeyMessage(first, 1, firstFetch, 1));
+    assertSent(true, invoke(firstFetch, 1));
+    assertSent(false, invoke(secondFetch, 2));
+    assertSent(true, SyncReplicationActivity.createEndEntityMessage(first, 1, firstFetch));
+    assertSent(true, SyncReplicationActivity.createEndEntityKeyMessage(second, 1, secondFetch, 1));
+    assertSent(true, SyncReplicationActivity.createEndEntityMessage(second, 1, secondFetch));
+    assertSent(true, invoke(secondFetch, 2));
+    assertSent(true, makeMessage(SyncReplicationActivity.ActivityType.SYNC_END));
+    Assert.assertFalse(testSender.isSyncOccuring(node));
+  }
+  
+  private SyncReplicationActivity invoke(FetchID target, int key) {
+    return SyncReplicationActivity.createInvokeMessage(target, new ClientID(1), new ClientInstanceID(1), TransactionID.NULL_ID, TransactionID.NULL_ID, SyncReplicationActivity.ActivityType.INVOKE_ACTION, new byte[0], key, "");
+  }
+  
+  private void assertSent(boolean expected, SyncReplicationActivity activity) {
+    SetOnceFlag sent = new SetOnceFlag();
+    this.testSender.replicateMessage(node, 0, activity, (didSend)->{
+      if (didSend) {
+        sent.set();
+      }
+    });
+    Assert.assertEquals(activity.toString(), expected, sent.isSet());
+  }
+  
   private void validateCollector(Collection<SyncReplicationActivity> valid) {
     Iterator<SyncReplicationActivity> next = valid.iterator();
     collector.stream().forEach(msg->{
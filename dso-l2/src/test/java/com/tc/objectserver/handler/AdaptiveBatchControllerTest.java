@@ -0,0 +1,74 @@
+/*
+ *
+ *  The contents of this file are subject to the Terracotta Public License Version
+ *  2.0 (the "License"); You may not use this file except in compliance with the
+ *  License. You may obtain a copy of the License at
+ *
+ *  http://terracotta.org/legal/terracotta-public-license.
+ *
+ *  Software distributed under the License is distributed on an "AS IS" basis,
+ *  WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing rights and limitations under the License.
+ *
+ *  The Covered Software is Terracotta Core.
+ *
+ *  The Initial Developer of the Covered Software is
+ *  Terracotta, Inc., a Software AG company
+ *
+ */
+package com.tc.objectserver.handler;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class AdaptiveBatchControllerTest {
+
+  @Test
+  public void testWindowOpensWhileLatencyIsFlat() {
+    AdaptiveBatchController controller = new AdaptiveBatchController(1, 8, 64, 0L);
+    assertEquals(1, controller.getInFlightLimit());
+    for (int i = 0; i < 100; i++) {
+      controller.networkDone(100_000L);
+    }
+    assertEquals(8, controller.getInFlightLimit());
+  }
+
+  @Test
+  public void testWindowHalvesWhenLatencyRises() {
+    AdaptiveBatchController controller = new AdaptiveBatchController(1, 16, 64, 0L);
+    for (int i = 0; i < 200; i++) {
+      controller.networkDone(100_000L);
+    }
+    assertEquals(16, controller.getInFlightLimit());
+    for (int i = 0; i < 16; i++) {
+      controller.networkDone(1_000_000L);
+    }
+    assertTrue(controller.getInFlightLimit() < 16);
+    for (int i = 0; i < 200; i++) {
+      controller.networkDone(1_000_000L);
+    }
+    assertEquals(1, controller.getInFlightLimit());
+  }
+
+  @Test
+  public void testBatchLimitFollowsPayloadSize() {
+    AdaptiveBatchController controller = new AdaptiveBatchController(1, 8, 64, 64 * 1024);
+    assertEquals(64, controller.getBatchLimit());
+    controller.batchSent(4, 4 * 4096);
+    assertEquals(16, controller.getBatchLimit());
+    for (int i = 0; i < 100; i++) {
+      controller.batchSent(1, 100);
+    }
+    assertEquals(64, controller.getBatchLimit());
+  }
+
+  @Test
+  public void testUnsizedMessagesKeepMaximumBatch() {
+    AdaptiveBatchController controller = new AdaptiveBatchController(1, 8, 32, 0L);
+    controller.batchSent(10, 0L);
+    assertEquals(32, controller.getBatchLimit());
+    assertEquals(1L, controller.getStateMap().get("batchesSent"));
+  }
+}
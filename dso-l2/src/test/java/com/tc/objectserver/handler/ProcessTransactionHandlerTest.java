@@ -19,7 +19,11 @@
 package com.tc.objectserver.handler;
 
 import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.inOrder;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import org.junit.After;
@@ -70,9 +74,12 @@ import com.tc.services.InternalServiceRegistry;
 import com.tc.services.TerracottaServiceProviderRegistry;
 import com.tc.util.Assert;
 
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.LinkedList;
 import java.util.Queue;
+import java.util.concurrent.atomic.AtomicReference;
+import org.mockito.InOrder;
 import org.mockito.Matchers;
 import static org.mockito.Matchers.anyBoolean;
 import static org.mockito.Matchers.anyInt;
@@ -290,6 +297,78 @@ public class ProcessTransactionHandlerTest {
     }
   }
 
+  /**
+   * Invokes on two entities run on two lanes of the voltron stage.  The first message triggers the resend replay and
+   * nothing gets past the intake until the resends are ordered.  After that the persisted order is the intake order,
+   * whichever lane runs first.
+   */
+  @Test
+  public void testResendBarrierWithTwoLanes() throws Throwable {
+    EntityData.Value foo = createEntityData("foo", 1);
+    EntityData.Value bar = createEntityData("bar", 2);
+    when(this.entityPersistor.loadEntityData()).thenReturn(Arrays.asList(foo, bar));
+    this.processTransactionHandler.loadExistingEntities();
+
+    NetworkVoltronEntityMessage resend = createMockRequest(VoltronEntityMessage.Type.FETCH_ENTITY, createMockEntity("baz"), new TransactionID(1));
+    this.processTransactionHandler.handleResentMessage(resend);
+
+    NetworkVoltronEntityMessage first = createMockInvoke(new FetchID(1), new TransactionID(2));
+    NetworkVoltronEntityMessage second = createMockInvoke(new FetchID(2), new TransactionID(3));
+    this.processTransactionHandler.orderOnIntake(first);
+    Thread intake = new Thread(()->this.processTransactionHandler.orderOnIntake(second), "intake");
+    intake.start();
+    intake.join(500);
+    // the resends have not been replayed so the second message is held on intake
+    Assert.assertTrue(intake.isAlive());
+    verify(this.transactionOrderPersistor, never()).updateWithNewMessage(any(), any(), any());
+
+    this.processTransactionHandler.getVoltronMessageHandler().handleEvent(first);
+    intake.join();
+
+    NetworkVoltronEntityMessage third = createMockInvoke(new FetchID(1), new TransactionID(4));
+    NetworkVoltronEntityMessage fourth = createMockInvoke(new FetchID(2), new TransactionID(5));
+    this.processTransactionHandler.orderOnIntake(third);
+    this.processTransactionHandler.orderOnIntake(fourth);
+    // the lane of the second entity runs both of its invokes before the first lane gets to the third transaction
+    AtomicReference<Throwable> failure = new AtomicReference<>();
+    Thread lane = new Thread(()->{
+      try {
+        this.processTransactionHandler.getVoltronMessageHandler().handleEvent(second);
+        this.processTransactionHandler.getVoltronMessageHandler().handleEvent(fourth);
+      } catch (Throwable t) {
+        failure.set(t);
+      }
+    }, ServerConfigurationContext.VOLTRON_MESSAGE_STAGE + "-2");
+    lane.start();
+    lane.join();
+    if (failure.get() != null) {
+      throw failure.get();
+    }
+    this.processTransactionHandler.getVoltronMessageHandler().handleEvent(third);
+
+    InOrder order = inOrder(this.transactionOrderPersistor);
+    order.verify(this.transactionOrderPersistor).clearAllRecords();
+    for (long transaction = 1; transaction <= 5; transaction++) {
+      order.verify(this.transactionOrderPersistor).updateWithNewMessage(this.source, new TransactionID(transaction), new TransactionID(1));
+    }
+    verify(this.transactionOrderPersistor, times(5)).updateWithNewMessage(any(), any(), any());
+  }
+
+  private EntityData.Value createEntityData(String entityName, long consumerID) {
+    EntityData.Value data = new EntityData.Value();
+    data.className = TestEntity.class.getCanonicalName();
+    data.version = TestEntity.VERSION;
+    data.consumerID = consumerID;
+    data.entityName = entityName;
+    data.configuration = new byte[0];
+    return data;
+  }
+
+  private NetworkVoltronEntityMessage createMockInvoke(FetchID fetchID, TransactionID transactionID) {
+    NetworkVoltronEntityMessage request = createMockRequest(VoltronEntityMessage.Type.INVOKE_ACTION, null, transactionID);
+    when(request.getEntityDescriptor()).thenReturn(EntityDescriptor.createDescriptorForInvoke(fetchID, new ClientInstanceID(1)));
+    return request;
+  }
 
   /**
    * This is pulled out as its own helper since the mocked EntityIDs aren't .equals() each other so using the same
@@ -22,6 +22,7 @@ import com.tc.async.api.EventHandler;
 import com.tc.async.api.EventHandlerException;
 import com.tc.async.api.Sink;
 import com.tc.async.api.Stage;
+import com.tc.bytes.TCByteBufferReference;
 import com.tc.entity.VoltronEntityAppliedResponse;
 import com.tc.entity.VoltronEntityReceivedResponse;
 import com.tc.io.TCByteBufferInput;
@@ -59,7 +60,10 @@ import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.ObjectOutputStream;
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.List;
 import java.util.Optional;
 import java.util.Random;
 import org.junit.After;
@@ -161,7 +165,7 @@ public class ReplicatedTransactionHandlerTest {
     when(activity.getEntityID()).thenReturn(eid);
     when(activity.getFetchID()).thenReturn(fetch);
     when(activity.getOldestTransactionOnClient()).thenReturn(TransactionID.NULL_ID);
-    when(activity.getExtendedData()).thenReturn(new byte[0]);
+    when(activity.getPayloadReference()).thenReturn(TCByteBufferReference.wrap(new byte[0]));
     when(activity.getActivityID()).thenReturn(SyncReplicationActivity.ActivityID.getNextID());
     ReplicationMessage msg = mock(ReplicationMessage.class);
     when(msg.messageFrom()).thenReturn(sid);
@@ -190,7 +194,7 @@ public class ReplicatedTransactionHandlerTest {
     this.loopbackSink.addToSink(createReceivedActivity(SyncReplicationActivity.createEndEntityKeyMessage(entitiesToSync[0].id, entitiesToSync[0].version, new FetchID(entitiesToSync[0].consumerID), rand)));
     this.loopbackSink.addToSink(createReceivedActivity(SyncReplicationActivity.createEndEntityMessage(entitiesToSync[0].id, entitiesToSync[0].version, new FetchID(entitiesToSync[0].consumerID))));
     this.loopbackSink.addToSink(createReceivedActivity(SyncReplicationActivity.createEndSyncMessage(new byte[0])));
-    verify(activity).getExtendedData();
+    verify(activity).getPayloadReference();
     // Note that we want to verify 2 ACK messages:  RECEIVED and COMPLETED.
     verify(groupManager, times(2)).sendToWithSentCallback(Matchers.eq(sid), Matchers.any(), Matchers.any());
   }  
@@ -226,7 +230,7 @@ public class ReplicatedTransactionHandlerTest {
     this.loopbackSink.addToSink(createReceivedActivity(SyncReplicationActivity.createStartSyncMessage(new SyncReplicationActivity.EntityCreationTuple[0])));
     this.loopbackSink.addToSink(createReceivedActivity(SyncReplicationActivity.createEndSyncMessage(new byte[0])));
     this.loopbackSink.addToSink(msg);
-    verify(activity).getExtendedData();
+    verify(activity).getPayloadReference();
     verify(activity).getConcurrency();  // make sure RTH is pulling the concurrency from the message
     // Note that we want to verify 2 ACK messages:  RECEIVED and COMPLETED.
     verify(groupManager, times(2)).sendToWithSentCallback(Matchers.eq(sid), Matchers.any(), Matchers.any());
@@ -342,6 +346,53 @@ public class ReplicatedTransactionHandlerTest {
     mockPassiveSync(rth);
   }
   
+  @Test
+  public void testOutOfOrderKeyCompletionDuringSync() throws Exception {
+    ManagedEntity entity = mock(ManagedEntity.class);
+    MessageCodec codec = mock(MessageCodec.class);
+    when(this.entityManager.getEntity(Matchers.any())).thenReturn(Optional.empty());
+    when(this.entityManager.createEntity(Matchers.any(), anyLong(), anyLong(), anyBoolean())).then((invoke)->{
+      when(this.entityManager.getEntity(Matchers.any())).thenReturn(Optional.of(entity));
+      return entity;
+    });
+    when(this.entityManager.getMessageCodec(Matchers.any())).thenReturn(codec);
+    when(entity.getCodec()).thenReturn(codec);
+    List<Integer> invoked = new ArrayList<>();
+    Mockito.doAnswer(invocation->{
+      ServerEntityRequest req = (ServerEntityRequest)invocation.getArguments()[0];
+      if (req.getAction() == ServerEntityAction.INVOKE_ACTION) {
+        invoked.add(ByteBuffer.wrap(((MessagePayload)invocation.getArguments()[1]).getRawPayload()).getInt());
+      }
+      return null;
+    }).when(entity).addRequestMessage(Matchers.any(), Matchers.any(), Matchers.any());
+
+    EntityID eid = new EntityID("foo", "bar");
+    FetchID fetch = new FetchID(10L);
+    byte[] config = new byte[0];
+    SyncReplicationActivity.EntityCreationTuple[] entitiesToSync = {
+        new SyncReplicationActivity.EntityCreationTuple(eid, 1, 10L, config, true)
+    };
+    send(SyncReplicationActivity.createStartSyncMessage(entitiesToSync));
+    send(SyncReplicationActivity.createStartEntityMessage(eid, 1, fetch, config, 0));
+//  two keys in flight at once, as sent by a pipelining active
+    send(SyncReplicationActivity.createStartEntityKeyMessage(eid, 1, fetch, 1));
+    send(SyncReplicationActivity.createStartEntityKeyMessage(eid, 1, fetch, 2));
+    send(createMockReplicationMessage(fetch, ByteBuffer.wrap(new byte[Integer.BYTES]).putInt(1).array(), 1));
+    send(createMockReplicationMessage(fetch, ByteBuffer.wrap(new byte[Integer.BYTES]).putInt(2).array(), 2));
+    send(SyncReplicationActivity.createPayloadMessage(eid, 1, fetch, 2, config, ""));
+    send(SyncReplicationActivity.createPayloadMessage(eid, 1, fetch, 1, config, ""));
+    Assert.assertTrue(invoked.isEmpty());
+//  key 2 completes first, only its deferred invoke is released
+    send(SyncReplicationActivity.createEndEntityKeyMessage(eid, 1, fetch, 2));
+    Assert.assertEquals(Collections.singletonList(2), invoked);
+    send(createMockReplicationMessage(fetch, ByteBuffer.wrap(new byte[Integer.BYTES]).putInt(3).array(), 2));
+    Assert.assertEquals(Arrays.asList(2, 3), invoked);
+    send(SyncReplicationActivity.createEndEntityKeyMessage(eid, 1, fetch, 1));
+    Assert.assertEquals(Arrays.asList(2, 3, 1), invoked);
+    send(SyncReplicationActivity.createEndEntityMessage(eid, 1, fetch));
+    send(SyncReplicationActivity.createEndSyncMessage(new byte[0]));
+  }
+  
   private ServerEntityRequest last;
   private int lastSid = 0;
   private int concurrency = 0;
@@ -0,0 +1,170 @@
+/*
+ *
+ *  The contents of this file are subject to the Terracotta Public License Version
+ *  2.0 (the "License"); You may not use this file except in compliance with the
+ *  License. You may obtain a copy of the License at
+ *
+ *  http://terracotta.org/legal/terracotta-public-license.
+ *
+ *  Software distributed under the License is distributed on an "AS IS" basis,
+ *  WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing rights and limitations under the License.
+ *
+ *  The Covered Software is Terracotta Core.
+ *
+ *  The Initial Developer of the Covered Software is
+ *  Terracotta, Inc., a Software AG company
+ *
+ */
+package com.tc.objectserver.persistence;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class AppendOnlyJournalTest {
+
+  private NullPlatformPersistentStorage storage;
+
+  @Before
+  public void setUp() {
+    this.storage = new NullPlatformPersistentStorage();
+  }
+
+  @Test
+  public void testRecoverReplaysChanges() throws Exception {
+    IntList list = new IntList(storage, 100);
+    assertFalse(list.recover());
+    list.add(1);
+    list.add(2);
+    list.add(3);
+
+    IntList recovered = new IntList(storage, 100);
+    assertTrue(recovered.recover());
+    assertEquals(Arrays.asList(1, 2, 3), recovered.values);
+  }
+
+  @Test
+  public void testCompactionReusesChangeElements() throws Exception {
+    IntList list = new IntList(storage, 3);
+    list.recover();
+    for (int i = 0; i < 7; i++) {
+      list.add(i);
+    }
+    assertEquals(1, list.journal.getPendingChanges());
+    // changes are stored by their position after the snapshot, never more than the threshold
+    assertEquals(3, countChanges());
+
+    IntList recovered = new IntList(storage, 3);
+    assertTrue(recovered.recover());
+    assertEquals(Arrays.asList(0, 1, 2, 3, 4, 5, 6), recovered.values);
+  }
+
+  @Test
+  public void testChangesCoveredBySnapshotAreNotReplayed() throws Exception {
+    IntList list = new IntList(storage, 100);
+    list.recover();
+    list.add(1);
+    list.add(2);
+    list.add(3);
+    list.journal.compact();
+    // overwrites the first change only, the second and third are left behind the snapshot
+    list.add(4);
+
+    IntList recovered = new IntList(storage, 100);
+    recovered.recover();
+    assertEquals(Arrays.asList(1, 2, 3, 4), recovered.values);
+    assertEquals(1, recovered.journal.getPendingChanges());
+  }
+
+  @Test
+  public void testCorruptTailIsDiscarded() throws Exception {
+    IntList list = new IntList(storage, 100);
+    list.recover();
+    list.add(1);
+    list.add(2);
+    list.add(3);
+    byte[] second = (byte[]) storage.loadDataElement("test.journal.2");
+    second[second.length - 1] ^= 0x5a;
+
+    IntList recovered = new IntList(storage, 100);
+    recovered.recover();
+    assertEquals(Arrays.asList(1), recovered.values);
+
+    // appends carry on where the valid part of the journal ended, the change after the corrupt one stays discarded
+    recovered.add(4);
+    IntList again = new IntList(storage, 100);
+    again.recover();
+    assertEquals(Arrays.asList(1, 4), again.values);
+  }
+
+  @Test
+  public void testTornSnapshotFallsBackToPreviousOne() throws Exception {
+    IntList list = new IntList(storage, 100);
+    list.recover();
+    list.add(1);
+    list.journal.compact();
+    list.add(2);
+    list.add(3);
+    list.journal.compact();
+    // the newer snapshot is garbled, the changes following the older one are still there
+    ((byte[]) storage.loadDataElement("test.snapshot.1"))[30] ^= 0x5a;
+
+    IntList recovered = new IntList(storage, 100);
+    recovered.recover();
+    assertEquals(Arrays.asList(1, 2, 3), recovered.values);
+  }
+
+  private int countChanges() {
+    int count = 0;
+    for (String name : storage.nameToDataMap.keySet()) {
+      if (name.startsWith("test.journal.")) {
+        count += 1;
+      }
+    }
+    return count;
+  }
+
+  private static class IntList {
+    private final NullPlatformPersistentStorage storage;
+    private final AppendOnlyJournal journal;
+    private final List<Integer> values = new ArrayList<>();
+
+    IntList(NullPlatformPersistentStorage storage, int threshold) {
+      this.storage = storage;
+      this.journal = new AppendOnlyJournal(storage, "test", this::write, threshold);
+    }
+
+    boolean recover() throws IOException {
+      return journal.recover(this::read, in -> values.add(in.readInt()));
+    }
+
+    void add(int value) throws IOException {
+      values.add(value);
+      journal.append(out -> out.writeInt(value));
+    }
+
+    private void write(DataOutput out) throws IOException {
+      out.writeInt(values.size());
+      for (int value : values) {
+        out.writeInt(value);
+      }
+    }
+
+    private void read(DataInput in) throws IOException {
+      for (int count = in.readInt(); count > 0; count--) {
+        values.add(in.readInt());
+      }
+    }
+  }
+}
@@ -223,6 +223,36 @@ public class EntityPersistorTest extends TCTestCase {
     }
   }
   
+  /**
+   * Test that a restarted persistor rebuilds entities, journals and counters from what was stored.
+   */
+  public void testStateIsRebuiltFromJournal() throws EntityException {
+    EntityID id = new EntityID("class name", "entity name");
+    EntityID other = new EntityID("class name", "other entity");
+    long oldestTransactionOnClient = 1;
+    this.entityPersistor.entityCreated(this.client, 2, oldestTransactionOnClient, id, 1, 1, true, new byte[0]);
+    this.entityPersistor.entityCreated(this.client, 3, oldestTransactionOnClient, other, 1, 2, true, new byte[0]);
+    this.entityPersistor.entityReconfigureSucceeded(this.client, 4, oldestTransactionOnClient, other, 1, new byte[] { 7 });
+    this.entityPersistor.entityDestroyed(this.client, 5, oldestTransactionOnClient, id);
+    this.entityPersistor.entityCreateFailed(id, this.client, 6, oldestTransactionOnClient, new EntityNotFoundException("class", "name"));
+    long consumerID = this.entityPersistor.getNextConsumerID();
+
+    EntityPersistor restarted = new EntityPersistor(this.persistentStorage);
+    Assert.assertFalse(restarted.containsEntity(id));
+    Assert.assertTrue(restarted.containsEntity(other));
+    Assert.assertArrayEquals(new byte[] { 7 }, restarted.loadEntityData().iterator().next().configuration);
+    Assert.assertTrue(restarted.wasEntityCreatedInJournal(this.client, 3));
+    Assert.assertTrue(restarted.wasEntityDestroyedInJournal(this.client, 5));
+    Assert.assertArrayEquals(new byte[0], restarted.reconfiguredResultInJournal(this.client, 4));
+    try {
+      restarted.wasEntityCreatedInJournal(this.client, 6);
+      fail();
+    } catch (EntityNotFoundException e) {
+      // Expected.
+    }
+    Assert.assertEquals(consumerID + 1, restarted.getNextConsumerID());
+  }
+
   public void testOrphanedClientGC() throws Exception {
     this.entityPersistor.entityCreated(client, 1L, 0L, new EntityID("test", "test"), 1L, 1L, true, new byte[0]);
     this.entityPersistor.removeOrphanedClientsFromJournal(Collections.emptySet());
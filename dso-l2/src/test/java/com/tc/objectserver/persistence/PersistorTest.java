@@ -31,6 +31,7 @@ import org.junit.BeforeClass;
 import org.junit.Test;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.eq;
+import static org.mockito.Matchers.startsWith;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
@@ -66,9 +67,9 @@ public class PersistorTest {
     IPlatformPersistence persist = mock(IPlatformPersistence.class);
     Persistor persistor = new Persistor(persist);
     persistor.start(true);
-    verify(persist, never()).storeDataElement(eq("journal_container.map"), eq(null));
+    verify(persist, never()).storeDataElement(startsWith("entity_persistor.journal."), any());
     persistor.start(false);
-    verify(persist).storeDataElement(eq("journal_container.map"), eq(null));
+    verify(persist).storeDataElement(startsWith("entity_persistor.journal."), any());
   }
   
 
@@ -25,10 +25,13 @@ import com.tc.test.TCTestCase;
 import com.tc.util.ProductID;
 
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 
 public class TransactionOrderPersistorTest extends TCTestCase {
@@ -364,6 +367,83 @@ public class TransactionOrderPersistorTest extends TCTestCase {
   }
 
 
+  /**
+   * Test that trimming a client only drops its own old transactions and the global positions close up behind them.
+   */
+  public void testTrimmingShiftsGlobalOrder() {
+    ClientID regular = new ClientID(3);
+    this.orderPersistor.addTrackingForClient(regular, ProductID.STRIPE);
+    TransactionID oldest = new TransactionID(1L);
+    for (int i = 1; i < 10; ++i) {
+      TransactionID transaction = new TransactionID(i);
+      this.orderPersistor.updateWithNewMessage(this.client1, transaction, oldest);
+      this.orderPersistor.updateWithNewMessage(regular, transaction, oldest);
+    }
+    assertEquals(17, this.orderPersistor.getIndexToReplay(regular, new TransactionID(9)));
+    // regular client is now only waiting on 9 and the new 10
+    this.orderPersistor.updateWithNewMessage(regular, new TransactionID(10), new TransactionID(9));
+    assertEquals(-1, this.orderPersistor.getIndexToReplay(regular, new TransactionID(8)));
+    assertEquals(9, this.orderPersistor.getIndexToReplay(regular, new TransactionID(9)));
+    assertEquals(10, this.orderPersistor.getIndexToReplay(regular, new TransactionID(10)));
+    assertEquals(8, this.orderPersistor.getIndexToReplay(this.client1, new TransactionID(9)));
+    assertEquals(19, this.orderPersistor.getReceivedTransactionCount());
+  }
+
+  /**
+   * Test that a reloaded persistor keeps the stored order and places new transactions after it.
+   */
+  public void testReloadKeepsGlobalOrder() {
+    NullPlatformPersistentStorage storage = new NullPlatformPersistentStorage();
+    Set<ClientID> clients = new HashSet<>(Arrays.asList(this.client1, this.client2));
+    TransactionOrderPersistor persistor = new TransactionOrderPersistor(storage, clients);
+    TransactionID oldest = new TransactionID(1L);
+    for (int i = 1; i < 10; ++i) {
+      TransactionID transaction = new TransactionID(i);
+      persistor.updateWithNewMessage(this.client1, transaction, oldest);
+      persistor.updateWithNewMessage(this.client2, transaction, oldest);
+    }
+
+    persistor = new TransactionOrderPersistor(storage, clients);
+    persistor.updateWithNewMessage(this.client2, new TransactionID(10), oldest);
+    for (int i = 1; i < 10; ++i) {
+      assertEquals((i - 1) * 2, persistor.getIndexToReplay(this.client1, new TransactionID(i)));
+      assertEquals((i - 1) * 2 + 1, persistor.getIndexToReplay(this.client2, new TransactionID(i)));
+    }
+    assertEquals(18, persistor.getIndexToReplay(this.client2, new TransactionID(10)));
+  }
+
+  /**
+   * Test that many clients updating at once still end up with one dense global order that keeps each client's order.
+   */
+  public void testManyConcurrentClientsDenseOrder() throws InterruptedException {
+    int clients = 32;
+    int perClient = 500;
+    ClientThread[] threads = new ClientThread[clients];
+    for (int c = 0; c < clients; c++) {
+      ClientID client = new ClientID(100 + c);
+      this.orderPersistor.addTrackingForClient(client, ProductID.STRIPE);
+      threads[c] = new ClientThread(this.orderPersistor, client, new TransactionID(1L), 1, perClient + 1);
+    }
+    for (ClientThread t : threads) {
+      t.start();
+    }
+    for (ClientThread t : threads) {
+      t.join();
+    }
+    boolean[] seen = new boolean[clients * perClient];
+    for (int c = 0; c < clients; c++) {
+      int last = -1;
+      for (int i = 1; i <= perClient; i++) {
+        int index = this.orderPersistor.getIndexToReplay(new ClientID(100 + c), new TransactionID(i));
+        assertTrue(index > last);
+        assertFalse(seen[index]);
+        seen[index] = true;
+        last = index;
+      }
+    }
+    assertEquals(clients * perClient, this.orderPersistor.getReceivedTransactionCount());
+  }
+
   private static class ClientThread extends Thread {
     private TransactionOrderPersistor persistor;
     private ClientID client;
@@ -225,4 +225,14 @@ public class NullTCServerInfo extends AbstractTerracottaMBean implements TCServe
   public String getResourceState() {
     return "";
   }
+
+  @Override
+  public Map<String, Object> getStageLatencies() {
+    return null;
+  }
+
+  @Override
+  public Map<String, Object> takeStageLatencyInterval() {
+    return null;
+  }
 }
@@ -19,6 +19,8 @@
 
 package com.tc.services;
 
+import java.util.Arrays;
+
 import org.junit.Before;
 import org.junit.Test;
 import org.terracotta.entity.ClientCommunicator;
@@ -26,6 +28,7 @@ import org.terracotta.entity.ClientDescriptor;
 import org.terracotta.entity.EntityMessage;
 import org.terracotta.entity.EntityResponse;
 import org.terracotta.entity.MessageCodec;
+import org.terracotta.entity.ServiceProvider;
 
 import com.tc.entity.ServerEntityMessage;
 import com.tc.net.ClientID;
@@ -40,8 +43,10 @@ import static org.mockito.Mockito.any;
 import static org.mockito.Mockito.eq;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
+import static org.junit.Assert.assertEquals;
 
 /**
  * @author twu
@@ -133,4 +138,28 @@ public class CommunicatorServiceTest {
     verify(clientMessageSender).send(clientID, instance2, payload2);
     verify(clientMessageSender, never()).send(eq(clientID), eq(instance1), any(byte[].class));
   }
+
+  @Test
+  public void testBroadcastEncodesOnce() throws Exception {
+    ClientID otherClientID = new ClientID(2);
+    MessageChannel otherChannel = mock(MessageChannel.class);
+    when(otherChannel.getRemoteNodeID()).thenReturn(otherClientID);
+    communicatorService.channelCreated(otherChannel);
+    ClientDescriptor otherDescriptor = new ClientDescriptorImpl(otherClientID, clientInstanceID);
+    ClientDescriptor goneDescriptor = new ClientDescriptorImpl(new ClientID(3), clientInstanceID);
+
+    // entities reach the broadcast through their service registry
+    DelegatingServiceRegistry registry = new DelegatingServiceRegistry(consumerID, new ServiceProvider[0], new ImplementationProvidedServiceProvider[] { communicatorService });
+    registry.setOwningEntity(this.owningEntity);
+    BroadcastCommunicator clientCommunicator = registry.getService(new BroadcastCommunicatorConfiguration());
+    int delivered = clientCommunicator.broadcastNoResponse(Arrays.asList(clientDescriptor, otherDescriptor, goneDescriptor), response);
+
+    assertEquals(2, delivered);
+    verify(codec, times(1)).encodeResponse(response);
+    // both clients are handed the very same encoded array
+    verify(clientMessageSender).send(clientID, clientInstanceID, payload);
+    verify(clientMessageSender).send(otherClientID, clientInstanceID, payload);
+    assertEquals(1, communicatorService.getBroadcastStats().getBroadcasts());
+    assertEquals(1, communicatorService.getBroadcastStats().getEncodesAvoided());
+  }
 }
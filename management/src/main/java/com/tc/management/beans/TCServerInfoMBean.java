@@ -102,4 +102,15 @@ public interface TCServerInfoMBean extends TerracottaMBean, RuntimeStatisticCons
   String getResourceState();
   
   void setPipelineMonitoring(boolean monitor);
+
+  /**
+   * Queue and run time percentiles per SEDA stage, since the server started.
+   */
+  Map<String, Object> getStageLatencies();
+
+  /**
+   * Queue and run time percentiles per SEDA stage covering only what was recorded since the previous call, which ends
+   * here.  Meant for a single periodic collector, every caller shares the same intervals.
+   */
+  Map<String, Object> takeStageLatencyInterval();
 }
@@ -0,0 +1,225 @@
+/*
+ *
+ *  The contents of this file are subject to the Terracotta Public License Version
+ *  2.0 (the "License"); You may not use this file except in compliance with the
+ *  License. You may obtain a copy of the License at
+ *
+ *  http://terracotta.org/legal/terracotta-public-license.
+ *
+ *  Software distributed under the License is distributed on an "AS IS" basis,
+ *  WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing rights and limitations under the License.
+ *
+ *  The Covered Software is Terracotta Core.
+ *
+ *  The Initial Developer of the Covered Software is
+ *  Terracotta, Inc., a Software AG company
+ *
+ */
+package com.tc.bytes;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.ref.PhantomReference;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Pool of {@link TCByteBufferFactory#FIXED_BUFFER_SIZE} chunks.
+ * <p>
+ * Free chunks sit in a small per thread cache in front of a shared free list.  Both are capped, chunks returned to a
+ * full pool are simply dropped and left to the garbage collector.  Direct chunks are carved out of larger slabs so a
+ * burst of allocations does not turn into a burst of {@code allocateDirect} calls.  Heap chunks each get their own
+ * array since callers of {@link TCByteBuffer#array()} assume an array offset of zero.
+ * <p>
+ * Every check out hands out a new (cheap) {@link TCByteBufferImpl} wrapper around a pooled chunk, so a stale reference
+ * to a recycled buffer never sees the state of the next owner.  With leak detection on, wrappers that are garbage
+ * collected without having been recycled are reported and their chunk is put back into the pool.
+ */
+class FixedSizeBufferPool implements BufferPool {
+
+  private static final Logger     logger          = LoggerFactory.getLogger(FixedSizeBufferPool.class);
+
+  static final int                CHUNK_SIZE      = TCByteBufferFactory.FIXED_BUFFER_SIZE;
+  static final int                CHUNKS_PER_SLAB = 256;                                                // 1MiB slabs
+
+  private final boolean           direct;
+  private final int               commonMax;
+  private final int               threadLocalMax;
+
+  private final ConcurrentLinkedQueue<ByteBuffer> common      = new ConcurrentLinkedQueue<>();
+  private final AtomicInteger     commonSize      = new AtomicInteger();
+  private final ThreadLocal<ArrayDeque<ByteBuffer>> local = ThreadLocal.withInitial(ArrayDeque::new);
+
+  private ByteBuffer              slab;
+  private int                     slabChunk       = CHUNKS_PER_SLAB;
+
+  private final ReferenceQueue<TCByteBuffer> leaked;
+  private final Set<LeakTracker>  outstanding;
+
+  private final LongAdder         allocated       = new LongAdder();
+  private final LongAdder         reused          = new LongAdder();
+  private final LongAdder         returned        = new LongAdder();
+  private final LongAdder         discarded       = new LongAdder();
+  private final LongAdder         leaks           = new LongAdder();
+
+  FixedSizeBufferPool(boolean direct, int commonMax, int threadLocalMax, boolean leakDetection) {
+    this.direct = direct;
+    this.commonMax = Math.max(0, commonMax);
+    this.threadLocalMax = Math.max(0, threadLocalMax);
+    if (leakDetection) {
+      this.leaked = new ReferenceQueue<>();
+      this.outstanding = ConcurrentHashMap.newKeySet();
+    } else {
+      this.leaked = null;
+      this.outstanding = null;
+    }
+  }
+
+  boolean isDirect() {
+    return direct;
+  }
+
+  TCByteBuffer checkOut() {
+    if (leaked != null) {
+      reclaimLeaks();
+    }
+    ByteBuffer chunk = take();
+    chunk.clear();
+    TCByteBufferImpl buf = new TCByteBufferImpl(chunk, this);
+    if (leaked != null) {
+      LeakTracker tracker = new LeakTracker(buf, chunk, leaked);
+      outstanding.add(tracker);
+      buf.setLeakTracker(tracker);
+    }
+    buf.checkedOut();
+    return buf;
+  }
+
+  @Override
+  public void offer(TCByteBuffer buf) {
+    if (buf.getBufferPool() != this) {
+      throw new IllegalArgumentException("buffer does not belong to this pool");
+    }
+    returned.increment();
+    if (leaked != null) {
+      Reference<?> tracker = ((TCByteBufferImpl) buf).setLeakTracker(null);
+      if (tracker != null) {
+        outstanding.remove(tracker);
+        tracker.clear();
+      }
+    }
+    give(buf.getNioBuffer());
+  }
+
+  private ByteBuffer take() {
+    ArrayDeque<ByteBuffer> cache = local.get();
+    ByteBuffer chunk = cache.pollFirst();
+    if (chunk == null) {
+      chunk = common.poll();
+      if (chunk != null) {
+        commonSize.decrementAndGet();
+      }
+    }
+    if (chunk != null) {
+      reused.increment();
+      return chunk;
+    }
+    allocated.increment();
+    return direct ? sliceFromSlab() : ByteBuffer.allocate(CHUNK_SIZE);
+  }
+
+  private void give(ByteBuffer chunk) {
+    ArrayDeque<ByteBuffer> cache = local.get();
+    if (cache.size() < threadLocalMax) {
+      cache.addFirst(chunk);
+      return;
+    }
+    // the local cache is full, spill half of it so this thread does not hit the shared list on every return
+    offerCommon(chunk);
+    for (int i = threadLocalMax / 2; i > 0; i--) {
+      offerCommon(cache.pollLast());
+    }
+  }
+
+  private void offerCommon(ByteBuffer chunk) {
+    if (commonSize.incrementAndGet() <= commonMax) {
+      common.offer(chunk);
+    } else {
+      commonSize.decrementAndGet();
+      discarded.increment();
+    }
+  }
+
+  private synchronized ByteBuffer sliceFromSlab() {
+    if (slabChunk == CHUNKS_PER_SLAB) {
+      slab = ByteBuffer.allocateDirect(CHUNK_SIZE * CHUNKS_PER_SLAB);
+      slabChunk = 0;
+    }
+    int start = slabChunk++ * CHUNK_SIZE;
+    slab.limit(start + CHUNK_SIZE).position(start);
+    return slab.slice();
+  }
+
+  private void reclaimLeaks() {
+    int count = 0;
+    Reference<? extends TCByteBuffer> ref;
+    while ((ref = leaked.poll()) != null) {
+      LeakTracker tracker = (LeakTracker) ref;
+      if (outstanding.remove(tracker)) {
+        count++;
+        give(tracker.chunk);
+      }
+    }
+    if (count > 0) {
+      leaks.add(count);
+      logger.warn("{} {} buffer(s) were garbage collected without being recycled ({} in total)", count,
+                  direct ? "direct" : "heap", leaks.sum());
+    }
+  }
+
+  int getFreeCount() {
+    return commonSize.get() + local.get().size();
+  }
+
+  long getLeakCount() {
+    return leaks.sum();
+  }
+
+  Map<String, Object> getState() {
+    Map<String, Object> state = new LinkedHashMap<>();
+    state.put("direct", direct);
+    state.put("allocated", allocated.sum());
+    state.put("reused", reused.sum());
+    state.put("returned", returned.sum());
+    state.put("discarded", discarded.sum());
+    state.put("commonFree", commonSize.get());
+    if (outstanding != null) {
+      state.put("outstanding", outstanding.size());
+      state.put("leaked", leaks.sum());
+    }
+    return state;
+  }
+
+  /**
+   * Keeps the chunk reachable after its wrapper is gone so it can be reclaimed.
+   */
+  private static final class LeakTracker extends PhantomReference<TCByteBuffer> {
+    private final ByteBuffer chunk;
+
+    LeakTracker(TCByteBuffer referent, ByteBuffer chunk, ReferenceQueue<TCByteBuffer> queue) {
+      super(referent, queue);
+      this.chunk = chunk;
+    }
+  }
+}
@@ -21,6 +21,10 @@ package com.tc.bytes;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.Iterator;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
+
 /**
  * TCByteBuffer source that hides JDK dependencies and that can pool instances. Instance pooling is likely to be a good
  * idea for fixed size buffers and definitely a good idea for java direct buffers (since their allocation/deallocation
@@ -35,10 +39,60 @@ public class TCByteBufferFactory {
   private static final TCByteBuffer[]      EMPTY_BB_ARRAY          = new TCByteBuffer[0];
   private static final TCByteBuffer        ZERO_BYTE_BUFFER        = TCByteBufferImpl.wrap(new byte[0]);
   private static final Logger logger = LoggerFactory.getLogger(TCByteBufferFactory.class);
-    
+
+  private static final TCByteBufferFactoryConfig CONFIG           = loadConfig();
+  private static final FixedSizeBufferPool HEAP_POOL              = createPool(false);
+  private static final FixedSizeBufferPool DIRECT_POOL            = createPool(true);
+
+  private static TCByteBufferFactoryConfig loadConfig() {
+    try {
+      Iterator<TCByteBufferFactoryConfig> configs = ServiceLoader.load(TCByteBufferFactoryConfig.class,
+                                                                       TCByteBufferFactory.class.getClassLoader())
+          .iterator();
+      if (configs.hasNext()) {
+        return configs.next();
+      }
+    } catch (ServiceConfigurationError e) {
+      logger.warn("unable to load buffer pool configuration, pooling disabled", e);
+    }
+    return new TCByteBufferFactoryConfig() {
+      @Override
+      public boolean isPoolingEnabled() {
+        return false;
+      }
+
+      @Override
+      public int getCommonPoolMaxBufCount() {
+        return 0;
+      }
+
+      @Override
+      public int getThreadLocalPoolMaxBufCount() {
+        return 0;
+      }
+
+      @Override
+      public boolean isLeakDetectionEnabled() {
+        return false;
+      }
+    };
+  }
+
+  private static FixedSizeBufferPool createPool(boolean direct) {
+    if (!CONFIG.isPoolingEnabled()) {
+      return null;
+    }
+    return new FixedSizeBufferPool(direct, CONFIG.getCommonPoolMaxBufCount(), CONFIG.getThreadLocalPoolMaxBufCount(),
+                                   CONFIG.isLeakDetectionEnabled());
+  }
+
   private static TCByteBuffer createNewInstance(boolean direct, int capacity, int index, int totalCount) {
     try {
-      TCByteBuffer rv = new TCByteBufferImpl(capacity, direct, null);
+      FixedSizeBufferPool pool = direct ? DIRECT_POOL : HEAP_POOL;
+      if (pool != null && capacity == FIXED_BUFFER_SIZE) {
+        return pool.checkOut();
+      }
+      TCByteBuffer rv = new TCByteBufferImpl(capacity, direct);
       // Assert.assertEquals(0, rv.position());
       // Assert.assertEquals(capacity, rv.capacity());
       // Assert.assertEquals(capacity, rv.limit());
@@ -51,7 +105,8 @@ public class TCByteBufferFactory {
     }
   }
   /**
-   * Get a single variable sized TCByteBuffer instance Note: These are not pooled (yet)
+   * Get a single variable sized TCByteBuffer instance Note: Only requests for exactly {@link #FIXED_BUFFER_SIZE} are
+   * pooled
    * 
    * @param size The desired minimum capacity of the buffer. The actual capacity may be higher. The buffer's limit will
    *        be equal to it's capacity.
@@ -161,6 +216,6 @@ public class TCByteBufferFactory {
   }
 
   public static boolean isPoolingEnabled() {
-    return false;
+    return CONFIG.isPoolingEnabled();
   }
 }
@@ -0,0 +1,45 @@
+/*
+ *
+ *  The contents of this file are subject to the Terracotta Public License Version
+ *  2.0 (the "License"); You may not use this file except in compliance with the
+ *  License. You may obtain a copy of the License at
+ *
+ *  http://terracotta.org/legal/terracotta-public-license.
+ *
+ *  Software distributed under the License is distributed on an "AS IS" basis,
+ *  WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing rights and limitations under the License.
+ *
+ *  The Covered Software is Terracotta Core.
+ *
+ *  The Initial Developer of the Covered Software is
+ *  Terracotta, Inc., a Software AG company
+ *
+ */
+package com.tc.bytes;
+
+/**
+ * Pooling settings for {@link TCByteBufferFactory}, looked up with {@link java.util.ServiceLoader} so the messaging
+ * layer does not depend on where the values come from.
+ */
+public interface TCByteBufferFactoryConfig {
+
+  boolean isPoolingEnabled();
+
+  /**
+   * @return max number of free 4KiB chunks held in the shared free list
+   */
+  int getCommonPoolMaxBufCount();
+
+  /**
+   * @return max number of free 4KiB chunks cached by a single thread
+   */
+  int getThreadLocalPoolMaxBufCount();
+
+  /**
+   * @return true to track checked out buffers and report (and reclaim) those that are garbage collected without being
+   *         recycled
+   */
+  boolean isLeakDetectionEnabled();
+
+}
@@ -21,9 +21,8 @@ package com.tc.bytes;
 import com.tc.util.Assert;
 import com.tc.util.State;
 
+import java.lang.ref.Reference;
 import java.nio.ByteBuffer;
-import java.util.concurrent.LinkedBlockingQueue;
-import java.util.concurrent.TimeUnit;
 
 /**
  * @author teck A thin wrapper to a real java.nio.ByteBuffer instance
@@ -31,7 +30,7 @@ import java.util.concurrent.TimeUnit;
 
 // XXX: Should we wrap the native java.nio overflow, underflow and readOnly exceptions with the TC versions?
 // This would make the TCByteBuffer interface consistent w.r.t. exceptions (whilst being blind to JDK13 vs JDK14)
-public class TCByteBufferImpl implements TCByteBuffer, BufferPool {
+public class TCByteBufferImpl implements TCByteBuffer {
 
   private static final State        INIT        = new State("INIT");
   private static final State        CHECKED_OUT = new State("CHECKED_OUT");
@@ -39,16 +38,26 @@ public class TCByteBufferImpl implements TCByteBuffer, BufferPool {
 
   private final ByteBuffer          buffer;
   private final TCByteBuffer        root;
-  private final LinkedBlockingQueue<TCByteBuffer> bufPool;
+  private final BufferPool          bufPool;
   private State                     state       = INIT;
+  private Reference<?>              leakTracker;
 
-  TCByteBufferImpl(int capacity, boolean direct, LinkedBlockingQueue<TCByteBuffer> poolQueue) {
+  TCByteBufferImpl(int capacity, boolean direct) {
     if (direct) {
       buffer = ByteBuffer.allocateDirect(capacity);
     } else {
       buffer = ByteBuffer.allocate(capacity);
     }
-    bufPool = poolQueue;
+    bufPool = null;
+    root = this;
+  }
+
+  /**
+   * Wraps a chunk owned by the given pool, the chunk goes back to the pool when this buffer is recycled.
+   */
+  TCByteBufferImpl(ByteBuffer chunk, BufferPool pool) {
+    buffer = chunk;
+    bufPool = pool;
     root = this;
   }
 
@@ -593,14 +602,13 @@ public class TCByteBufferImpl implements TCByteBuffer, BufferPool {
 
   @Override
   public BufferPool getBufferPool() {
-    return this;
+    return bufPool;
   }
 
-  @Override
-  public void offer(TCByteBuffer buf) throws InterruptedException {
-    if (this.bufPool != null) {
-      this.bufPool.offer(buf, 0, TimeUnit.MILLISECONDS);
-    }
+  Reference<?> setLeakTracker(Reference<?> tracker) {
+    Reference<?> old = leakTracker;
+    leakTracker = tracker;
+    return old;
   }
 
   /* This is the debug version. PLEASE DONT DELETE */
@@ -0,0 +1,177 @@
+/*
+ *
+ *  The contents of this file are subject to the Terracotta Public License Version
+ *  2.0 (the "License"); You may not use this file except in compliance with the
+ *  License. You may obtain a copy of the License at
+ *
+ *  http://terracotta.org/legal/terracotta-public-license.
+ *
+ *  Software distributed under the License is distributed on an "AS IS" basis,
+ *  WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing rights and limitations under the License.
+ *
+ *  The Covered Software is Terracotta Core.
+ *
+ *  The Initial Developer of the Covered Software is
+ *  Terracotta, Inc., a Software AG company
+ *
+ */
+package com.tc.bytes;
+
+import com.tc.io.TCByteBufferInputStream;
+
+/**
+ * A length delimited run of bytes that is either backed by a plain array or is a read-only view over buffers owned by
+ * a network message.
+ * <p>
+ * Array backed references are handed to output streams as a wrapper around the array, so the bytes are never copied
+ * into the stream.  Views let a received message keep its payload in the original network buffers until somebody
+ * actually needs it.  The first call to {@link #toByteArray()} copies the bytes out and releases the view; the owner of
+ * the buffers is told through the {@link #whenReleased(Runnable)} hook so it can recycle them.
+ */
+public class TCByteBufferReference {
+
+  private static final TCByteBuffer[] NO_BUFFERS = new TCByteBuffer[0];
+
+  private final int                   length;
+  private TCByteBuffer[]              views;
+  private byte[]                      array;
+  private Runnable                    onRelease;
+  private boolean                     released;
+
+  private TCByteBufferReference(TCByteBuffer[] views, byte[] array, int length) {
+    this.views = views;
+    this.array = array;
+    this.length = length;
+    this.released = (views == null);
+  }
+
+  public static TCByteBufferReference wrap(byte[] data) {
+    return new TCByteBufferReference(null, data, data.length);
+  }
+
+  /**
+   * Creates a view over the readable bytes of the given buffers.  The buffers themselves are not copied and must stay
+   * untouched until the view is released.
+   */
+  public static TCByteBufferReference view(TCByteBuffer[] buffers) {
+    TCByteBuffer[] views = new TCByteBuffer[buffers.length];
+    int length = 0;
+    for (int i = 0; i < buffers.length; i++) {
+      views[i] = buffers[i].asReadOnlyBuffer();
+      length += views[i].remaining();
+    }
+    return new TCByteBufferReference(views, null, length);
+  }
+
+  public int length() {
+    return length;
+  }
+
+  /**
+   * @return true while the bytes still live in the buffers of the message this reference was read from
+   */
+  public synchronized boolean isView() {
+    return !released;
+  }
+
+  /**
+   * Buffers suitable for appending to an output stream.  An array backed reference is wrapped without copying, a view
+   * is materialized first since its buffers belong to (and are recycled with) the message it came from.
+   */
+  public TCByteBuffer[] toBuffers() {
+    if (length == 0) {
+      return NO_BUFFERS;
+    }
+    return new TCByteBuffer[] { TCByteBufferFactory.wrap(toByteArray()) };
+  }
+
+  /**
+   * A stream reading straight out of the underlying buffers, without materializing them.
+   */
+  public synchronized TCByteBufferInputStream newInputStream() {
+    if (array != null) {
+      return new TCByteBufferInputStream(TCByteBufferFactory.wrap(array));
+    } else if (released) {
+      throw new IllegalStateException("reference already released");
+    }
+    TCByteBuffer[] copy = new TCByteBuffer[views.length];
+    for (int i = 0; i < views.length; i++) {
+      copy[i] = views[i].duplicate();
+    }
+    return new TCByteBufferInputStream(copy);
+  }
+
+  /**
+   * The bytes of this reference as an array.  For a view the bytes are copied out once, cached, and the view is
+   * released.
+   */
+  public byte[] toByteArray() {
+    Runnable hook;
+    synchronized (this) {
+      if (array != null) {
+        return array;
+      } else if (released) {
+        throw new IllegalStateException("reference already released");
+      }
+      byte[] data = new byte[length];
+      int offset = 0;
+      for (TCByteBuffer view : views) {
+        int count = view.remaining();
+        view.duplicate().get(data, offset, count);
+        offset += count;
+      }
+      array = data;
+      hook = markReleased();
+    }
+    runHook(hook);
+    return array;
+  }
+
+  /**
+   * Drops the view (if any) without materializing it.  Safe to call more than once.
+   */
+  public void release() {
+    Runnable hook;
+    synchronized (this) {
+      hook = markReleased();
+    }
+    runHook(hook);
+  }
+
+  /**
+   * Registers the action to run once this reference no longer needs its buffers.  Runs immediately if that is already
+   * the case.
+   */
+  public void whenReleased(Runnable hook) {
+    synchronized (this) {
+      if (!released) {
+        onRelease = hook;
+        return;
+      }
+    }
+    hook.run();
+  }
+
+  private Runnable markReleased() {
+    if (released) {
+      return null;
+    }
+    released = true;
+    views = null;
+    Runnable hook = onRelease;
+    onRelease = null;
+    return hook;
+  }
+
+  private static void runHook(Runnable hook) {
+    if (hook != null) {
+      hook.run();
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "TCByteBufferReference{length=" + length + ", view=" + isView() + '}';
+  }
+}
@@ -19,6 +19,8 @@
 package com.tc.entity;
 
 import com.tc.bytes.TCByteBuffer;
+import com.tc.bytes.TCByteBufferFactory;
+import com.tc.io.TCByteBufferInputStream;
 import com.tc.io.TCByteBufferOutputStream;
 import com.tc.net.protocol.tcm.MessageChannel;
 import com.tc.net.protocol.tcm.MessageMonitor;
@@ -31,20 +33,35 @@ import com.tc.object.tx.TransactionID;
 import com.tc.util.Assert;
 import java.io.IOException;
 import java.nio.ByteBuffer;
-import java.util.Collections;
-import java.util.LinkedList;
-import java.util.List;
+import java.util.Arrays;
 
 
 
 public class LinearVoltronEntityMultiResponse extends DSOMessageBase implements VoltronEntityMultiResponse {
   
+  /**
+   * Channel attachment set during the client handshake when the client decodes the compact timeline. Other clients
+   * are sent one op per value as before.
+   */
+  public static final String COMPACT_TIMELINE = "CompactTimeline";
+
   private final byte OP_ID = 1;
   private final byte DONE_ID = 2;
+  private final byte TIMELINE_ID = 3;
+  // payloads this big are handed to the output stream as they are instead of being copied into it
+  private static final int REFERENCE_PAYLOAD_SIZE = 1024;
   
   public enum Operation {
-    RECEIVED,
-    RETIRED,
+    RECEIVED {
+      boolean isAck() {
+        return true;
+      }
+    },
+    RETIRED {
+      boolean isAck() {
+        return true;
+      }
+    },
     RESULT {
       boolean hasData() {
         return true;
@@ -75,82 +92,79 @@ public class LinearVoltronEntityMultiResponse extends DSOMessageBase implements
     boolean hasData() {
       return false;
     }
-  }  
-    
-  private List<Op> timeline = new LinkedList<>();
-
-  private boolean stopAdding;
-  
-  private static class Op {
-    private final Operation type;
-    private final long id;
-    private final byte[] data;
 
-    public Op(Operation type, long id, byte[] data) {
-      this.type = type;
-      this.id = id;
-      this.data = data;
-    }
-    
-    public Op(byte[] raw) {
-      ByteBuffer reader = ByteBuffer.wrap(raw);
-      this.type = Operation.values()[reader.getInt()];
-      this.id = reader.getLong();
-      this.data = new byte[reader.remaining()];
-      reader.get(this.data);
+    // consecutive acks of consecutive transactions are kept as one range
+    boolean isAck() {
+      return false;
     }
-    
-    public byte[] convert() {
-      ByteBuffer buffer = ByteBuffer.allocate(4 + 8 + data.length);
-      buffer.putInt(type.ordinal());
-      buffer.putLong(id);
-      if (data != null) {
-        buffer.put(data);
-      }
-      return buffer.array();
+
+    // the id is a transaction id, encoded as a delta from the previous one
+    boolean isTransaction() {
+      return this != SERVER_MESSAGE && this != DONE;
     }
-  }
+  }  
+
+  private static final Operation[] OPERATIONS = Operation.values();
+
+  /*
+   * The timeline is kept in parallel arrays, one slot per op or per range of acks. On the wire each slot is its type
+   * ordinal followed by the id (a zigzag varint, delta encoded against the previous transaction id), the range length
+   * for acks and the length and bytes of the payload for the ops that carry one.
+   */
+  private byte[] types = new byte[8];
+  private long[] ids = new long[8];
+  private int[] runs = new int[8];
+  private byte[][] payloads = new byte[8][];
+  private int slots;
+  private int opCount;
+
+  private boolean stopAdding;
 
   @Override
   public int replay(ReplayReceiver receiver) {
-    int count = 0;
-    for (Op op : timeline) {
-      switch(op.type) {
+    for (int slot = 0; slot < slots; slot++) {
+      long id = ids[slot];
+      byte[] data = payloads[slot];
+      switch(OPERATIONS[types[slot]]) {
         case INVOKE_MESSAGE:
-          receiver.message(new TransactionID(op.id), op.data);
+          receiver.message(new TransactionID(id), data);
           break;
         case RECEIVED:
-          receiver.received(new TransactionID(op.id));
+          for (int x = 0; x < runs[slot]; x++) {
+            receiver.received(new TransactionID(id + x));
+          }
           break;
         case RESULT:
-          receiver.result(new TransactionID(op.id), op.data);
+          receiver.result(new TransactionID(id), data);
           break;
         case SERVER_MESSAGE:
-          receiver.message(new ClientInstanceID(op.id), op.data);
+          receiver.message(new ClientInstanceID(id), data);
           break;
         case RESULT_RETIRED:
-          receiver.result(new TransactionID(op.id), op.data);
-      //  fallthrough
+          receiver.result(new TransactionID(id), data);
+          receiver.retired(new TransactionID(id));
+          break;
         case RETIRED:
-          receiver.retired(new TransactionID(op.id));
+          for (int x = 0; x < runs[slot]; x++) {
+            receiver.retired(new TransactionID(id + x));
+          }
           break;
         case DONE:
-          receiver.stats(TransactionID.NULL_ID, new long[] {op.id});
+          receiver.stats(TransactionID.NULL_ID, new long[] {id});
           break;
         case STATS:
-          ByteBuffer data = ByteBuffer.wrap(op.data);
-          long[] vals = new long[data.remaining() / Long.BYTES];
+          ByteBuffer buffer = ByteBuffer.wrap(data);
+          long[] vals = new long[buffer.remaining() / Long.BYTES];
           for (int x=0;x<vals.length;x++) {
-            vals[x] = data.getLong();
+            vals[x] = buffer.getLong();
           }
-          receiver.stats(new TransactionID(op.id), vals);
+          receiver.stats(new TransactionID(id), vals);
           break;
         default:
           throw new AssertionError("unknown op");
       }
-      count+=1;
     }
-    return count;
+    return opCount;
   }
   
   
@@ -176,8 +190,7 @@ public class LinearVoltronEntityMultiResponse extends DSOMessageBase implements
   
   private synchronized boolean buildOp(Operation type, long id, byte[] data) {
     if (!stopAdding) {
-      Op op = new Op(type, id, data);
-      timeline.add(op);
+      append(type, id, data);
       switch (type) {
         case DONE:
           stopAdding = true;
@@ -194,6 +207,33 @@ public class LinearVoltronEntityMultiResponse extends DSOMessageBase implements
 
     return false;
   }
+
+  private void append(Operation type, long id, byte[] data) {
+    opCount++;
+    if (type.isAck() && slots > 0) {
+      int last = slots - 1;
+      if (types[last] == type.ordinal() && ids[last] + runs[last] == id) {
+        runs[last]++;
+        return;
+      }
+    }
+    addSlot(type, id, 1, data);
+  }
+
+  private void addSlot(Operation type, long id, int run, byte[] data) {
+    if (slots == types.length) {
+      int capacity = slots * 2;
+      types = Arrays.copyOf(types, capacity);
+      ids = Arrays.copyOf(ids, capacity);
+      runs = Arrays.copyOf(runs, capacity);
+      payloads = Arrays.copyOf(payloads, capacity);
+    }
+    types[slots] = (byte) type.ordinal();
+    ids[slots] = id;
+    runs[slots] = run;
+    payloads[slots] = data;
+    slots++;
+  }
   
   @Override
   public boolean addRetired(TransactionID tid) {
@@ -233,24 +273,49 @@ public class LinearVoltronEntityMultiResponse extends DSOMessageBase implements
   public void stopAdding() {
     stopAddingTime = System.nanoTime();
     buildOp(Operation.DONE, stopAddingTime - startAddingTime, null);
-    timeline = Collections.unmodifiableList(timeline);
   }
   
   @Override
   protected boolean hydrateValue(byte name) throws IOException {
     if (name == OP_ID) {
-      Operation type = Operation.values()[getShortValue()];
+      Operation type = operationOf(getShortValue());
       long id = getLongValue();
       byte[] data = null;
       if (type.hasData()) {
-        int len = getIntValue();
-        data = new byte[len];
+        data = new byte[dataLength(getIntValue())];
         getInputStream().readFully(data);
       }
-      timeline.add(new Op(type, id, data));
+      append(type, id, data);
+      return true;
+    } else if (name == TIMELINE_ID) {
+      TCByteBufferInputStream in = getInputStream();
+      int count = getIntValue();
+      long lastTransaction = 0;
+      while (opCount < count) {
+        Operation type = operationOf(in.readByte());
+        long id = unzigzag(readVarLong(in));
+        if (type.isTransaction()) {
+          id += lastTransaction;
+          lastTransaction = id;
+        }
+        int run = 1;
+        byte[] data = null;
+        if (type.isAck()) {
+          run = (int) readVarLong(in);
+          if (run < 1) {
+            throw new IOException("invalid ack run " + run);
+          }
+          lastTransaction = id + run - 1;
+        } else if (type.hasData()) {
+          data = new byte[dataLength(readVarLong(in))];
+          in.readFully(data);
+        }
+        addSlot(type, id, run, data);
+        opCount += run;
+      }
       return true;
     } else if (name == DONE_ID) {
-      Assert.assertEquals(getIntValue(), timeline.size());
+      Assert.assertEquals(getIntValue(), opCount);
       return true;
     }
     return false;
@@ -258,18 +323,106 @@ public class LinearVoltronEntityMultiResponse extends DSOMessageBase implements
 
   @Override
   protected void dehydrateValues() {
-    int count = 0;
-    for (Op op : timeline) {
-      putNVPair(OP_ID, (short)op.type.ordinal());
-      getOutputStream().writeLong(op.id);
-      if (op.type.hasData()) {
-        getOutputStream().writeInt(op.data.length);
-        getOutputStream().write(op.data);
+    if (!isCompactTimelineAccepted()) {
+      dehydrateOps();
+      return;
+    }
+    TCByteBufferOutputStream out = getOutputStream();
+    putNVPair(TIMELINE_ID, opCount);
+    long lastTransaction = 0;
+    for (int slot = 0; slot < slots; slot++) {
+      Operation type = OPERATIONS[types[slot]];
+      long id = ids[slot];
+      out.write(type.ordinal());
+      if (type.isTransaction()) {
+        writeVarLong(out, zigzag(id - lastTransaction));
+        lastTransaction = id;
+      } else {
+        writeVarLong(out, zigzag(id));
+      }
+      if (type.isAck()) {
+        writeVarLong(out, runs[slot]);
+        lastTransaction = id + runs[slot] - 1;
+      } else if (type.hasData()) {
+        byte[] data = payloads[slot];
+        writeVarLong(out, data.length);
+        if (data.length >= REFERENCE_PAYLOAD_SIZE) {
+          out.write(TCByteBufferFactory.wrap(data));
+        } else {
+          out.write(data);
+        }
       }
-      count++;
     }
-    putNVPair(DONE_ID,count);
-    
+    putNVPair(DONE_ID, opCount);
+  }
+
+  private boolean isCompactTimelineAccepted() {
+    MessageChannel channel = getChannel();
+    return channel != null && channel.getAttachment(COMPACT_TIMELINE) != null;
+  }
+
+  // the layout understood by every client, ack ranges are expanded back into one op per transaction
+  private void dehydrateOps() {
+    TCByteBufferOutputStream out = getOutputStream();
+    for (int slot = 0; slot < slots; slot++) {
+      Operation type = OPERATIONS[types[slot]];
+      for (int x = 0; x < runs[slot]; x++) {
+        putNVPair(OP_ID, (short) type.ordinal());
+        out.writeLong(ids[slot] + x);
+        if (type.hasData()) {
+          byte[] data = payloads[slot];
+          out.writeInt(data.length);
+          if (data.length >= REFERENCE_PAYLOAD_SIZE) {
+            out.write(TCByteBufferFactory.wrap(data));
+          } else {
+            out.write(data);
+          }
+        }
+      }
+    }
+    putNVPair(DONE_ID, opCount);
+  }
+
+  private static long zigzag(long value) {
+    return (value << 1) ^ (value >> 63);
+  }
+
+  private static long unzigzag(long value) {
+    return (value >>> 1) ^ -(value & 1);
+  }
+
+  private static void writeVarLong(TCByteBufferOutputStream out, long value) {
+    while ((value & ~0x7FL) != 0) {
+      out.write((int) ((value & 0x7F) | 0x80));
+      value >>>= 7;
+    }
+    out.write((int) value);
+  }
+
+  private static Operation operationOf(int ordinal) throws IOException {
+    if (ordinal < 0 || ordinal >= OPERATIONS.length) {
+      throw new IOException("unknown operation " + ordinal);
+    }
+    return OPERATIONS[ordinal];
+  }
+
+  private static int dataLength(long length) throws IOException {
+    if (length < 0 || length > Integer.MAX_VALUE) {
+      throw new IOException("invalid data length " + length);
+    }
+    return (int) length;
+  }
+
+  private static long readVarLong(TCByteBufferInputStream in) throws IOException {
+    long value = 0;
+    for (int shift = 0; shift < Long.SIZE; shift += 7) {
+      byte b = in.readByte();
+      value |= (long) (b & 0x7F) << shift;
+      if ((b & 0x80) == 0) {
+        return value;
+      }
+    }
+    throw new IOException("malformed varint");
   }
   
   private long stopAddingTime;
@@ -21,12 +21,13 @@ package com.tc.entity;
 
 import org.terracotta.entity.EntityMessage;
 
+import com.tc.async.api.MultiThreadedEventContext;
 import com.tc.net.ClientID;
 import com.tc.object.EntityDescriptor;
 import com.tc.object.tx.TransactionID;
 
 
-public interface VoltronEntityMessage {
+public interface VoltronEntityMessage extends MultiThreadedEventContext {
   enum Type {
     /**
      * Called to add a reference from a client to an existing entity.
@@ -123,4 +124,26 @@ public interface VoltronEntityMessage {
    * @return The EntityMessage instance or null, if there isn't one.
    */
   public EntityMessage getEntityMessage();
+
+  /**
+   * Invokes are ordered per entity instance so they can run on separate lanes of the message stage.  Everything else
+   * is a flush of all the lanes and so has no key of its own.
+   */
+  @Override
+  default Object getSchedulingKey() {
+    if (getVoltronType() == Type.INVOKE_ACTION) {
+      EntityDescriptor descriptor = getEntityDescriptor();
+      return descriptor.isIndexed() ? descriptor.getFetchID() : descriptor.getEntityID();
+    }
+    return null;
+  }
+
+  /**
+   * Lifecycle operations, pipeline flushes and disconnects change which entities and references exist so every
+   * invoke scheduled ahead of them, in any lane, must finish first.
+   */
+  @Override
+  default boolean flush() {
+    return getVoltronType() != Type.INVOKE_ACTION;
+  }
 }
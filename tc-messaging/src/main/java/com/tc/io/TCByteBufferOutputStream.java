@@ -27,7 +27,10 @@ import java.io.IOException;
 import java.io.OutputStream;
 import java.io.UTFDataFormatException;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Set;
 
 /**
  * Use me to write data to a set of TCByteBuffer instances. <br>
@@ -48,6 +51,9 @@ public final class TCByteBufferOutputStream extends OutputStream implements TCBy
 
   private final List<TCByteBuffer> localBuffers             = new ArrayList<TCByteBuffer>(16);
 
+  // buffers handed in through write(TCByteBuffer[]), these are passed through as is rather than consolidated
+  private Set<TCByteBuffer>      appended;
+
   private TCByteBuffer           current;
   private boolean                closed;
   private int                    written;
@@ -58,7 +64,9 @@ public final class TCByteBufferOutputStream extends OutputStream implements TCBy
   // duplicate(), etc)
 
   public TCByteBufferOutputStream() {
-    this(DEFAULT_INITIAL_BLOCK_SIZE, DEFAULT_MAX_BLOCK_SIZE, false);
+    // with pooling on, write straight into pooled fixed size chunks rather than growing (and consolidating) blocks
+    this(TCByteBufferFactory.isPoolingEnabled() ? TCByteBufferFactory.FIXED_BUFFER_SIZE : DEFAULT_INITIAL_BLOCK_SIZE,
+         TCByteBufferFactory.isPoolingEnabled() ? TCByteBufferFactory.FIXED_BUFFER_SIZE : DEFAULT_MAX_BLOCK_SIZE, false);
   }
 
   public TCByteBufferOutputStream(int blockSize, boolean direct) {
@@ -117,6 +125,8 @@ public final class TCByteBufferOutputStream extends OutputStream implements TCBy
   /**
    * Add arbitrary buffers into the stream. All of the data (from position 0 to limit()) in each buffer passed will be
    * used in the stream. If that is not what you want, setup your buffers differently before calling this write()
+   * <br>
+   * The buffers are referenced, not copied, and they are not merged with their neighbours when the stream is closed.
    */
   @Override
   public void write(TCByteBuffer[] data) {
@@ -139,7 +149,12 @@ public final class TCByteBufferOutputStream extends OutputStream implements TCBy
       }
 
       written += len;
-      buffers.add(element.duplicate().position(0));
+      TCByteBuffer view = element.duplicate().position(0);
+      if (appended == null) {
+        appended = Collections.newSetFromMap(new IdentityHashMap<TCByteBuffer, Boolean>());
+      }
+      appended.add(view);
+      buffers.add(view);
     }
 
     if (!reuseCurrent) {
@@ -244,8 +259,8 @@ public final class TCByteBufferOutputStream extends OutputStream implements TCBy
       final int startIndex = index;
       int size = buffers.get(startIndex).limit();
 
-      if (size < maxBlockSize) {
-        while (index < (num - 1)) {
+      if (size < maxBlockSize && !isAppended(buffers.get(startIndex))) {
+        while (index < (num - 1) && !isAppended(buffers.get(index + 1))) {
           int nextSize = buffers.get(index + 1).limit();
           if ((size + nextSize) <= maxBlockSize) {
             size += nextSize;
@@ -276,6 +291,10 @@ public final class TCByteBufferOutputStream extends OutputStream implements TCBy
     buffers = finalBufs;
   }
 
+  private boolean isAppended(TCByteBuffer buffer) {
+    return appended != null && appended.contains(buffer);
+  }
+
   @Override
   public void writeBoolean(boolean value) {
     try {
@@ -37,6 +37,13 @@ public interface IBatchableGroupMessage<E> {
    * @return The current number of elements in the batch.
    */
   public int getBatchSize();
+
+  /**
+   * @return The approximate number of payload bytes carried by the batch, or 0 if the message type does not track it.
+   */
+  public default long getPayloadSize() {
+    return 0L;
+  }
   
   public void setSequenceID(long rid);
 
@@ -19,14 +19,17 @@
 package com.tc.l2.msg;
 
 import com.tc.async.api.OrderedEventContext;
+import com.tc.bytes.TCByteBufferReference;
 import com.tc.io.TCByteBufferInput;
 import com.tc.io.TCByteBufferOutput;
 import com.tc.net.groups.AbstractGroupMessage;
+import com.tc.net.protocol.tcm.TCMessageImpl;
 import com.tc.util.Assert;
 
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 
 
 public class ReplicationMessage extends AbstractGroupMessage implements OrderedEventContext, IBatchableGroupMessage<SyncReplicationActivity> {
@@ -48,6 +51,7 @@ public class ReplicationMessage extends AbstractGroupMessage implements OrderedE
 
 
   private List<SyncReplicationActivity> activities;
+  private long payloadSize;
   long rid = 0;
   // We will keep a flag to track whether this message is outgoing (created here and being sent to the network) or incoming
   //  (created elsewhere and decoded here) to ensure that it is being used correctly.
@@ -70,6 +74,7 @@ public class ReplicationMessage extends AbstractGroupMessage implements OrderedE
     super(IGNORED);
     this.activities = new ArrayList<SyncReplicationActivity>();
     this.activities.add(activity);
+    this.payloadSize = activity.getPayloadSize();
     this.didCreateLocally = true;
   }
   
@@ -86,6 +91,7 @@ public class ReplicationMessage extends AbstractGroupMessage implements OrderedE
   @Override
   public void addToBatch(SyncReplicationActivity element) {
     this.activities.add(element);
+    this.payloadSize += element.getPayloadSize();
   }
 
   /**
@@ -95,6 +101,11 @@ public class ReplicationMessage extends AbstractGroupMessage implements OrderedE
     return this.activities.size();
   }
 
+  @Override
+  public long getPayloadSize() {
+    return this.payloadSize;
+  }
+
   public List<SyncReplicationActivity> getActivities() {
     // If this was created locally, we shouldn't be reaching into it to read the underlying activity - this is for the
     //  receiving side, only.
@@ -122,6 +133,35 @@ public class ReplicationMessage extends AbstractGroupMessage implements OrderedE
     }
   }
 
+  /**
+   * The activities of a received message keep their payloads as views into the message buffers, so the buffers are
+   * only recycled once the last of those views has been released.
+   */
+  @Override
+  public boolean isRecycleOnRead(TCMessageImpl message) {
+    List<TCByteBufferReference> views = new ArrayList<TCByteBufferReference>();
+    if (this.activities != null) {
+      for (SyncReplicationActivity activity : this.activities) {
+        TCByteBufferReference payload = activity.payload;
+        if (payload != null && payload.isView()) {
+          views.add(payload);
+        }
+      }
+    }
+    if (views.isEmpty()) {
+      return true;
+    }
+    AtomicInteger outstanding = new AtomicInteger(views.size());
+    for (TCByteBufferReference view : views) {
+      view.whenReleased(()->{
+        if (outstanding.decrementAndGet() == 0) {
+          message.recycle();
+        }
+      });
+    }
+    return false;
+  }
+
   @Override
   protected void basicSerializeTo(TCByteBufferOutput out) {
     int messageType = getType();
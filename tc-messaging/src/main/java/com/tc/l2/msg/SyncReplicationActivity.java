@@ -19,6 +19,7 @@
 package com.tc.l2.msg;
 
 import com.tc.async.api.OrderedEventContext;
+import com.tc.bytes.TCByteBufferReference;
 import com.tc.io.TCByteBufferInput;
 import com.tc.io.TCByteBufferOutput;
 import com.tc.net.ClientID;
@@ -148,14 +149,14 @@ public class SyncReplicationActivity implements OrderedEventContext {
   
   public static SyncReplicationActivity createLifecycleMessage(EntityID eid, long version, FetchID fetch, ClientID src, ClientInstanceID instance, TransactionID tid, TransactionID oldest, ActivityType action, byte[] payload) {
     Assert.assertTrue(lifecycle.contains(action));
-    return new SyncReplicationActivity(ActivityID.getNextID(),null,eid,version,fetch,src,instance,tid,oldest,action,payload,0,0,null);
+    return new SyncReplicationActivity(ActivityID.getNextID(),null,eid,version,fetch,src,instance,tid,oldest,action,wrap(payload),0,0,null);
   }
 
   public static SyncReplicationActivity createInvokeMessage(FetchID fetchID, ClientID src, ClientInstanceID instance, TransactionID tid, TransactionID oldest, ActivityType action, byte[] payload, int concurrency, String debugId) {
     // We shouldn't be using this helper for any of the specialized activity types.
     Assert.assertTrue(ActivityType.INVOKE_ACTION == action);
     int referenceCount = 0;
-    return new SyncReplicationActivity(ActivityID.getNextID(), null, EntityID.NULL_ID, EntityDescriptor.INVALID_VERSION, fetchID, src, instance, tid, oldest, action, payload, concurrency, referenceCount, debugId);
+    return new SyncReplicationActivity(ActivityID.getNextID(), null, EntityID.NULL_ID, EntityDescriptor.INVALID_VERSION, fetchID, src, instance, tid, oldest, action, wrap(payload), concurrency, referenceCount, debugId);
   }
 
   public static SyncReplicationActivity createStartSyncMessage(SyncReplicationActivity.EntityCreationTuple[] tuplesForCreation) {
@@ -165,11 +166,11 @@ public class SyncReplicationActivity implements OrderedEventContext {
 
   public static SyncReplicationActivity createEndSyncMessage(byte[] extras) {
     int referenceCount = 0;
-    return new SyncReplicationActivity(ActivityID.getNextID(), null, EntityID.NULL_ID, 0L, FetchID.NULL_ID, ClientID.NULL_ID, ClientInstanceID.NULL_ID, TransactionID.NULL_ID, TransactionID.NULL_ID, ActivityType.SYNC_END, extras, 0, referenceCount, null);
+    return new SyncReplicationActivity(ActivityID.getNextID(), null, EntityID.NULL_ID, 0L, FetchID.NULL_ID, ClientID.NULL_ID, ClientInstanceID.NULL_ID, TransactionID.NULL_ID, TransactionID.NULL_ID, ActivityType.SYNC_END, wrap(extras), 0, referenceCount, null);
   }
 
   public static SyncReplicationActivity createStartEntityMessage(EntityID id, long version, FetchID fetchID, byte[] configPayload, int references) {
-    return new SyncReplicationActivity(ActivityID.getNextID(), null, id, version, fetchID, ClientID.NULL_ID, ClientInstanceID.NULL_ID, TransactionID.NULL_ID, TransactionID.NULL_ID, ActivityType.SYNC_ENTITY_BEGIN, configPayload, 0, references, null);
+    return new SyncReplicationActivity(ActivityID.getNextID(), null, id, version, fetchID, ClientID.NULL_ID, ClientInstanceID.NULL_ID, TransactionID.NULL_ID, TransactionID.NULL_ID, ActivityType.SYNC_ENTITY_BEGIN, wrap(configPayload), 0, references, null);
   }
 
   public static SyncReplicationActivity createEndEntityMessage(EntityID id, long version, FetchID fetchID) {
@@ -195,7 +196,7 @@ public class SyncReplicationActivity implements OrderedEventContext {
     // We can only synchronize positive-number keys.
     Assert.assertTrue(concurrency > 0);
     int referenceCount = 0;
-    return new SyncReplicationActivity(ActivityID.getNextID(), null, id, version, fetchID, ClientID.NULL_ID, ClientInstanceID.NULL_ID, TransactionID.NULL_ID, TransactionID.NULL_ID, ActivityType.SYNC_ENTITY_CONCURRENCY_PAYLOAD, payload, concurrency, referenceCount, debugId);
+    return new SyncReplicationActivity(ActivityID.getNextID(), null, id, version, fetchID, ClientID.NULL_ID, ClientInstanceID.NULL_ID, TransactionID.NULL_ID, TransactionID.NULL_ID, ActivityType.SYNC_ENTITY_CONCURRENCY_PAYLOAD, wrap(payload), concurrency, referenceCount, debugId);
   }
 
   public static SyncReplicationActivity createStartMessage() {
@@ -203,6 +204,9 @@ public class SyncReplicationActivity implements OrderedEventContext {
     return new SyncReplicationActivity(ActivityID.getNextID(), null, EntityID.NULL_ID, 0L, FetchID.NULL_ID, ClientID.NULL_ID, ClientInstanceID.NULL_ID, TransactionID.NULL_ID, TransactionID.NULL_ID, ActivityType.SYNC_START, null, 0, referenceCount, null);
   }
 
+  // payloads smaller than this are cheaper to copy into the stream than to send as a buffer of their own
+  private static final int INLINE_PAYLOAD_LIMIT = 1024;
+
   private final ActivityID id;
   final ActivityType action;
   private final EntityCreationTuple[] entitiesForSyncStart;
@@ -213,7 +217,7 @@ public class SyncReplicationActivity implements OrderedEventContext {
   final TransactionID tid;
   final TransactionID oldest;
 
-  final byte[] payload;
+  final TCByteBufferReference payload;
   final int concurrency;
   // NOTE:  referenceCount is only used by SYNC_ENTITY_BEGIN.
   final int referenceCount;
@@ -222,7 +226,11 @@ public class SyncReplicationActivity implements OrderedEventContext {
 
   final String debugId;
 
-  private SyncReplicationActivity(ActivityID id, EntityCreationTuple[] entitiesForSyncStart, EntityID entity, long version, FetchID fetch, ClientID src, ClientInstanceID instance, TransactionID tid, TransactionID oldest, ActivityType action, byte[] payload, int concurrency, int referenceCount, String debugId) {
+  private static TCByteBufferReference wrap(byte[] payload) {
+    return (payload != null) ? TCByteBufferReference.wrap(payload) : null;
+  }
+
+  private SyncReplicationActivity(ActivityID id, EntityCreationTuple[] entitiesForSyncStart, EntityID entity, long version, FetchID fetch, ClientID src, ClientInstanceID instance, TransactionID tid, TransactionID oldest, ActivityType action, TCByteBufferReference payload, int concurrency, int referenceCount, String debugId) {
     Assert.assertNotNull(id);
     Assert.assertNotNull(action);
     if (ActivityType.SYNC_BEGIN == action) {
@@ -266,9 +274,35 @@ public class SyncReplicationActivity implements OrderedEventContext {
   }
 
   public byte[] getExtendedData() {
+    Assert.assertTrue(ActivityType.SYNC_BEGIN != this.action);
+    return (payload != null) ? payload.toByteArray() : null;
+  }
+
+  /**
+   * The extended data without forcing a copy.  On the receiving side this is a read-only view over the buffers of the
+   * replication message it arrived in; those buffers are only recycled once every activity of the message has
+   * released (or materialized) its payload.
+   */
+  public TCByteBufferReference getPayloadReference() {
     Assert.assertTrue(ActivityType.SYNC_BEGIN != this.action);
     return payload;
   }
+
+  /**
+   * Lets go of the buffers backing the extended data if nobody has asked for it.
+   */
+  public void releasePayload() {
+    if (payload != null) {
+      payload.release();
+    }
+  }
+
+  /**
+   * @return the length of the extended data, 0 if there is none
+   */
+  public int getPayloadSize() {
+    return (payload != null) ? payload.length() : 0;
+  }
   
   public ClientID getSource() {
     Assert.assertTrue(ActivityType.SYNC_BEGIN != this.action);
@@ -364,8 +398,13 @@ public class SyncReplicationActivity implements OrderedEventContext {
       out.writeLong(oldest.toLong());
       
       if (payload != null) {
-        out.writeInt(payload.length);
-        out.write(payload);
+        out.writeInt(payload.length());
+        if (payload.length() < INLINE_PAYLOAD_LIMIT) {
+          out.write(payload.toByteArray());
+        } else {
+          // large payloads are appended as a wrapper around the original array rather than copied into the stream
+          out.write(payload.toBuffers());
+        }
       } else {
         out.writeInt(0);
       }
@@ -398,7 +437,7 @@ public class SyncReplicationActivity implements OrderedEventContext {
     ClientInstanceID instance = ClientInstanceID.NULL_ID;
     TransactionID tid = TransactionID.NULL_ID;
     TransactionID oldest = TransactionID.NULL_ID;
-    byte[] payload = null;
+    TCByteBufferReference payload = null;
     int concurrency = 0;
     int referenceCount = 0;
     String debug = null;
@@ -422,8 +461,14 @@ public class SyncReplicationActivity implements OrderedEventContext {
       oldest = new TransactionID(in.readLong());
       
       int length = in.readInt();
-      payload = new byte[length];
-      in.readFully(payload);
+      if (length > 0) {
+        // leave the payload in the message buffers, it is only copied out if and when it is needed
+        payload = TCByteBufferReference.view(in.duplicateAndLimit(length).toArray());
+        long skipped = in.skip(length);
+        Assert.assertEquals(length, skipped);
+      } else {
+        payload = TCByteBufferReference.wrap(new byte[0]);
+      }
       
       // Note that we only pass concurrency key or reference count in certain cases.
       concurrency = 0;
@@ -21,6 +21,7 @@ package com.tc.net.core;
 import com.tc.net.TCSocketAddress;
 import com.tc.net.core.event.TCConnectionEventListener;
 import com.tc.net.protocol.NetworkMessageSink;
+import com.tc.net.protocol.transport.WireProtocolCompression;
 import com.tc.util.TCTimeoutException;
 
 import java.io.IOException;
@@ -145,6 +146,13 @@ public interface TCConnection extends NetworkMessageSink {
    * @return true iff the connection as been marked for close but hasn't been closed yet
    */
   boolean isClosePending();
-  
+
+  /**
+   * Payload compression negotiated on this connection
+   */
+  default WireProtocolCompression getCompression() {
+    return WireProtocolCompression.DISABLED;
+  }
+
   Map<String, ?> getState();
 }
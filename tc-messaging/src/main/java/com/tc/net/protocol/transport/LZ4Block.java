@@ -0,0 +1,223 @@
+/*
+ *
+ *  The contents of this file are subject to the Terracotta Public License Version
+ *  2.0 (the "License"); You may not use this file except in compliance with the
+ *  License. You may obtain a copy of the License at
+ *
+ *  http://terracotta.org/legal/terracotta-public-license.
+ *
+ *  Software distributed under the License is distributed on an "AS IS" basis,
+ *  WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing rights and limitations under the License.
+ *
+ *  The Covered Software is Terracotta Core.
+ *
+ *  The Initial Developer of the Covered Software is
+ *  Terracotta, Inc., a Software AG company
+ *
+ */
+package com.tc.net.protocol.transport;
+
+/**
+ * Plain java encoder and decoder for the LZ4 block format (no frame, no checksums). The encoder is the single pass
+ * greedy one of the reference implementation: it trades ratio for speed, which is what we want on the write path of a
+ * connection. The decoder accepts any valid block, whoever produced it.
+ */
+final class LZ4Block {
+  private static final int MIN_MATCH     = 4;
+  // the last match must start at least 12 bytes before the end of the block
+  private static final int MF_LIMIT      = 12;
+  // the last 5 bytes are always literals
+  private static final int LAST_LITERALS = 5;
+  private static final int MAX_DISTANCE  = (1 << 16) - 1;
+  private static final int HASH_LOG      = 12;
+  // after this many misses in a row the encoder starts skipping ahead, incompressible data goes through quickly
+  private static final int SKIP_TRIGGER  = 6;
+  private static final int RUN_MASK      = 0x0F;
+
+  private LZ4Block() {
+    // static utility
+  }
+
+  static int maxCompressedLength(int length) {
+    return length + length / 255 + 16;
+  }
+
+  /**
+   * @return the number of bytes written to <code>dst</code>, which needs room for
+   *         {@link #maxCompressedLength(int)} bytes
+   */
+  static int compress(byte[] src, int srcOff, int srcLen, byte[] dst, int dstOff) {
+    final int srcEnd = srcOff + srcLen;
+    final int matchLimit = srcEnd - LAST_LITERALS;
+    final int mfLimit = srcEnd - MF_LIMIT;
+
+    int sOff = srcOff;
+    int anchor = srcOff;
+    int dOff = dstOff;
+
+    if (srcLen > MF_LIMIT) {
+      // positions relative to srcOff, zero doubles as "empty" since every candidate is verified anyway
+      final int[] table = new int[1 << HASH_LOG];
+      table[hash(readInt(src, sOff))] = 0;
+      sOff++;
+
+      int searchCount = 1 << SKIP_TRIGGER;
+      while (sOff < mfLimit) {
+        final int h = hash(readInt(src, sOff));
+        int ref = srcOff + table[h];
+        table[h] = sOff - srcOff;
+
+        if (sOff - ref > MAX_DISTANCE || readInt(src, ref) != readInt(src, sOff)) {
+          sOff += searchCount++ >>> SKIP_TRIGGER;
+          continue;
+        }
+        searchCount = 1 << SKIP_TRIGGER;
+
+        while (sOff > anchor && ref > srcOff && src[sOff - 1] == src[ref - 1]) {
+          sOff--;
+          ref--;
+        }
+
+        int matchLen = MIN_MATCH;
+        while (sOff + matchLen < matchLimit && src[ref + matchLen] == src[sOff + matchLen]) {
+          matchLen++;
+        }
+
+        dOff = writeSequence(src, anchor, sOff - anchor, sOff - ref, matchLen, dst, dOff);
+        sOff += matchLen;
+        anchor = sOff;
+
+        if (sOff < mfLimit) {
+          table[hash(readInt(src, sOff - 2))] = sOff - 2 - srcOff;
+        }
+      }
+    }
+
+    final int literals = srcEnd - anchor;
+    final int token = dOff++;
+    if (literals >= RUN_MASK) {
+      dst[token] = (byte) (RUN_MASK << 4);
+      dOff = writeLength(literals - RUN_MASK, dst, dOff);
+    } else {
+      dst[token] = (byte) (literals << 4);
+    }
+    System.arraycopy(src, anchor, dst, dOff, literals);
+    dOff += literals;
+    return dOff - dstOff;
+  }
+
+  /**
+   * Decodes exactly <code>dstLen</code> bytes from the block at <code>src</code>.
+   *
+   * @throws IllegalArgumentException if the block is malformed or does not decode to <code>dstLen</code> bytes
+   */
+  static void decompress(byte[] src, int srcOff, int srcLen, byte[] dst, int dstOff, int dstLen) {
+    final int srcEnd = srcOff + srcLen;
+    final int dstEnd = dstOff + dstLen;
+    int sOff = srcOff;
+    int dOff = dstOff;
+
+    while (true) {
+      if (sOff >= srcEnd) { throw malformed(sOff - srcOff); }
+      final int token = src[sOff++] & 0xFF;
+
+      int literals = token >>> 4;
+      if (literals == RUN_MASK) {
+        int b;
+        do {
+          if (sOff >= srcEnd) { throw malformed(sOff - srcOff); }
+          b = src[sOff++] & 0xFF;
+          literals += b;
+        } while (b == 0xFF && literals > 0);
+      }
+      if (literals < 0 || literals > srcEnd - sOff || literals > dstEnd - dOff) { throw malformed(sOff - srcOff); }
+      System.arraycopy(src, sOff, dst, dOff, literals);
+      sOff += literals;
+      dOff += literals;
+
+      if (sOff == srcEnd) {
+        break;
+      }
+
+      if (srcEnd - sOff < 2) { throw malformed(sOff - srcOff); }
+      final int offset = (src[sOff] & 0xFF) | ((src[sOff + 1] & 0xFF) << 8);
+      sOff += 2;
+      if (offset == 0 || offset > dOff - dstOff) { throw malformed(sOff - srcOff); }
+
+      int matchLen = token & RUN_MASK;
+      if (matchLen == RUN_MASK) {
+        int b;
+        do {
+          if (sOff >= srcEnd) { throw malformed(sOff - srcOff); }
+          b = src[sOff++] & 0xFF;
+          matchLen += b;
+        } while (b == 0xFF && matchLen > 0);
+      }
+      matchLen += MIN_MATCH;
+      if (matchLen < MIN_MATCH || matchLen > dstEnd - dOff) { throw malformed(sOff - srcOff); }
+
+      final int ref = dOff - offset;
+      if (offset >= matchLen) {
+        System.arraycopy(dst, ref, dst, dOff, matchLen);
+      } else {
+        // overlapping copy repeats the last offset bytes
+        for (int i = 0; i < matchLen; i++) {
+          dst[dOff + i] = dst[ref + i];
+        }
+      }
+      dOff += matchLen;
+    }
+
+    if (dOff != dstEnd) { throw new IllegalArgumentException("LZ4 block decoded to " + (dOff - dstOff)
+                                                             + " bytes, expected " + dstLen); }
+  }
+
+  private static int writeSequence(byte[] src, int literalOff, int literals, int offset, int matchLen, byte[] dst,
+                                   int dOff) {
+    final int token = dOff++;
+    int tokenValue;
+    if (literals >= RUN_MASK) {
+      tokenValue = RUN_MASK << 4;
+      dOff = writeLength(literals - RUN_MASK, dst, dOff);
+    } else {
+      tokenValue = literals << 4;
+    }
+    System.arraycopy(src, literalOff, dst, dOff, literals);
+    dOff += literals;
+
+    dst[dOff++] = (byte) offset;
+    dst[dOff++] = (byte) (offset >>> 8);
+
+    final int extra = matchLen - MIN_MATCH;
+    if (extra >= RUN_MASK) {
+      tokenValue |= RUN_MASK;
+      dOff = writeLength(extra - RUN_MASK, dst, dOff);
+    } else {
+      tokenValue |= extra;
+    }
+    dst[token] = (byte) tokenValue;
+    return dOff;
+  }
+
+  private static int writeLength(int length, byte[] dst, int dOff) {
+    while (length >= 0xFF) {
+      dst[dOff++] = (byte) 0xFF;
+      length -= 0xFF;
+    }
+    dst[dOff++] = (byte) length;
+    return dOff;
+  }
+
+  private static int readInt(byte[] b, int off) {
+    return (b[off] & 0xFF) | ((b[off + 1] & 0xFF) << 8) | ((b[off + 2] & 0xFF) << 16) | ((b[off + 3] & 0xFF) << 24);
+  }
+
+  private static int hash(int sequence) {
+    return (sequence * -1640531535) >>> (32 - HASH_LOG);
+  }
+
+  private static IllegalArgumentException malformed(int position) {
+    return new IllegalArgumentException("Malformed LZ4 block at offset " + position);
+  }
+}
@@ -95,6 +95,15 @@ public class WireProtocolAdaptorImpl extends AbstractTCProtocolAdaptor implement
     WireProtocolHeader wph = (WireProtocolHeader) hdr;
     final WireProtocolMessage rv;
 
+    WireProtocolCompression compression = source.getCompression();
+    if (compression == null) {
+      compression = WireProtocolCompression.DISABLED;
+    }
+    compression.received(wph);
+    if (wph.isCompressed()) {
+      data = compression.decompress(wph, data);
+    }
+
     if (wph.isHandshakeOrHealthCheckMessage()) {
       rv = new TransportMessageImpl(source, wph, data);
     } else {
@@ -0,0 +1,231 @@
+/*
+ *
+ *  The contents of this file are subject to the Terracotta Public License Version
+ *  2.0 (the "License"); You may not use this file except in compliance with the
+ *  License. You may obtain a copy of the License at
+ *
+ *  http://terracotta.org/legal/terracotta-public-license.
+ *
+ *  Software distributed under the License is distributed on an "AS IS" basis,
+ *  WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing rights and limitations under the License.
+ *
+ *  The Covered Software is Terracotta Core.
+ *
+ *  The Initial Developer of the Covered Software is
+ *  Terracotta, Inc., a Software AG company
+ *
+ */
+package com.tc.net.protocol.transport;
+
+import com.tc.bytes.TCByteBuffer;
+import com.tc.bytes.TCByteBufferFactory;
+import com.tc.net.protocol.TCProtocolException;
+import com.tc.text.PrettyPrintable;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Per connection LZ4 compression of wire protocol payloads. Negotiation piggybacks on the wire header: while
+ * compression is enabled locally every outgoing header carries {@link WireProtocolHeader#FLAG_ACCEPTS_COMPRESSION}, and
+ * payloads are only compressed once the peer has sent a header with that flag (the transport handshake does this
+ * first thing). Older peers leave the flags word zeroed so they are never sent anything they can't read. Decoding is
+ * driven by {@link WireProtocolHeader#FLAG_COMPRESSED} alone.
+ * <p>
+ * Compression happens after message grouping so a whole group is compressed as one block, small messages included.
+ * Payloads under the threshold, and payloads that don't shrink, go out untouched.
+ */
+public class WireProtocolCompression implements PrettyPrintable {
+  public static final int                     DEFAULT_MAX_UNCOMPRESSED_LENGTH = 128 * 1024 * 1024;
+  public static final WireProtocolCompression DISABLED = new WireProtocolCompression(false, Integer.MAX_VALUE);
+
+  private static final int LENGTH_PREFIX = Integer.BYTES;
+  // an LZ4 block can not expand by more than this, each input byte yields at most 255 output bytes
+  private static final int MAX_EXPANSION = 255;
+
+  private final boolean    enabled;
+  private final int        threshold;
+  private final int        maxUncompressedLength;
+  private volatile boolean peerAccepts;
+
+  private final LongAdder  compressedMessages      = new LongAdder();
+  private final LongAdder  incompressibleMessages  = new LongAdder();
+  private final LongAdder  bytesBeforeCompress     = new LongAdder();
+  private final LongAdder  bytesAfterCompress      = new LongAdder();
+  private final LongAdder  compressNanos           = new LongAdder();
+  private final LongAdder  decompressedMessages    = new LongAdder();
+  private final LongAdder  bytesBeforeDecompress   = new LongAdder();
+  private final LongAdder  bytesAfterDecompress    = new LongAdder();
+  private final LongAdder  decompressNanos         = new LongAdder();
+
+  /**
+   * @param threshold payloads smaller than this many bytes are sent uncompressed
+   */
+  public WireProtocolCompression(boolean enabled, int threshold) {
+    this(enabled, threshold, DEFAULT_MAX_UNCOMPRESSED_LENGTH);
+  }
+
+  /**
+   * @param maxUncompressedLength compressed payloads claiming to inflate to more than this many bytes are rejected
+   *        before anything is allocated for them
+   */
+  public WireProtocolCompression(boolean enabled, int threshold, int maxUncompressedLength) {
+    this.enabled = enabled;
+    this.threshold = Math.max(threshold, LENGTH_PREFIX + 1);
+    this.maxUncompressedLength = Math.max(maxUncompressedLength, 0);
+  }
+
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  /**
+   * @return true once both ends have compression enabled
+   */
+  public boolean isActive() {
+    return enabled && peerAccepts;
+  }
+
+  /**
+   * Marks an outgoing header, call before the checksum is computed.
+   */
+  public void prepare(WireProtocolHeader header) {
+    if (enabled) {
+      header.setFlags(header.getFlags() | WireProtocolHeader.FLAG_ACCEPTS_COMPRESSION);
+    }
+  }
+
+  /**
+   * Notes the capabilities of the peer from an incoming header.
+   */
+  public void received(WireProtocolHeader header) {
+    if (!peerAccepts && header.acceptsCompression()) {
+      peerAccepts = true;
+    }
+  }
+
+  /**
+   * Compresses the payload of a finalized message when it is worth it. The compressed frame gets a header of its own,
+   * the message and its buffers are left alone so the message can still be recycled, or resent, once written.
+   *
+   * @return the buffers to put on the wire, header first
+   */
+  public TCByteBuffer[] compress(WireProtocolMessage message) {
+    final TCByteBuffer[] data = message.getEntireMessageData();
+    final int length = message.getDataLength();
+    if (!isActive() || length < threshold || message.getWireProtocolHeader().isHandshakeOrHealthCheckMessage()) {
+      return data;
+    }
+
+    final long start = System.nanoTime();
+    final byte[] raw = gather(data, 1, length);
+    final byte[] block = new byte[LENGTH_PREFIX + LZ4Block.maxCompressedLength(length)];
+    final int blockLength = LENGTH_PREFIX + LZ4Block.compress(raw, 0, length, block, LENGTH_PREFIX);
+    if (blockLength >= length) {
+      incompressibleMessages.increment();
+      compressNanos.add(System.nanoTime() - start);
+      return data;
+    }
+    final TCByteBuffer payload = TCByteBufferFactory.wrap(block);
+    payload.putInt(0, length);
+    payload.limit(blockLength);
+
+    final WireProtocolHeader header = message.getWireProtocolHeader().copy();
+    header.setFlags(header.getFlags() | WireProtocolHeader.FLAG_COMPRESSED);
+    header.setTotalPacketLength(header.getHeaderByteLength() + blockLength);
+    header.computeChecksum();
+
+    compressNanos.add(System.nanoTime() - start);
+    compressedMessages.increment();
+    bytesBeforeCompress.add(length);
+    bytesAfterCompress.add(blockLength);
+    return new TCByteBuffer[] { header.getDataBuffer(), payload };
+  }
+
+  /**
+   * Restores the payload of an incoming message flagged as compressed. The header is rewritten to describe the
+   * uncompressed payload and the given buffers are recycled.
+   */
+  public TCByteBuffer[] decompress(WireProtocolHeader header, TCByteBuffer[] data) throws TCProtocolException {
+    final long start = System.nanoTime();
+    final int blockLength = header.getTotalPacketLength() - header.getHeaderByteLength();
+    if (blockLength <= LENGTH_PREFIX) { throw new TCProtocolException("Compressed payload too short: " + blockLength); }
+
+    final byte[] block = gather(data, 0, blockLength);
+    final int length = TCByteBufferFactory.wrap(block).getInt(0);
+    // the length comes from the peer, check it before allocating anything for it
+    if (length < 0 || length > Integer.MAX_VALUE - header.getHeaderByteLength()) {
+      throw new TCProtocolException("Invalid uncompressed payload length: " + length);
+    }
+    if (length > maxUncompressedLength) {
+      throw new TCProtocolException("Uncompressed payload length " + length + " exceeds the maximum of "
+                                    + maxUncompressedLength);
+    }
+    if (length > (long) (blockLength - LENGTH_PREFIX) * MAX_EXPANSION) {
+      throw new TCProtocolException("Uncompressed payload length " + length + " is not reachable from a "
+                                    + (blockLength - LENGTH_PREFIX) + " byte block");
+    }
+    final byte[] raw = new byte[length];
+    try {
+      LZ4Block.decompress(block, LENGTH_PREFIX, blockLength - LENGTH_PREFIX, raw, 0, length);
+    } catch (IllegalArgumentException e) {
+      throw new TCProtocolException("Corrupt compressed payload", e);
+    }
+    for (TCByteBuffer buffer : data) {
+      buffer.recycle();
+    }
+
+    header.setFlags(header.getFlags() & ~WireProtocolHeader.FLAG_COMPRESSED);
+    header.setTotalPacketLength(header.getHeaderByteLength() + length);
+    header.computeChecksum();
+
+    decompressNanos.add(System.nanoTime() - start);
+    decompressedMessages.increment();
+    bytesBeforeDecompress.add(blockLength);
+    bytesAfterDecompress.add(length);
+    return new TCByteBuffer[] { TCByteBufferFactory.wrap(raw) };
+  }
+
+  private static byte[] gather(TCByteBuffer[] buffers, int first, int length) {
+    final byte[] bytes = new byte[length];
+    int pos = 0;
+    for (int i = first; i < buffers.length; i++) {
+      final TCByteBuffer buffer = buffers[i];
+      final int remaining = buffer.remaining();
+      buffer.get(buffer.position(), bytes, pos, remaining);
+      pos += remaining;
+    }
+    return bytes;
+  }
+
+  @Override
+  public Map<String, ?> getStateMap() {
+    Map<String, Object> state = new LinkedHashMap<>();
+    state.put("enabled", enabled);
+    state.put("active", isActive());
+    state.put("threshold", threshold);
+    state.put("maxUncompressedLength", maxUncompressedLength);
+    state.put("compressed", stats(compressedMessages, bytesBeforeCompress, bytesAfterCompress, compressNanos));
+    state.put("incompressible", incompressibleMessages.longValue());
+    state.put("decompressed", stats(decompressedMessages, bytesAfterDecompress, bytesBeforeDecompress,
+                                    decompressNanos));
+    return state;
+  }
+
+  private static Map<String, Object> stats(LongAdder messages, LongAdder raw, LongAdder packed, LongAdder nanos) {
+    Map<String, Object> stats = new LinkedHashMap<>();
+    final long rawBytes = raw.longValue();
+    final long packedBytes = packed.longValue();
+    final long cpuNanos = nanos.longValue();
+    stats.put("messages", messages.longValue());
+    stats.put("rawBytes", rawBytes);
+    stats.put("compressedBytes", packedBytes);
+    stats.put("ratio", packedBytes == 0 ? 0d : (double) rawBytes / packedBytes);
+    stats.put("cpuMillis", TimeUnit.NANOSECONDS.toMillis(cpuNanos));
+    stats.put("cpuNanosPerKiloByte", rawBytes == 0 ? 0L : cpuNanos * 1024 / rawBytes);
+    return stats;
+  }
+}
@@ -19,6 +19,7 @@
 package com.tc.net.protocol.transport;
 
 import com.tc.bytes.TCByteBuffer;
+import com.tc.bytes.TCByteBufferFactory;
 import com.tc.net.protocol.AbstractTCNetworkHeader;
 import com.tc.net.protocol.TCNetworkMessage;
 import com.tc.net.protocol.delivery.OOOProtocolMessage;
@@ -48,7 +49,7 @@ import com.tc.util.Conversion;
  *        +-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+
  *        |          Source Port          |      Destination Port         |
  *        +-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+
- *        |          Message Count        |          Padding              |
+ *        |          Message Count        |            Flags              |
  *        +-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+
  *        |     Options                                |    Padding       |
  *        +-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+
@@ -72,6 +73,11 @@ public class WireProtocolHeader extends AbstractTCNetworkHeader implements Clone
   public static final short    PROTOCOL_HEALTHCHECK_PROBES  = 4;
   public static final short    PROTOCOL_MSGGROUP            = 5;
 
+  // the payload is an LZ4 block preceded by its uncompressed length, see WireProtocolCompression
+  public static final int      FLAG_COMPRESSED              = 0x01;
+  // the sender decodes compressed payloads, set on every message once compression is enabled locally
+  public static final int      FLAG_ACCEPTS_COMPRESSION     = 0x02;
+
   private static final int     MAGIC_NUM                    = 0xAAAAAAAA;
 
   private static final short[] VALID_PROTOCOLS              = new short[] { PROTOCOL_TCM, PROTOCOL_TRANSPORT_HANDSHAKE,
@@ -164,6 +170,22 @@ public class WireProtocolHeader extends AbstractTCNetworkHeader implements Clone
     return data.getUshort(28);
   }
 
+  public void setFlags(int flags) {
+    data.putUshort(30, flags);
+  }
+
+  public int getFlags() {
+    return data.getUshort(30);
+  }
+
+  public boolean isCompressed() {
+    return (getFlags() & FLAG_COMPRESSED) != 0;
+  }
+
+  public boolean acceptsCompression() {
+    return (getFlags() & FLAG_ACCEPTS_COMPRESSION) != 0;
+  }
+
   public int getMagicNum() {
     return data.getInt(4);
   }
@@ -275,6 +297,9 @@ public class WireProtocolHeader extends AbstractTCNetworkHeader implements Clone
                                                                                                + getHeaderByteLength()
                                                                                                + ")"); }
 
+    // flags this version does not know are ignored, a feature behind a new flag is only used once the peer has
+    // advertised it, the way FLAG_ACCEPTS_COMPRESSION gates FLAG_COMPRESSED
+
     // validate the checksum
     if (!isChecksumValid()) { throw new WireProtocolHeaderFormatException("Invalid Checksum"); }
 
@@ -329,6 +354,7 @@ public class WireProtocolHeader extends AbstractTCNetworkHeader implements Clone
     buf.append("\n");
 
     buf.append("Total Msg Count: " + getMessageCount());
+    buf.append(", Flags: ").append(getFlags());
     buf.append("\n");
 
     String errMsg = "no message";
@@ -393,6 +419,17 @@ public class WireProtocolHeader extends AbstractTCNetworkHeader implements Clone
     return PROTOCOL_MSGGROUP == getProtocol();
   }
 
+  /**
+   * @return this header in a buffer of its own, changes to the copy do not show in the original
+   */
+  public WireProtocolHeader copy() {
+    final int length = getHeaderByteLength();
+    final TCByteBuffer buffer = TCByteBufferFactory.wrap(new byte[MAX_LENGTH]);
+    buffer.put(0, getBytes(0, length), 0, length);
+    buffer.limit(length);
+    return new WireProtocolHeader(buffer);
+  }
+
   @Override
   protected Object clone() {
     WireProtocolHeader rv = new WireProtocolHeader();
@@ -0,0 +1,106 @@
+/*
+ *
+ *  The contents of this file are subject to the Terracotta Public License Version
+ *  2.0 (the "License"); You may not use this file except in compliance with the
+ *  License. You may obtain a copy of the License at
+ *
+ *  http://terracotta.org/legal/terracotta-public-license.
+ *
+ *  Software distributed under the License is distributed on an "AS IS" basis,
+ *  WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing rights and limitations under the License.
+ *
+ *  The Covered Software is Terracotta Core.
+ *
+ *  The Initial Developer of the Covered Software is
+ *  Terracotta, Inc., a Software AG company
+ *
+ */
+package com.tc.bytes;
+
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class FixedSizeBufferPoolTest {
+
+  @Test
+  public void testRecycledChunkIsReused() {
+    FixedSizeBufferPool pool = new FixedSizeBufferPool(false, 16, 4, false);
+    TCByteBuffer first = pool.checkOut();
+    assertEquals(TCByteBufferFactory.FIXED_BUFFER_SIZE, first.capacity());
+    assertSame(pool, first.getBufferPool());
+    byte[] array = first.array();
+    first.putInt(42);
+    first.recycle();
+
+    TCByteBuffer second = pool.checkOut();
+    assertNotSame(first, second);
+    assertSame(array, second.array());
+    assertEquals(0, second.position());
+    assertEquals(TCByteBufferFactory.FIXED_BUFFER_SIZE, second.limit());
+  }
+
+  @Test
+  public void testDirectChunksAreSlicedFromSlabs() {
+    FixedSizeBufferPool pool = new FixedSizeBufferPool(true, 16, 4, false);
+    for (int i = 0; i < FixedSizeBufferPool.CHUNKS_PER_SLAB + 1; i++) {
+      TCByteBuffer buf = pool.checkOut();
+      assertTrue(buf.isDirect());
+      assertEquals(TCByteBufferFactory.FIXED_BUFFER_SIZE, buf.capacity());
+      buf.put(0, (byte) i);
+    }
+    assertEquals((long) FixedSizeBufferPool.CHUNKS_PER_SLAB + 1, pool.getState().get("allocated"));
+  }
+
+  @Test
+  public void testFreeChunksAreCapped() {
+    FixedSizeBufferPool pool = new FixedSizeBufferPool(false, 8, 4, false);
+    Set<TCByteBuffer> out = new HashSet<>();
+    for (int i = 0; i < 32; i++) {
+      out.add(pool.checkOut());
+    }
+    for (TCByteBuffer buf : out) {
+      buf.recycle();
+    }
+    assertTrue(pool.getFreeCount() <= 8 + 4);
+    assertEquals(32L, pool.getState().get("returned"));
+  }
+
+  @Test
+  public void testReturnFromOtherThreadReachesSharedList() throws Exception {
+    FixedSizeBufferPool pool = new FixedSizeBufferPool(false, 64, 0, false);
+    TCByteBuffer buf = pool.checkOut();
+    Thread t = new Thread(buf::recycle);
+    t.start();
+    t.join();
+    pool.checkOut();
+    assertEquals(1L, pool.getState().get("reused"));
+  }
+
+  @Test(expected = AssertionError.class)
+  public void testDoubleRecycleFails() {
+    FixedSizeBufferPool pool = new FixedSizeBufferPool(false, 16, 4, false);
+    TCByteBuffer buf = pool.checkOut();
+    buf.recycle();
+    buf.recycle();
+  }
+
+  @Test
+  public void testLeakedBufferIsReclaimed() throws Exception {
+    FixedSizeBufferPool pool = new FixedSizeBufferPool(false, 16, 4, true);
+    pool.checkOut();
+    for (int i = 0; i < 100 && pool.getLeakCount() == 0; i++) {
+      System.gc();
+      Thread.sleep(10);
+      pool.checkOut().recycle();
+    }
+    assertEquals(1L, pool.getLeakCount());
+  }
+}
@@ -0,0 +1,210 @@
+/*
+ *
+ *  The contents of this file are subject to the Terracotta Public License Version
+ *  2.0 (the "License"); You may not use this file except in compliance with the
+ *  License. You may obtain a copy of the License at
+ *
+ *  http://terracotta.org/legal/terracotta-public-license.
+ *
+ *  Software distributed under the License is distributed on an "AS IS" basis,
+ *  WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing rights and limitations under the License.
+ *
+ *  The Covered Software is Terracotta Core.
+ *
+ *  The Initial Developer of the Covered Software is
+ *  Terracotta, Inc., a Software AG company
+ *
+ */
+package com.tc.entity;
+
+import com.tc.bytes.TCByteBuffer;
+import com.tc.io.TCByteBufferOutputStream;
+import com.tc.net.protocol.tcm.MessageChannel;
+import com.tc.net.protocol.tcm.MessageMonitor;
+import com.tc.net.protocol.tcm.NullMessageMonitor;
+import com.tc.net.protocol.tcm.TCMessageHeader;
+import com.tc.net.protocol.tcm.TCMessageType;
+import com.tc.object.ClientInstanceID;
+import com.tc.object.session.SessionID;
+import com.tc.object.tx.TransactionID;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class LinearVoltronEntityMultiResponseTest {
+  private final MessageMonitor monitor = new NullMessageMonitor();
+
+  @Test
+  public void testSerialization() throws Exception {
+    LinearVoltronEntityMultiResponse response = newResponse(compactChannel());
+    fill(response);
+
+    List<String> expected = replay(response);
+    LinearVoltronEntityMultiResponse decoded = roundTrip(response);
+    assertEquals(expected, replay(decoded));
+    assertEquals(expected.size(), decoded.replay(new Recorder()));
+    assertTrue(expected.contains("result 50 4096"));
+  }
+
+  @Test
+  public void testClientsWithoutCompactTimelineGetOps() throws Exception {
+    for (MessageChannel channel : new MessageChannel[] { null, mock(MessageChannel.class) }) {
+      LinearVoltronEntityMultiResponse response = newResponse(channel);
+      fill(response);
+      response.dehydrate();
+      LinearVoltronEntityMultiResponse compact = newResponse(compactChannel());
+      fill(compact);
+      compact.dehydrate();
+      assertTrue(payloadLength(response) > payloadLength(compact));
+
+      List<String> expected = replay(response);
+      LinearVoltronEntityMultiResponse decoded = roundTrip(response);
+      assertEquals(expected, replay(decoded));
+      assertEquals(expected.size(), decoded.replay(new Recorder()));
+    }
+  }
+
+  private static void fill(LinearVoltronEntityMultiResponse response) {
+    byte[] result = new byte[] { 1, 2, 3 };
+    byte[] large = new byte[4096];
+    Arrays.fill(large, (byte) 9);
+    response.startAdding();
+    for (long tid = 100; tid < 110; tid++) {
+      response.addReceived(new TransactionID(tid));
+    }
+    response.addResult(new TransactionID(101), result);
+    response.addRetired(new TransactionID(100));
+    response.addRetired(new TransactionID(101));
+    response.addResultAndRetire(new TransactionID(50), large);
+    response.addServerMessage(new ClientInstanceID(7), result);
+    response.addServerMessage(new TransactionID(102), result);
+    response.addStats(new TransactionID(102), new long[] { 3L, -4L });
+    response.addReceived(new TransactionID(110));
+    response.stopAdding();
+  }
+
+  @Test
+  public void testAckRangesAreCompact() throws Exception {
+    LinearVoltronEntityMultiResponse response = newResponse(compactChannel());
+    response.startAdding();
+    for (long tid = 1_000_000; tid < 1_001_000; tid++) {
+      response.addReceived(new TransactionID(tid));
+    }
+    for (long tid = 1_000_000; tid < 1_001_000; tid++) {
+      response.addRetired(new TransactionID(tid));
+    }
+    response.stopAdding();
+    response.dehydrate();
+
+    int length = payloadLength(response);
+    assertTrue("payload " + length, length < 64);
+    assertEquals(2001, roundTrip(response).replay(new Recorder()));
+  }
+
+  @Test(expected = IOException.class)
+  public void testUnknownOperationInOpsIsRejected() throws Exception {
+    LinearVoltronEntityMultiResponse response = newResponse(null);
+    response.startAdding();
+    response.addReceived(new TransactionID(5));
+    response.stopAdding();
+    response.dehydrate();
+    // NV count, OP_ID, then the operation as a short
+    TCByteBuffer payload = response.getPayload()[0];
+    payload.put(5, (byte) 0x7F);
+    payload.put(6, (byte) 0xFF);
+    roundTrip(response);
+  }
+
+  @Test(expected = IOException.class)
+  public void testUnknownOperationInTimelineIsRejected() throws Exception {
+    LinearVoltronEntityMultiResponse response = newResponse(compactChannel());
+    response.startAdding();
+    response.addReceived(new TransactionID(5));
+    response.stopAdding();
+    response.dehydrate();
+    // NV count, TIMELINE_ID, op count, then the operation as a byte
+    response.getPayload()[0].put(9, (byte) -1);
+    roundTrip(response);
+  }
+
+  private static MessageChannel compactChannel() {
+    MessageChannel channel = mock(MessageChannel.class);
+    when(channel.getAttachment(LinearVoltronEntityMultiResponse.COMPACT_TIMELINE)).thenReturn(true);
+    return channel;
+  }
+
+  private static int payloadLength(LinearVoltronEntityMultiResponse response) {
+    int length = 0;
+    for (TCByteBuffer buffer : response.getPayload()) {
+      length += buffer.limit();
+    }
+    return length;
+  }
+
+  private LinearVoltronEntityMultiResponse newResponse(MessageChannel channel) {
+    return new LinearVoltronEntityMultiResponse(SessionID.NULL_ID, monitor, new TCByteBufferOutputStream(4, 4096, false),
+                                                channel, TCMessageType.VOLTRON_ENTITY_MULTI_RESPONSE);
+  }
+
+  private LinearVoltronEntityMultiResponse roundTrip(LinearVoltronEntityMultiResponse response) throws Exception {
+    if (!response.isSealed()) {
+      response.dehydrate();
+    }
+    LinearVoltronEntityMultiResponse decoded = new LinearVoltronEntityMultiResponse(SessionID.NULL_ID, monitor, null,
+        (TCMessageHeader) response.getHeader(), response.getPayload());
+    decoded.hydrate();
+    return decoded;
+  }
+
+  private static List<String> replay(LinearVoltronEntityMultiResponse response) {
+    Recorder recorder = new Recorder();
+    response.replay(recorder);
+    // the elapsed time reported with DONE differs from run to run
+    recorder.events.removeIf(e -> e.startsWith("stats -1 "));
+    return recorder.events;
+  }
+
+  private static class Recorder implements VoltronEntityMultiResponse.ReplayReceiver {
+    private final List<String> events = new ArrayList<>();
+
+    @Override
+    public void received(TransactionID tid) {
+      events.add("received " + tid.toLong());
+    }
+
+    @Override
+    public void retired(TransactionID tid) {
+      events.add("retired " + tid.toLong());
+    }
+
+    @Override
+    public void result(TransactionID tid, byte[] result) {
+      events.add("result " + tid.toLong() + " " + result.length);
+    }
+
+    @Override
+    public void message(ClientInstanceID cid, byte[] message) {
+      events.add("message " + cid.getID() + " " + Arrays.toString(message));
+    }
+
+    @Override
+    public void message(TransactionID tid, byte[] message) {
+      events.add("invoke " + tid.toLong() + " " + Arrays.toString(message));
+    }
+
+    @Override
+    public void stats(TransactionID tid, long[] message) {
+      events.add("stats " + tid.toLong() + " " + Arrays.toString(message));
+    }
+  }
+}
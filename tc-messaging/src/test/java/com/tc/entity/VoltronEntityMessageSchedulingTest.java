@@ -0,0 +1,72 @@
+/*
+ *
+ *  The contents of this file are subject to the Terracotta Public License Version
+ *  2.0 (the "License"); You may not use this file except in compliance with the
+ *  License. You may obtain a copy of the License at
+ *
+ *  http://terracotta.org/legal/terracotta-public-license.
+ *
+ *  Software distributed under the License is distributed on an "AS IS" basis,
+ *  WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing rights and limitations under the License.
+ *
+ *  The Covered Software is Terracotta Core.
+ *
+ *  The Initial Developer of the Covered Software is
+ *  Terracotta, Inc., a Software AG company
+ *
+ */
+package com.tc.entity;
+
+import com.tc.entity.VoltronEntityMessage.Type;
+import com.tc.net.ClientID;
+import com.tc.object.ClientInstanceID;
+import com.tc.object.EntityDescriptor;
+import com.tc.object.EntityID;
+import com.tc.object.FetchID;
+import com.tc.object.tx.TransactionID;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+
+/**
+ * Checks how messages are spread over the lanes of the voltron message stage.
+ */
+public class VoltronEntityMessageSchedulingTest {
+  @Test
+  public void testInvokesAreKeyedByFetchID() {
+    VoltronEntityMessage first = invoke(1, 5L);
+    VoltronEntityMessage second = invoke(2, 5L);
+    VoltronEntityMessage other = invoke(1, 6L);
+    assertFalse(first.flush());
+    assertEquals(new FetchID(5L), first.getSchedulingKey());
+    assertEquals(first.getSchedulingKey(), second.getSchedulingKey());
+    assertNotEquals(first.getSchedulingKey(), other.getSchedulingKey());
+  }
+
+  @Test
+  public void testEverythingElseFlushes() {
+    EntityDescriptor lifecycle = EntityDescriptor.createDescriptorForLifecycle(new EntityID("class", "name"), 1);
+    for (Type type : Type.values()) {
+      if (type != Type.INVOKE_ACTION) {
+        VoltronEntityMessage message = message(1, lifecycle, type);
+        assertTrue(type.toString(), message.flush());
+        assertNull(type.toString(), message.getSchedulingKey());
+      }
+    }
+  }
+
+  private static VoltronEntityMessage invoke(long client, long fetch) {
+    return message(client, EntityDescriptor.createDescriptorForInvoke(new FetchID(fetch), new ClientInstanceID(1)), Type.INVOKE_ACTION);
+  }
+
+  private static VoltronEntityMessage message(long client, EntityDescriptor descriptor, Type type) {
+    return new ResendVoltronEntityMessage(new ClientID(client), new TransactionID(1), descriptor, type, false, new byte[0], new TransactionID(1));
+  }
+}
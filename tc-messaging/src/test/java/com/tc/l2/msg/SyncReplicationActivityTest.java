@@ -0,0 +1,125 @@
+/*
+ *
+ *  The contents of this file are subject to the Terracotta Public License Version
+ *  2.0 (the "License"); You may not use this file except in compliance with the
+ *  License. You may obtain a copy of the License at
+ *
+ *  http://terracotta.org/legal/terracotta-public-license.
+ *
+ *  Software distributed under the License is distributed on an "AS IS" basis,
+ *  WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing rights and limitations under the License.
+ *
+ *  The Covered Software is Terracotta Core.
+ *
+ *  The Initial Developer of the Covered Software is
+ *  Terracotta, Inc., a Software AG company
+ *
+ */
+package com.tc.l2.msg;
+
+import com.tc.bytes.TCByteBuffer;
+import com.tc.bytes.TCByteBufferReference;
+import com.tc.io.TCByteBufferInputStream;
+import com.tc.io.TCByteBufferOutputStream;
+import com.tc.net.ClientID;
+import com.tc.object.ClientInstanceID;
+import com.tc.object.FetchID;
+import com.tc.object.tx.TransactionID;
+import org.junit.Test;
+
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+
+public class SyncReplicationActivityTest {
+
+  private static SyncReplicationActivity createInvoke(byte[] payload) {
+    return SyncReplicationActivity.createInvokeMessage(new FetchID(1L), new ClientID(1), new ClientInstanceID(1), new TransactionID(2), new TransactionID(1), 
+        SyncReplicationActivity.ActivityType.INVOKE_ACTION, payload, 1, "test");
+  }
+
+  private static byte[] randomPayload(int size) {
+    byte[] data = new byte[size];
+    new Random(size).nextBytes(data);
+    return data;
+  }
+
+  @SuppressWarnings("resource")
+  private static ReplicationMessage writeAndRead(ReplicationMessage message) throws Exception {
+    TCByteBufferOutputStream out = new TCByteBufferOutputStream();
+    message.serializeTo(out);
+    ReplicationMessage read = new ReplicationMessage();
+    read.deserializeFrom(new TCByteBufferInputStream(out.toArray()));
+    return read;
+  }
+
+  @Test
+  public void testPayloadIsNotCopiedIntoStream() throws Exception {
+    byte[] payload = randomPayload(64 * 1024);
+    SyncReplicationActivity activity = createInvoke(payload);
+    TCByteBufferOutputStream out = new TCByteBufferOutputStream();
+    activity.serializeTo(out);
+    boolean shared = false;
+    for (TCByteBuffer buffer : out.toArray()) {
+      shared |= buffer.hasArray() && buffer.array() == payload;
+    }
+    assertTrue(shared);
+    // the local activity hands back the original array
+    assertSame(payload, activity.getExtendedData());
+  }
+
+  @Test
+  public void testReceivedPayloadIsView() throws Exception {
+    byte[] small = randomPayload(10);
+    byte[] large = randomPayload(3 * 4096 + 17);
+    ReplicationMessage message = ReplicationMessage.createActivityContainer(createInvoke(small));
+    message.addToBatch(createInvoke(large));
+    message.addToBatch(createInvoke(new byte[0]));
+
+    ReplicationMessage read = writeAndRead(message);
+    assertEquals(3, read.getActivities().size());
+
+    SyncReplicationActivity first = read.getActivities().get(0);
+    SyncReplicationActivity second = read.getActivities().get(1);
+    SyncReplicationActivity empty = read.getActivities().get(2);
+    assertTrue(first.getPayloadReference().isView());
+    assertTrue(second.getPayloadReference().isView());
+    assertFalse(empty.getPayloadReference().isView());
+
+    TCByteBufferInputStream in = second.getPayloadReference().newInputStream();
+    byte[] streamed = new byte[large.length];
+    in.readFully(streamed);
+    assertArrayEquals(large, streamed);
+    assertTrue(second.getPayloadReference().isView());
+
+    assertArrayEquals(small, first.getExtendedData());
+    assertFalse(first.getPayloadReference().isView());
+    assertArrayEquals(large, second.getExtendedData());
+    assertSame(second.getExtendedData(), second.getExtendedData());
+    assertEquals(0, empty.getExtendedData().length);
+  }
+
+  @Test
+  public void testReleaseHookRunsOnce() throws Exception {
+    ReplicationMessage read = writeAndRead(ReplicationMessage.createActivityContainer(createInvoke(randomPayload(100))));
+    SyncReplicationActivity activity = read.getActivities().get(0);
+    TCByteBufferReference reference = activity.getPayloadReference();
+    AtomicInteger released = new AtomicInteger();
+    reference.whenReleased(released::incrementAndGet);
+    assertEquals(0, released.get());
+    activity.getExtendedData();
+    assertEquals(1, released.get());
+    activity.releasePayload();
+    assertEquals(1, released.get());
+    // registering after the fact runs right away
+    reference.whenReleased(released::incrementAndGet);
+    assertEquals(2, released.get());
+  }
+}
@@ -0,0 +1,219 @@
+/*
+ *
+ *  The contents of this file are subject to the Terracotta Public License Version
+ *  2.0 (the "License"); You may not use this file except in compliance with the
+ *  License. You may obtain a copy of the License at
+ *
+ *  http://terracotta.org/legal/terracotta-public-license.
+ *
+ *  Software distributed under the License is distributed on an "AS IS" basis,
+ *  WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing rights and limitations under the License.
+ *
+ *  The Covered Software is Terracotta Core.
+ *
+ *  The Initial Developer of the Covered Software is
+ *  Terracotta, Inc., a Software AG company
+ *
+ */
+package com.tc.net.protocol.transport;
+
+import com.tc.bytes.TCByteBuffer;
+import com.tc.bytes.TCByteBufferFactory;
+import com.tc.net.protocol.TCProtocolException;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class WireProtocolCompressionTest {
+
+  @Test
+  public void testBlockRoundTrip() {
+    Random random = new Random(42);
+    byte[] noise = new byte[10000];
+    random.nextBytes(noise);
+    byte[] runs = new byte[70000];
+    Arrays.fill(runs, (byte) 7);
+
+    for (byte[] data : new byte[][] { new byte[0], "short".getBytes(StandardCharsets.US_ASCII), text(50000), noise,
+        runs }) {
+      byte[] block = new byte[LZ4Block.maxCompressedLength(data.length)];
+      int length = LZ4Block.compress(data, 0, data.length, block, 0);
+      byte[] restored = new byte[data.length];
+      LZ4Block.decompress(block, 0, length, restored, 0, restored.length);
+      assertArrayEquals(data, restored);
+    }
+  }
+
+  @Test
+  public void testMalformedBlock() {
+    byte[] data = text(1000);
+    byte[] block = new byte[LZ4Block.maxCompressedLength(data.length)];
+    int length = LZ4Block.compress(data, 0, data.length, block, 0);
+    try {
+      LZ4Block.decompress(block, 0, length - 1, new byte[data.length], 0, data.length);
+      fail();
+    } catch (IllegalArgumentException expected) {
+      // expected
+    }
+    try {
+      LZ4Block.decompress(block, 0, length, new byte[data.length + 1], 0, data.length + 1);
+      fail();
+    } catch (IllegalArgumentException expected) {
+      // expected
+    }
+  }
+
+  @Test
+  public void testNegotiatedRoundTrip() throws Exception {
+    WireProtocolCompression sender = new WireProtocolCompression(true, 128);
+    WireProtocolCompression receiver = new WireProtocolCompression(true, 128);
+    byte[] payload = text(8192);
+
+    // nothing is compressed until the peer has said it can decode
+    WireProtocolMessage message = message(sender, payload);
+    assertSame(message.getEntireMessageData(), sender.compress(message));
+    assertTrue(message.getWireProtocolHeader().acceptsCompression());
+
+    receiver.received(message.getWireProtocolHeader());
+    WireProtocolHeader reply = new WireProtocolHeader();
+    receiver.prepare(reply);
+    sender.received(reply);
+    assertTrue(sender.isActive());
+
+    message = message(sender, payload);
+    int messageLength = message.getWireProtocolHeader().getTotalPacketLength();
+    TCByteBuffer[] wire = sender.compress(message);
+    // the message keeps its own header, the frame on the wire gets a fresh one
+    assertFalse(message.getWireProtocolHeader().isCompressed());
+    assertTrue(message.getWireProtocolHeader().isChecksumValid());
+    assertEquals(messageLength, message.getWireProtocolHeader().getTotalPacketLength());
+    assertNotSame(message.getWireProtocolHeader().getDataBuffer(), wire[0]);
+    WireProtocolHeader header = new WireProtocolHeader(wire[0]);
+    assertEquals(2, wire.length);
+    assertTrue(header.isCompressed());
+    assertTrue(header.isChecksumValid());
+    assertEquals(header.getHeaderByteLength() + wire[1].remaining(), header.getTotalPacketLength());
+    assertTrue(wire[1].remaining() < payload.length);
+
+    TCByteBuffer received = TCByteBufferFactory.getInstance(false, wire[1].remaining());
+    received.put(wire[1].duplicate()).flip();
+    TCByteBuffer[] restored = receiver.decompress(header, new TCByteBuffer[] { received });
+    assertFalse(header.isCompressed());
+    assertTrue(header.isChecksumValid());
+    assertEquals(header.getHeaderByteLength() + payload.length, header.getTotalPacketLength());
+    byte[] bytes = new byte[restored[0].remaining()];
+    restored[0].get(bytes);
+    assertArrayEquals(payload, bytes);
+  }
+
+  @Test
+  public void testSmallAndIncompressiblePayloadsPassThrough() {
+    WireProtocolCompression compression = new WireProtocolCompression(true, 1024);
+    WireProtocolHeader peer = new WireProtocolHeader();
+    peer.setFlags(WireProtocolHeader.FLAG_ACCEPTS_COMPRESSION);
+    compression.received(peer);
+
+    WireProtocolMessage small = message(compression, text(512));
+    assertSame(small.getEntireMessageData(), compression.compress(small));
+
+    byte[] noise = new byte[4096];
+    new Random(7).nextBytes(noise);
+    WireProtocolMessage random = message(compression, noise);
+    assertSame(random.getEntireMessageData(), compression.compress(random));
+    assertFalse(random.getWireProtocolHeader().isCompressed());
+  }
+
+  @Test
+  public void testDisabledDoesNotAdvertise() {
+    WireProtocolCompression compression = new WireProtocolCompression(false, 0);
+    WireProtocolHeader peer = new WireProtocolHeader();
+    peer.setFlags(WireProtocolHeader.FLAG_ACCEPTS_COMPRESSION);
+    compression.received(peer);
+    assertFalse(compression.isActive());
+
+    WireProtocolMessage message = message(compression, text(8192));
+    assertFalse(message.getWireProtocolHeader().acceptsCompression());
+    assertSame(message.getEntireMessageData(), compression.compress(message));
+  }
+
+  @Test(expected = TCProtocolException.class)
+  public void testCorruptPayload() throws Exception {
+    WireProtocolHeader header = new WireProtocolHeader();
+    header.setFlags(WireProtocolHeader.FLAG_COMPRESSED);
+    header.setTotalPacketLength(header.getHeaderByteLength() + 8);
+    TCByteBuffer data = TCByteBufferFactory.getInstance(false, 8);
+    data.putInt(0, 100);
+    new WireProtocolCompression(true, 0).decompress(header, new TCByteBuffer[] { data });
+  }
+
+  @Test
+  public void testOversizedLengthRejectedBeforeAllocation() throws Exception {
+    WireProtocolCompression compression = new WireProtocolCompression(true, 0, 4096);
+    byte[] payload = text(8192);
+    byte[] block = new byte[Integer.BYTES + LZ4Block.maxCompressedLength(payload.length)];
+    int blockLength = Integer.BYTES + LZ4Block.compress(payload, 0, payload.length, block, Integer.BYTES);
+    TCByteBufferFactory.wrap(block).putInt(0, payload.length);
+    try {
+      compression.decompress(compressedHeader(blockLength), new TCByteBuffer[] { copy(block, blockLength) });
+      fail();
+    } catch (TCProtocolException expected) {
+      assertTrue(expected.getMessage(), expected.getMessage().contains("exceeds the maximum"));
+    }
+
+    // a small frame can not claim more than LZ4 could ever produce from it, whatever the configured maximum
+    block = new byte[16];
+    TCByteBufferFactory.wrap(block).putInt(0, 1 << 30);
+    try {
+      new WireProtocolCompression(true, 0, Integer.MAX_VALUE).decompress(compressedHeader(block.length),
+                                                                         new TCByteBuffer[] { copy(block, block.length) });
+      fail();
+    } catch (TCProtocolException expected) {
+      assertTrue(expected.getMessage(), expected.getMessage().contains("not reachable"));
+    }
+  }
+
+  private static WireProtocolHeader compressedHeader(int blockLength) {
+    WireProtocolHeader header = new WireProtocolHeader();
+    header.setFlags(WireProtocolHeader.FLAG_COMPRESSED);
+    header.setTotalPacketLength(header.getHeaderByteLength() + blockLength);
+    return header;
+  }
+
+  private static TCByteBuffer copy(byte[] bytes, int length) {
+    TCByteBuffer buffer = TCByteBufferFactory.getInstance(false, length);
+    buffer.put(bytes, 0, length).flip();
+    return buffer;
+  }
+
+  private static WireProtocolMessage message(WireProtocolCompression compression, byte[] payload) {
+    WireProtocolHeader header = new WireProtocolHeader();
+    header.setProtocol(WireProtocolHeader.PROTOCOL_TCM);
+    WireProtocolMessageImpl message = new WireProtocolMessageImpl(null, header,
+                                                                  new TCByteBuffer[] { TCByteBufferFactory.wrap(payload) });
+    header.setMessageCount(1);
+    compression.prepare(header);
+    header.computeChecksum();
+    return message;
+  }
+
+  private static byte[] text(int length) {
+    StringBuilder text = new StringBuilder();
+    Random random = new Random(length);
+    while (text.length() < length) {
+      text.append("{\"key\":").append(random.nextInt(1000)).append(",\"value\":\"cached entry\"}");
+    }
+    return text.substring(0, length).getBytes(StandardCharsets.US_ASCII);
+  }
+}
@@ -154,6 +154,24 @@ public class WireProtocolHeaderTest {
       fail(e.getMessage());
     }
 
+    // flags this version does not know about are ignored
+    header.setFlags(0x80);
+    header.computeChecksum();
+    try {
+      header.validate();
+    } catch (WireProtocolHeaderFormatException e) {
+      fail(e.getMessage());
+    }
+    assertFalse(header.isCompressed());
+    assertFalse(header.acceptsCompression());
+    header.setFlags(WireProtocolHeader.FLAG_COMPRESSED | WireProtocolHeader.FLAG_ACCEPTS_COMPRESSION);
+    header.computeChecksum();
+    try {
+      header.validate();
+    } catch (WireProtocolHeaderFormatException e) {
+      fail(e.getMessage());
+    }
+
     // changing data in the header should cause the checksum to need to be recomputed
     header.setVersion((byte) (header.getVersion() + 1));
     assertFalse(header.isChecksumValid());